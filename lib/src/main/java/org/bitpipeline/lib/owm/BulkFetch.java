@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+
+/** Runs a query for many IDs with bounded parallelism: <code>parallelism</code>
+ * workers take the next ID as soon as they're done with the previous one, so
+ * a slow ID only holds back its own worker. When the deadline expires the
+ * workers stop taking IDs and the responses received so far are returned; the
+ * requests still in flight complete in the background and are discarded. */
+final class BulkFetch {
+	/** The query of one ID */
+	interface Query<T> {
+		T query (int id) throws IOException, JSONException;
+	}
+
+	private BulkFetch () {
+	}
+
+	static <T> BulkResult<T> fetch (Executor executor, final int[] ids, int parallelism,
+			long timeout, TimeUnit unit, final Query<T> query) throws InterruptedIOException {
+		if (ids == null)
+			throw new IllegalArgumentException ("The IDs can't be null.");
+		if (parallelism <= 0)
+			throw new IllegalArgumentException ("The parallelism must be positive.");
+		long deadline = System.nanoTime () + unit.toNanos (timeout);
+
+		final Map<Integer, Object> outcomes = new ConcurrentHashMap<Integer, Object> ();
+		final AtomicInteger nextIndex = new AtomicInteger ();
+		final int workers = Math.min (parallelism, ids.length);
+		final CountDownLatch done = new CountDownLatch (workers);
+		final Runnable worker = () -> {
+			try {
+				for (int i = nextIndex.getAndIncrement (); i < ids.length; i = nextIndex.getAndIncrement ()) {
+					Integer id = Integer.valueOf (ids[i]);
+					Object outcome;
+					try {
+						outcome = new Success<T> (query.query (ids[i]));
+					} catch (IOException | JSONException | RuntimeException e) {
+						outcome = e;
+					}
+					outcomes.put (id, outcome);
+				}
+			} finally {
+				done.countDown ();
+			}
+		};
+		int started = 0;
+		for (int i = 0; i < workers; i++) {
+			try {
+				executor.execute (worker);
+				started++;
+			} catch (RejectedExecutionException e) {
+				done.countDown ();
+			}
+		}
+		if (started == 0 && workers > 0)
+			throw new RejectedExecutionException ("The executor refused the bulk query");
+
+		try {
+			if (!done.await (deadline - System.nanoTime (), TimeUnit.NANOSECONDS))
+				nextIndex.set (ids.length);
+		} catch (InterruptedException e) {
+			nextIndex.set (ids.length);
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ("Interrupted while waiting for a bulk query");
+		}
+		Map<Integer, T> results = new HashMap<Integer, T> ();
+		Map<Integer, Exception> failures = new HashMap<Integer, Exception> ();
+		Set<Integer> timedOut = new LinkedHashSet<Integer> ();
+		for (int id : ids) {
+			Integer key = Integer.valueOf (id);
+			Object outcome = outcomes.get (key);
+			if (outcome instanceof Success)
+				results.put (key, BulkFetch.<T>value (outcome));
+			else if (outcome != null)
+				failures.put (key, (Exception) outcome);
+			else
+				timedOut.add (key);
+		}
+		return new BulkResult<T> (results, failures, timedOut);
+	}
+
+	static private final class Success<T> {
+		final T value;
+
+		Success (T value) {
+			this.value = value;
+		}
+	}
+
+	@SuppressWarnings ("unchecked")
+	static private <T> T value (Object success) {
+		return ((Success<T>) success).value;
+	}
+}
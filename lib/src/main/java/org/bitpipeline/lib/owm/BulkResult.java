@@ -0,0 +1,72 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/** The outcome of a bulk query: the response or the failure of each ID, and
+ * the IDs that weren't answered before the deadline. */
+public final class BulkResult<T> {
+	private final Map<Integer, T> results;
+	private final Map<Integer, Exception> failures;
+	private final Set<Integer> timedOut;
+
+	BulkResult (Map<Integer, T> results, Map<Integer, Exception> failures, Set<Integer> timedOut) {
+		this.results = Collections.unmodifiableMap (results);
+		this.failures = Collections.unmodifiableMap (failures);
+		this.timedOut = Collections.unmodifiableSet (timedOut);
+	}
+
+	/** @return the responses by ID */
+	public Map<Integer, T> getResults () {
+		return this.results;
+	}
+
+	/** @return the failures (an <code>IOException</code> or a
+	 * 	<code>JSONException</code>) by ID */
+	public Map<Integer, Exception> getFailures () {
+		return this.failures;
+	}
+
+	/** @return the IDs not answered before the deadline */
+	public Set<Integer> getTimedOut () {
+		return this.timedOut;
+	}
+
+	public boolean isSuccess (int id) {
+		return this.results.containsKey (Integer.valueOf (id));
+	}
+
+	/** @param id an ID of the query
+	 * @return the response to the ID or null if it failed or timed out */
+	public T get (int id) {
+		return this.results.get (Integer.valueOf (id));
+	}
+
+	/** @return true if every ID was answered (successfully or not) before the deadline */
+	public boolean isComplete () {
+		return this.timedOut.isEmpty ();
+	}
+
+	@Override
+	public String toString () {
+		return String.format ("BulkResult[results=%d, failures=%d, timedOut=%d]",
+				Integer.valueOf (this.results.size ()), Integer.valueOf (this.failures.size ()),
+				Integer.valueOf (this.timedOut.size ()));
+	}
+}
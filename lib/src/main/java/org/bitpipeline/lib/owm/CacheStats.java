@@ -0,0 +1,69 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+/** A snapshot of the statistics of a {@link ResponseCache} or a
+ * {@link DiskResponseCache}. */
+public final class CacheStats {
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long expirationCount;
+
+	CacheStats (long hitCount, long missCount, long evictionCount, long expirationCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.expirationCount = expirationCount;
+	}
+
+	/** @return the number of lookups that found a fresh response */
+	public long getHitCount () {
+		return this.hitCount;
+	}
+
+	/** @return the number of lookups that found no response or an expired one */
+	public long getMissCount () {
+		return this.missCount;
+	}
+
+	/** @return the number of responses evicted to make room for new ones */
+	public long getEvictionCount () {
+		return this.evictionCount;
+	}
+
+	/** @return the number of lookups that found an expired response */
+	public long getExpirationCount () {
+		return this.expirationCount;
+	}
+
+	public long getRequestCount () {
+		return this.hitCount + this.missCount;
+	}
+
+	/** @return the ratio of lookups that were hits (1 if there were no lookups) */
+	public double getHitRate () {
+		long requests = getRequestCount ();
+		return requests == 0 ? 1d : (double) this.hitCount / requests;
+	}
+
+	@Override
+	public String toString () {
+		return String.format ("CacheStats[hits=%d, misses=%d, evictions=%d, expirations=%d]",
+				Long.valueOf (this.hitCount), Long.valueOf (this.missCount),
+				Long.valueOf (this.evictionCount), Long.valueOf (this.expirationCount));
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+/** Stops sending requests to an endpoint family of the OWM server that is
+ * failing, so that callers fail fast instead of waiting for timeouts.
+ * <p>
+ * Each {@link EndpointFamily} has its own circuit. A closed circuit lets
+ * requests through and keeps the outcome of the last <code>windowSize</code>
+ * ones; once there are at least <code>minCalls</code> outcomes and the share
+ * of failures or of slow calls reaches its threshold the circuit opens. An
+ * open circuit refuses requests (with a {@link OwmCircuitOpenException}) for
+ * <code>openDuration</code> and then goes half open: a few probe requests are
+ * let through, the circuit closes if they all succeed and opens again if one
+ * fails.
+ * <p>
+ * Failures are network errors, timeouts and <code>5xx</code> / <code>429</code>
+ * replies; other errors (e.g. an unknown city) don't say anything about the
+ * health of the server. Listeners are told about every state transition. */
+public class CircuitBreaker {
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/** Observes the state transitions of the circuits */
+	public interface Listener {
+		/** Called (outside any lock) after the circuit of a family changed state
+		 * @param family the endpoint family
+		 * @param from the previous state
+		 * @param to the new state */
+		void stateChanged (EndpointFamily family, State from, State to);
+	}
+
+	static private final byte FAILED = 1;
+	static private final byte SLOW = 2;
+
+	private final class Circuit {
+		final EndpointFamily family;
+		State state = State.CLOSED;
+		/* the outcomes of the last calls, as FAILED | SLOW flags */
+		byte[] window;
+		int next = 0;
+		int calls = 0;
+		int failures = 0;
+		int slowCalls = 0;
+		long openUntil = 0;
+		int probesInFlight = 0;
+		int probesSucceeded = 0;
+
+		Circuit (EndpointFamily family) {
+			this.family = family;
+			reset ();
+		}
+
+		void reset () {
+			this.window = new byte[CircuitBreaker.this.windowSize];
+			this.next = 0;
+			this.calls = 0;
+			this.failures = 0;
+			this.slowCalls = 0;
+		}
+
+		/** @return the state before the transition */
+		State moveTo (State newState, long now) {
+			State previous = this.state;
+			this.state = newState;
+			if (newState == State.OPEN)
+				this.openUntil = now + CircuitBreaker.this.openDurationNanos;
+			if (newState == State.HALF_OPEN) {
+				this.probesInFlight = 0;
+				this.probesSucceeded = 0;
+			}
+			if (newState == State.CLOSED)
+				reset ();
+			return previous;
+		}
+	}
+
+	private final LongSupplier nanoClock;
+	private final Map<EndpointFamily, Circuit> circuits = new EnumMap<EndpointFamily, Circuit> (EndpointFamily.class);
+	private final List<Listener> listeners = new CopyOnWriteArrayList<Listener> ();
+
+	/* guarded by this */
+	private int windowSize = 20;
+	private int minCalls = 10;
+	private double failureRateThreshold = 0.5;
+	private double slowCallRateThreshold = 0.5;
+	private long slowCallNanos = TimeUnit.SECONDS.toNanos (2);
+	private long openDurationNanos = TimeUnit.SECONDS.toNanos (30);
+	private int halfOpenProbes = 3;
+
+	/** Create a breaker that opens when half of the last 20 calls (and at
+	 * least 10) failed or took more than 2 seconds, stays open for 30 seconds
+	 * and closes after 3 successful probes. */
+	public CircuitBreaker () {
+		this (System::nanoTime);
+	}
+
+	CircuitBreaker (LongSupplier nanoClock) {
+		this.nanoClock = nanoClock;
+		for (EndpointFamily family : EndpointFamily.values ())
+			this.circuits.put (family, new Circuit (family));
+	}
+
+	/** @param windowSize the number of recent calls whose outcome is kept
+	 * @param minCalls the number of outcomes needed before the circuit can open
+	 * @return this breaker (with all the circuits closed) */
+	public synchronized CircuitBreaker setWindow (int windowSize, int minCalls) {
+		if (windowSize <= 0 || minCalls <= 0 || minCalls > windowSize)
+			throw new IllegalArgumentException ("The window must be positive and hold the minimum calls.");
+		this.windowSize = windowSize;
+		this.minCalls = minCalls;
+		for (Circuit circuit : this.circuits.values ())
+			circuit.moveTo (State.CLOSED, 0);
+		return this;
+	}
+
+	/** @param rate the share of failed calls that opens the circuit, in ]0, 1]
+	 * @return this breaker */
+	public synchronized CircuitBreaker setFailureRateThreshold (double rate) {
+		if (!(rate > 0 && rate <= 1))
+			throw new IllegalArgumentException ("The failure rate threshold must be in ]0, 1].");
+		this.failureRateThreshold = rate;
+		return this;
+	}
+
+	/** @param duration the duration above which a call is slow
+	 * @param unit the unit of the duration
+	 * @param rate the share of slow calls that opens the circuit, in ]0, 1]
+	 * @return this breaker */
+	public synchronized CircuitBreaker setSlowCallThreshold (long duration, TimeUnit unit, double rate) {
+		if (duration <= 0 || !(rate > 0 && rate <= 1))
+			throw new IllegalArgumentException ("The slow call duration must be positive and the rate in ]0, 1].");
+		this.slowCallNanos = unit.toNanos (duration);
+		this.slowCallRateThreshold = rate;
+		return this;
+	}
+
+	/** @param duration how long an open circuit refuses requests before probing
+	 * @param unit the unit of the duration
+	 * @return this breaker */
+	public synchronized CircuitBreaker setOpenDuration (long duration, TimeUnit unit) {
+		if (duration < 0)
+			throw new IllegalArgumentException ("The open duration can't be negative.");
+		this.openDurationNanos = unit.toNanos (duration);
+		return this;
+	}
+
+	/** @param probes the number of successful probes that close a half open circuit
+	 * @return this breaker */
+	public synchronized CircuitBreaker setHalfOpenProbes (int probes) {
+		if (probes <= 0)
+			throw new IllegalArgumentException ("At least one probe is needed.");
+		this.halfOpenProbes = probes;
+		return this;
+	}
+
+	public void addListener (Listener listener) {
+		this.listeners.add (listener);
+	}
+
+	public void removeListener (Listener listener) {
+		this.listeners.remove (listener);
+	}
+
+	/** @param family an endpoint family
+	 * @return the state of the circuit of the family */
+	public synchronized State getState (EndpointFamily family) {
+		return this.circuits.get (family).state;
+	}
+
+	/** Ask permission to send a request. A permission must be followed by a
+	 * call to {@link #record(EndpointFamily, boolean, long, boolean)}.
+	 * @param family the family of the request
+	 * @return true if the request is a probe of a half open circuit
+	 * @throws OwmCircuitOpenException if the request can't be sent */
+	boolean acquire (EndpointFamily family) throws OwmCircuitOpenException {
+		State previous = null;
+		synchronized (this) {
+			Circuit circuit = this.circuits.get (family);
+			long now = this.nanoClock.getAsLong ();
+			if (circuit.state == State.CLOSED)
+				return false;
+			if (circuit.state == State.OPEN) {
+				if (now - circuit.openUntil < 0)
+					throw new OwmCircuitOpenException (family, TimeUnit.NANOSECONDS.toMillis (circuit.openUntil - now));
+				previous = circuit.moveTo (State.HALF_OPEN, now);
+			} else if (circuit.probesInFlight + circuit.probesSucceeded >= this.halfOpenProbes) {
+				throw new OwmCircuitOpenException (family, 0);
+			}
+			circuit.probesInFlight++;
+		}
+		notify (family, previous, State.HALF_OPEN);
+		return true;
+	}
+
+	/** Record the outcome of a permitted request
+	 * @param family the family of the request
+	 * @param probe true if the request was a probe
+	 * @param nanos how long the request took
+	 * @param failed true if the request failed (see {@link #isFailure(Throwable)}) */
+	void record (EndpointFamily family, boolean probe, long nanos, boolean failed) {
+		State previous = null;
+		State current;
+		synchronized (this) {
+			Circuit circuit = this.circuits.get (family);
+			long now = this.nanoClock.getAsLong ();
+			boolean slow = nanos >= this.slowCallNanos;
+			if (probe && circuit.state == State.HALF_OPEN) {
+				circuit.probesInFlight--;
+				if (failed || slow)
+					previous = circuit.moveTo (State.OPEN, now);
+				else if (++circuit.probesSucceeded >= this.halfOpenProbes)
+					previous = circuit.moveTo (State.CLOSED, now);
+			} else if (!probe && circuit.state == State.CLOSED) {
+				byte outcome = (byte) ((failed ? CircuitBreaker.FAILED : 0) | (slow ? CircuitBreaker.SLOW : 0));
+				if (circuit.calls == circuit.window.length) {
+					byte evicted = circuit.window[circuit.next];
+					if ((evicted & CircuitBreaker.FAILED) != 0)
+						circuit.failures--;
+					if ((evicted & CircuitBreaker.SLOW) != 0)
+						circuit.slowCalls--;
+				} else {
+					circuit.calls++;
+				}
+				circuit.window[circuit.next] = outcome;
+				circuit.next = (circuit.next + 1) % circuit.window.length;
+				if (failed)
+					circuit.failures++;
+				if (slow)
+					circuit.slowCalls++;
+				if (circuit.calls >= this.minCalls
+						&& (circuit.failures >= this.failureRateThreshold * circuit.calls
+							|| circuit.slowCalls >= this.slowCallRateThreshold * circuit.calls))
+					previous = circuit.moveTo (State.OPEN, now);
+			}
+			/* the outcomes of calls permitted in an earlier state are ignored */
+			current = circuit.state;
+		}
+		notify (family, previous, current);
+	}
+
+	/** @param failure the failure of a request
+	 * @return true if the failure says the OWM server is unhealthy */
+	static boolean isFailure (Throwable failure) {
+		if (failure instanceof OwmHttpStatusException)
+			return ((OwmHttpStatusException) failure).isTransient ();
+		if (failure instanceof OwmRateLimitException || failure instanceof OwmCircuitOpenException)
+			return false;
+		if (failure instanceof ConnectTimeoutException || failure instanceof SocketTimeoutException)
+			return true;
+		if (failure instanceof InterruptedIOException)
+			return false;
+		return failure instanceof IOException;
+	}
+
+	private void notify (EndpointFamily family, State from, State to) {
+		if (from == null || from == to)
+			return;
+		for (Listener listener : this.listeners)
+			listener.stateChanged (family, from, to);
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONObject;
+
+/** A weather status decoded in {@link DecodeMode#COMPACT}: the values of the
+ * main, wind, coordinates, station and (plain) clouds sections are fields of
+ * the status and a single weather condition is kept without a list around it.
+ * <p>
+ * The section objects are copies built on each read, so the getters of the
+ * single values (e.g. {@link #getTemp()}) are the cheap way to read them. The
+ * rain and snow, rarely there, are kept as decoded by {@link WeatherData}. */
+final class CompactStatusWeatherData extends StatusWeatherData {
+	static private final int MAIN = 1;
+	static private final int WIND = 1 << 1;
+	static private final int CLOUDS = 1 << 2;
+	static private final int COORD = 1 << 3;
+	static private final int STATION = 1 << 4;
+
+	/* the sections there are */
+	private final byte sections;
+	private final float temp;
+	private final float tempMin;
+	private final float tempMax;
+	private final float pressure;
+	private final float humidity;
+	private final float windSpeed;
+	private final float windGust;
+	private final int windDeg;
+	private final int windVarBeg;
+	private final int windVarEnd;
+	private final float latitude;
+	private final float longitude;
+	private final int zoom;
+	private final int cloudsAll;
+	/* the clouds with hourly measures or conditions, kept as decoded */
+	private final Clouds clouds;
+	/* null, the only WeatherCondition or the list of them */
+	private final Object weatherConditions;
+
+	CompactStatusWeatherData (JSONObject json) {
+		super (json, DecodeMode.COMPACT, false);
+		int present = 0;
+
+		Main main = WeatherData.decodeMain (json);
+		if (main != null)
+			present |= CompactStatusWeatherData.MAIN;
+		this.temp = main != null ? main.getTemp () : Float.NaN;
+		this.tempMin = main != null ? main.getTempMin () : Float.NaN;
+		this.tempMax = main != null ? main.getTempMax () : Float.NaN;
+		this.pressure = main != null ? main.getPressure () : Float.NaN;
+		this.humidity = main != null ? main.getHumidity () : Float.NaN;
+
+		Wind wind = WeatherData.decodeWind (json);
+		if (wind != null)
+			present |= CompactStatusWeatherData.WIND;
+		this.windSpeed = wind != null ? wind.getSpeed () : Float.NaN;
+		this.windGust = wind != null ? wind.getGust () : Float.NaN;
+		this.windDeg = wind != null ? wind.getDeg () : Integer.MIN_VALUE;
+		this.windVarBeg = wind != null ? wind.getVarBeg () : Integer.MIN_VALUE;
+		this.windVarEnd = wind != null ? wind.getVarEnd () : Integer.MIN_VALUE;
+
+		GeoCoord coord = LocalizedWeatherData.decodeCoord (json);
+		if (coord != null)
+			present |= CompactStatusWeatherData.COORD;
+		this.latitude = coord != null ? coord.getLatitude () : Float.NaN;
+		this.longitude = coord != null ? coord.getLongitude () : Float.NaN;
+
+		Station station = StatusWeatherData.decodeStation (json);
+		if (station != null)
+			present |= CompactStatusWeatherData.STATION;
+		this.zoom = station != null ? station.getZoom () : Integer.MIN_VALUE;
+
+		Clouds decodedClouds = WeatherData.decodeClouds (json);
+		if (decodedClouds != null && !decodedClouds.hasMeasures () && !decodedClouds.hasConditions ()) {
+			present |= CompactStatusWeatherData.CLOUDS;
+			this.cloudsAll = decodedClouds.getAll ();
+			this.clouds = null;
+		} else {
+			this.cloudsAll = Integer.MIN_VALUE;
+			this.clouds = decodedClouds;
+		}
+
+		List<WeatherCondition> conditions = WeatherData.decodeWeatherConditions (json);
+		if (conditions.isEmpty ())
+			this.weatherConditions = null;
+		else if (conditions.size () == 1)
+			this.weatherConditions = conditions.get (0);
+		else
+			this.weatherConditions = conditions;
+
+		this.sections = (byte) present;
+	}
+
+	private boolean has (int section) {
+		return (this.sections & section) != 0;
+	}
+
+	@Override
+	public boolean hasMain () {
+		return has (CompactStatusWeatherData.MAIN);
+	}
+	@Override
+	public Main getMain () {
+		if (!hasMain ())
+			return null;
+		return new Main (this.temp, this.tempMin, this.tempMax, this.pressure, this.humidity);
+	}
+
+	@Override
+	public boolean hasWind () {
+		return has (CompactStatusWeatherData.WIND);
+	}
+	@Override
+	public Wind getWind () {
+		if (!hasWind ())
+			return null;
+		return new Wind (this.windSpeed, this.windDeg, this.windGust, this.windVarBeg, this.windVarEnd);
+	}
+
+	@Override
+	public boolean hasClouds () {
+		return this.clouds != null || has (CompactStatusWeatherData.CLOUDS);
+	}
+	@Override
+	public Clouds getClouds () {
+		if (this.clouds != null)
+			return this.clouds;
+		return has (CompactStatusWeatherData.CLOUDS) ? new Clouds (this.cloudsAll) : null;
+	}
+
+	@Override
+	public boolean hasWeatherConditions () {
+		return this.weatherConditions != null;
+	}
+	@Override
+	@SuppressWarnings ("unchecked")
+	public List<WeatherCondition> getWeatherConditions () {
+		if (this.weatherConditions == null)
+			return Collections.emptyList ();
+		if (this.weatherConditions instanceof WeatherCondition)
+			return Collections.singletonList ((WeatherCondition) this.weatherConditions);
+		return (List<WeatherCondition>) this.weatherConditions;
+	}
+
+	@Override
+	public boolean hasCoord () {
+		return has (CompactStatusWeatherData.COORD);
+	}
+	@Override
+	public GeoCoord getCoord () {
+		return hasCoord () ? new GeoCoord (this.latitude, this.longitude) : null;
+	}
+
+	@Override
+	public boolean hasStation () {
+		return has (CompactStatusWeatherData.STATION);
+	}
+	@Override
+	public Station getStation () {
+		return hasStation () ? new Station (this.zoom) : null;
+	}
+
+	/* the values are NaN or Integer.MIN_VALUE when there's no section */
+
+	@Override
+	public float getTemp () {
+		return this.temp;
+	}
+
+	@Override
+	public float getHumidity () {
+		return this.humidity;
+	}
+
+	@Override
+	public float getPressure () {
+		return this.pressure;
+	}
+
+	@Override
+	public float getWindSpeed () {
+		return this.windSpeed;
+	}
+
+	@Override
+	public float getWindGust () {
+		return this.windGust;
+	}
+
+	@Override
+	public int getWindDeg () {
+		return this.windDeg;
+	}
+}
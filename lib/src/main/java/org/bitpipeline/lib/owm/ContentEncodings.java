@@ -0,0 +1,82 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Negotiation and decoding of compressed (gzip or deflate) response
+ * content. The decoding streams inflate the content as it's read, so the
+ * compressed response is never held in memory. */
+final class ContentEncodings {
+	static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+	static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+	static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+	static private final int BUFFER_SIZE = 8 * 1024;
+
+	private ContentEncodings () {
+	}
+
+	/** Wrap a content stream with the decoder of its content encoding
+	 * @param in the content as received
+	 * @param contentEncoding the value of the <code>Content-Encoding</code>
+	 * 	header (may be null)
+	 * @return a stream with the decoded content
+	 * @throws IOException if the encoding isn't supported or the stream can't
+	 * 	be read */
+	static InputStream decode (InputStream in, String contentEncoding) throws IOException {
+		if (contentEncoding == null)
+			return in;
+		String encoding = contentEncoding.trim ().toLowerCase (Locale.ROOT);
+		if (encoding.length () == 0 || "identity".equals (encoding))
+			return in;
+		if ("gzip".equals (encoding) || "x-gzip".equals (encoding))
+			return new GZIPInputStream (in, ContentEncodings.BUFFER_SIZE);
+		if ("deflate".equals (encoding))
+			return ContentEncodings.inflate (in);
+		throw new IOException ("Unsupported content encoding " + contentEncoding);
+	}
+
+	/** "deflate" should be a zlib stream but some servers send a raw deflate
+	 * stream, so peek at the first two bytes to tell one from the other. */
+	static private InputStream inflate (InputStream in) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream (in, 2);
+		int cmf = pushback.read ();
+		int flg = cmf < 0 ? -1 : pushback.read ();
+		if (flg >= 0)
+			pushback.unread (flg);
+		if (cmf >= 0)
+			pushback.unread (cmf);
+		boolean zlibWrapped = flg >= 0 && (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+		final Inflater inflater = new Inflater (!zlibWrapped);
+		return new InflaterInputStream (pushback, inflater, ContentEncodings.BUFFER_SIZE) {
+			@Override
+			public void close () throws IOException {
+				try {
+					super.close ();
+				} finally {
+					inflater.end ();
+				}
+			}
+		};
+	}
+}
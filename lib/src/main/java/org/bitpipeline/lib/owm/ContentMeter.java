@@ -0,0 +1,134 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Measures the content of a response while it's decoded: the bytes received,
+ * the time spent reading them and the time spent building model objects.
+ * <p>
+ * The decoding time left is the parsing time. A meter belongs to a single
+ * request and is used by a single thread. */
+final class ContentMeter {
+	/** The stream that times the reads of the decoded content, by which a
+	 * {@link JsonStreamReader} finds the meter. */
+	static final class TimedInputStream extends FilterInputStream {
+		final ContentMeter meter;
+
+		TimedInputStream (InputStream in, ContentMeter meter) {
+			super (in);
+			this.meter = meter;
+		}
+
+		@Override
+		public int read () throws IOException {
+			long start = System.nanoTime ();
+			try {
+				return super.read ();
+			} finally {
+				this.meter.readNanos += System.nanoTime () - start;
+			}
+		}
+
+		@Override
+		public int read (byte[] buffer, int offset, int length) throws IOException {
+			long start = System.nanoTime ();
+			try {
+				return super.read (buffer, offset, length);
+			} finally {
+				this.meter.readNanos += System.nanoTime () - start;
+			}
+		}
+	}
+
+	private long bytes = 0;
+	private long readNanos = 0;
+	private long buildNanos = 0;
+	private int built = 0;
+	private long idleNanos = 0;
+
+	/** @param in a stream
+	 * @return the meter of the stream or null if it isn't metered */
+	static ContentMeter of (InputStream in) {
+		return in instanceof ContentMeter.TimedInputStream ? ((ContentMeter.TimedInputStream) in).meter : null;
+	}
+
+	/** @param raw the content as received
+	 * @return the content, counting the bytes read from it */
+	InputStream counting (InputStream raw) {
+		return new FilterInputStream (raw) {
+			@Override
+			public int read () throws IOException {
+				int b = super.read ();
+				if (b >= 0)
+					ContentMeter.this.bytes++;
+				return b;
+			}
+
+			@Override
+			public int read (byte[] buffer, int offset, int length) throws IOException {
+				int n = super.read (buffer, offset, length);
+				if (n > 0)
+					ContentMeter.this.bytes += n;
+				return n;
+			}
+		};
+	}
+
+	/** @param content the (inflated) content
+	 * @return the content, timing the reads from it */
+	InputStream timing (InputStream content) {
+		return new ContentMeter.TimedInputStream (content, this);
+	}
+
+	/** A model object was built
+	 * @param nanos time spent building it */
+	void addBuildNanos (long nanos) {
+		this.buildNanos += nanos;
+		this.built++;
+	}
+
+	/** @param nanos time spent outside the decoding (e.g. waiting on a
+	 * 	consumer of the decoded objects) */
+	void addIdleNanos (long nanos) {
+		this.idleNanos += nanos;
+	}
+
+	long getBytes () {
+		return this.bytes;
+	}
+
+	long getReadNanos () {
+		return this.readNanos;
+	}
+
+	long getBuildNanos () {
+		return this.buildNanos;
+	}
+
+	/** @return the number of model objects built */
+	int getBuiltCount () {
+		return this.built;
+	}
+
+	/** @param decodeNanos how long the whole decoding took
+	 * @return the part of the decoding spent parsing */
+	long getParseNanos (long decodeNanos) {
+		return Math.max (0, decodeNanos - this.readNanos - this.buildNanos - this.idleNanos);
+	}
+}
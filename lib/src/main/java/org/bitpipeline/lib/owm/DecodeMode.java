@@ -0,0 +1,44 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+/** When and how the nested sections of a {@link WeatherData} (main, wind,
+ * clouds, rain, snow, weather conditions, coordinates and station) are
+ * built. */
+public enum DecodeMode {
+	/** all the sections are built with the weather data (the default) */
+	EAGER,
+	/** the sections are skipped (not built) while the response is read: the
+	 * weather data keeps only their UTF-8 text and builds each section, from
+	 * its own text, the first time it's read, so the sections that are never
+	 * read cost nothing. The text is kept for the life of the weather data,
+	 * so a weather data takes about 1.1 to 1.35 times the memory it takes in
+	 * {@link #EAGER} (and more once its sections are read, as measured by the
+	 * CompactStatusBenchmark of the tests): prefer {@link #EAGER} or
+	 * {@link #COMPACT} for the weather data that are kept long, e.g. in a
+	 * response cache */
+	LAZY,
+	/** the weather statuses keep the values of their main, wind, clouds,
+	 * coordinates and station in their own fields, and share their weather
+	 * conditions; the section objects are built (as copies) each time
+	 * they're read. A status with plain clouds (a cloud cover) takes about 40%
+	 * less memory, but one whose clouds are a list of layers (as the airport
+	 * stations report them) keeps that list and saves only about 5% (as
+	 * measured by the CompactStatusBenchmark of the tests). Meant to keep many
+	 * statuses in memory, the other weather data are decoded as in
+	 * {@link #EAGER} */
+	COMPACT
+}
@@ -0,0 +1,498 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** A cache of OWM responses kept on disk, so that a restarted JVM can answer
+ * the queries it already made without going to the OWM server.
+ * <p>
+ * The cache stores the content of the responses (the JSON as received,
+ * deflated) in append-only segment files in its directory. Each record is
+ * <pre>
+ *   int    magic
+ *   long   expiration (milliseconds since the epoch)
+ *   short  key length, followed by the key (the query sub URL) in UTF-8
+ *   int    content length, followed by the deflated content
+ *   int    CRC-32 of all the above
+ * </pre>
+ * When it's opened the cache scans the segments to rebuild an in-memory
+ * index of the fresh records (a record overrides the older ones with the same
+ * key); a torn record at the end of a segment, left by a crash, is cut off.
+ * Once the active segment is full a new one is started and when the segments
+ * take more than <code>maxBytes</code> the oldest one is deleted.
+ * <p>
+ * Like {@link ResponseCache} each {@link EndpointFamily} has its own time to
+ * live. Lookups and writes can be done concurrently. */
+public class DiskResponseCache implements Closeable {
+	static private final int MAGIC = 0x4F574D31; // "OWM1"
+	static private final String SEGMENT_PREFIX = "owm-";
+	static private final String SEGMENT_SUFFIX = ".seg";
+	/* magic, expiration and key length */
+	static private final int HEADER_SIZE = 4 + 8 + 2;
+
+	static public final long DEFAULT_SEGMENT_BYTES = 4L * 1024 * 1024;
+	static public final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	static private final class Segment {
+		final long id;
+		final File file;
+		final FileChannel channel;
+		volatile long size;
+
+		Segment (long id, File file, FileChannel channel, long size) {
+			this.id = id;
+			this.file = file;
+			this.channel = channel;
+			this.size = size;
+		}
+	}
+
+	static private final class Location {
+		final Segment segment;
+		final long offset;
+		final int length;
+		final long expiresAt;
+
+		Location (Segment segment, long offset, int length, long expiresAt) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final File directory;
+	private final long segmentBytes;
+	private final long maxBytes;
+	private final LongSupplier clock;
+	private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<String, Location> ();
+	/* a lock rather than a monitor: the segments are written holding it and a
+	 * virtual thread blocked in a monitor pins its carrier thread */
+	private final ReentrantLock lock = new ReentrantLock ();
+	/* guarded by lock */
+	private final Map<EndpointFamily, Long> timeToLive = new EnumMap<EndpointFamily, Long> (EndpointFamily.class);
+	private final Deque<Segment> segments = new ArrayDeque<Segment> ();
+	private long totalBytes = 0;
+	private boolean closed = false;
+
+	private final LongAdder hits = new LongAdder ();
+	private final LongAdder misses = new LongAdder ();
+	private final LongAdder evictions = new LongAdder ();
+	private final LongAdder expirations = new LongAdder ();
+	private final LongAdder writeFailures = new LongAdder ();
+
+	/** Open (or create) a disk cache with segments of 4MB and at most 64MB.
+	 * @param directory the directory of the segment files
+	 * @throws IOException if the directory can't be created or read */
+	public DiskResponseCache (File directory) throws IOException {
+		this (directory, DiskResponseCache.DEFAULT_SEGMENT_BYTES, DiskResponseCache.DEFAULT_MAX_BYTES);
+	}
+
+	/** Open (or create) a disk cache.
+	 * @param directory the directory of the segment files
+	 * @param segmentBytes the size at which a segment is closed and a new one started
+	 * @param maxBytes the size of all the segments above which the oldest is deleted
+	 * @throws IOException if the directory can't be created or read */
+	public DiskResponseCache (File directory, long segmentBytes, long maxBytes) throws IOException {
+		this (directory, segmentBytes, maxBytes, System::currentTimeMillis);
+	}
+
+	DiskResponseCache (File directory, long segmentBytes, long maxBytes, LongSupplier clock) throws IOException {
+		if (segmentBytes <= 0 || maxBytes < segmentBytes)
+			throw new IllegalArgumentException ("The segments must have a positive size not larger than the cache.");
+		if (!directory.isDirectory () && !directory.mkdirs ())
+			throw new IOException ("Unable to create the cache directory " + directory);
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBytes = maxBytes;
+		this.clock = clock;
+		setTimeToLive (EndpointFamily.WEATHER, 10, TimeUnit.MINUTES);
+		setTimeToLive (EndpointFamily.FIND, 10, TimeUnit.MINUTES);
+		setTimeToLive (EndpointFamily.FORECAST, 1, TimeUnit.HOURS);
+		setTimeToLive (EndpointFamily.HISTORY, 6, TimeUnit.HOURS);
+		load ();
+	}
+
+	/** @param family the endpoint family
+	 * @param duration how long responses of the family are kept; zero disables
+	 * 	caching of the family
+	 * @param unit the unit of the duration
+	 * @return this cache */
+	public DiskResponseCache setTimeToLive (EndpointFamily family, long duration, TimeUnit unit) {
+		if (duration < 0)
+			throw new IllegalArgumentException ("The time to live can't be negative.");
+		this.lock.lock ();
+		try {
+			this.timeToLive.put (family, Long.valueOf (unit.toMillis (duration)));
+		} finally {
+			this.lock.unlock ();
+		}
+		return this;
+	}
+
+	public long getTimeToLive (EndpointFamily family, TimeUnit unit) {
+		this.lock.lock ();
+		try {
+			return unit.convert (this.timeToLive.get (family).longValue (), TimeUnit.MILLISECONDS);
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	public File getDirectory () {
+		return this.directory;
+	}
+
+	/** @return the number of indexed responses (fresh or expired) */
+	public int size () {
+		return this.index.size ();
+	}
+
+	/** @return the size of all the segment files */
+	public long getDiskSize () {
+		this.lock.lock ();
+		try {
+			return this.totalBytes;
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	public CacheStats getStats () {
+		return new CacheStats (this.hits.sum (), this.misses.sum (), this.evictions.sum (), this.expirations.sum ());
+	}
+
+	/** @return the number of responses that couldn't be written to disk */
+	public long getWriteFailureCount () {
+		return this.writeFailures.sum ();
+	}
+
+	/** Close the segment files. Lookups on a closed cache are misses and
+	 * writes are ignored. */
+	@Override
+	public void close () throws IOException {
+		this.lock.lock ();
+		try {
+			if (this.closed)
+				return;
+			this.closed = true;
+			this.index.clear ();
+			IOException failure = null;
+			for (Segment segment : this.segments) {
+				try {
+					segment.channel.close ();
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+			this.segments.clear ();
+			if (failure != null)
+				throw failure;
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/** @param key the query
+	 * @return true if responses to the query are cached */
+	boolean isCaching (String key) {
+		this.lock.lock ();
+		try {
+			return !this.closed && this.timeToLive.get (EndpointFamily.of (key)).longValue () > 0;
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/** @param key the query
+	 * @return the content of the fresh response cached for the query or null */
+	byte[] get (String key) {
+		Location location = this.index.get (key);
+		if (location == null) {
+			this.misses.increment ();
+			OwmEvents.cache (OwmEvents.DISK_CACHE, key, OwmEvents.MISS, 0);
+			return null;
+		}
+		if (this.clock.getAsLong () >= location.expiresAt) {
+			this.index.remove (key, location);
+			this.expirations.increment ();
+			this.misses.increment ();
+			OwmEvents.cache (OwmEvents.DISK_CACHE, key, OwmEvents.EXPIRED, 0);
+			return null;
+		}
+		try {
+			ByteBuffer deflated = ByteBuffer.allocate (location.length);
+			if (!DiskResponseCache.readFully (location.segment.channel, deflated, location.offset))
+				throw new IOException ("Truncated record");
+			byte[] content = DiskResponseCache.inflate (deflated.array ());
+			this.hits.increment ();
+			OwmEvents.cache (OwmEvents.DISK_CACHE, key, OwmEvents.HIT, content.length);
+			return content;
+		} catch (IOException | DataFormatException e) {
+			/* the segment was deleted (or damaged) under our feet */
+			this.index.remove (key, location);
+			this.misses.increment ();
+			OwmEvents.cache (OwmEvents.DISK_CACHE, key, OwmEvents.MISS, 0);
+			return null;
+		}
+	}
+
+	/** Store the content of a response. Failures to write are counted but
+	 * don't fail the query that got the response.
+	 * @param key the query
+	 * @param content the content of the response to the query */
+	void put (String key, byte[] content) {
+		byte[] keyBytes = key.getBytes (StandardCharsets.UTF_8);
+		if (keyBytes.length > 0xFFFF)
+			return;
+		byte[] deflated = DiskResponseCache.deflate (content);
+		this.lock.lock ();
+		try {
+			if (this.closed)
+				return;
+			long ttl = this.timeToLive.get (EndpointFamily.of (key)).longValue ();
+			if (ttl == 0)
+				return;
+			long expiresAt = this.clock.getAsLong () + ttl;
+			try {
+				byte[] record = DiskResponseCache.record (expiresAt, keyBytes, deflated);
+				Segment active = this.segments.peekLast ();
+				if (active == null || (active.size > 0 && active.size + record.length > this.segmentBytes))
+					active = roll ();
+				long position = active.size;
+				ByteBuffer buffer = ByteBuffer.wrap (record);
+				while (buffer.hasRemaining ())
+					active.channel.write (buffer, position + buffer.position ());
+				active.size += record.length;
+				this.totalBytes += record.length;
+				long contentOffset = position + DiskResponseCache.HEADER_SIZE + keyBytes.length + 4;
+				this.index.put (key, new Location (active, contentOffset, deflated.length, expiresAt));
+				trim ();
+			} catch (IOException e) {
+				this.writeFailures.increment ();
+			}
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/* guarded by lock */
+	private Segment roll () throws IOException {
+		Segment last = this.segments.peekLast ();
+		long id = last == null ? 1 : last.id + 1;
+		Segment segment = open (id, new File (this.directory, DiskResponseCache.segmentName (id)));
+		this.segments.addLast (segment);
+		return segment;
+	}
+
+	/* guarded by lock */
+	private void trim () {
+		while (this.totalBytes > this.maxBytes && this.segments.size () > 1) {
+			Segment oldest = this.segments.removeFirst ();
+			this.totalBytes -= oldest.size;
+			for (Map.Entry<String, Location> entry : this.index.entrySet ()) {
+				if (entry.getValue ().segment == oldest && this.index.remove (entry.getKey (), entry.getValue ())) {
+					this.evictions.increment ();
+					OwmEvents.cache (OwmEvents.DISK_CACHE, entry.getKey (), OwmEvents.EVICTION, 0);
+				}
+			}
+			try {
+				oldest.channel.close ();
+			} catch (IOException e) {
+				/* it's going away anyway */
+			}
+			oldest.file.delete ();
+		}
+	}
+
+	private void load () throws IOException {
+		this.lock.lock ();
+		try {
+			loadSegments ();
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/* guarded by lock */
+	private void loadSegments () throws IOException {
+		File[] files = this.directory.listFiles ();
+		List<Long> ids = new ArrayList<Long> ();
+		if (files != null) {
+			for (File file : files) {
+				long id = DiskResponseCache.segmentId (file.getName ());
+				if (id > 0)
+					ids.add (Long.valueOf (id));
+			}
+		}
+		Collections.sort (ids);
+		for (Long id : ids) {
+			Segment segment = open (id.longValue (), new File (this.directory, DiskResponseCache.segmentName (id.longValue ())));
+			this.segments.addLast (segment);
+			scan (segment);
+			this.totalBytes += segment.size;
+		}
+		trim ();
+	}
+
+	/** Index the fresh records of a segment and cut off a torn tail. */
+	private void scan (Segment segment) throws IOException {
+		long now = this.clock.getAsLong ();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate (DiskResponseCache.HEADER_SIZE);
+		while (position < segment.size) {
+			header.clear ();
+			if (!DiskResponseCache.readFully (segment.channel, header, position))
+				break;
+			if (header.getInt () != DiskResponseCache.MAGIC)
+				break;
+			long expiresAt = header.getLong ();
+			int keyLength = header.getShort () & 0xFFFF;
+			long bodyPosition = position + DiskResponseCache.HEADER_SIZE;
+			ByteBuffer keyAndLength = ByteBuffer.allocate (keyLength + 4);
+			if (!DiskResponseCache.readFully (segment.channel, keyAndLength, bodyPosition))
+				break;
+			int length = keyAndLength.getInt (keyLength);
+			if (length < 0 || bodyPosition + keyLength + 4 + length + 4 > segment.size)
+				break;
+			ByteBuffer contentAndCrc = ByteBuffer.allocate (length + 4);
+			if (!DiskResponseCache.readFully (segment.channel, contentAndCrc, bodyPosition + keyLength + 4))
+				break;
+			CRC32 crc = new CRC32 ();
+			crc.update (header.array ());
+			crc.update (keyAndLength.array ());
+			crc.update (contentAndCrc.array (), 0, length);
+			if ((int) crc.getValue () != contentAndCrc.getInt (length))
+				break;
+
+			String key = new String (keyAndLength.array (), 0, keyLength, StandardCharsets.UTF_8);
+			if (expiresAt > now)
+				this.index.put (key, new Location (segment, bodyPosition + keyLength + 4, length, expiresAt));
+			else
+				this.index.remove (key);
+			position = bodyPosition + keyLength + 4 + length + 4;
+		}
+		if (position < segment.size) {
+			segment.channel.truncate (position);
+			segment.size = position;
+		}
+	}
+
+	static private Segment open (long id, File file) throws IOException {
+		FileChannel channel = FileChannel.open (file.toPath (),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		return new Segment (id, file, channel, channel.size ());
+	}
+
+	static private String segmentName (long id) {
+		return String.format ("%s%016d%s", DiskResponseCache.SEGMENT_PREFIX, Long.valueOf (id), DiskResponseCache.SEGMENT_SUFFIX);
+	}
+
+	/** @return the id of a segment file or -1 if it isn't a segment file */
+	static private long segmentId (String name) {
+		if (!name.startsWith (DiskResponseCache.SEGMENT_PREFIX) || !name.endsWith (DiskResponseCache.SEGMENT_SUFFIX))
+			return -1;
+		try {
+			return Long.parseLong (name.substring (DiskResponseCache.SEGMENT_PREFIX.length (),
+					name.length () - DiskResponseCache.SEGMENT_SUFFIX.length ()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	static private byte[] record (long expiresAt, byte[] key, byte[] deflated) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream (DiskResponseCache.HEADER_SIZE + key.length + deflated.length + 8);
+		DataOutputStream out = new DataOutputStream (bytes);
+		out.writeInt (DiskResponseCache.MAGIC);
+		out.writeLong (expiresAt);
+		out.writeShort (key.length);
+		out.write (key);
+		out.writeInt (deflated.length);
+		out.write (deflated);
+		CRC32 crc = new CRC32 ();
+		crc.update (bytes.toByteArray ());
+		out.writeInt ((int) crc.getValue ());
+		out.flush ();
+		return bytes.toByteArray ();
+	}
+
+	static private boolean readFully (FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining ()) {
+			if (channel.read (buffer, position + buffer.position ()) < 0)
+				return false;
+		}
+		buffer.flip ();
+		return true;
+	}
+
+	static private byte[] deflate (byte[] content) {
+		Deflater deflater = new Deflater (Deflater.BEST_SPEED);
+		try {
+			deflater.setInput (content);
+			deflater.finish ();
+			ByteArrayOutputStream out = new ByteArrayOutputStream (Math.max (64, content.length / 4));
+			byte[] buffer = new byte[8 * 1024];
+			while (!deflater.finished ())
+				out.write (buffer, 0, deflater.deflate (buffer));
+			return out.toByteArray ();
+		} finally {
+			deflater.end ();
+		}
+	}
+
+	static private byte[] inflate (byte[] deflated) throws DataFormatException {
+		Inflater inflater = new Inflater ();
+		try {
+			inflater.setInput (deflated);
+			ByteArrayOutputStream out = new ByteArrayOutputStream (deflated.length * 4);
+			byte[] buffer = new byte[8 * 1024];
+			while (!inflater.finished ()) {
+				int n = inflater.inflate (buffer);
+				if (n == 0 && (inflater.needsInput () || inflater.needsDictionary ()))
+					throw new DataFormatException ("Truncated deflated content");
+				out.write (buffer, 0, n);
+			}
+			return out.toByteArray ();
+		} finally {
+			inflater.end ();
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+/** The families of OWM endpoints queried by the client, named after the
+ * first segment of their sub URL. */
+public enum EndpointFamily {
+	/** current weather of a city or station (<code>weather/*</code>) */
+	WEATHER ("weather/"),
+	/** weather forecasts (<code>forecast/*</code>) */
+	FORECAST ("forecast/"),
+	/** weather history (<code>history/*</code>) */
+	HISTORY ("history/"),
+	/** searches of current weather by area or name (<code>find/*</code>) */
+	FIND ("find/");
+
+	private final String prefix;
+
+	private EndpointFamily (String prefix) {
+		this.prefix = prefix;
+	}
+
+	/** @param subUrl the sub URL of a query
+	 * @return the family of the endpoint of the query */
+	static public EndpointFamily of (String subUrl) {
+		for (EndpointFamily family : EndpointFamily.values ()) {
+			if (subUrl.startsWith (family.prefix))
+				return family;
+		}
+		throw new IllegalArgumentException ("Unknown OWM endpoint " + subUrl);
+	}
+}
@@ -22,12 +22,19 @@ import org.json.JSONObject;
 public class ForecastWeatherData extends LocalizedWeatherData {
 	static private final String DATETIME_KEY_NAME = "dt";
 
-	private long calcDateTime = Long.MIN_VALUE;
+	private final long calcDateTime;
 	
 	/**
 	 * @param json json container with the forecast data */
 	public ForecastWeatherData (JSONObject json) {
-		super (json);
+		this (json, DecodeMode.EAGER);
+	}
+
+	/**
+	 * @param json json container with the forecast data
+	 * @param mode when to decode the nested sections */
+	public ForecastWeatherData (JSONObject json, DecodeMode mode) {
+		super (json, mode);
 		this.calcDateTime = json.optLong (ForecastWeatherData.DATETIME_KEY_NAME, Long.MIN_VALUE);
 	}
 
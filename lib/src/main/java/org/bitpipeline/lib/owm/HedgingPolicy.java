@@ -0,0 +1,352 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONException;
+
+/** Hedges slow requests: if a request hasn't answered after a delay taken
+ * from the recent latencies of its {@link EndpointFamily} (the 95th
+ * percentile by default) a duplicate is sent, the first successful answer is
+ * used and the other request is aborted.
+ * <p>
+ * Hedges are limited by a budget, like the retries of {@link RetryPolicy}:
+ * each request adds <code>ratio</code> of a hedge (5% by default) up to a
+ * reserve and each hedge takes one, so hedging adds at most a few percent to
+ * the load of the OWM server. Until a family has enough samples the maximum
+ * delay is used. */
+public class HedgingPolicy {
+	/** One of the (possibly two) attempts of a request, which can be aborted */
+	static final class Attempt {
+		private volatile long sentAt = 0;
+		private volatile OwmTransport.Request request = null;
+		private volatile boolean aborted = false;
+
+		/** @param request the request sent by the attempt, once it's allowed
+		 * 	by the rate limiter */
+		void bind (OwmTransport.Request request) {
+			this.sentAt = System.nanoTime ();
+			this.request = request;
+			if (this.aborted)
+				request.abort ();
+		}
+
+		/** @return the nanoseconds since the request of the attempt was sent,
+		 * 	0 if it wasn't */
+		long elapsedNanos () {
+			return this.request != null ? System.nanoTime () - this.sentAt : 0;
+		}
+
+		void abort () {
+			this.aborted = true;
+			OwmTransport.Request bound = this.request;
+			if (bound != null)
+				bound.abort ();
+		}
+
+		boolean isAborted () {
+			return this.aborted;
+		}
+	}
+
+	/** A request that can be attempted more than once */
+	interface Call<T> {
+		T call (Attempt attempt) throws IOException, JSONException;
+	}
+
+	static private final class Outcome<T> {
+		final Attempt attempt;
+		final T result;
+		final Throwable failure;
+
+		Outcome (Attempt attempt, T result, Throwable failure) {
+			this.attempt = attempt;
+			this.result = result;
+			this.failure = failure;
+		}
+	}
+
+	/** The hedge of a request, run once by the executor or by the caller,
+	 * whichever claims it first */
+	static private final class Hedge<T> implements Runnable {
+		final Attempt attempt = new Attempt ();
+		final BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<Outcome<T>> ();
+		private final Call<T> call;
+		private final Attempt original;
+		private final AtomicBoolean claimed = new AtomicBoolean ();
+		/* guarded by this */
+		private boolean launched = false;
+		private boolean closed = false;
+
+		Hedge (Call<T> call, Attempt original) {
+			this.call = call;
+			this.original = original;
+		}
+
+		/** @param policy the policy whose budget pays for the hedge
+		 * @return whether the hedge can be launched, as the original attempt
+		 * 	is still running and the budget allows it */
+		synchronized boolean open (HedgingPolicy policy) {
+			if (this.closed || !policy.spendBudget ())
+				return false;
+			this.launched = true;
+			return true;
+		}
+
+		/** @return whether the hedge was launched before it was closed */
+		synchronized boolean close () {
+			boolean launched = this.launched && !this.closed;
+			this.closed = true;
+			return launched;
+		}
+
+		/** @return whether the hedge wasn't claimed yet, and now won't run */
+		boolean claim () {
+			return this.claimed.compareAndSet (false, true);
+		}
+
+		@Override
+		public void run () {
+			if (!claim ())
+				return;
+			Outcome<T> outcome = HedgingPolicy.run (this.call, this.attempt);
+			this.outcomes.add (outcome);
+			/* the original is no longer needed */
+			if (outcome.failure == null)
+				this.original.abort ();
+		}
+	}
+
+	/** The thread that sends the hedges when their delay expires, created on
+	 * first use */
+	static private final class Timer {
+		static final ScheduledExecutorService INSTANCE;
+
+		static {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor (1, runnable -> {
+				Thread thread = new Thread (runnable, "owm-hedging-timer");
+				thread.setDaemon (true);
+				return thread;
+			});
+			timer.setRemoveOnCancelPolicy (true);
+			INSTANCE = timer;
+		}
+	}
+
+	static private final int MIN_SAMPLES = 20;
+	static private final long HISTOGRAM_HALF_LIFE = 1000;
+
+	private final Map<EndpointFamily, LatencyHistogram> latencies = new EnumMap<EndpointFamily, LatencyHistogram> (EndpointFamily.class);
+	private volatile double percentile = 0.95;
+	private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos (10);
+	private volatile long maxDelayNanos = TimeUnit.SECONDS.toNanos (1);
+	private final Object budgetLock = new Object ();
+	/* guarded by budgetLock */
+	private double budgetRatio = 0.05;
+	private double budgetReserve = 10;
+	private double budget = 10;
+
+	private final LongAdder hedges = new LongAdder ();
+	private final LongAdder hedgeWins = new LongAdder ();
+	private final LongAdder budgetExhausted = new LongAdder ();
+
+	public HedgingPolicy () {
+		for (EndpointFamily family : EndpointFamily.values ())
+			this.latencies.put (family, new LatencyHistogram (HedgingPolicy.HISTOGRAM_HALF_LIFE));
+	}
+
+	/** @param percentile the percentile of the latencies after which a
+	 * 	request is hedged, in ]0, 1[ (0.95 by default)
+	 * @return this policy */
+	public HedgingPolicy setPercentile (double percentile) {
+		if (!(percentile > 0 && percentile < 1))
+			throw new IllegalArgumentException ("The percentile must be in ]0, 1[.");
+		this.percentile = percentile;
+		return this;
+	}
+
+	public double getPercentile () {
+		return this.percentile;
+	}
+
+	/** @param minDelay the shortest delay before hedging (10ms by default)
+	 * @param maxDelay the longest delay before hedging, also used until there
+	 * 	are enough latencies (1s by default)
+	 * @param unit the unit of the delays
+	 * @return this policy */
+	public HedgingPolicy setDelayBounds (long minDelay, long maxDelay, TimeUnit unit) {
+		if (minDelay < 0 || maxDelay < minDelay)
+			throw new IllegalArgumentException ("The delays must be positive and the minimum not above the maximum.");
+		this.minDelayNanos = unit.toNanos (minDelay);
+		this.maxDelayNanos = unit.toNanos (maxDelay);
+		return this;
+	}
+
+	/** @param ratio the hedges allowed per request (0.05 by default)
+	 * @param reserve the hedges that can be saved for a burst of slow
+	 * 	requests (10 by default), which is also the initial budget
+	 * @return this policy */
+	public HedgingPolicy setBudget (double ratio, int reserve) {
+		if (!(ratio >= 0) || reserve < 0)
+			throw new IllegalArgumentException ("The budget can't be negative.");
+		synchronized (this.budgetLock) {
+			this.budgetRatio = ratio;
+			this.budgetReserve = reserve;
+			this.budget = reserve;
+		}
+		return this;
+	}
+
+	/** @param family an endpoint family
+	 * @param unit the unit of the result
+	 * @return how long requests to the family wait before being hedged */
+	public long getHedgeDelay (EndpointFamily family, TimeUnit unit) {
+		return unit.convert (hedgeDelayNanos (family), TimeUnit.NANOSECONDS);
+	}
+
+	/** @return the number of hedges sent */
+	public long getHedgeCount () {
+		return this.hedges.sum ();
+	}
+
+	/** @return the number of hedges that answered before the original request */
+	public long getHedgeWinCount () {
+		return this.hedgeWins.sum ();
+	}
+
+	/** @return the number of slow requests not hedged because the budget was spent */
+	public long getBudgetExhaustedCount () {
+		return this.budgetExhausted.sum ();
+	}
+
+	/** Run a request, hedging it if it's slow. The original attempt runs on
+	 * the calling thread and only the hedge is sent to the executor, so a
+	 * caller that is itself a task of the executor never waits for a thread
+	 * of it: a hedge that hasn't started when it's needed is run by the
+	 * caller and one that's no longer needed is dropped.
+	 * @param family the family of the request
+	 * @param executor where the hedge is run
+	 * @param original the original attempt, to abort or time it
+	 * @param call the request
+	 * @return the result of the first successful attempt
+	 * @throws IOException if all the attempts failed with it (the failure of
+	 * 	the original attempt is thrown) or the wait was interrupted
+	 * @throws JSONException if all the attempts failed with it */
+	<T> T execute (EndpointFamily family, final Executor executor, final Attempt original, final Call<T> call) throws IOException, JSONException {
+		synchronized (this.budgetLock) {
+			this.budget = Math.min (this.budgetReserve, this.budget + this.budgetRatio);
+		}
+		long start = System.nanoTime ();
+		final Hedge<T> hedge = new Hedge<T> (call, original);
+		ScheduledFuture<?> timer = Timer.INSTANCE.schedule (() -> launch (executor, hedge),
+				hedgeDelayNanos (family), TimeUnit.NANOSECONDS);
+		Outcome<T> outcome = HedgingPolicy.run (call, original);
+		timer.cancel (false);
+		boolean hedged = hedge.close ();
+		try {
+			if (hedged && outcome.failure == null) {
+				/* drop the hedge if it hasn't started */
+				hedge.claim ();
+			} else if (hedged) {
+				/* the hedge is the last hope: wait for it, or run it if it's
+				 * still waiting for a thread */
+				Outcome<T> other = hedge.claim () ? HedgingPolicy.run (call, hedge.attempt) : hedge.outcomes.take ();
+				if (other.failure == null) {
+					outcome = other;
+					this.hedgeWins.increment ();
+				}
+			}
+			if (outcome.failure == null) {
+				this.latencies.get (family).record (System.nanoTime () - start);
+				return outcome.result;
+			}
+			return HedgingPolicy.rethrow (outcome.failure);
+		} catch (InterruptedException e) {
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ("Interrupted while waiting for a response");
+		} finally {
+			/* abort the hedge if it lost or is still running */
+			if (hedged && outcome.attempt != hedge.attempt)
+				hedge.attempt.abort ();
+		}
+	}
+
+	/* Send the hedge, if the original attempt is still running and the
+	 * budget allows it */
+	private <T> void launch (Executor executor, Hedge<T> hedge) {
+		if (!hedge.open (this))
+			return;
+		try {
+			executor.execute (hedge);
+			this.hedges.increment ();
+		} catch (RejectedExecutionException e) {
+			/* no room for a hedge, the original is all there is */
+			if (hedge.claim ())
+				hedge.outcomes.add (new Outcome<T> (hedge.attempt, null, e));
+		}
+	}
+
+	private long hedgeDelayNanos (EndpointFamily family) {
+		LatencyHistogram histogram = this.latencies.get (family);
+		if (histogram.getSampleCount () < HedgingPolicy.MIN_SAMPLES)
+			return this.maxDelayNanos;
+		long delay = histogram.getQuantile (this.percentile);
+		return Math.max (this.minDelayNanos, Math.min (this.maxDelayNanos, delay));
+	}
+
+	private boolean spendBudget () {
+		synchronized (this.budgetLock) {
+			if (this.budget < 1) {
+				this.budgetExhausted.increment ();
+				return false;
+			}
+			this.budget -= 1;
+			return true;
+		}
+	}
+
+	static private <T> Outcome<T> run (Call<T> call, Attempt attempt) {
+		try {
+			return new Outcome<T> (attempt, call.call (attempt), null);
+		} catch (Throwable t) {
+			return new Outcome<T> (attempt, null, t);
+		}
+	}
+
+	static private <T> T rethrow (Throwable failure) throws IOException, JSONException {
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof JSONException)
+			throw (JSONException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		throw (Error) failure;
+	}
+}
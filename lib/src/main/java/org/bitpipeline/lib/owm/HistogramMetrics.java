@@ -0,0 +1,203 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** {@link OwmMetrics} kept in memory: a latency histogram per endpoint
+ * family and phase, and per family the bytes received, the responses by
+ * status code and the requests in flight.
+ * <p>
+ * The responses that report their compute time (<code>calctime</code>) are
+ * also split in server time and overhead (the rest of their latency: the
+ * network, the queues and the decoding), so a slow OWM server can be told
+ * from a slow network or a slow client.
+ * <p>
+ * Recording is lock-free, so the metrics can stay on in production and be
+ * shared by several clients. The histograms keep every sample unless a half
+ * life is given, in which case they follow the recent latencies. */
+public class HistogramMetrics implements OwmMetrics {
+	static private final int STATUS_CODES = 600;
+
+	static private final class Family {
+		final Map<OwmMetrics.Phase, LatencyHistogram> phases = new EnumMap<OwmMetrics.Phase, LatencyHistogram> (OwmMetrics.Phase.class);
+		final AtomicLongArray statusCodes = new AtomicLongArray (HistogramMetrics.STATUS_CODES);
+		final LongAdder failures = new LongAdder ();
+		final LongAdder requests = new LongAdder ();
+		final LongAdder bytes = new LongAdder ();
+		final AtomicInteger inFlight = new AtomicInteger ();
+		final LatencyHistogram serverTime;
+		final LatencyHistogram latency;
+		final LatencyHistogram overhead;
+		final LongAdder serverNanos = new LongAdder ();
+		final LongAdder latencyNanos = new LongAdder ();
+
+		Family (long halfLife) {
+			for (OwmMetrics.Phase phase : OwmMetrics.Phase.values ())
+				this.phases.put (phase, new LatencyHistogram (halfLife));
+			this.serverTime = new LatencyHistogram (halfLife);
+			this.latency = new LatencyHistogram (halfLife);
+			this.overhead = new LatencyHistogram (halfLife);
+		}
+	}
+
+	private final Map<EndpointFamily, Family> families = new EnumMap<EndpointFamily, Family> (EndpointFamily.class);
+
+	/** Create metrics that keep every sample */
+	public HistogramMetrics () {
+		this (0);
+	}
+
+	/** @param halfLife the number of samples of a histogram after which its
+	 * 	counts are halved or 0 to keep every sample */
+	public HistogramMetrics (long halfLife) {
+		if (halfLife < 0)
+			throw new IllegalArgumentException ("The half life can't be negative.");
+		for (EndpointFamily family : EndpointFamily.values ())
+			this.families.put (family, new Family (halfLife));
+	}
+
+	@Override
+	public void requestStarted (EndpointFamily family) {
+		this.families.get (family).inFlight.incrementAndGet ();
+	}
+
+	@Override
+	public void requestCompleted (EndpointFamily family, int statusCode, long bytesReceived) {
+		Family metrics = this.families.get (family);
+		metrics.inFlight.decrementAndGet ();
+		metrics.requests.increment ();
+		metrics.bytes.add (bytesReceived);
+		if (statusCode >= 0 && statusCode < HistogramMetrics.STATUS_CODES)
+			metrics.statusCodes.incrementAndGet (statusCode);
+		else
+			metrics.failures.increment ();
+	}
+
+	@Override
+	public void recordPhase (EndpointFamily family, OwmMetrics.Phase phase, long nanos) {
+		this.families.get (family).phases.get (phase).record (nanos);
+	}
+
+	@Override
+	public void recordServerTime (EndpointFamily family, long serverNanos, long latencyNanos) {
+		Family metrics = this.families.get (family);
+		metrics.serverTime.record (serverNanos);
+		metrics.latency.record (latencyNanos);
+		metrics.overhead.record (Math.max (0, latencyNanos - serverNanos));
+		metrics.serverNanos.add (serverNanos);
+		metrics.latencyNanos.add (latencyNanos);
+	}
+
+	/** @param family an endpoint family
+	 * @param phase a phase of the requests
+	 * @param quantile the quantile in [0, 1] (e.g. 0.99 for the 99th percentile)
+	 * @param unit the unit of the result
+	 * @return an upper bound (precise to about 19%) of the duration of the
+	 * 	phase at the quantile or -1 if the phase wasn't measured yet */
+	public long getQuantile (EndpointFamily family, OwmMetrics.Phase phase, double quantile, TimeUnit unit) {
+		return HistogramMetrics.quantile (this.families.get (family).phases.get (phase), quantile, unit);
+	}
+
+	/** @param family an endpoint family
+	 * @param quantile the quantile in [0, 1]
+	 * @param unit the unit of the result
+	 * @return the compute time reported by the server at the quantile or -1
+	 * 	if no response of the family reported it */
+	public long getServerTimeQuantile (EndpointFamily family, double quantile, TimeUnit unit) {
+		return HistogramMetrics.quantile (this.families.get (family).serverTime, quantile, unit);
+	}
+
+	/** @param family an endpoint family
+	 * @param quantile the quantile in [0, 1]
+	 * @param unit the unit of the result
+	 * @return the latency at the quantile of the requests whose responses
+	 * 	reported their compute time or -1 if there were none */
+	public long getCorrelatedLatencyQuantile (EndpointFamily family, double quantile, TimeUnit unit) {
+		return HistogramMetrics.quantile (this.families.get (family).latency, quantile, unit);
+	}
+
+	/** @param family an endpoint family
+	 * @param quantile the quantile in [0, 1]
+	 * @param unit the unit of the result
+	 * @return the latency not spent computing on the server (network, queues
+	 * 	and decoding) at the quantile or -1 if no response reported its compute
+	 * 	time */
+	public long getOverheadQuantile (EndpointFamily family, double quantile, TimeUnit unit) {
+		return HistogramMetrics.quantile (this.families.get (family).overhead, quantile, unit);
+	}
+
+	/** @return the number of responses of the family that reported their
+	 * 	compute time */
+	public long getServerTimeCount (EndpointFamily family) {
+		return this.families.get (family).serverTime.getSampleCount ();
+	}
+
+	/** @return the share of the latency of the family spent computing on the
+	 * 	server, over the responses that reported it (NaN if there were none) */
+	public double getServerTimeShare (EndpointFamily family) {
+		Family metrics = this.families.get (family);
+		long latency = metrics.latencyNanos.sum ();
+		return latency > 0 ? (double) metrics.serverNanos.sum () / latency : Double.NaN;
+	}
+
+	/** @return the number of times the phase was measured */
+	public long getSampleCount (EndpointFamily family, OwmMetrics.Phase phase) {
+		return this.families.get (family).phases.get (phase).getSampleCount ();
+	}
+
+	/** @return the number of completed requests of the family */
+	public long getRequestCount (EndpointFamily family) {
+		return this.families.get (family).requests.sum ();
+	}
+
+	/** @return the number of requests of the family being sent or read */
+	public int getInFlightCount (EndpointFamily family) {
+		return this.families.get (family).inFlight.get ();
+	}
+
+	/** @return the number of content bytes received for the family, as sent
+	 * 	(i.e. compressed) */
+	public long getBytesReceived (EndpointFamily family) {
+		return this.families.get (family).bytes.sum ();
+	}
+
+	/** @param family an endpoint family
+	 * @param statusCode a HTTP status code
+	 * @return the number of responses of the family with the status */
+	public long getStatusCount (EndpointFamily family, int statusCode) {
+		if (statusCode < 0 || statusCode >= HistogramMetrics.STATUS_CODES)
+			return 0;
+		return this.families.get (family).statusCodes.get (statusCode);
+	}
+
+	/** @return the number of requests of the family that got no response */
+	public long getFailureCount (EndpointFamily family) {
+		return this.families.get (family).failures.sum ();
+	}
+
+	static private long quantile (LatencyHistogram histogram, double quantile, TimeUnit unit) {
+		if (!(quantile >= 0 && quantile <= 1))
+			throw new IllegalArgumentException ("The quantile must be in [0, 1].");
+		long nanos = histogram.getQuantile (quantile);
+		return nanos < 0 ? -1 : unit.convert (nanos, TimeUnit.NANOSECONDS);
+	}
+}
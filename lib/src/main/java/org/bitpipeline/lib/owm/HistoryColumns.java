@@ -0,0 +1,235 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+
+/** The values of a weather history as columns: one primitive array per value,
+ * in the order of the history, so that scanning a value over a long history
+ * reads contiguous memory instead of following a reference per element.
+ * <p>
+ * A value a history element doesn't have is <code>Float.NaN</code> (or
+ * <code>Integer.MIN_VALUE</code>), as returned by the getters of
+ * {@link AbstractWeatherData}. The columns are immutable. */
+public final class HistoryColumns {
+	static final HistoryColumns EMPTY = new HistoryColumns.Builder ().build ();
+
+	/** Appends the values of history elements to growing columns */
+	static final class Builder {
+		static private final int INITIAL_CAPACITY = 64;
+
+		private int size = 0;
+		private long[] dateTime = new long[Builder.INITIAL_CAPACITY];
+		private float[] temp = new float[Builder.INITIAL_CAPACITY];
+		private float[] pressure = new float[Builder.INITIAL_CAPACITY];
+		private float[] humidity = new float[Builder.INITIAL_CAPACITY];
+		private float[] windSpeed = new float[Builder.INITIAL_CAPACITY];
+		private float[] windGust = new float[Builder.INITIAL_CAPACITY];
+		private int[] rain = new int[Builder.INITIAL_CAPACITY];
+		private int[] snow = new int[Builder.INITIAL_CAPACITY];
+		private int[] precipitation = new int[Builder.INITIAL_CAPACITY];
+
+		/** @param weatherData the next element of the history
+		 * @return this builder */
+		Builder add (AbstractWeatherData weatherData) {
+			int row = nextRow ();
+			this.dateTime[row] = weatherData.getDateTime ();
+			this.temp[row] = weatherData.getTemp ();
+			this.pressure[row] = weatherData.getPressure ();
+			this.humidity[row] = weatherData.getHumidity ();
+			this.windSpeed[row] = weatherData.getWindSpeed ();
+			this.windGust[row] = weatherData.getWindGust ();
+			this.rain[row] = weatherData.getRain ();
+			this.snow[row] = weatherData.getSnow ();
+			this.precipitation[row] = weatherData.getPrecipitation ();
+			return this;
+		}
+
+		/** Reads the values straight from the JSON element, as a
+		 * {@link WeatherData} built from it returns them.
+		 * @param json the next element of a history by tick
+		 * @return this builder */
+		Builder addTick (JSONObject json) {
+			int row = nextRow ();
+			this.dateTime[row] = json.optLong (AbstractWeatherData.JSON_DATE_TIME, Long.MIN_VALUE);
+			JSONObject main = json.optJSONObject (AbstractWeatherData.JSON_MAIN);
+			this.temp[row] = main != null ? (float) main.optDouble (AbstractWeatherData.Main.JSON_TEMP) : Float.NaN;
+			this.pressure[row] = main != null ? (float) main.optDouble (AbstractWeatherData.Main.JSON_PRESSURE) : Float.NaN;
+			this.humidity[row] = main != null ? (float) main.optDouble (AbstractWeatherData.Main.JSON_HUMIDITY) : Float.NaN;
+			JSONObject wind = json.optJSONObject (AbstractWeatherData.JSON_WIND);
+			this.windSpeed[row] = wind != null ? (float) wind.optDouble (AbstractWeatherData.Wind.JSON_SPEED) : Float.NaN;
+			this.windGust[row] = wind != null ? (float) wind.optDouble (AbstractWeatherData.Wind.JSON_GUST) : Float.NaN;
+			JSONObject rain = json.optJSONObject (AbstractWeatherData.JSON_RAIN);
+			JSONObject snow = json.optJSONObject (AbstractWeatherData.JSON_SNOW);
+			this.rain[row] = rain != null ? WeatherData.decodeRecentMeasure (rain) : Integer.MIN_VALUE;
+			this.snow[row] = snow != null ? WeatherData.decodeRecentMeasure (snow) : Integer.MIN_VALUE;
+			this.precipitation[row] = Builder.precipitation (rain != null, this.rain[row], snow != null, this.snow[row]);
+			return this;
+		}
+
+		/** Reads the values straight from the JSON element, as a
+		 * {@link SampledWeatherData} built from it returns them.
+		 * @param json the next element of a history by hour or day
+		 * @return this builder */
+		Builder addSample (JSONObject json) {
+			int row = nextRow ();
+			this.dateTime[row] = json.optLong (AbstractWeatherData.JSON_DATE_TIME, Long.MIN_VALUE);
+			this.temp[row] = SampledWeatherData.decodeMainValue (json, AbstractWeatherData.Main.JSON_TEMP);
+			this.pressure[row] = SampledWeatherData.decodeMainValue (json, AbstractWeatherData.Main.JSON_PRESSURE);
+			this.humidity[row] = SampledWeatherData.decodeMainValue (json, AbstractWeatherData.Main.JSON_HUMIDITY);
+			JSONObject wind = json.optJSONObject (AbstractWeatherData.JSON_WIND);
+			this.windSpeed[row] = wind != null ? SampledWeatherData.decodeValue (wind, AbstractWeatherData.Wind.JSON_SPEED) : Float.NaN;
+			this.windGust[row] = wind != null ? SampledWeatherData.decodeValue (wind, AbstractWeatherData.Wind.JSON_GUST) : Float.NaN;
+			JSONObject rain = json.optJSONObject (AbstractWeatherData.JSON_RAIN);
+			JSONObject snow = json.optJSONObject (AbstractWeatherData.JSON_SNOW);
+			this.rain[row] = rain != null ? SampledWeatherData.decodeRecentMeasure (rain) : Integer.MIN_VALUE;
+			this.snow[row] = snow != null ? SampledWeatherData.decodeRecentMeasure (snow) : Integer.MIN_VALUE;
+			int sampled = SampledWeatherData.decodePrecipitationValue (json);
+			this.precipitation[row] = sampled != Integer.MIN_VALUE ? sampled
+					: Builder.precipitation (rain != null, this.rain[row], snow != null, this.snow[row]);
+			return this;
+		}
+
+		/* the sum of the rain and snow, as AbstractWeatherData.getPrecipitation */
+		static private int precipitation (boolean hasRain, int rain, boolean hasSnow, int snow) {
+			int precipitation = Integer.MIN_VALUE;
+			if (hasRain)
+				precipitation = rain;
+			if (hasSnow)
+				precipitation = precipitation != Integer.MIN_VALUE ? precipitation + snow : snow;
+			return precipitation;
+		}
+
+		private int nextRow () {
+			if (this.size == this.dateTime.length)
+				resize (this.size * 2);
+			return this.size++;
+		}
+
+		private void resize (int capacity) {
+			this.dateTime = Arrays.copyOf (this.dateTime, capacity);
+			this.temp = Arrays.copyOf (this.temp, capacity);
+			this.pressure = Arrays.copyOf (this.pressure, capacity);
+			this.humidity = Arrays.copyOf (this.humidity, capacity);
+			this.windSpeed = Arrays.copyOf (this.windSpeed, capacity);
+			this.windGust = Arrays.copyOf (this.windGust, capacity);
+			this.rain = Arrays.copyOf (this.rain, capacity);
+			this.snow = Arrays.copyOf (this.snow, capacity);
+			this.precipitation = Arrays.copyOf (this.precipitation, capacity);
+		}
+
+		/** @return the columns of the elements added, which keep no spare
+		 * 	capacity; the builder can't be used afterwards */
+		HistoryColumns build () {
+			if (this.size != this.dateTime.length)
+				resize (this.size);
+			return new HistoryColumns (this);
+		}
+	}
+
+	private final int size;
+	private final long[] dateTime;
+	private final float[] temp;
+	private final float[] pressure;
+	private final float[] humidity;
+	private final float[] windSpeed;
+	private final float[] windGust;
+	private final int[] rain;
+	private final int[] snow;
+	private final int[] precipitation;
+
+	private HistoryColumns (HistoryColumns.Builder builder) {
+		this.size = builder.size;
+		this.dateTime = builder.dateTime;
+		this.temp = builder.temp;
+		this.pressure = builder.pressure;
+		this.humidity = builder.humidity;
+		this.windSpeed = builder.windSpeed;
+		this.windGust = builder.windGust;
+		this.rain = builder.rain;
+		this.snow = builder.snow;
+		this.precipitation = builder.precipitation;
+	}
+
+	/** @param history a weather history
+	 * @return the columns of the history */
+	static public HistoryColumns of (List<? extends AbstractWeatherData> history) {
+		if (history.isEmpty ())
+			return HistoryColumns.EMPTY;
+		HistoryColumns.Builder builder = new HistoryColumns.Builder ();
+		for (AbstractWeatherData weatherData : history)
+			builder.add (weatherData);
+		return builder.build ();
+	}
+
+	/** @return the number of rows (history elements) */
+	public int size () {
+		return this.size;
+	}
+
+	public boolean isEmpty () {
+		return this.size == 0;
+	}
+
+	/** @param row a row in [0, {@link #size()})
+	 * @return the date and time of the row, in seconds since the epoch */
+	public long getDateTime (int row) {
+		return this.dateTime[row];
+	}
+
+	/** @see AbstractWeatherData#getTemp() */
+	public float getTemp (int row) {
+		return this.temp[row];
+	}
+
+	/** @see AbstractWeatherData#getPressure() */
+	public float getPressure (int row) {
+		return this.pressure[row];
+	}
+
+	/** @see AbstractWeatherData#getHumidity() */
+	public float getHumidity (int row) {
+		return this.humidity[row];
+	}
+
+	/** @see AbstractWeatherData#getWindSpeed() */
+	public float getWindSpeed (int row) {
+		return this.windSpeed[row];
+	}
+
+	/** @see AbstractWeatherData#getWindGust() */
+	public float getWindGust (int row) {
+		return this.windGust[row];
+	}
+
+	/** @see AbstractWeatherData#getRain() */
+	public int getRain (int row) {
+		return this.rain[row];
+	}
+
+	/** @see AbstractWeatherData#getSnow() */
+	public int getSnow (int row) {
+		return this.snow[row];
+	}
+
+	/** @see AbstractWeatherData#getPrecipitation() */
+	public int getPrecipitation (int row) {
+		return this.precipitation[row];
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+
+/** The default {@link OwmTransport}, over an Apache <code>HttpClient</code>. */
+public class HttpClientTransport implements OwmTransport {
+	static private final class HttpClientResponse implements OwmTransport.Response {
+		private final HttpGet httpget;
+		private final HttpResponse response;
+		private final StatusLine statusLine;
+
+		HttpClientResponse (HttpGet httpget, HttpResponse response, StatusLine statusLine) {
+			this.httpget = httpget;
+			this.response = response;
+			this.statusLine = statusLine;
+		}
+
+		@Override
+		public int getStatusCode () {
+			return this.statusLine.getStatusCode ();
+		}
+
+		@Override
+		public String getStatusLine () {
+			return this.statusLine.toString ();
+		}
+
+		@Override
+		public String getHeader (String name) {
+			HttpEntity entity = this.response.getEntity ();
+			if (entity != null && HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase (name)) {
+				/* the entity may have its own idea of the encoding */
+				Header contentEncoding = entity.getContentEncoding ();
+				if (contentEncoding != null)
+					return contentEncoding.getValue ();
+			}
+			Header header = this.response.getFirstHeader (name);
+			return header != null ? header.getValue () : null;
+		}
+
+		@Override
+		public InputStream getContent () throws IOException {
+			HttpEntity entity = this.response.getEntity ();
+			return entity != null ? entity.getContent () : null;
+		}
+
+		@Override
+		public void close () throws IOException {
+			try {
+				EntityUtils.consume (this.response.getEntity ());
+			} catch (IOException | RuntimeException e) {
+				/* don't put a connection in an unknown state back in the pool */
+				this.httpget.abort ();
+				throw e;
+			}
+		}
+	}
+
+	private final HttpClient httpClient;
+	/* whether the client was created by this transport, and so is shut down with it */
+	private final boolean ownsClient;
+
+	/** @param httpClient the client that sends the requests, which is left
+	 * 	to its owner when the transport is shut down */
+	public HttpClientTransport (HttpClient httpClient) {
+		this (httpClient, false);
+	}
+
+	/** @param config the configuration of the pooled client that sends the
+	 * 	requests, which is shut down with the transport */
+	public HttpClientTransport (PooledTransportConfig config) {
+		this (config.createHttpClient (), true);
+	}
+
+	private HttpClientTransport (HttpClient httpClient, boolean ownsClient) {
+		if (httpClient == null)
+			throw new IllegalArgumentException ("Can't construct a HttpClientTransport with a null HttpClient");
+		this.httpClient = httpClient;
+		this.ownsClient = ownsClient;
+	}
+
+	public HttpClient getHttpClient () {
+		return this.httpClient;
+	}
+
+	@Override
+	public OwmTransport.Response execute (OwmTransport.Request request) throws IOException {
+		final HttpGet httpget = new HttpGet (request.getUrl ());
+		for (Map.Entry<String, String> header : request.getHeaders ().entrySet ())
+			httpget.addHeader (header.getKey (), header.getValue ());
+		request.setAbortHandler (httpget::abort);
+		HttpResponse response = this.httpClient.execute (httpget);
+		StatusLine statusLine = response.getStatusLine ();
+		if (statusLine == null) {
+			httpget.abort ();
+			throw new IOException ("Unable to get a response from OWM server");
+		}
+		return new HttpClientResponse (httpget, response, statusLine);
+	}
+
+	/** Shut down the connections of the client if the transport created it;
+	 * a client given to the transport is left to its owner. */
+	@Override
+	public void shutdown () {
+		if (this.ownsClient)
+			this.httpClient.getConnectionManager ().shutdown ();
+	}
+}
@@ -0,0 +1,652 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** A JSON reader that decodes UTF-8 bytes straight from an
+ * <code>InputStream</code>.
+ * <p>
+ * Unlike <code>new JSONObject (String)</code> it doesn't need the whole
+ * response as a <code>String</code>: the response envelope is decoded field by
+ * field and every element of its <code>list</code> array is handed to an
+ * {@link ElementFactory} as soon as it's complete, so only one element tree
+ * is alive at any time. The values it builds are the same the
+ * <code>org.json</code> parser builds (<code>Integer</code>, <code>Long</code>,
+ * <code>Double</code>, <code>String</code>, <code>Boolean</code> and
+ * <code>JSONObject.NULL</code>). */
+final class JsonStreamReader {
+	static private final String JSON_LIST = "list";
+
+	/** Builds the model object of a <code>list</code> element. */
+	interface ElementFactory<T> {
+		/** @param envelope the envelope fields decoded so far
+		 * @param element the JSON element to decode
+		 * @return the model object; <code>null</code> if the envelope doesn't
+		 * 	yet have the information needed to decode the element, in which case
+		 * 	the element is kept and the method is called again with the complete
+		 * 	envelope (and if it returns null again the element is dropped). */
+		T create (JSONObject envelope, JSONObject element);
+	}
+
+	/** A decoded response: every field but the <code>list</code> and the model
+	 * objects built from the list elements. */
+	static final class Envelope<T> {
+		final JSONObject json;
+		final List<T> list;
+
+		Envelope (JSONObject json, List<T> list) {
+			this.json = json;
+			this.list = list;
+		}
+	}
+
+	/** A JSON object whose members named in a set, when they're objects or
+	 * arrays, aren't built as they're read but kept as the UTF-8 text they
+	 * were read from. Such a member is built when it's first read (through any
+	 * accessor), while the weather data decoded in {@link DecodeMode#LAZY}
+	 * keep its text instead of the (many times larger) object tree. The
+	 * <code>keys</code>, <code>length</code> and <code>toString</code> of the
+	 * object only cover the members already built. Like a
+	 * <code>JSONObject</code>, it's not thread safe. */
+	static final class SourcedObject extends JSONObject {
+		/* the text of the members not built yet */
+		private Map<String, byte[]> deferred = null;
+
+		void defer (String name, byte[] source) {
+			if (this.deferred == null)
+				this.deferred = new HashMap<String, byte[]> (8);
+			this.deferred.put (name, source);
+		}
+
+		/** @param name the name of a member
+		 * @return the text of the member if it wasn't built yet, null otherwise */
+		byte[] getDeferredSource (String name) {
+			return this.deferred != null ? this.deferred.get (name) : null;
+		}
+
+		@Override
+		public boolean has (String key) {
+			return super.has (key) || this.deferred != null && this.deferred.containsKey (key);
+		}
+
+		@Override
+		public Object opt (String key) {
+			byte[] source = this.deferred != null ? this.deferred.remove (key) : null;
+			if (source != null) {
+				try {
+					put (key, JsonStreamReader.parseSource (source, 0, source.length));
+				} catch (JSONException e) {
+					throw new IllegalStateException ("The member " + key + " can't be kept.", e);
+				}
+			}
+			return super.opt (key);
+		}
+	}
+
+	private final InputStream in;
+	/* measures the building of the model objects, if the stream is metered */
+	private final ContentMeter meter;
+	/* the names of the members kept as text by the objects of the list (or
+	 * the single object), null if they build every member */
+	private final Set<String> deferred;
+	/* the source of the value being read, while keeping it: the bytes from
+	 * sourceStart in the buffer follow the sourceLength bytes in source */
+	private boolean capturing = false;
+	private byte[] source = null;
+	private int sourceLength = 0;
+	private int sourceStart = 0;
+	private final byte[] buffer = new byte[8 * 1024];
+	private int position = 0;
+	private int limit = 0;
+	private char[] chars = new char[128];
+
+	JsonStreamReader (InputStream in) {
+		this (in, null);
+	}
+
+	/** @param in the stream with the UTF-8 encoded content
+	 * @param deferred the names of the members the objects of the list (or
+	 * 	the single object) keep as text, as {@link SourcedObject}s; null to
+	 * 	build every member */
+	JsonStreamReader (InputStream in, Set<String> deferred) {
+		this.in = in;
+		this.meter = ContentMeter.of (in);
+		this.deferred = deferred;
+	}
+
+	/** @param json a JSON object
+	 * @param name the name of a member
+	 * @return the UTF-8 text of the member if it's an object or an array (the
+	 * 	one it was read from if it wasn't built yet), null otherwise */
+	static byte[] sourceOf (JSONObject json, String name) {
+		if (json instanceof JsonStreamReader.SourcedObject) {
+			byte[] source = ((JsonStreamReader.SourcedObject) json).getDeferredSource (name);
+			if (source != null)
+				return source;
+		}
+		Object value = json.opt (name);
+		if (value instanceof JSONObject || value instanceof JSONArray)
+			return value.toString ().getBytes (StandardCharsets.UTF_8);
+		return null;
+	}
+
+	/** @param source the UTF-8 text of JSON values, e.g. as returned by
+	 * 	{@link #sourceOf(JSONObject, String)}
+	 * @param offset the start of a value in the text
+	 * @param length the length of the value
+	 * @return the value */
+	static Object parseSource (byte[] source, int offset, int length) {
+		try {
+			return new JsonStreamReader (new ByteArrayInputStream (source, offset, length)).readValue ();
+		} catch (IOException | JSONException e) {
+			throw new IllegalStateException ("The source of a JSON value that was read can't be read again.", e);
+		}
+	}
+
+	/** Read a single JSON object from a stream
+	 * @param in the stream with the UTF-8 encoded object
+	 * @return the object read
+	 * @throws IOException if the stream can't be read
+	 * @throws JSONException if the content isn't a JSON object */
+	static JSONObject readObject (InputStream in) throws IOException, JSONException {
+		return new JsonStreamReader (in).readObject ();
+	}
+
+	/** Read a single JSON object from a stream and build its model object
+	 * @param in the stream with the UTF-8 encoded object
+	 * @param factory the factory of the model object
+	 * @return the model object
+	 * @throws IOException if the stream can't be read
+	 * @throws JSONException if the content isn't a JSON object */
+	static <T> T readObject (InputStream in, Function<JSONObject, T> factory) throws IOException, JSONException {
+		return JsonStreamReader.readObject (in, factory, null);
+	}
+
+	/** Read a single JSON object from a stream and build its model object
+	 * @param in the stream with the UTF-8 encoded object
+	 * @param factory the factory of the model object
+	 * @param deferred the names of the members the object keeps as text, as
+	 * 	a {@link SourcedObject}; null to build every member
+	 * @return the model object
+	 * @throws IOException if the stream can't be read
+	 * @throws JSONException if the content isn't a JSON object */
+	static <T> T readObject (InputStream in, Function<JSONObject, T> factory, Set<String> deferred) throws IOException, JSONException {
+		JsonStreamReader reader = new JsonStreamReader (in, deferred);
+		JSONObject json = deferred != null ? reader.readSourcedObject () : reader.readObject ();
+		if (reader.meter == null)
+			return factory.apply (json);
+		long start = System.nanoTime ();
+		try {
+			return factory.apply (json);
+		} finally {
+			reader.meter.addBuildNanos (System.nanoTime () - start);
+		}
+	}
+
+	/** Read a OWM response envelope, building each element of its list as
+	 * soon as it's read.
+	 * @param in the stream with the UTF-8 encoded response
+	 * @param factory the factory of the list elements
+	 * @return the envelope
+	 * @throws IOException if the stream can't be read
+	 * @throws JSONException if the content isn't a JSON object */
+	static <T> Envelope<T> readEnvelope (InputStream in, ElementFactory<T> factory) throws IOException, JSONException {
+		return new JsonStreamReader (in).readEnvelope (factory);
+	}
+
+	/** Read a OWM response envelope, building each element of its list as
+	 * soon as it's read.
+	 * @param in the stream with the UTF-8 encoded response
+	 * @param factory the factory of the list elements
+	 * @param deferred the names of the members the elements keep as text,
+	 * 	as {@link SourcedObject}s; null to build every member
+	 * @return the envelope
+	 * @throws IOException if the stream can't be read
+	 * @throws JSONException if the content isn't a JSON object */
+	static <T> Envelope<T> readEnvelope (InputStream in, ElementFactory<T> factory, Set<String> deferred) throws IOException, JSONException {
+		return new JsonStreamReader (in, deferred).readEnvelope (factory);
+	}
+
+	<T> Envelope<T> readEnvelope (ElementFactory<T> factory) throws IOException, JSONException {
+		List<T> list = new ArrayList<T> ();
+		JSONObject envelope = readEnvelope (factory, list::add);
+		return new Envelope<T> (envelope, list.isEmpty () ? Collections.<T>emptyList () : list);
+	}
+
+	/** Read a OWM response envelope, handing each element of its list to a
+	 * consumer as soon as it's built instead of collecting them.
+	 * @param in the stream with the UTF-8 encoded response
+	 * @param factory the factory of the list elements
+	 * @param sink the consumer of the elements, called in the order of the list
+	 * @return every field of the envelope but the list
+	 * @throws IOException if the stream can't be read
+	 * @throws JSONException if the content isn't a JSON object */
+	static <T> JSONObject readEnvelope (InputStream in, ElementFactory<T> factory, Consumer<? super T> sink) throws IOException, JSONException {
+		return new JsonStreamReader (in).readEnvelope (factory, sink);
+	}
+
+	/** Read a OWM response envelope, handing each element of its list to a
+	 * consumer as soon as it's built instead of collecting them.
+	 * @param in the stream with the UTF-8 encoded response
+	 * @param factory the factory of the list elements
+	 * @param sink the consumer of the elements, called in the order of the list
+	 * @param deferred the names of the members the elements keep as text,
+	 * 	as {@link SourcedObject}s; null to build every member
+	 * @return every field of the envelope but the list
+	 * @throws IOException if the stream can't be read
+	 * @throws JSONException if the content isn't a JSON object */
+	static <T> JSONObject readEnvelope (InputStream in, ElementFactory<T> factory, Consumer<? super T> sink, Set<String> deferred) throws IOException, JSONException {
+		return new JsonStreamReader (in, deferred).readEnvelope (factory, sink);
+	}
+
+	<T> JSONObject readEnvelope (ElementFactory<T> factory, Consumer<? super T> sink) throws IOException, JSONException {
+		JSONObject envelope = new JSONObject ();
+		List<JSONObject> deferred = null;
+		expect ('{');
+		if (peek () == '}') {
+			read ();
+			return envelope;
+		}
+		do {
+			String name = readName ();
+			if (JsonStreamReader.JSON_LIST.equals (name) && peek () == '[') {
+				read ();
+				if (peek () == ']') {
+					read ();
+					continue;
+				}
+				do {
+					Object value = this.deferred != null && peek () == '{' ? readSourcedObject () : readValue ();
+					if (!(value instanceof JSONObject))
+						continue;
+					JSONObject element = (JSONObject) value;
+					T item = deferred == null ? create (factory, envelope, element) : null;
+					if (item != null) {
+						accept (sink, item);
+					} else {
+						if (deferred == null)
+							deferred = new ArrayList<JSONObject> ();
+						deferred.add (element);
+					}
+				} while (nextOrEnd (']'));
+			} else {
+				envelope.put (name, readValue ());
+			}
+		} while (nextOrEnd ('}'));
+
+		if (deferred != null) {
+			for (JSONObject element : deferred) {
+				T item = create (factory, envelope, element);
+				if (item != null)
+					accept (sink, item);
+			}
+		}
+		return envelope;
+	}
+
+	private <T> T create (ElementFactory<T> factory, JSONObject envelope, JSONObject element) {
+		if (this.meter == null)
+			return factory.create (envelope, element);
+		long start = System.nanoTime ();
+		try {
+			return factory.create (envelope, element);
+		} finally {
+			this.meter.addBuildNanos (System.nanoTime () - start);
+		}
+	}
+
+	/* the time the sink takes (e.g. waiting for a subscriber) isn't decoding */
+	private <T> void accept (Consumer<? super T> sink, T item) {
+		if (this.meter == null) {
+			sink.accept (item);
+			return;
+		}
+		long start = System.nanoTime ();
+		try {
+			sink.accept (item);
+		} finally {
+			this.meter.addIdleNanos (System.nanoTime () - start);
+		}
+	}
+
+	JSONObject readObject () throws IOException, JSONException {
+		return readObject (new JSONObject ());
+	}
+
+	/* the deferred members that are objects or arrays are skipped, keeping
+	 * their text, instead of built */
+	private JSONObject readSourcedObject () throws IOException, JSONException {
+		JsonStreamReader.SourcedObject object = new JsonStreamReader.SourcedObject ();
+		expect ('{');
+		if (peek () == '}') {
+			read ();
+			return object;
+		}
+		do {
+			String name = readName ();
+			int c = peek ();
+			if ((c == '{' || c == '[') && this.deferred.contains (name))
+				object.defer (name, readSource ());
+			else
+				object.put (name, readValue ());
+		} while (nextOrEnd ('}'));
+		return object;
+	}
+
+	/* the bytes read are copied to the source as the buffer is refilled and
+	 * when the value ends */
+	private byte[] readSource () throws IOException, JSONException {
+		this.capturing = true;
+		this.sourceStart = this.position;
+		this.sourceLength = 0;
+		try {
+			skipStructure ();
+			keepSource (this.position);
+		} finally {
+			this.capturing = false;
+		}
+		return Arrays.copyOf (this.source, this.sourceLength);
+	}
+
+	/* skips the object or array that follows, only matching its brackets
+	 * outside of strings: its content is checked when it's built */
+	private void skipStructure () throws IOException, JSONException {
+		int depth = 0;
+		do {
+			switch (read ()) {
+				case -1:
+					throw new JSONException ("Unexpected end of JSON content");
+				case '{':
+				case '[':
+					depth++;
+					break;
+				case '}':
+				case ']':
+					depth--;
+					break;
+				case '"':
+					skipString ();
+					break;
+				default:
+					break;
+			}
+		} while (depth > 0);
+	}
+
+	private void skipString () throws IOException, JSONException {
+		while (true) {
+			int b = read ();
+			if (b == '"')
+				return;
+			if (b < 0)
+				throw new JSONException ("Unterminated string");
+			if (b == '\\')
+				read ();
+		}
+	}
+
+	/** @param end the end in the buffer of the bytes to keep */
+	private void keepSource (int end) {
+		int length = end - this.sourceStart;
+		if (this.source == null || this.sourceLength + length > this.source.length)
+			this.source = Arrays.copyOf (this.source != null ? this.source : new byte[0],
+					Math.max (this.sourceLength + length, Math.max (256, 2 * this.sourceLength)));
+		System.arraycopy (this.buffer, this.sourceStart, this.source, this.sourceLength, length);
+		this.sourceLength += length;
+		this.sourceStart = end;
+	}
+
+	private JSONObject readObject (JSONObject object) throws IOException, JSONException {
+		expect ('{');
+		if (peek () == '}') {
+			read ();
+			return object;
+		}
+		do {
+			String name = readName ();
+			object.put (name, readValue ());
+		} while (nextOrEnd ('}'));
+		return object;
+	}
+
+	private JSONArray readArray () throws IOException, JSONException {
+		expect ('[');
+		JSONArray array = new JSONArray ();
+		if (peek () == ']') {
+			read ();
+			return array;
+		}
+		do {
+			array.put (readValue ());
+		} while (nextOrEnd (']'));
+		return array;
+	}
+
+	private Object readValue () throws IOException, JSONException {
+		int c = peek ();
+		switch (c) {
+			case '{':
+				return readObject ();
+			case '[':
+				return readArray ();
+			case '"':
+				read ();
+				return readString ();
+			case 't':
+				readLiteral ("true");
+				return Boolean.TRUE;
+			case 'f':
+				readLiteral ("false");
+				return Boolean.FALSE;
+			case 'n':
+				readLiteral ("null");
+				return JSONObject.NULL;
+			case -1:
+				throw new JSONException ("Unexpected end of JSON content");
+			default:
+				return readNumber ();
+		}
+	}
+
+	private String readName () throws IOException, JSONException {
+		expect ('"');
+		String name = readString ();
+		expect (':');
+		return name;
+	}
+
+	/** @return true if a ',' follows (there's another member), false if the
+	 * 	closing character follows */
+	private boolean nextOrEnd (char closing) throws IOException, JSONException {
+		int c = peek ();
+		read ();
+		if (c == ',')
+			return true;
+		if (c == closing)
+			return false;
+		throw syntaxError ("Expected ',' or '" + closing + "'", c);
+	}
+
+	private String readString () throws IOException, JSONException {
+		int length = 0;
+		while (true) {
+			int b = read ();
+			if (b == '"')
+				break;
+			if (b < 0)
+				throw new JSONException ("Unterminated string");
+			if (length + 2 > this.chars.length) {
+				char[] grown = new char[this.chars.length * 2];
+				System.arraycopy (this.chars, 0, grown, 0, length);
+				this.chars = grown;
+			}
+			if (b == '\\') {
+				this.chars[length++] = readEscaped ();
+			} else if (b < 0x80) {
+				this.chars[length++] = (char) b;
+			} else if (b < 0xE0) {
+				this.chars[length++] = (char) ((b & 0x1F) << 6 | readContinuation ());
+			} else if (b < 0xF0) {
+				this.chars[length++] = (char) ((b & 0x0F) << 12 | readContinuation () << 6 | readContinuation ());
+			} else {
+				int codePoint = (b & 0x07) << 18 | readContinuation () << 12 | readContinuation () << 6 | readContinuation ();
+				this.chars[length++] = Character.highSurrogate (codePoint);
+				this.chars[length++] = Character.lowSurrogate (codePoint);
+			}
+		}
+		return new String (this.chars, 0, length);
+	}
+
+	private int readContinuation () throws IOException, JSONException {
+		int b = read ();
+		if ((b & 0xC0) != 0x80)
+			throw new JSONException ("Malformed UTF-8 sequence");
+		return b & 0x3F;
+	}
+
+	private char readEscaped () throws IOException, JSONException {
+		int c = read ();
+		switch (c) {
+			case 'b': return '\b';
+			case 't': return '\t';
+			case 'n': return '\n';
+			case 'f': return '\f';
+			case 'r': return '\r';
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit (read (), 16);
+					if (digit < 0)
+						throw new JSONException ("Malformed \\u escape");
+					value = value << 4 | digit;
+				}
+				return (char) value;
+			case '"':
+			case '\\':
+			case '/':
+				return (char) c;
+			default:
+				throw syntaxError ("Illegal escape", c);
+		}
+	}
+
+	private Object readNumber () throws IOException, JSONException {
+		int length = 0;
+		boolean integral = true;
+		while (true) {
+			int c = peekRaw ();
+			if (c >= '0' && c <= '9' || c == '-' || c == '+') {
+				// part of the number
+			} else if (c == '.' || c == 'e' || c == 'E') {
+				integral = false;
+			} else {
+				break;
+			}
+			if (length == this.chars.length) {
+				char[] grown = new char[this.chars.length * 2];
+				System.arraycopy (this.chars, 0, grown, 0, length);
+				this.chars = grown;
+			}
+			this.chars[length++] = (char) read ();
+		}
+		if (length == 0)
+			throw syntaxError ("Unexpected character", peekRaw ());
+		String number = new String (this.chars, 0, length);
+		try {
+			if (integral && length < 19) {
+				long value = Long.parseLong (number);
+				if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+					return Integer.valueOf ((int) value);
+				return Long.valueOf (value);
+			}
+			return Double.valueOf (number);
+		} catch (NumberFormatException e) {
+			throw new JSONException ("Malformed number " + number);
+		}
+	}
+
+	private void readLiteral (String literal) throws IOException, JSONException {
+		for (int i = 0; i < literal.length (); i++) {
+			if (read () != literal.charAt (i))
+				throw new JSONException ("Expected " + literal);
+		}
+	}
+
+	private void expect (char expected) throws IOException, JSONException {
+		int c = peek ();
+		if (c != expected)
+			throw syntaxError ("Expected '" + expected + "'", c);
+		read ();
+	}
+
+	private JSONException syntaxError (String message, int found) {
+		return new JSONException (found < 0
+				? message + " but the content ended"
+				: message + " but found '" + (char) found + "'");
+	}
+
+	/** @return the next non white space byte (without consuming it) or -1 at
+	 * 	the end of the stream */
+	private int peek () throws IOException {
+		while (true) {
+			int c = peekRaw ();
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+				return c;
+			this.position++;
+		}
+	}
+
+	private int peekRaw () throws IOException {
+		if (this.position == this.limit && !fill ())
+			return -1;
+		return this.buffer[this.position] & 0xFF;
+	}
+
+	private int read () throws IOException {
+		if (this.position == this.limit && !fill ())
+			return -1;
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	private boolean fill () throws IOException {
+		if (this.capturing)
+			keepSource (this.limit);
+		int n = this.in.read (this.buffer, 0, this.buffer.length);
+		if (n <= 0)
+			return false;
+		this.position = 0;
+		this.limit = n;
+		this.sourceStart = 0;
+		return true;
+	}
+}
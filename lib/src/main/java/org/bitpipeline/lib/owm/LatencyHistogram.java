@@ -0,0 +1,99 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A lock-free histogram of latencies with log-scale buckets (four per
+ * power of two, from 1&micro;s to about a minute), precise to about 19%.
+ * <p>
+ * It can optionally forget old samples: after every <code>halfLife</code>
+ * samples all the counts are halved, so the percentiles follow the recent
+ * latencies of the OWM server. */
+final class LatencyHistogram {
+	static private final int SUB_BUCKETS = 4;
+	static private final int BUCKETS = 27 * LatencyHistogram.SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray (LatencyHistogram.BUCKETS);
+	private final AtomicLong samples = new AtomicLong ();
+	private final long halfLife;
+
+	/** @param halfLife the number of samples after which the counts are
+	 * 	halved or 0 to keep all the samples */
+	LatencyHistogram (long halfLife) {
+		this.halfLife = halfLife;
+	}
+
+	/** @param nanos a latency */
+	void record (long nanos) {
+		this.counts.incrementAndGet (LatencyHistogram.bucket (nanos));
+		long n = this.samples.incrementAndGet ();
+		if (this.halfLife > 0 && n % this.halfLife == 0) {
+			for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+				long count;
+				do {
+					count = this.counts.get (i);
+				} while (!this.counts.compareAndSet (i, count, count / 2));
+			}
+		}
+	}
+
+	/** @return the number of samples recorded (including forgotten ones) */
+	long getSampleCount () {
+		return this.samples.get ();
+	}
+
+	/** @param quantile the quantile in [0, 1] (e.g. 0.99 for the 99th percentile)
+	 * @return an upper bound of the latency at the quantile, in nanoseconds,
+	 * 	or -1 if there are no samples */
+	long getQuantile (double quantile) {
+		long[] snapshot = new long[LatencyHistogram.BUCKETS];
+		long total = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			snapshot[i] = this.counts.get (i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return -1;
+		long rank = Math.max (1, (long) Math.ceil (quantile * total));
+		long seen = 0;
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank)
+				return LatencyHistogram.upperBound (i);
+		}
+		return LatencyHistogram.upperBound (LatencyHistogram.BUCKETS - 1);
+	}
+
+	static private int bucket (long nanos) {
+		long micros = Math.max (1, TimeUnit.NANOSECONDS.toMicros (nanos));
+		/* the power of two and the next two bits */
+		int power = 63 - Long.numberOfLeadingZeros (micros);
+		int sub = power >= 2
+				? (int) ((micros >>> (power - 2)) & 0x3)
+				: (int) ((micros << (2 - power)) & 0x3);
+		return Math.min (LatencyHistogram.BUCKETS - 1, power * LatencyHistogram.SUB_BUCKETS + sub);
+	}
+
+	static private long upperBound (int bucket) {
+		int power = bucket / LatencyHistogram.SUB_BUCKETS;
+		int sub = bucket % LatencyHistogram.SUB_BUCKETS;
+		double micros = Math.pow (2, power) * (1 + (sub + 1) / (double) LatencyHistogram.SUB_BUCKETS);
+		return TimeUnit.MICROSECONDS.toNanos ((long) Math.ceil (micros));
+	}
+}
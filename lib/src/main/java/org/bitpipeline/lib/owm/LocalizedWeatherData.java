@@ -19,21 +19,26 @@ import org.json.JSONObject;
 
 public class LocalizedWeatherData extends WeatherData {
 	private static final String JSON_URL      = "url";
-	private static final String JSON_COORD    = "coord";
+	static final String JSON_COORD    = "coord";
 	private static final String JSON_DISTANCE = "distance";
 
 	public static class GeoCoord {
 		private static final String JSON_LAT = "lat";
 		private static final String JSON_LON = "lon";
 
-		private float latitude;
-		private float longitude;
+		private final float latitude;
+		private final float longitude;
 
 		GeoCoord (JSONObject json) {
 			this.latitude = (float) json.optDouble (GeoCoord.JSON_LAT);
 			this.longitude = (float) json.optDouble (GeoCoord.JSON_LON);
 		}
 
+		GeoCoord (float latitude, float longitude) {
+			this.latitude = latitude;
+			this.longitude = longitude;
+		}
+
 		public boolean hasLatitude () {
 			return this.latitude != Float.NaN;
 		}
@@ -50,17 +55,36 @@ public class LocalizedWeatherData extends WeatherData {
 	}
 
 	private final String url;
-	private final GeoCoord coord ;
+	private volatile GeoCoord coord ;
 	private final float distance;
 
 	public LocalizedWeatherData (JSONObject json) {
-		super (json);
+		this (json, DecodeMode.EAGER);
+	}
+
+	/** @param json the JSON weather data
+	 * @param mode when to decode the nested sections */
+	public LocalizedWeatherData (JSONObject json, DecodeMode mode) {
+		this (json, mode, true);
+	}
+
+	/** @param json the JSON weather data
+	 * @param mode when to decode the nested sections
+	 * @param sections false when a subclass keeps the main, wind, clouds,
+	 * 	weather conditions and coordinates itself */
+	LocalizedWeatherData (JSONObject json, DecodeMode mode, boolean sections) {
+		super (json, mode, sections);
 
 		this.url = json.optString (LocalizedWeatherData.JSON_URL);
 		this.distance = (float) json.optDouble (LocalizedWeatherData.JSON_DISTANCE, Double.NaN);
 
+		if (mode != DecodeMode.LAZY && sections)
+			this.coord = LocalizedWeatherData.decodeCoord (json);
+	}
+
+	static GeoCoord decodeCoord (JSONObject json) {
 		JSONObject jsonCoord = json.optJSONObject (LocalizedWeatherData.JSON_COORD);
-		this.coord = jsonCoord != null ? new GeoCoord (jsonCoord) : null;
+		return jsonCoord != null ? new GeoCoord (jsonCoord) : null;
 	}
 
 	public boolean hasUrl () {
@@ -71,10 +95,16 @@ public class LocalizedWeatherData extends WeatherData {
 	}
 
 	public boolean hasCoord () {
-		return this.coord != null;
+		return getCoord () != null;
 	}
 	public GeoCoord getCoord () {
-		return this.coord;
+		GeoCoord decoded = this.coord;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_COORD);
+			if (element != null)
+				this.coord = decoded = LocalizedWeatherData.decodeCoord (element);
+		}
+		return decoded;
 	}
 
 	public boolean hasDistance () {
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.json.JSONException;
+
+/** Implements an asynchronous, non-blocking HTTP client to the Open Weather Map
+ * service. It offers the same queries as {@link OwmClient} but each one returns
+ * immediately with a <code>CompletableFuture</code> that is completed once the
+ * response arrives and is parsed.
+ * <p>
+ * Requests are run on a <code>java.net.http.HttpClient</code>, whose selector
+ * thread multiplexes all open connections; no thread is held while waiting
+ * for the OWM server. Futures fail with an <code>IOException</code> if
+ * there's some network error or the OWM server replies with a error and with
+ * a <code>JSONException</code> if the response can't be parsed (both wrapped
+ * in a <code>CompletionException</code>). */
+public class OwmAsyncClient {
+	private final String baseOwmUrl = OwmClient.DEFAULT_BASE_URL;
+	private volatile String owmAPPID = null;
+
+	private final HttpClient httpClient;
+
+	public OwmAsyncClient () {
+		this (HttpClient.newHttpClient ());
+	}
+
+	/** @param executor the executor where the responses are parsed and the
+	 * 	returned futures are completed */
+	public OwmAsyncClient (Executor executor) {
+		this (HttpClient.newBuilder ().executor (executor).build ());
+	}
+
+	public OwmAsyncClient (HttpClient httpClient) {
+		if (httpClient == null)
+			throw new IllegalArgumentException ("Can't construct a OwmAsyncClient with a null HttpClient");
+		this.httpClient = httpClient;
+	}
+
+	/**
+	 * @param appid The APP ID provided by OpenWeatherMap */
+	public void setAPPID (String appid) {
+		this.owmAPPID = appid;
+	}
+
+	/** Find current weather around a geographic point
+	 * @see OwmClient#currentWeatherAroundPoint(float, float, int) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherAroundPoint (float lat, float lon, int cnt) {
+		return doQuery (OwmSubUrls.currentWeatherAroundPoint (lat, lon, cnt), WeatherStatusResponse.DECODER);
+	}
+
+	/** Find current weather around a city coordinates
+	 * @see OwmClient#currentWeatherAtCity(float, float, int) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherAtCity (float lat, float lon, int cnt) {
+		return doQuery (OwmSubUrls.currentWeatherAtCity (lat, lon, cnt), WeatherStatusResponse.DECODER);
+	}
+
+	/** Find current weather within a bounding box
+	 * @see OwmClient#currentWeatherInBoundingBox(float, float, float, float) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherInBoundingBox (float northLat, float westLon, float southLat, float eastLon) {
+		return doQuery (OwmSubUrls.currentWeatherInBoundingBox (northLat, westLon, southLat, eastLon), WeatherStatusResponse.DECODER);
+	}
+
+	/** Find current city weather within a bounding box
+	 * @see OwmClient#currentWeatherAtCityBoundingBox(float, float, float, float) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherAtCityBoundingBox (float northLat, float westLon, float southLat, float eastLon) {
+		return doQuery (OwmSubUrls.currentWeatherAtCityBoundingBox (northLat, westLon, southLat, eastLon), WeatherStatusResponse.DECODER);
+	}
+
+	/** Find current weather within a circle
+	 * @see OwmClient#currentWeatherInCircle(float, float, float) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherInCircle (float lat, float lon, float radius) {
+		return doQuery (OwmSubUrls.currentWeatherInCircle (lat, lon, radius), WeatherStatusResponse.DECODER);
+	}
+
+	/** Find current city weather within a circle
+	 * @see OwmClient#currentWeatherAtCityCircle(float, float, float) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherAtCityCircle (float lat, float lon, float radius) {
+		return doQuery (OwmSubUrls.currentWeatherAtCityCircle (lat, lon, radius), WeatherStatusResponse.DECODER);
+	}
+
+	/** Find current city weather
+	 * @see OwmClient#currentWeatherAtCity(int) */
+	public CompletableFuture<StatusWeatherData> currentWeatherAtCity (int cityId) {
+		return doQuery (OwmSubUrls.currentWeatherAtCity (cityId), StatusWeatherData.DECODER);
+	}
+
+	/** Find current station weather report
+	 * @see OwmClient#currentWeatherAtStation(int) */
+	public CompletableFuture<StatusWeatherData> currentWeatherAtStation (int stationId) {
+		return doQuery (OwmSubUrls.currentWeatherAtStation (stationId), StatusWeatherData.DECODER);
+	}
+
+	/** Find current city weather
+	 * @see OwmClient#currentWeatherAtCity(String) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherAtCity (String cityName) {
+		return doQuery (OwmSubUrls.currentWeatherAtCity (cityName), WeatherStatusResponse.DECODER);
+	}
+
+	/** Find current city weather
+	 * @see OwmClient#currentWeatherAtCity(String, String) */
+	public CompletableFuture<WeatherStatusResponse> currentWeatherAtCity (String cityName, String countryCode) {
+		return doQuery (OwmSubUrls.currentWeatherAtCity (cityName, countryCode), WeatherStatusResponse.DECODER);
+	}
+
+	/** Get the weather forecast for a city
+	 * @see OwmClient#forecastWeatherAtCity(int) */
+	public CompletableFuture<WeatherForecastResponse> forecastWeatherAtCity (int cityId) {
+		return doQuery (OwmSubUrls.forecastWeatherAtCity (cityId), WeatherForecastResponse.DECODER);
+	}
+
+	/** Get the weather forecast for a city
+	 * @see OwmClient#forecastWeatherAtCity(String) */
+	public CompletableFuture<WeatherForecastResponse> forecastWeatherAtCity (String cityName) {
+		return doQuery (OwmSubUrls.forecastWeatherAtCity (cityName), WeatherForecastResponse.DECODER);
+	}
+
+	/** Get the weather history of a city.
+	 * @see OwmClient#historyWeatherAtCity(int, OwmClient.HistoryType) */
+	public CompletableFuture<WeatherHistoryCityResponse> historyWeatherAtCity (int cityId, OwmClient.HistoryType type) {
+		return doQuery (OwmSubUrls.historyWeatherAtCity (cityId, type), WeatherHistoryCityResponse.DECODER);
+	}
+
+	/** Get the weather history of a station.
+	 * @see OwmClient#historyWeatherAtStation(int, OwmClient.HistoryType) */
+	public CompletableFuture<WeatherHistoryStationResponse> historyWeatherAtStation (int stationId, OwmClient.HistoryType type) {
+		return doQuery (OwmSubUrls.historyWeatherAtStation (stationId, type), WeatherHistoryStationResponse.DECODER);
+	}
+
+	private <T> CompletableFuture<T> doQuery (String subUrl, ResponseDecoder<T> decoder) {
+		HttpRequest.Builder requestBuilder = HttpRequest.newBuilder (URI.create (this.baseOwmUrl + subUrl))
+				.header (ContentEncodings.ACCEPT_ENCODING_HEADER, ContentEncodings.ACCEPTED_ENCODINGS)
+				.GET ();
+		String appid = this.owmAPPID;
+		if (appid != null) {
+			requestBuilder.header (OwmClient.APPID_HEADER, appid);
+		}
+		return this.httpClient
+				.sendAsync (requestBuilder.build (), HttpResponse.BodyHandlers.ofByteArray ())
+				.thenApply (response -> OwmAsyncClient.decode (response, decoder));
+	}
+
+	static private <T> T decode (HttpResponse<byte[]> response, ResponseDecoder<T> decoder) {
+		int statusCode = response.statusCode ();
+		if (statusCode < 200 || statusCode >= 300) {
+			long retryAfter = OwmHttpStatusException.parseRetryAfter (
+					response.headers ().firstValue (OwmHttpStatusException.RETRY_AFTER_HEADER).orElse (null),
+					System.currentTimeMillis ());
+			throw new CompletionException (new OwmHttpStatusException (
+					String.format ("OWM server responded with status code %d", Integer.valueOf (statusCode)),
+					statusCode, retryAfter));
+		}
+		try {
+			String contentEncoding = response.headers ().firstValue (ContentEncodings.CONTENT_ENCODING_HEADER).orElse (null);
+			return decoder.decode (ContentEncodings.decode (new ByteArrayInputStream (response.body ()), contentEncoding));
+		} catch (IOException | JSONException e) {
+			throw new CompletionException (e);
+		}
+	}
+}
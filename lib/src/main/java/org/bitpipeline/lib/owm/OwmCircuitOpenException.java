@@ -0,0 +1,45 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+
+/** Thrown when a query isn't sent because the {@link CircuitBreaker} of its
+ * endpoint family is open. */
+public class OwmCircuitOpenException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final EndpointFamily family;
+	private final long retryAfterMillis;
+
+	/** @param family the endpoint family whose circuit is open
+	 * @param retryAfterMillis the time until the circuit is probed again */
+	public OwmCircuitOpenException (EndpointFamily family, long retryAfterMillis) {
+		super (String.format ("The circuit of the %s endpoints is open", family));
+		this.family = family;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public EndpointFamily getFamily () {
+		return this.family;
+	}
+
+	/** @return the time until the circuit is probed again (0 if it's being
+	 * 	probed) */
+	public long getRetryAfterMillis () {
+		return this.retryAfterMillis;
+	}
+}
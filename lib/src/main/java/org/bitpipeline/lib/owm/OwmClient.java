@@ -15,46 +15,138 @@
  ***************************************************************************/
 package org.bitpipeline.lib.owm;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.StringWriter;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.StatusLine;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 /** Implements a synchronous HTTP client to the Open Weather Map service described
  * in http://openweathermap.org/wiki/API/JSON_API
  * @author mtavares */
 public class OwmClient {
-	static private final String APPID_HEADER = "x-api-key";
+	static final String APPID_HEADER = "x-api-key";
+	static final String DEFAULT_BASE_URL = "http://api.openweathermap.org/data/2.1/";
+	/* appended to the sub URL of a history to keep its columns apart from
+	 * its responses in memory */
+	static private final String COLUMNS_KEY = "#columns";
 
 	static public enum HistoryType {
 		UNKNOWN,
-		TICK, HOUR, DAY 
+		TICK, HOUR, DAY;
+
+		static private final Map<String, HistoryType> BY_NAME = new HashMap<String, HistoryType> ();
+		static {
+			for (HistoryType type : HistoryType.values ()) {
+				HistoryType.BY_NAME.put (type.name (), type);
+				HistoryType.BY_NAME.put (type.name ().toLowerCase (Locale.ROOT), type);
+			}
+		}
+
+		/** @param name the name of a history type, in any case and possibly
+		 * 	surrounded by white space
+		 * @return the history type or {@link #UNKNOWN} if there is none with
+		 * 	that name */
+		static public HistoryType of (String name) {
+			HistoryType type = HistoryType.BY_NAME.get (name);
+			if (type == null)
+				type = HistoryType.BY_NAME.get (name.trim ().toUpperCase (Locale.ROOT));
+			return type != null ? type : HistoryType.UNKNOWN;
+		}
+	}
+
+	/** The pool of daemon threads used when no executor is configured,
+	 * created on first use */
+	static private final class SharedExecutor {
+		static final ExecutorService INSTANCE = Executors.newCachedThreadPool (new ThreadFactory () {
+			private final AtomicInteger count = new AtomicInteger ();
+
+			@Override
+			public Thread newThread (Runnable runnable) {
+				Thread thread = new Thread (runnable, "owm-client-worker-" + this.count.incrementAndGet ());
+				thread.setDaemon (true);
+				return thread;
+			}
+		});
 	}
 
-	private String baseOwmUrl = "http://api.openweathermap.org/data/2.1/";
-	private String owmAPPID = null;
+	private volatile String baseOwmUrl = OwmClient.DEFAULT_BASE_URL;
+	private volatile String owmAPPID = null;
 
-	private HttpClient httpClient;
+	private final OwmTransport transport;
+	private volatile ValidatorCache validatorCache = null;
+	private volatile SingleFlight singleFlight = null;
+	private volatile ResponseCache responseCache = null;
+	private volatile DiskResponseCache diskCache = null;
+	private volatile RateLimiter rateLimiter = null;
+	private volatile RateLimiter.Priority priority = RateLimiter.Priority.INTERACTIVE;
+	private volatile RetryPolicy retryPolicy = null;
+	private volatile HedgingPolicy hedgingPolicy = null;
+	private volatile Executor executor = null;
+	/* the executor the client created for itself, shut down with the client */
+	private volatile ExecutorService ownedExecutor = null;
+	private volatile CircuitBreaker circuitBreaker = null;
+	private volatile OwmMetrics metrics = OwmMetrics.NONE;
+	private volatile DecodeMode decodeMode = DecodeMode.EAGER;
 
+	/** Create a client over a pooled transport with the default
+	 * {@link PooledTransportConfig} */
 	public OwmClient () {
-		this.httpClient = new DefaultHttpClient ();
+		this (new PooledTransportConfig ());
 	}
 
+	/** Create a client over a pooled transport
+	 * @param transportConfig the configuration of the connection pool */
+	public OwmClient (PooledTransportConfig transportConfig) {
+		if (transportConfig == null)
+			throw new IllegalArgumentException ("Can't construct a OwmClient with a null transport configuration");
+		this.transport = new HttpClientTransport (transportConfig);
+	}
+
+	/** Create a client over a given <code>HttpClient</code>, which
+	 * {@link #shutdown()} leaves to its owner
+	 * @param httpClient the client that sends the requests */
 	public OwmClient (HttpClient httpClient) {
 		if (httpClient == null)
 			throw new IllegalArgumentException ("Can't construct a OwmClient with a null HttpClient");
-		this.httpClient = httpClient;
+		this.transport = new HttpClientTransport (httpClient);
+	}
+
+	/** Create a client over any transport, e.g. a {@link ReplayTransport}
+	 * @param transport the transport that sends the requests */
+	public OwmClient (OwmTransport transport) {
+		if (transport == null)
+			throw new IllegalArgumentException ("Can't construct a OwmClient with a null transport");
+		this.transport = transport;
+	}
+
+	/** Release the connections held by this client and the threads of the
+	 * executor it was created with, if any (see
+	 * {@link VirtualThreads#newClient(int)}). A <code>HttpClient</code> given
+	 * to the constructor and an executor set with
+	 * {@link #setExecutor(Executor)} are left to their owners. The client
+	 * can't be used after it's shut down. */
+	public void shutdown () {
+		try {
+			this.transport.shutdown ();
+		} finally {
+			ExecutorService owned = this.ownedExecutor;
+			if (owned != null)
+				owned.shutdown ();
+		}
 	}
 
 	/**
@@ -63,6 +155,202 @@ public class OwmClient {
 		this.owmAPPID = appid;
 	}
 
+	/** @param baseUrl the URL of the OWM API (ending with a slash), e.g. of a
+	 * 	mirror or a stub server */
+	public void setBaseUrl (String baseUrl) {
+		if (baseUrl == null || !baseUrl.endsWith ("/"))
+			throw new IllegalArgumentException ("The base URL must end with a slash.");
+		this.baseOwmUrl = baseUrl;
+	}
+
+	public String getBaseUrl () {
+		return this.baseOwmUrl;
+	}
+
+	/** Revalidate repeated queries with conditional requests.
+	 * <p>
+	 * The client remembers the <code>ETag</code> and
+	 * <code>Last-Modified</code> validators of the responses of the last
+	 * <code>maxQueries</code> distinct queries, together with the responses
+	 * parsed from them. When one of those queries is repeated it's sent with
+	 * <code>If-None-Match</code> / <code>If-Modified-Since</code> and, if the
+	 * server answers <code>304 Not Modified</code>, the previously parsed
+	 * response is returned without downloading or parsing it again.
+	 * @param maxQueries the number of queries to remember; zero disables the
+	 * 	revalidation (the default) */
+	public void setRevalidation (int maxQueries) {
+		if (maxQueries < 0)
+			throw new IllegalArgumentException ("The number of revalidated queries can't be negative.");
+		this.validatorCache = maxQueries > 0 ? new ValidatorCache (maxQueries) : null;
+	}
+
+	/** Coalesce concurrent identical queries.
+	 * <p>
+	 * When enabled, a query issued while an identical one (same sub URL) is
+	 * still in flight doesn't go to the network: it waits for the one in flight
+	 * and returns the same response object (or fails with the same exception).
+	 * The responses are immutable so they can be safely shared between the
+	 * calling threads.
+	 * @param coalesce true to coalesce identical queries (disabled by default) */
+	public void setRequestCoalescing (boolean coalesce) {
+		this.singleFlight = coalesce ? new SingleFlight () : null;
+	}
+
+	/** Serve repeated queries from an in-memory cache.
+	 * <p>
+	 * Fresh responses found in the cache are returned without going to the
+	 * network; the others are fetched and cached for the time to live of their
+	 * {@link EndpointFamily}. The responses are immutable so the same object is
+	 * returned to every caller.
+	 * @param cache the cache to use or null to disable caching (the default) */
+	public void setResponseCache (ResponseCache cache) {
+		this.responseCache = cache;
+	}
+
+	/** @return the response cache in use or null if caching is disabled */
+	public ResponseCache getResponseCache () {
+		return this.responseCache;
+	}
+
+	/** Keep the responses in a cache on disk.
+	 * <p>
+	 * Queries that miss the in-memory cache are looked up in the disk cache
+	 * before going to the network, and the content of the responses from the
+	 * network is written to it. As the disk cache survives restarts a new
+	 * client can answer the queries made by a previous one right away. The
+	 * client doesn't close the disk cache.
+	 * @param cache the disk cache to use or null to disable it (the default) */
+	public void setDiskCache (DiskResponseCache cache) {
+		this.diskCache = cache;
+	}
+
+	/** @return the disk cache in use or null if it's disabled */
+	public DiskResponseCache getDiskCache () {
+		return this.diskCache;
+	}
+
+	/** Keep the requests to the OWM server within the quotas of the APPID.
+	 * Only the requests that go to the network take a token (answers from the
+	 * caches don't). When the limiter refuses a request the query fails with
+	 * a {@link OwmRateLimitException}.
+	 * @param limiter the limiter (possibly shared with other clients using the
+	 * 	same APPID) or null to disable rate limiting (the default) */
+	public void setRateLimiter (RateLimiter limiter) {
+		this.rateLimiter = limiter;
+	}
+
+	public RateLimiter getRateLimiter () {
+		return this.rateLimiter;
+	}
+
+	/** @param priority the priority of the requests of this client in the
+	 * 	rate limiter ({@link RateLimiter.Priority#INTERACTIVE} by default) */
+	public void setPriority (RateLimiter.Priority priority) {
+		if (priority == null)
+			throw new IllegalArgumentException ("The priority can't be null.");
+		this.priority = priority;
+	}
+
+	public RateLimiter.Priority getPriority () {
+		return this.priority;
+	}
+
+	/** Retry requests that fail with a transient error (connection failures
+	 * and timeouts, <code>5xx</code> and <code>429</code> replies) with
+	 * exponential backoff and jitter. Identical coalesced queries share the
+	 * retries of the one in flight.
+	 * @param policy the retry policy (possibly shared with other clients) or
+	 * 	null to fail on the first error (the default) */
+	public void setRetryPolicy (RetryPolicy policy) {
+		this.retryPolicy = policy;
+	}
+
+	public RetryPolicy getRetryPolicy () {
+		return this.retryPolicy;
+	}
+
+	/** Hedge slow requests: a request that hasn't answered after a delay
+	 * learnt from the latencies of its endpoint family is sent again and the
+	 * first answer is used. The original attempt of a hedged request runs on
+	 * the calling thread and the hedge on the executor of the client.
+	 * @param policy the hedging policy or null to disable hedging (the default)
+	 * @see #setExecutor(Executor) */
+	public void setHedgingPolicy (HedgingPolicy policy) {
+		this.hedgingPolicy = policy;
+	}
+
+	public HedgingPolicy getHedgingPolicy () {
+		return this.hedgingPolicy;
+	}
+
+	/** @param executor the executor where the client runs requests in the
+	 * 	background (e.g. hedges) or null to use a shared pool of daemon threads
+	 * 	(the default). It can be bounded: the bulk queries also run on it and
+	 * 	a request never waits for one of its threads. */
+	public void setExecutor (Executor executor) {
+		this.executor = executor;
+	}
+
+	/** @param executor an executor created for this client, which is used as
+	 * 	with {@link #setExecutor(Executor)} and shut down with the client */
+	void setOwnedExecutor (ExecutorService executor) {
+		this.ownedExecutor = executor;
+		this.executor = executor;
+	}
+
+	/** Guard each endpoint family with a circuit breaker. While the circuit
+	 * of a family is open its queries fail fast with a
+	 * {@link OwmCircuitOpenException}, unless the response cache has an
+	 * (even expired) response to the query, which is returned instead.
+	 * @param breaker the circuit breaker or null to disable it (the default) */
+	public void setCircuitBreaker (CircuitBreaker breaker) {
+		this.circuitBreaker = breaker;
+	}
+
+	public CircuitBreaker getCircuitBreaker () {
+		return this.circuitBreaker;
+	}
+
+	/** Measure the requests sent to the network: the duration of each of
+	 * their {@link OwmMetrics.Phase phases}, the bytes received, the status
+	 * codes and the requests in flight, per endpoint family.
+	 * @param metrics the receiver of the measurements (e.g. a
+	 * 	{@link HistogramMetrics}) or null to measure nothing (the default) */
+	public void setMetrics (OwmMetrics metrics) {
+		this.metrics = metrics != null ? metrics : OwmMetrics.NONE;
+	}
+
+	public OwmMetrics getMetrics () {
+		return this.metrics;
+	}
+
+	/** How the nested sections of the weather data (main, wind, clouds,
+	 * rain, snow, weather conditions, coordinates and station) are built.
+	 * With {@link DecodeMode#LAZY} they're built when first read, so queries
+	 * that read a few values of many weather data don't pay for the sections
+	 * they never read, but each weather data keeps the text of its sections
+	 * and takes more memory than an eager one, which matters when
+	 * the responses are kept (e.g. in a response cache). With
+	 * {@link DecodeMode#COMPACT} the weather statuses keep the values of the
+	 * sections in their own fields, for clients that keep many of them. The
+	 * mode doesn't apply to the responses already cached.
+	 * @param mode the decode mode ({@link DecodeMode#EAGER} by default) */
+	public void setDecodeMode (DecodeMode mode) {
+		if (mode == null)
+			throw new IllegalArgumentException ("The decode mode can't be null.");
+		this.decodeMode = mode;
+	}
+
+	public DecodeMode getDecodeMode () {
+		return this.decodeMode;
+	}
+
+	/** @return the executor where the client runs requests in the background */
+	public Executor getExecutor () {
+		Executor configured = this.executor;
+		return configured != null ? configured : OwmClient.SharedExecutor.INSTANCE;
+	}
+
 	/** Find current weather around a geographic point
 	 * @param lat is the latitude of the geographic point of interest (North/South coordinate)
 	 * @param lon is the longitude of the geographic point of interest (East/West coordinate)
@@ -72,10 +360,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherAroundPoint (float lat, float lon, int cnt) throws IOException, JSONException { //, boolean cluster, OwmClient.Lang lang) {
-		String subUrl = String.format (Locale.ROOT, "find/station?lat=%f&lon=%f&cnt=%d&cluster=yes",
-				Float.valueOf (lat), Float.valueOf (lon), Integer.valueOf (cnt));
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherAroundPoint (lat, lon, cnt);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Find current weather around a city coordinates
@@ -87,10 +373,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherAtCity (float lat, float lon, int cnt) throws IOException, JSONException { //, boolean cluster, OwmClient.Lang lang) {
-		String subUrl = String.format (Locale.ROOT, "find/city?lat=%f&lon=%f&cnt=%d&cluster=yes",
-				Float.valueOf (lat), Float.valueOf (lon), Integer.valueOf (cnt));
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherAtCity (lat, lon, cnt);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Find current weather within a bounding box
@@ -102,11 +386,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherInBoundingBox (float northLat, float westLon, float southLat, float eastLon) throws IOException, JSONException { //, boolean cluster, OwmClient.Lang lang) {
-		String subUrl = String.format (Locale.ROOT, "find/station?bbox=%f,%f,%f,%f&cluster=yes",
-				Float.valueOf (northLat), Float.valueOf (westLon),
-				Float.valueOf (southLat), Float.valueOf (eastLon));
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherInBoundingBox (northLat, westLon, southLat, eastLon);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Find current city weather within a bounding box
@@ -118,11 +399,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherAtCityBoundingBox (float northLat, float westLon, float southLat, float eastLon) throws IOException, JSONException { //, boolean cluster, OwmClient.Lang lang) {
-		String subUrl = String.format (Locale.ROOT, "find/city?bbox=%f,%f,%f,%f&cluster=yes",
-				Float.valueOf (northLat), Float.valueOf (westLon),
-				Float.valueOf (southLat), Float.valueOf (eastLon));
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherAtCityBoundingBox (northLat, westLon, southLat, eastLon);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Find current weather within a circle
@@ -133,10 +411,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherInCircle (float lat, float lon, float radius) throws IOException, JSONException { //, boolean cluster, OwmClient.Lang lang) {
-		String subUrl = String.format (Locale.ROOT, "find/station?lat=%f&lon=%f&radius=%f&cluster=yes",
-				Float.valueOf (lat), Float.valueOf (lon), Float.valueOf (radius));
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherInCircle (lat, lon, radius);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Find current city weather within a circle
@@ -147,10 +423,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherAtCityCircle (float lat, float lon, float radius) throws IOException, JSONException {
-		String subUrl = String.format (Locale.ROOT, "find/city?lat=%f&lon=%f&radius=%f&cluster=yes",
-				Float.valueOf (lat), Float.valueOf (lon), Float.valueOf (radius));
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherAtCityCircle (lat, lon, radius);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Find current city weather
@@ -159,9 +433,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public StatusWeatherData currentWeatherAtCity (int cityId) throws IOException, JSONException {
-		String subUrl = String.format (Locale.ROOT, "weather/city/%d?type=json", Integer.valueOf (cityId));
-		JSONObject response = doQuery (subUrl);
-		return new StatusWeatherData (response);
+		String subUrl = OwmSubUrls.currentWeatherAtCity (cityId);
+		return doQuery (subUrl, StatusWeatherData.decoder (this.decodeMode));
 	}
 
 	/** Find current station weather report
@@ -170,9 +443,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public StatusWeatherData currentWeatherAtStation (int stationId) throws IOException, JSONException {
-		String subUrl = String.format (Locale.ROOT, "weather/station/%d?type=json", Integer.valueOf (stationId));
-		JSONObject response = doQuery (subUrl);
-		return new StatusWeatherData (response);
+		String subUrl = OwmSubUrls.currentWeatherAtStation (stationId);
+		return doQuery (subUrl, StatusWeatherData.decoder (this.decodeMode));
 	}
 
 	/** Find current city weather
@@ -181,9 +453,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherAtCity (String cityName) throws IOException, JSONException {
-		String subUrl = String.format (Locale.ROOT, "find/name?q=%s", cityName);
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherAtCity (cityName);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Find current city weather
@@ -193,9 +464,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherStatusResponse currentWeatherAtCity (String cityName, String countryCode) throws IOException, JSONException {
-		String subUrl = String.format (Locale.ROOT, "find/name?q=%s,%s", cityName, countryCode.toUpperCase ());
-		JSONObject response = doQuery (subUrl);
-		return new WeatherStatusResponse (response);
+		String subUrl = OwmSubUrls.currentWeatherAtCity (cityName, countryCode);
+		return doQuery (subUrl, WeatherStatusResponse.decoder (this.decodeMode));
 	}
 
 	/** Get the weather forecast for a city
@@ -204,9 +474,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherForecastResponse forecastWeatherAtCity (int cityId) throws JSONException, IOException {
-		String subUrl = String.format (Locale.ROOT, "forecast/city/%d?type=json&units=metric", cityId);
-		JSONObject response = doQuery (subUrl);
-		return new WeatherForecastResponse (response);
+		String subUrl = OwmSubUrls.forecastWeatherAtCity (cityId);
+		return doQuery (subUrl, WeatherForecastResponse.decoder (this.decodeMode));
 	}
 
 	/** Get the weather forecast for a city
@@ -215,9 +484,8 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherForecastResponse forecastWeatherAtCity (String cityName) throws JSONException, IOException {
-		String subUrl = String.format (Locale.ROOT, "forecast/city?q=%s&type=json&units=metric", cityName);
-		JSONObject response = doQuery (subUrl);
-		return new WeatherForecastResponse (response);
+		String subUrl = OwmSubUrls.forecastWeatherAtCity (cityName);
+		return doQuery (subUrl, WeatherForecastResponse.decoder (this.decodeMode));
 	}
 
 	/** Get the weather history of a city.
@@ -227,11 +495,22 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error. */
 	public WeatherHistoryCityResponse historyWeatherAtCity (int cityId, HistoryType type) throws JSONException, IOException {
-		if (type == HistoryType.UNKNOWN)
-			throw new IllegalArgumentException("Can't do a historic request for unknown type of history.");
-		String subUrl = String.format (Locale.ROOT, "history/city/%d?type=%s", cityId, type);
-		JSONObject response = doQuery (subUrl);
-		return new WeatherHistoryCityResponse (response);
+		String subUrl = OwmSubUrls.historyWeatherAtCity (cityId, type);
+		return doQuery (subUrl, WeatherHistoryCityResponse.decoder (this.decodeMode));
+	}
+
+	/** Get the values of the weather history of a city as columns, decoded
+	 * straight from the response without building its weather data. Meant to
+	 * scan a value over long histories; the columns are cached apart from the
+	 * responses of {@link #historyWeatherAtCity(int, HistoryType)}.
+	 * @param cityId is the OWM city ID
+	 * @param type is the history type (frequency) to use.
+	 * @return the columns of the history received
+	 * @throws JSONException if the response from the OWM server can't be parsed
+	 * @throws IOException if there's some network error or the OWM server replies with a error. */
+	public HistoryColumns historyColumnsAtCity (int cityId, HistoryType type) throws JSONException, IOException {
+		String subUrl = OwmSubUrls.historyWeatherAtCity (cityId, type);
+		return doQuery (subUrl, subUrl + OwmClient.COLUMNS_KEY, WeatherHistoryCityResponse.COLUMNAR_DECODER);
 	}
 
 	/** Get the weather history of a city.
@@ -241,57 +520,327 @@ public class OwmClient {
 	 * @throws JSONException if the response from the OWM server can't be parsed
 	 * @throws IOException if there's some network error or the OWM server replies with a error.*/
 	public WeatherHistoryStationResponse historyWeatherAtStation (int stationId, HistoryType type) throws JSONException, IOException {
-		if (type == HistoryType.UNKNOWN)
-			throw new IllegalArgumentException("Can't do a historic request for unknown type of history.");
-		String subUrl = String.format (Locale.ROOT, "history/station/%d?type=%s", stationId, type);
-		JSONObject response = doQuery (subUrl);
-		return new WeatherHistoryStationResponse (response);
-	}
-
-	private JSONObject doQuery (String subUrl) throws JSONException, IOException {
-		String responseBody = null;
-		HttpGet httpget = new HttpGet (this.baseOwmUrl + subUrl);
-		if (this.owmAPPID != null) {
-			httpget.addHeader (OwmClient.APPID_HEADER, this.owmAPPID);
+		String subUrl = OwmSubUrls.historyWeatherAtStation (stationId, type);
+		return doQuery (subUrl, WeatherHistoryStationResponse.decoder (this.decodeMode));
+	}
+
+	/** Get the values of the weather history of a station as columns.
+	 * @param stationId is the OWM station ID
+	 * @param type is the history type (frequency) to use.
+	 * @return the columns of the history received
+	 * @throws JSONException if the response from the OWM server can't be parsed
+	 * @throws IOException if there's some network error or the OWM server replies with a error.
+	 * @see #historyColumnsAtCity(int, HistoryType) */
+	public HistoryColumns historyColumnsAtStation (int stationId, HistoryType type) throws JSONException, IOException {
+		String subUrl = OwmSubUrls.historyWeatherAtStation (stationId, type);
+		return doQuery (subUrl, subUrl + OwmClient.COLUMNS_KEY, WeatherHistoryStationResponse.COLUMNAR_DECODER);
+	}
+
+	/** Stream the current weather around a geographic point.
+	 * @param lat is the latitude of the geographic point of interest (North/South coordinate)
+	 * @param lon is the longitude of the geographic point of interest (East/West coordinate)
+	 * @param cnt is the requested number of weather stations to retrieve
+	 * @return a publisher of the weather status of each station
+	 * @see #publishWeatherInCircle(float, float, float) */
+	public Flow.Publisher<StatusWeatherData> publishWeatherAroundPoint (float lat, float lon, int cnt) {
+		return publish (OwmSubUrls.currentWeatherAroundPoint (lat, lon, cnt));
+	}
+
+	/** Stream the current weather within a bounding box.
+	 * @param northLat is the latitude of the geographic top left point of the bounding box
+	 * @param westLon is the longitude of the geographic top left point of the bounding box
+	 * @param southLat is the latitude of the geographic bottom right point of the bounding box
+	 * @param eastLon is the longitude of the geographic bottom right point of the bounding box
+	 * @return a publisher of the weather status of each station
+	 * @see #publishWeatherInCircle(float, float, float) */
+	public Flow.Publisher<StatusWeatherData> publishWeatherInBoundingBox (float northLat, float westLon, float southLat, float eastLon) {
+		return publish (OwmSubUrls.currentWeatherInBoundingBox (northLat, westLon, southLat, eastLon));
+	}
+
+	/** Stream the current weather within a circle.
+	 * <p>
+	 * Unlike {@link #currentWeatherInCircle(float, float, float)} the stations
+	 * are handed to the subscriber as soon as each one is decoded from the
+	 * response, so it can process them while the rest of the response is still
+	 * being transferred. Every subscription sends its own query on the
+	 * executor of the client once the subscriber requests the first station.
+	 * The response is decoded only as fast as the subscriber requests stations
+	 * and cancelling the subscription aborts the query.
+	 * <p>
+	 * Streamed queries go through the rate limiter and the circuit breaker but
+	 * skip the caches, retries and hedging, as the subscriber may already have
+	 * received part of the response when it fails.
+	 * @param lat is the latitude of the center of the circle
+	 * @param lon is the longitude of the center of the circle
+	 * @param radius is the radius of the circle
+	 * @return a publisher of the weather status of each station
+	 * @see #setExecutor(Executor) */
+	public Flow.Publisher<StatusWeatherData> publishWeatherInCircle (float lat, float lon, float radius) {
+		return publish (OwmSubUrls.currentWeatherInCircle (lat, lon, radius));
+	}
+
+	private Flow.Publisher<StatusWeatherData> publish (final String subUrl) {
+		return new StatusPublisher (this::getExecutor, this.decodeMode, (decoder, attempt) -> stream (subUrl, decoder, attempt));
+	}
+
+	/** Find the current weather of many cities at once.
+	 * <p>
+	 * The cities are queried on the executor of the client by at most
+	 * <code>parallelism</code> concurrent requests, each taking the next city
+	 * as soon as it's done, so a slow city doesn't hold back the others. When
+	 * the deadline expires the responses received so far are returned and the
+	 * cities not yet answered are reported as timed out.
+	 * @param cityIds the IDs of the cities
+	 * @param parallelism the maximum number of concurrent requests
+	 * @param timeout the time allowed for the whole batch
+	 * @param unit the unit of the timeout
+	 * @return the response or failure of each city
+	 * @throws InterruptedIOException if interrupted while waiting for the batch
+	 * @see #setExecutor(Executor) */
+	public BulkResult<StatusWeatherData> currentWeatherAtCities (int[] cityIds, int parallelism, long timeout, TimeUnit unit) throws InterruptedIOException {
+		return BulkFetch.fetch (getExecutor (), cityIds, parallelism, timeout, unit, this::currentWeatherAtCity);
+	}
+
+	/** Find the current weather reported by many stations at once.
+	 * @param stationIds the IDs of the stations
+	 * @param parallelism the maximum number of concurrent requests
+	 * @param timeout the time allowed for the whole batch
+	 * @param unit the unit of the timeout
+	 * @return the response or failure of each station
+	 * @throws InterruptedIOException if interrupted while waiting for the batch
+	 * @see #currentWeatherAtCities(int[], int, long, TimeUnit) */
+	public BulkResult<StatusWeatherData> currentWeatherAtStations (int[] stationIds, int parallelism, long timeout, TimeUnit unit) throws InterruptedIOException {
+		return BulkFetch.fetch (getExecutor (), stationIds, parallelism, timeout, unit, this::currentWeatherAtStation);
+	}
+
+	/** Get the weather forecast of many cities at once.
+	 * @param cityIds the IDs of the cities
+	 * @param parallelism the maximum number of concurrent requests
+	 * @param timeout the time allowed for the whole batch
+	 * @param unit the unit of the timeout
+	 * @return the response or failure of each city
+	 * @throws InterruptedIOException if interrupted while waiting for the batch
+	 * @see #currentWeatherAtCities(int[], int, long, TimeUnit) */
+	public BulkResult<WeatherForecastResponse> forecastWeatherAtCities (int[] cityIds, int parallelism, long timeout, TimeUnit unit) throws InterruptedIOException {
+		return BulkFetch.fetch (getExecutor (), cityIds, parallelism, timeout, unit, this::forecastWeatherAtCity);
+	}
+
+	/** Get the weather history of many cities at once.
+	 * @param cityIds the IDs of the cities
+	 * @param type is the history type (frequency) to use.
+	 * @param parallelism the maximum number of concurrent requests
+	 * @param timeout the time allowed for the whole batch
+	 * @param unit the unit of the timeout
+	 * @return the response or failure of each city
+	 * @throws InterruptedIOException if interrupted while waiting for the batch
+	 * @see #currentWeatherAtCities(int[], int, long, TimeUnit) */
+	public BulkResult<WeatherHistoryCityResponse> historyWeatherAtCities (int[] cityIds, final HistoryType type, int parallelism, long timeout, TimeUnit unit) throws InterruptedIOException {
+		return BulkFetch.fetch (getExecutor (), cityIds, parallelism, timeout, unit, id -> historyWeatherAtCity (id, type));
+	}
+
+	private <T> T doQuery (String subUrl, ResponseDecoder<T> decoder) throws JSONException, IOException {
+		return doQuery (subUrl, subUrl, decoder);
+	}
+
+	/* the result is kept in memory (response cache, single flight and
+	 * validators) under the key, which differs from the sub URL when the
+	 * decoder doesn't decode a response of it */
+	@SuppressWarnings ("unchecked")
+	private <T> T doQuery (final String subUrl, final String key, final ResponseDecoder<T> decoder) throws JSONException, IOException {
+		ResponseCache cache = this.responseCache;
+		if (cache != null) {
+			Object cached = cache.get (key);
+			if (cached != null)
+				return (T) cached;
 		}
+		SingleFlight flights = this.singleFlight;
+		T result;
+		try {
+			if (flights != null)
+				result = flights.execute (key, () -> fetch (subUrl, key, decoder));
+			else
+				result = fetch (subUrl, key, decoder);
+		} catch (OwmCircuitOpenException e) {
+			Object stale = cache != null ? cache.getStale (key) : null;
+			if (stale == null)
+				throw e;
+			return (T) stale;
+		}
+		if (cache != null)
+			cache.put (key, result);
+		return result;
+	}
+
+	private <T> T fetch (String subUrl, String key, ResponseDecoder<T> decoder) throws JSONException, IOException {
+		DiskResponseCache disk = this.diskCache;
+		if (disk != null) {
+			byte[] content = disk.get (subUrl);
+			if (content != null)
+				return decoder.decode (new ByteArrayInputStream (content));
+			if (!disk.isCaching (subUrl))
+				disk = null;
+		}
+		RetryPolicy retries = this.retryPolicy;
+		if (retries == null)
+			return attempt (subUrl, key, decoder, disk);
+		retries.recordRequest ();
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return attempt (subUrl, key, decoder, disk);
+			} catch (IOException e) {
+				long delay = retries.retryDelay (attempt, e);
+				if (delay < 0)
+					throw e;
+				retries.sleep (delay);
+			}
+		}
+	}
+
+	private <T> T attempt (String subUrl, String key, ResponseDecoder<T> decoder, DiskResponseCache disk) throws JSONException, IOException {
+		CircuitBreaker breaker = this.circuitBreaker;
+		if (breaker == null)
+			return hedge (subUrl, key, decoder, disk, null);
+		EndpointFamily family = EndpointFamily.of (subUrl);
+		boolean probe = breaker.acquire (family);
+		/* timed from when its request is sent, so the wait for the rate
+		 * limiter isn't taken as a slow call */
+		HedgingPolicy.Attempt original = new HedgingPolicy.Attempt ();
+		Throwable failure = null;
+		try {
+			return hedge (subUrl, key, decoder, disk, original);
+		} catch (IOException | JSONException | RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			breaker.record (family, probe, original.elapsedNanos (), CircuitBreaker.isFailure (failure));
+		}
+	}
 
-		HttpResponse response = this.httpClient.execute (httpget);
+	private <T> T hedge (final String subUrl, final String key, final ResponseDecoder<T> decoder, final DiskResponseCache disk, HedgingPolicy.Attempt original) throws JSONException, IOException {
+		HedgingPolicy hedging = this.hedgingPolicy;
+		if (hedging == null)
+			return execute (subUrl, key, decoder, disk, this.validatorCache, original);
+		final ValidatorCache validators = this.validatorCache;
+		return hedging.execute (EndpointFamily.of (subUrl), getExecutor (),
+				original != null ? original : new HedgingPolicy.Attempt (),
+				attempt -> execute (subUrl, key, decoder, disk, validators, attempt));
+	}
+
+	/* Send a streamed query: it's neither cached, retried nor hedged as the
+	 * subscriber may already have received part of the response */
+	private void stream (String subUrl, ResponseDecoder<Void> decoder, HedgingPolicy.Attempt attempt) throws JSONException, IOException {
+		CircuitBreaker breaker = this.circuitBreaker;
+		if (breaker == null) {
+			execute (subUrl, subUrl, decoder, null, null, attempt);
+			return;
+		}
+		EndpointFamily family = EndpointFamily.of (subUrl);
+		boolean probe = breaker.acquire (family);
+		Throwable failure = null;
+		try {
+			execute (subUrl, subUrl, decoder, null, null, attempt);
+		} catch (IOException | JSONException | RuntimeException | Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			/* the duration includes the time the subscriber took, so it isn't
+			 * taken as a slow call, and a cancelled stream isn't a failure */
+			breaker.record (family, probe, 0, !attempt.isAborted () && CircuitBreaker.isFailure (failure));
+		}
+	}
+
+	private <T> T execute (String subUrl, String key, ResponseDecoder<T> decoder, DiskResponseCache disk, ValidatorCache validators, HedgingPolicy.Attempt attempt) throws JSONException, IOException {
+		OwmTransport.Request request = new OwmTransport.Request (this.baseOwmUrl + subUrl);
+		String appid = this.owmAPPID;
+		if (appid != null) {
+			request.setHeader (OwmClient.APPID_HEADER, appid);
+		}
+		request.setHeader (ContentEncodings.ACCEPT_ENCODING_HEADER, ContentEncodings.ACCEPTED_ENCODINGS);
+		ValidatorCache.Entry validated = validators != null ? validators.get (key) : null;
+		if (validated != null) {
+			if (validated.etag != null)
+				request.setHeader (ValidatorCache.IF_NONE_MATCH_HEADER, validated.etag);
+			if (validated.lastModified != null)
+				request.setHeader (ValidatorCache.IF_MODIFIED_SINCE_HEADER, validated.lastModified);
+		}
+
+		RateLimiter limiter = this.rateLimiter;
+		if (limiter != null)
+			limiter.acquire (this.priority);
+		if (attempt != null)
+			attempt.bind (request);
+		RequestMeasure measure = RequestMeasure.start (this.metrics, subUrl);
+		if (measure == null)
+			return receive (subUrl, key, decoder, disk, validators, validated, request, null);
+		try {
+			return receive (subUrl, key, decoder, disk, validators, validated, request, measure);
+		} finally {
+			measure.completed ();
+		}
+	}
+
+	@SuppressWarnings ("unchecked")
+	private <T> T receive (String subUrl, String key, ResponseDecoder<T> decoder, DiskResponseCache disk, ValidatorCache validators, ValidatorCache.Entry validated, OwmTransport.Request request, RequestMeasure measure) throws JSONException, IOException {
+		if (measure != null)
+			measure.sending ();
+		OwmTransport.Response response = this.transport.execute (request);
 		InputStream contentStream = null;
 		try {
-			StatusLine statusLine = response.getStatusLine ();
-			if (statusLine == null) {
-				throw new IOException (
-						String.format ("Unable to get a response from OWM server"));
+			int statusCode = response.getStatusCode ();
+			if (measure != null)
+				measure.received (statusCode);
+			if (statusCode == HttpStatus.SC_NOT_MODIFIED && validated != null) {
+				/* the response we already parsed is still valid */
+				return (T) validated.response;
 			}
-			int statusCode = statusLine.getStatusCode ();
-			if (statusCode < 200 && statusCode >= 300) {
-				throw new IOException (
-						String.format ("OWM server responded with status code %d: %s", statusCode, statusLine));
+			if (statusCode < 200 || statusCode >= 300) {
+				throw new OwmHttpStatusException (
+						String.format ("OWM server responded with status code %d: %s", statusCode, response.getStatusLine ()),
+						statusCode,
+						OwmHttpStatusException.parseRetryAfter (
+								response.getHeader (OwmHttpStatusException.RETRY_AFTER_HEADER),
+								System.currentTimeMillis ()));
 			}
-			/* Read the response content */
-			HttpEntity responseEntity = response.getEntity ();
-			contentStream = responseEntity.getContent ();
-			Reader isReader = new InputStreamReader (contentStream);
-			int contentSize = (int) responseEntity.getContentLength ();
-			if (contentSize < 0)
-				contentSize = 8*1024;
-			StringWriter strWriter = new StringWriter (contentSize);
-			char[] buffer = new char[8*1024];
-			int n = 0;
-			while ((n = isReader.read(buffer)) != -1) {
-					strWriter.write(buffer, 0, n);
+			contentStream = response.getContent ();
+			if (contentStream == null) {
+				throw new IOException ("OWM server responded without content");
 			}
-			responseBody = strWriter.toString ();
-			contentStream.close ();
-		} catch (IOException e) {
-			throw e;
+			if (measure != null)
+				contentStream = measure.counting (contentStream);
+			/* Decode (and inflate) the response content as it arrives */
+			contentStream = ContentEncodings.decode (contentStream,
+					response.getHeader (ContentEncodings.CONTENT_ENCODING_HEADER));
+			if (measure != null)
+				contentStream = measure.decoding (contentStream);
+			T result;
+			if (disk == null) {
+				result = decoder.decode (contentStream);
+			} else {
+				/* keep the content for the disk cache, once it's known to be good */
+				byte[] content = contentStream.readAllBytes ();
+				InputStream in = new ByteArrayInputStream (content);
+				result = decoder.decode (measure != null ? measure.timing (in) : in);
+				disk.put (subUrl, content);
+			}
+			if (measure != null)
+				measure.decoded (result);
+			if (validators != null) {
+				validators.put (key,
+						response.getHeader (ValidatorCache.ETAG_HEADER),
+						response.getHeader (ValidatorCache.LAST_MODIFIED_HEADER),
+						result);
+			}
+			return result;
 		} catch (RuntimeException re) {
-			httpget.abort ();
+			request.abort ();
 			throw re;
 		} finally {
-			if (contentStream != null)
-				contentStream.close ();
+			try {
+				if (contentStream != null)
+					contentStream.close ();
+			} finally {
+				response.close ();
+			}
 		}
-		return new JSONObject (responseBody);
 	}
 }
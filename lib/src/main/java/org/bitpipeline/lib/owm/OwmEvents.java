@@ -0,0 +1,163 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** The Java Flight Recorder events of the client.
+ * <p>
+ * A request to the network is an <code>org.bitpipeline.owm.Request</code>
+ * event, which contains an <code>org.bitpipeline.owm.HttpExecute</code> event
+ * (until the response headers arrive) and, when there is content, an
+ * <code>org.bitpipeline.owm.Decode</code> event with the time spent reading,
+ * parsing and building the model. The lookups and evictions of the caches
+ * are <code>org.bitpipeline.owm.Cache</code> events. As the events are on the
+ * thread of the request, the allocation samples of a recording can be set
+ * against them.
+ * <p>
+ * The events cost next to nothing unless a recording enables them, e.g.
+ * <code>java -XX:StartFlightRecording:filename=owm.jfr ...</code>. */
+final class OwmEvents {
+	static private final String CATEGORY = "OWM Client";
+
+	static final String MEMORY_CACHE = "memory";
+	static final String DISK_CACHE = "disk";
+
+	static final String HIT = "hit";
+	static final String MISS = "miss";
+	static final String EXPIRED = "expired";
+	static final String STALE = "stale";
+	static final String EVICTION = "eviction";
+
+	@Name ("org.bitpipeline.owm.Request")
+	@Label ("OWM Request")
+	@Description ("A request to the OWM server, from sending it to having decoded the response")
+	@Category (OwmEvents.CATEGORY)
+	static final class RequestEvent extends Event {
+		@Label ("Endpoint")
+		String endpoint;
+
+		@Label ("Endpoint Family")
+		String family;
+
+		@Label ("Status Code")
+		@Description ("The HTTP status of the response or -1 if there was none")
+		int statusCode;
+
+		@Label ("Bytes Received")
+		@Description ("The content received, as sent (i.e. compressed)")
+		@DataAmount
+		long bytes;
+
+		@Label ("Item Count")
+		@Description ("The model objects built from the response")
+		int items;
+	}
+
+	@Name ("org.bitpipeline.owm.HttpExecute")
+	@Label ("OWM HTTP Execute")
+	@Description ("Connecting, sending a request and waiting for the response headers")
+	@Category (OwmEvents.CATEGORY)
+	@StackTrace (false)
+	static final class ExecuteEvent extends Event {
+		@Label ("Endpoint")
+		String endpoint;
+
+		@Label ("Status Code")
+		int statusCode;
+	}
+
+	@Name ("org.bitpipeline.owm.Decode")
+	@Label ("OWM Decode")
+	@Description ("Reading, parsing and building the model of a response, which are interleaved as the content streams in")
+	@Category (OwmEvents.CATEGORY)
+	@StackTrace (false)
+	static final class DecodeEvent extends Event {
+		@Label ("Endpoint")
+		String endpoint;
+
+		@Label ("Response Type")
+		String responseType;
+
+		@Label ("Bytes Received")
+		@DataAmount
+		long bytes;
+
+		@Label ("Item Count")
+		int items;
+
+		@Label ("Read Time")
+		@Description ("Time blocked reading (and inflating) the content")
+		@Timespan
+		long readTime;
+
+		@Label ("Parse Time")
+		@Timespan
+		long parseTime;
+
+		@Label ("Build Time")
+		@Description ("Time building the model objects")
+		@Timespan
+		long buildTime;
+	}
+
+	@Name ("org.bitpipeline.owm.Cache")
+	@Label ("OWM Cache")
+	@Description ("A lookup in or an eviction from a response cache")
+	@Category (OwmEvents.CATEGORY)
+	@StackTrace (false)
+	static final class CacheEvent extends Event {
+		@Label ("Cache")
+		String cache;
+
+		@Label ("Endpoint")
+		String endpoint;
+
+		@Label ("Outcome")
+		String outcome;
+
+		@Label ("Bytes")
+		@Description ("The size of the content found on disk")
+		@DataAmount
+		long bytes;
+	}
+
+	private OwmEvents () {
+	}
+
+	/** @param cache {@link #MEMORY_CACHE} or {@link #DISK_CACHE}
+	 * @param key the query
+	 * @param outcome {@link #HIT}, {@link #MISS}, {@link #EXPIRED},
+	 * 	{@link #STALE} or {@link #EVICTION}
+	 * @param bytes the size of the content found or 0 */
+	static void cache (String cache, String key, String outcome, long bytes) {
+		OwmEvents.CacheEvent event = new OwmEvents.CacheEvent ();
+		if (!event.shouldCommit ())
+			return;
+		event.cache = cache;
+		event.endpoint = key;
+		event.outcome = outcome;
+		event.bytes = bytes;
+		event.commit ();
+	}
+}
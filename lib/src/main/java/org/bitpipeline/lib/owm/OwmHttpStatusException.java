@@ -0,0 +1,84 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/** Thrown when the OWM server replies to a query with an error status. */
+public class OwmHttpStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	static final String RETRY_AFTER_HEADER = "Retry-After";
+
+	private final int statusCode;
+	private final long retryAfterMillis;
+
+	/** @param message the detail message
+	 * @param statusCode the HTTP status code of the reply
+	 * @param retryAfterMillis the delay asked by the server with a
+	 * 	<code>Retry-After</code> header or -1 if none */
+	public OwmHttpStatusException (String message, int statusCode, long retryAfterMillis) {
+		super (message);
+		this.statusCode = statusCode;
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public int getStatusCode () {
+		return this.statusCode;
+	}
+
+	/** @return true if the server asked to slow down (429) or is temporarily
+	 * 	failing (5xx) */
+	public boolean isTransient () {
+		return this.statusCode == 429 || (this.statusCode >= 500 && this.statusCode < 600);
+	}
+
+	public boolean hasRetryAfterMillis () {
+		return this.retryAfterMillis >= 0;
+	}
+
+	/** @return the delay asked by the server or -1 if none */
+	public long getRetryAfterMillis () {
+		return this.retryAfterMillis;
+	}
+
+	/** Parse the value of a <code>Retry-After</code> header, either a number
+	 * of seconds or a HTTP date.
+	 * @param value the value of the header (may be null)
+	 * @param nowMillis the current time
+	 * @return the delay in milliseconds or -1 if the value can't be parsed */
+	static long parseRetryAfter (String value, long nowMillis) {
+		if (value == null)
+			return -1;
+		String trimmed = value.trim ();
+		try {
+			long seconds = Long.parseLong (trimmed);
+			return seconds < 0 ? -1 : seconds * 1000;
+		} catch (NumberFormatException e) {
+			/* not a number of seconds, maybe a date */
+		}
+		try {
+			Instant when = ZonedDateTime.parse (trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant ();
+			return Math.max (0, when.toEpochMilli () - nowMillis);
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+/** Receives the measurements of the requests a {@link OwmClient} sends to the
+ * network (answers from the caches aren't requests).
+ * <p>
+ * The methods are called on the threads running the requests, so they must be
+ * thread safe and quick. All of them do nothing by default.
+ * @see HistogramMetrics
+ * @see OwmClient#setMetrics(OwmMetrics) */
+public interface OwmMetrics {
+	/** The metrics that record nothing, used when no metrics are set; the
+	 * client doesn't even measure the requests then. */
+	static final OwmMetrics NONE = new OwmMetrics () {
+	};
+
+	/** The phases of a request. */
+	static public enum Phase {
+		/** connecting, sending the request and waiting for the response headers */
+		EXECUTE,
+		/** reading the content from the network (and inflating it) */
+		READ,
+		/** parsing the JSON content */
+		PARSE,
+		/** building the model objects from the parsed JSON */
+		BUILD
+	}
+
+	/** A request is about to be sent.
+	 * @param family the endpoint family of the request */
+	default void requestStarted (EndpointFamily family) {
+	}
+
+	/** A request started with {@link #requestStarted(EndpointFamily)} is over,
+	 * successfully or not.
+	 * @param family the endpoint family of the request
+	 * @param statusCode the HTTP status of the response or -1 if there was no
+	 * 	response (e.g. the connection failed)
+	 * @param bytesReceived the number of bytes of content received, as sent
+	 * 	(i.e. compressed) */
+	default void requestCompleted (EndpointFamily family, int statusCode, long bytesReceived) {
+	}
+
+	/** @param family the endpoint family of the request
+	 * @param phase the phase measured
+	 * @param nanos how long the phase took */
+	default void recordPhase (EndpointFamily family, Phase phase, long nanos) {
+	}
+
+	/** A response reported how long the OWM server took to compute it (its
+	 * <code>calctime</code>), to set against the latency the client observed.
+	 * @param family the endpoint family of the request
+	 * @param serverNanos the compute time reported by the server
+	 * @param latencyNanos the latency of the request, from sending it to
+	 * 	having decoded the response */
+	default void recordServerTime (EndpointFamily family, long serverNanos, long latencyNanos) {
+	}
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+
+/** Thrown when a query isn't sent because it would exceed the request quota
+ * of the APPID (see {@link RateLimiter}). */
+public class OwmRateLimitException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final long retryAfterMillis;
+
+	/** @param message the detail message
+	 * @param retryAfterMillis the estimated time until a request can be sent
+	 * 	or -1 if unknown */
+	public OwmRateLimitException (String message, long retryAfterMillis) {
+		super (message);
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	public boolean hasRetryAfterMillis () {
+		return this.retryAfterMillis >= 0;
+	}
+
+	/** @return the estimated time until a request can be sent or -1 if unknown */
+	public long getRetryAfterMillis () {
+		return this.retryAfterMillis;
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.Locale;
+
+/** Builds the sub URLs (relative to the OWM API base URL) of every query
+ * supported by the clients, so that the synchronous and asynchronous clients
+ * always ask for exactly the same resources. */
+final class OwmSubUrls {
+	private OwmSubUrls () {
+	}
+
+	static String currentWeatherAroundPoint (float lat, float lon, int cnt) {
+		return String.format (Locale.ROOT, "find/station?lat=%f&lon=%f&cnt=%d&cluster=yes",
+				Float.valueOf (lat), Float.valueOf (lon), Integer.valueOf (cnt));
+	}
+
+	static String currentWeatherAtCity (float lat, float lon, int cnt) {
+		return String.format (Locale.ROOT, "find/city?lat=%f&lon=%f&cnt=%d&cluster=yes",
+				Float.valueOf (lat), Float.valueOf (lon), Integer.valueOf (cnt));
+	}
+
+	static String currentWeatherInBoundingBox (float northLat, float westLon, float southLat, float eastLon) {
+		return String.format (Locale.ROOT, "find/station?bbox=%f,%f,%f,%f&cluster=yes",
+				Float.valueOf (northLat), Float.valueOf (westLon),
+				Float.valueOf (southLat), Float.valueOf (eastLon));
+	}
+
+	static String currentWeatherAtCityBoundingBox (float northLat, float westLon, float southLat, float eastLon) {
+		return String.format (Locale.ROOT, "find/city?bbox=%f,%f,%f,%f&cluster=yes",
+				Float.valueOf (northLat), Float.valueOf (westLon),
+				Float.valueOf (southLat), Float.valueOf (eastLon));
+	}
+
+	static String currentWeatherInCircle (float lat, float lon, float radius) {
+		return String.format (Locale.ROOT, "find/station?lat=%f&lon=%f&radius=%f&cluster=yes",
+				Float.valueOf (lat), Float.valueOf (lon), Float.valueOf (radius));
+	}
+
+	static String currentWeatherAtCityCircle (float lat, float lon, float radius) {
+		return String.format (Locale.ROOT, "find/city?lat=%f&lon=%f&radius=%f&cluster=yes",
+				Float.valueOf (lat), Float.valueOf (lon), Float.valueOf (radius));
+	}
+
+	static String currentWeatherAtCity (int cityId) {
+		return String.format (Locale.ROOT, "weather/city/%d?type=json", Integer.valueOf (cityId));
+	}
+
+	static String currentWeatherAtStation (int stationId) {
+		return String.format (Locale.ROOT, "weather/station/%d?type=json", Integer.valueOf (stationId));
+	}
+
+	static String currentWeatherAtCity (String cityName) {
+		return String.format (Locale.ROOT, "find/name?q=%s", cityName);
+	}
+
+	static String currentWeatherAtCity (String cityName, String countryCode) {
+		return String.format (Locale.ROOT, "find/name?q=%s,%s", cityName, countryCode.toUpperCase ());
+	}
+
+	static String forecastWeatherAtCity (int cityId) {
+		return String.format (Locale.ROOT, "forecast/city/%d?type=json&units=metric", Integer.valueOf (cityId));
+	}
+
+	static String forecastWeatherAtCity (String cityName) {
+		return String.format (Locale.ROOT, "forecast/city?q=%s&type=json&units=metric", cityName);
+	}
+
+	static String historyWeatherAtCity (int cityId, OwmClient.HistoryType type) {
+		if (type == OwmClient.HistoryType.UNKNOWN)
+			throw new IllegalArgumentException("Can't do a historic request for unknown type of history.");
+		return String.format (Locale.ROOT, "history/city/%d?type=%s", Integer.valueOf (cityId), type);
+	}
+
+	static String historyWeatherAtStation (int stationId, OwmClient.HistoryType type) {
+		if (type == OwmClient.HistoryType.UNKNOWN)
+			throw new IllegalArgumentException("Can't do a historic request for unknown type of history.");
+		return String.format (Locale.ROOT, "history/station/%d?type=%s", Integer.valueOf (stationId), type);
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Sends the HTTP requests of a {@link OwmClient}.
+ * <p>
+ * The client builds each request (URL and headers) and interprets the
+ * response (status, validators, content encoding, content); the transport
+ * only moves them over the wire. Besides the default transport over an
+ * Apache <code>HttpClient</code> ({@link HttpClientTransport}) there's a
+ * {@link RecordingTransport} that saves the responses of another transport to
+ * a file and a {@link ReplayTransport} that serves them back without a
+ * network. Transports must be safe to use from many threads at once. */
+public interface OwmTransport {
+	/** A GET request, which can be aborted from another thread */
+	final class Request {
+		private final String url;
+		private final Map<String, String> headers = new LinkedHashMap<String, String> ();
+		private volatile Runnable abortHandler = null;
+		private volatile boolean aborted = false;
+
+		/** @param url the absolute URL of the request */
+		public Request (String url) {
+			if (url == null)
+				throw new IllegalArgumentException ("The URL can't be null.");
+			this.url = url;
+		}
+
+		public String getUrl () {
+			return this.url;
+		}
+
+		/** @param name the name of the header
+		 * @param value the value of the header
+		 * @return this request */
+		public Request setHeader (String name, String value) {
+			this.headers.put (name, value);
+			return this;
+		}
+
+		/** @param name the name of a header
+		 * @return the value of the header or null if it isn't set */
+		public String getHeader (String name) {
+			return this.headers.get (name);
+		}
+
+		public Map<String, String> getHeaders () {
+			return Collections.unmodifiableMap (this.headers);
+		}
+
+		/** Set what aborts the request once it's been sent; the transport
+		 * calls it before blocking on the request. If the request was already
+		 * aborted the handler is run right away. A handler may be run more than
+		 * once.
+		 * @param handler what aborts the request */
+		public void setAbortHandler (Runnable handler) {
+			this.abortHandler = handler;
+			if (this.aborted)
+				handler.run ();
+		}
+
+		/** Abort the request, making the transport fail with a
+		 * <code>IOException</code> if it's still waiting for the response or
+		 * reading its content. */
+		public void abort () {
+			this.aborted = true;
+			Runnable handler = this.abortHandler;
+			if (handler != null)
+				handler.run ();
+		}
+
+		public boolean isAborted () {
+			return this.aborted;
+		}
+	}
+
+	/** The response to a request, which must be closed to release its
+	 * connection */
+	interface Response extends Closeable {
+		/** @return the HTTP status code */
+		int getStatusCode ();
+
+		/** @return the HTTP status line, e.g. <code>HTTP/1.1 200 OK</code> */
+		String getStatusLine ();
+
+		/** @param name the name of a header (case insensitive)
+		 * @return the value of the first header with the name or null if the
+		 * 	response doesn't have it */
+		String getHeader (String name);
+
+		/** @return the content as received (still encoded as told by the
+		 * 	<code>Content-Encoding</code> header) or null if the response has
+		 * 	no content
+		 * @throws IOException if the content can't be read */
+		InputStream getContent () throws IOException;
+	}
+
+	/** Send a request
+	 * @param request the request
+	 * @return the response, whatever its status
+	 * @throws IOException if there's no response (e.g. the connection failed
+	 * 	or the request was aborted) */
+	Response execute (Request request) throws IOException;
+
+	/** Release the resources (connections, files) held by the transport. The
+	 * transport can't be used after it's shut down. */
+	void shutdown ();
+}
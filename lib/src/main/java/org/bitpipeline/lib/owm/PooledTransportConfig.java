@@ -0,0 +1,204 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+/** Configuration of the pooled HTTP transport used by {@link OwmClient} when
+ * it isn't given an <code>HttpClient</code>.
+ * <p>
+ * The transport keeps a pool of persistent connections (bounded per route and
+ * in total) that are reused across requests and threads, so a single
+ * <code>OwmClient</code> can be shared by the whole application. Connections
+ * are kept alive for at most {@link #getKeepAliveMillis()} and a background
+ * daemon thread closes the ones that stay idle for longer than
+ * {@link #getIdleEvictionMillis()}. */
+public class PooledTransportConfig {
+	private int maxConnectionsPerRoute = 20;
+	private int maxConnectionsTotal = 100;
+	private long keepAliveMillis = 30000;
+	private long idleEvictionMillis = 30000;
+	private int connectTimeoutMillis = 10000;
+	private int socketTimeoutMillis = 30000;
+
+	public int getMaxConnectionsPerRoute () {
+		return this.maxConnectionsPerRoute;
+	}
+	/** @param maxConnectionsPerRoute the maximum number of connections kept
+	 * 	open to a single host (all OWM requests use the same route) */
+	public PooledTransportConfig setMaxConnectionsPerRoute (int maxConnectionsPerRoute) {
+		if (maxConnectionsPerRoute <= 0)
+			throw new IllegalArgumentException ("The maximum connections per route must be positive.");
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		return this;
+	}
+
+	public int getMaxConnectionsTotal () {
+		return this.maxConnectionsTotal;
+	}
+	/** @param maxConnectionsTotal the maximum number of connections in the pool */
+	public PooledTransportConfig setMaxConnectionsTotal (int maxConnectionsTotal) {
+		if (maxConnectionsTotal <= 0)
+			throw new IllegalArgumentException ("The maximum number of connections must be positive.");
+		this.maxConnectionsTotal = maxConnectionsTotal;
+		return this;
+	}
+
+	public long getKeepAliveMillis () {
+		return this.keepAliveMillis;
+	}
+	/** @param keepAliveMillis the maximum time a connection is reused. If the
+	 * 	server announces a shorter keep alive that one is used instead. */
+	public PooledTransportConfig setKeepAliveMillis (long keepAliveMillis) {
+		if (keepAliveMillis <= 0)
+			throw new IllegalArgumentException ("The keep alive time must be positive.");
+		this.keepAliveMillis = keepAliveMillis;
+		return this;
+	}
+
+	public long getIdleEvictionMillis () {
+		return this.idleEvictionMillis;
+	}
+	/** @param idleEvictionMillis the time after which idle connections are
+	 * 	closed; zero or a negative value disables the eviction thread. */
+	public PooledTransportConfig setIdleEvictionMillis (long idleEvictionMillis) {
+		this.idleEvictionMillis = idleEvictionMillis;
+		return this;
+	}
+
+	public int getConnectTimeoutMillis () {
+		return this.connectTimeoutMillis;
+	}
+	/** @param connectTimeoutMillis the timeout to establish a connection (zero
+	 * 	means no timeout) */
+	public PooledTransportConfig setConnectTimeoutMillis (int connectTimeoutMillis) {
+		if (connectTimeoutMillis < 0)
+			throw new IllegalArgumentException ("The connect timeout can't be negative.");
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		return this;
+	}
+
+	public int getSocketTimeoutMillis () {
+		return this.socketTimeoutMillis;
+	}
+	/** @param socketTimeoutMillis the maximum time waiting for data (zero means
+	 * 	no timeout) */
+	public PooledTransportConfig setSocketTimeoutMillis (int socketTimeoutMillis) {
+		if (socketTimeoutMillis < 0)
+			throw new IllegalArgumentException ("The socket timeout can't be negative.");
+		this.socketTimeoutMillis = socketTimeoutMillis;
+		return this;
+	}
+
+	/** Build a new thread safe <code>HttpClient</code> with this configuration.
+	 * The connection pool (and its eviction thread) is released with
+	 * <code>httpClient.getConnectionManager ().shutdown ()</code>.
+	 * @return the new HttpClient */
+	public HttpClient createHttpClient () {
+		EvictingConnectionManager connectionManager = new EvictingConnectionManager ();
+		connectionManager.setDefaultMaxPerRoute (this.maxConnectionsPerRoute);
+		connectionManager.setMaxTotal (this.maxConnectionsTotal);
+		if (this.idleEvictionMillis > 0)
+			connectionManager.startEvictor (this.idleEvictionMillis);
+
+		HttpParams params = new BasicHttpParams ();
+		HttpConnectionParams.setConnectionTimeout (params, this.connectTimeoutMillis);
+		HttpConnectionParams.setSoTimeout (params, this.socketTimeoutMillis);
+		HttpConnectionParams.setTcpNoDelay (params, true);
+		/* the evictor already closes the connections the server dropped */
+		HttpConnectionParams.setStaleCheckingEnabled (params, this.idleEvictionMillis <= 0);
+
+		DefaultHttpClient httpClient = new DefaultHttpClient (connectionManager, params);
+		final long maxKeepAlive = this.keepAliveMillis;
+		httpClient.setKeepAliveStrategy (new DefaultConnectionKeepAliveStrategy () {
+			@Override
+			public long getKeepAliveDuration (HttpResponse response, HttpContext context) {
+				long announced = super.getKeepAliveDuration (response, context);
+				return announced > 0 ? Math.min (announced, maxKeepAlive) : maxKeepAlive;
+			}
+		});
+		return httpClient;
+	}
+
+	/** A pooling connection manager that owns the thread evicting its expired
+	 * and idle connections. */
+	static class EvictingConnectionManager extends PoolingClientConnectionManager {
+		private Thread evictor = null;
+
+		EvictingConnectionManager () {
+			super (SchemeRegistryFactory.createDefault ());
+		}
+
+		void startEvictor (long idleMillis) {
+			this.evictor = new Thread (new IdleConnectionEvictor (this, idleMillis), "owm-idle-connection-evictor");
+			this.evictor.setDaemon (true);
+			this.evictor.start ();
+		}
+
+		Thread getEvictor () {
+			return this.evictor;
+		}
+
+		@Override
+		public void shutdown () {
+			if (this.evictor != null)
+				this.evictor.interrupt ();
+			super.shutdown ();
+		}
+	}
+
+	/** Periodically closes expired and idle connections. It only holds a weak
+	 * reference to the manager, so a pool that is never shut down can still be
+	 * collected (and the thread ends with it). */
+	static class IdleConnectionEvictor implements Runnable {
+		private final WeakReference<PoolingClientConnectionManager> managerRef;
+		private final long idleMillis;
+
+		IdleConnectionEvictor (PoolingClientConnectionManager manager, long idleMillis) {
+			this.managerRef = new WeakReference<PoolingClientConnectionManager> (manager);
+			this.idleMillis = idleMillis;
+		}
+
+		@Override
+		public void run () {
+			long period = Math.max (1000, this.idleMillis / 2);
+			try {
+				while (!Thread.currentThread ().isInterrupted ()) {
+					Thread.sleep (period);
+					PoolingClientConnectionManager manager = this.managerRef.get ();
+					if (manager == null)
+						return;
+					manager.closeExpiredConnections ();
+					manager.closeIdleConnections (this.idleMillis, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread ().interrupt ();
+			}
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/** Keeps the requests sent with an APPID within its per-minute and per-day
+ * quotas, so that the quota is never exceeded instead of finding out from the
+ * errors of the OWM server.
+ * <p>
+ * Each quota is a token bucket that starts full and refills continuously
+ * (the per-day bucket is a rolling day, not a calendar one); a request takes a
+ * token from both. When there's no token the request, according to the
+ * {@link Mode}, waits for one, fails right away or waits in a bounded queue.
+ * <p>
+ * Requests have a {@link Priority}. Background requests leave a share of each
+ * bucket (20% by default) to interactive ones and wait while an interactive
+ * request is waiting, so background refreshes never starve user-facing
+ * queries. A limiter can be shared by several clients using the same APPID,
+ * e.g. one for each priority. */
+public class RateLimiter {
+	/** What a request does when there's no token for it */
+	public enum Mode {
+		/** wait until there's a token */
+		BLOCK,
+		/** fail right away with a {@link OwmRateLimitException} */
+		FAIL_FAST,
+		/** wait in a bounded queue for a bounded time, failing with a
+		 * {@link OwmRateLimitException} if the queue is full or the wait would
+		 * be too long */
+		QUEUE
+	}
+
+	/** The priority of a request */
+	public enum Priority {
+		/** user-facing requests */
+		INTERACTIVE,
+		/** background refreshes, which give way to interactive requests */
+		BACKGROUND
+	}
+
+	static private final class Bucket {
+		final long capacity;
+		final double tokensPerNano;
+		double tokens;
+		long refilledAt;
+		long reserved = 0;
+
+		Bucket (long capacity, long period, TimeUnit unit, long now) {
+			this.capacity = capacity;
+			this.tokensPerNano = (double) capacity / unit.toNanos (period);
+			this.tokens = capacity;
+			this.refilledAt = now;
+		}
+
+		void refill (long now) {
+			this.tokens = Math.min (this.capacity, this.tokens + (now - this.refilledAt) * this.tokensPerNano);
+			this.refilledAt = now;
+		}
+
+		/** @return the nanoseconds until the bucket has the tokens needed */
+		long nanosUntil (double needed) {
+			if (this.tokens >= needed)
+				return 0;
+			return (long) Math.ceil ((needed - this.tokens) / this.tokensPerNano);
+		}
+	}
+
+	private final LongSupplier nanoClock;
+	private final ReentrantLock lock = new ReentrantLock ();
+	private final Condition interactiveTurn = this.lock.newCondition ();
+	private final Condition backgroundTurn = this.lock.newCondition ();
+
+	/* guarded by lock */
+	private final Bucket perMinute;
+	private final Bucket perDay;
+	private Mode mode = Mode.BLOCK;
+	private long maxWaitNanos = TimeUnit.SECONDS.toNanos (30);
+	private int maxQueueLength = 100;
+	private int waitingInteractive = 0;
+	private int waitingBackground = 0;
+
+	/** Create a limiter in {@link Mode#BLOCK} mode.
+	 * @param requestsPerMinute the per-minute quota
+	 * @param requestsPerDay the per-day quota */
+	public RateLimiter (int requestsPerMinute, int requestsPerDay) {
+		this (requestsPerMinute, requestsPerDay, System::nanoTime);
+	}
+
+	RateLimiter (int requestsPerMinute, int requestsPerDay, LongSupplier nanoClock) {
+		if (requestsPerMinute <= 0 || requestsPerDay <= 0)
+			throw new IllegalArgumentException ("The quotas must be positive.");
+		this.nanoClock = nanoClock;
+		long now = nanoClock.getAsLong ();
+		this.perMinute = new Bucket (requestsPerMinute, 1, TimeUnit.MINUTES, now);
+		this.perDay = new Bucket (requestsPerDay, 1, TimeUnit.DAYS, now);
+		setInteractiveReserve (0.2);
+	}
+
+	/** @param mode what requests do when there's no token for them
+	 * @return this limiter */
+	public RateLimiter setMode (Mode mode) {
+		if (mode == null)
+			throw new IllegalArgumentException ("The mode can't be null.");
+		this.lock.lock ();
+		try {
+			this.mode = mode;
+		} finally {
+			this.lock.unlock ();
+		}
+		return this;
+	}
+
+	public Mode getMode () {
+		this.lock.lock ();
+		try {
+			return this.mode;
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/** Configure the queue of the {@link Mode#QUEUE} mode
+	 * @param maxQueueLength the number of requests that can wait for a token
+	 * @param maxWait how long a request may wait for a token
+	 * @param unit the unit of maxWait
+	 * @return this limiter */
+	public RateLimiter setQueue (int maxQueueLength, long maxWait, TimeUnit unit) {
+		if (maxQueueLength < 0 || maxWait < 0)
+			throw new IllegalArgumentException ("The queue length and wait can't be negative.");
+		this.lock.lock ();
+		try {
+			this.maxQueueLength = maxQueueLength;
+			this.maxWaitNanos = unit.toNanos (maxWait);
+		} finally {
+			this.lock.unlock ();
+		}
+		return this;
+	}
+
+	/** @param fraction the share of each quota that background requests
+	 * 	can't use (rounded down and always leaving them at least one token)
+	 * @return this limiter */
+	public RateLimiter setInteractiveReserve (double fraction) {
+		if (!(fraction >= 0 && fraction < 1))
+			throw new IllegalArgumentException ("The reserve must be in [0, 1[.");
+		this.lock.lock ();
+		try {
+			for (Bucket bucket : new Bucket[] { this.perMinute, this.perDay })
+				bucket.reserved = Math.min (bucket.capacity - 1, (long) Math.floor (bucket.capacity * fraction));
+		} finally {
+			this.lock.unlock ();
+		}
+		return this;
+	}
+
+	/** @return the requests that can be sent right away (at interactive priority) */
+	public int getAvailableTokens () {
+		this.lock.lock ();
+		try {
+			long now = this.nanoClock.getAsLong ();
+			this.perMinute.refill (now);
+			this.perDay.refill (now);
+			return (int) Math.floor (Math.min (this.perMinute.tokens, this.perDay.tokens));
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/** @return the number of requests waiting for a token */
+	public int getQueueLength () {
+		this.lock.lock ();
+		try {
+			return this.waitingInteractive + this.waitingBackground;
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/** Take a token for a request, waiting for it if the mode says so.
+	 * @param priority the priority of the request
+	 * @throws OwmRateLimitException if there's no token and the mode doesn't
+	 * 	allow (or no longer allows) waiting for one
+	 * @throws InterruptedIOException if interrupted while waiting */
+	void acquire (Priority priority) throws OwmRateLimitException, InterruptedIOException {
+		boolean background = priority == Priority.BACKGROUND;
+		try {
+			this.lock.lockInterruptibly ();
+		} catch (InterruptedException e) {
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ("Interrupted while waiting for the rate limiter");
+		}
+		boolean waiting = false;
+		try {
+			long start = this.nanoClock.getAsLong ();
+			while (true) {
+				long now = this.nanoClock.getAsLong ();
+				this.perMinute.refill (now);
+				this.perDay.refill (now);
+				/* -1 when it depends on interactive requests */
+				long wait;
+				if (background && this.waitingInteractive > 0)
+					wait = -1;
+				else
+					wait = Math.max (
+							this.perMinute.nanosUntil (1 + (background ? this.perMinute.reserved : 0)),
+							this.perDay.nanosUntil (1 + (background ? this.perDay.reserved : 0)));
+				if (wait == 0) {
+					this.perMinute.tokens -= 1;
+					this.perDay.tokens -= 1;
+					return;
+				}
+
+				long timeout = Long.MAX_VALUE;
+				if (this.mode == Mode.FAIL_FAST) {
+					throw new OwmRateLimitException ("The request quota is exhausted", RateLimiter.toMillis (wait));
+				} else if (this.mode == Mode.QUEUE) {
+					if (!waiting && this.waitingInteractive + this.waitingBackground >= this.maxQueueLength)
+						throw new OwmRateLimitException ("The request queue is full", RateLimiter.toMillis (wait));
+					timeout = this.maxWaitNanos - (now - start);
+					if (timeout <= 0 || wait > timeout)
+						throw new OwmRateLimitException ("The request quota won't allow the request in time", RateLimiter.toMillis (wait));
+				}
+
+				if (!waiting) {
+					waiting = true;
+					if (background)
+						this.waitingBackground++;
+					else
+						this.waitingInteractive++;
+				}
+				Condition turn = background ? this.backgroundTurn : this.interactiveTurn;
+				turn.awaitNanos (wait > 0 ? wait : timeout);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ("Interrupted while waiting for the rate limiter");
+		} finally {
+			if (waiting) {
+				if (background) {
+					this.waitingBackground--;
+				} else if (--this.waitingInteractive == 0) {
+					/* background requests may go now */
+					this.backgroundTurn.signalAll ();
+				}
+			}
+			this.lock.unlock ();
+		}
+	}
+
+	static private long toMillis (long nanos) {
+		return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis (nanos + 999999);
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A request URL and the response it got, as saved by a
+ * {@link RecordingTransport} and served by a {@link ReplayTransport}.
+ * <p>
+ * A recording file starts with {@link #MAGIC} followed by the exchanges, each
+ * written as: the URL, the latency in nanoseconds (until the whole content was
+ * received), the status code and line, the number of headers and each header
+ * name and value, and the length of the content (-1 without content) followed
+ * by the content as received (still compressed if it was). */
+final class RecordedExchange {
+	static final int MAGIC = 0x4F574D52; /* OWMR */
+
+	/** The response headers the client looks at, which are the ones recorded */
+	static final String[] RECORDED_HEADERS = {
+		ContentEncodings.CONTENT_ENCODING_HEADER,
+		"Content-Type",
+		ValidatorCache.ETAG_HEADER,
+		ValidatorCache.LAST_MODIFIED_HEADER,
+		OwmHttpStatusException.RETRY_AFTER_HEADER
+	};
+
+	final String url;
+	final long latencyNanos;
+	final int statusCode;
+	final String statusLine;
+	final Map<String, String> headers;
+	final byte[] content;
+
+	RecordedExchange (String url, long latencyNanos, int statusCode, String statusLine, Map<String, String> headers, byte[] content) {
+		this.url = url;
+		this.latencyNanos = latencyNanos;
+		this.statusCode = statusCode;
+		this.statusLine = statusLine;
+		Map<String, String> sorted = new TreeMap<String, String> (String.CASE_INSENSITIVE_ORDER);
+		sorted.putAll (headers);
+		this.headers = Collections.unmodifiableMap (sorted);
+		this.content = content;
+	}
+
+	/** @param in the start of a recording
+	 * @param file the file of the recording
+	 * @throws IOException if the file isn't a recording */
+	static void readMagic (DataInput in, File file) throws IOException {
+		if (in.readInt () != RecordedExchange.MAGIC)
+			throw new IOException (file + " isn't a recording of OWM exchanges");
+	}
+
+	void write (DataOutput out) throws IOException {
+		out.writeUTF (this.url);
+		out.writeLong (this.latencyNanos);
+		out.writeInt (this.statusCode);
+		out.writeUTF (this.statusLine);
+		out.writeShort (this.headers.size ());
+		for (Map.Entry<String, String> header : this.headers.entrySet ()) {
+			out.writeUTF (header.getKey ());
+			out.writeUTF (header.getValue ());
+		}
+		if (this.content == null) {
+			out.writeInt (-1);
+		} else {
+			out.writeInt (this.content.length);
+			out.write (this.content);
+		}
+	}
+
+	static RecordedExchange read (DataInput in) throws IOException {
+		String url = in.readUTF ();
+		long latencyNanos = in.readLong ();
+		int statusCode = in.readInt ();
+		String statusLine = in.readUTF ();
+		int headerCount = in.readUnsignedShort ();
+		Map<String, String> headers = new TreeMap<String, String> (String.CASE_INSENSITIVE_ORDER);
+		for (int i = 0; i < headerCount; i++)
+			headers.put (in.readUTF (), in.readUTF ());
+		int length = in.readInt ();
+		byte[] content = null;
+		if (length >= 0) {
+			content = new byte[length];
+			in.readFully (content);
+		}
+		return new RecordedExchange (url, latencyNanos, statusCode, statusLine, headers, content);
+	}
+
+	/** @return a new response with the recorded status, headers and content */
+	OwmTransport.Response toResponse () {
+		return new OwmTransport.Response () {
+			@Override
+			public int getStatusCode () {
+				return RecordedExchange.this.statusCode;
+			}
+
+			@Override
+			public String getStatusLine () {
+				return RecordedExchange.this.statusLine;
+			}
+
+			@Override
+			public String getHeader (String name) {
+				return RecordedExchange.this.headers.get (name);
+			}
+
+			@Override
+			public InputStream getContent () {
+				byte[] recorded = RecordedExchange.this.content;
+				return recorded != null ? new ByteArrayInputStream (recorded) : null;
+			}
+
+			@Override
+			public void close () {
+			}
+		};
+	}
+}
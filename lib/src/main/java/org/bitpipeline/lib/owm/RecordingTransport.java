@@ -0,0 +1,209 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** A {@link OwmTransport} that sends the requests through another transport
+ * and appends every exchange (the URL, the status, the headers the client
+ * uses, the content as received and the latency) to a file, to be served
+ * back by a {@link ReplayTransport}.
+ * <p>
+ * The request headers, and so the APPID, aren't recorded. The content of each
+ * response is read completely before it's handed to the client, so a recording
+ * client doesn't overlap decoding with the transfer. */
+public class RecordingTransport implements OwmTransport {
+	private final OwmTransport delegate;
+	private final File file;
+	private final ReentrantLock lock = new ReentrantLock ();
+	/* guarded by lock */
+	private DataOutputStream out;
+	private long recorded = 0;
+
+	/** @param delegate the transport that sends the requests
+	 * @param file the recording, which is appended to if it exists (after its
+	 * 	last complete exchange)
+	 * @throws IOException if the file can't be opened or isn't a recording */
+	public RecordingTransport (OwmTransport delegate, File file) throws IOException {
+		if (delegate == null || file == null)
+			throw new IllegalArgumentException ("The transport and the file can't be null.");
+		this.delegate = delegate;
+		this.file = file;
+		boolean exists = file.length () > 0;
+		if (exists) {
+			/* an exchange cut short (e.g. by a crash while it was written)
+			 * would hide the ones appended after it from a replay */
+			long complete = RecordingTransport.completeLength (file);
+			if (complete < file.length ()) {
+				try (FileChannel channel = FileChannel.open (file.toPath (), StandardOpenOption.WRITE)) {
+					channel.truncate (complete);
+				}
+			}
+		}
+		this.out = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (file, true)));
+		if (!exists) {
+			this.out.writeInt (RecordedExchange.MAGIC);
+			this.out.flush ();
+		}
+	}
+
+	/** Counts the bytes read through it */
+	static private final class CountingInputStream extends FilterInputStream {
+		private long count = 0;
+
+		CountingInputStream (InputStream in) {
+			super (in);
+		}
+
+		@Override
+		public int read () throws IOException {
+			int b = super.read ();
+			if (b >= 0)
+				this.count++;
+			return b;
+		}
+
+		@Override
+		public int read (byte[] b, int off, int len) throws IOException {
+			int n = super.read (b, off, len);
+			if (n > 0)
+				this.count += n;
+			return n;
+		}
+
+		@Override
+		public long skip (long n) throws IOException {
+			long skipped = super.skip (n);
+			this.count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported () {
+			return false;
+		}
+	}
+
+	/** @param file a recording
+	 * @return the length of the magic and the complete exchanges of the file
+	 * @throws IOException if the file can't be read or isn't a recording */
+	static private long completeLength (File file) throws IOException {
+		CountingInputStream counting = new CountingInputStream (new BufferedInputStream (new FileInputStream (file)));
+		try (DataInputStream in = new DataInputStream (counting)) {
+			RecordedExchange.readMagic (in, file);
+			long complete = counting.count;
+			while (true) {
+				try {
+					RecordedExchange.read (in);
+				} catch (EOFException e) {
+					return complete;
+				}
+				complete = counting.count;
+			}
+		}
+	}
+
+	public File getFile () {
+		return this.file;
+	}
+
+	/** @return the number of exchanges recorded by this transport */
+	public long getRecordedCount () {
+		this.lock.lock ();
+		try {
+			return this.recorded;
+		} finally {
+			this.lock.unlock ();
+		}
+	}
+
+	/** Send the request and record the exchange
+	 * @throws IOException if the request fails (nothing is recorded) or the
+	 * 	exchange can't be written to the recording */
+	@Override
+	public OwmTransport.Response execute (OwmTransport.Request request) throws IOException {
+		long start = System.nanoTime ();
+		RecordedExchange exchange;
+		OwmTransport.Response response = this.delegate.execute (request);
+		try {
+			Map<String, String> headers = new HashMap<String, String> ();
+			for (String name : RecordedExchange.RECORDED_HEADERS) {
+				String value = response.getHeader (name);
+				if (value != null)
+					headers.put (name, value);
+			}
+			InputStream in = response.getContent ();
+			byte[] content = null;
+			if (in != null) {
+				try {
+					content = in.readAllBytes ();
+				} finally {
+					in.close ();
+				}
+			}
+			exchange = new RecordedExchange (request.getUrl (), System.nanoTime () - start,
+					response.getStatusCode (), response.getStatusLine (), headers, content);
+		} finally {
+			response.close ();
+		}
+
+		this.lock.lock ();
+		try {
+			if (this.out == null)
+				throw new IOException ("The recording transport is shut down");
+			exchange.write (this.out);
+			this.out.flush ();
+			this.recorded++;
+		} finally {
+			this.lock.unlock ();
+		}
+		return exchange.toResponse ();
+	}
+
+	/** Close the recording and shut down the transport it records. */
+	@Override
+	public void shutdown () {
+		this.lock.lock ();
+		try {
+			if (this.out != null) {
+				try {
+					this.out.close ();
+				} catch (IOException e) {
+					/* everything was flushed after each exchange */
+				}
+				this.out = null;
+			}
+		} finally {
+			this.lock.unlock ();
+		}
+		this.delegate.shutdown ();
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A {@link OwmTransport} that serves the exchanges saved by a
+ * {@link RecordingTransport} without any network, to test or benchmark the
+ * client (decoding, caching, ...) with real responses.
+ * <p>
+ * Requests are matched by URL, so the client must use the base URL it used
+ * when recording. A URL recorded several times gets its responses in turn,
+ * starting again after the last. The responses are served right away or, with
+ * {@link Pacing#RECORDED}, after the latency they had when recorded. */
+public class ReplayTransport implements OwmTransport {
+	/** When the responses are served */
+	public enum Pacing {
+		/** right away */
+		FULL_SPEED,
+		/** after the latency recorded with them */
+		RECORDED
+	}
+
+	static private final class Replays {
+		final List<RecordedExchange> exchanges = new ArrayList<RecordedExchange> ();
+		final AtomicInteger next = new AtomicInteger ();
+
+		RecordedExchange next () {
+			return this.exchanges.get ((this.next.getAndIncrement () & Integer.MAX_VALUE) % this.exchanges.size ());
+		}
+	}
+
+	private final Map<String, Replays> replays = new HashMap<String, Replays> ();
+	private final Pacing pacing;
+	private final int exchangeCount;
+	private final LongAdder served = new LongAdder ();
+
+	/** @param recording the file written by a {@link RecordingTransport}
+	 * @param pacing when the responses are served
+	 * @throws IOException if the file can't be read or isn't a recording */
+	public ReplayTransport (File recording, Pacing pacing) throws IOException {
+		if (pacing == null)
+			throw new IllegalArgumentException ("The pacing can't be null.");
+		this.pacing = pacing;
+		int count = 0;
+		try (DataInputStream in = new DataInputStream (new BufferedInputStream (new FileInputStream (recording)))) {
+			RecordedExchange.readMagic (in, recording);
+			while (true) {
+				RecordedExchange exchange;
+				try {
+					exchange = RecordedExchange.read (in);
+				} catch (EOFException e) {
+					/* the end, or the last exchange was cut short */
+					break;
+				}
+				Replays replays = this.replays.get (exchange.url);
+				if (replays == null) {
+					replays = new Replays ();
+					this.replays.put (exchange.url, replays);
+				}
+				replays.exchanges.add (exchange);
+				count++;
+			}
+		}
+		this.exchangeCount = count;
+	}
+
+	public Pacing getPacing () {
+		return this.pacing;
+	}
+
+	/** @return the number of exchanges in the recording */
+	public int getExchangeCount () {
+		return this.exchangeCount;
+	}
+
+	/** @return the number of responses served */
+	public long getServedCount () {
+		return this.served.sum ();
+	}
+
+	/** @throws IOException if no response was recorded for the URL of the
+	 * 	request or the request was aborted */
+	@Override
+	public OwmTransport.Response execute (OwmTransport.Request request) throws IOException {
+		Replays replays = this.replays.get (request.getUrl ());
+		if (replays == null)
+			throw new IOException ("No response recorded for " + request.getUrl ());
+		RecordedExchange exchange = replays.next ();
+		if (this.pacing == Pacing.RECORDED && exchange.latencyNanos > 0) {
+			CountDownLatch aborted = new CountDownLatch (1);
+			request.setAbortHandler (aborted::countDown);
+			try {
+				if (aborted.await (exchange.latencyNanos, TimeUnit.NANOSECONDS))
+					throw new IOException ("The request was aborted");
+			} catch (InterruptedException e) {
+				Thread.currentThread ().interrupt ();
+				throw new InterruptedIOException ("Interrupted while replaying a response");
+			}
+		} else if (request.isAborted ()) {
+			throw new IOException ("The request was aborted");
+		}
+		this.served.increment ();
+		return exchange.toResponse ();
+	}
+
+	@Override
+	public void shutdown () {
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.InputStream;
+
+/** The measurements of a request to the network, reported to the
+ * {@link OwmMetrics} of the client and as {@link OwmEvents}.
+ * <p>
+ * The client only measures a request when it has metrics or a flight
+ * recording wants the events. A measure belongs to a single request and is
+ * used by a single thread, in the order of its methods. */
+final class RequestMeasure {
+	private final OwmMetrics metrics;
+	private final EndpointFamily family;
+	private final String subUrl;
+	private final OwmEvents.RequestEvent event;
+	private final ContentMeter meter = new ContentMeter ();
+	private OwmEvents.ExecuteEvent executeEvent = null;
+	private OwmEvents.DecodeEvent decodeEvent = null;
+	private int statusCode = -1;
+	private long sent;
+	private long decoding;
+
+	/** @param metrics the metrics of the client
+	 * @param subUrl the query
+	 * @return the measure of the request or null if nothing wants it */
+	static RequestMeasure start (OwmMetrics metrics, String subUrl) {
+		OwmEvents.RequestEvent event = new OwmEvents.RequestEvent ();
+		if (metrics == OwmMetrics.NONE && !event.isEnabled ())
+			return null;
+		return new RequestMeasure (metrics, subUrl, event);
+	}
+
+	private RequestMeasure (OwmMetrics metrics, String subUrl, OwmEvents.RequestEvent event) {
+		this.metrics = metrics;
+		this.family = EndpointFamily.of (subUrl);
+		this.subUrl = subUrl;
+		this.event = event;
+		metrics.requestStarted (this.family);
+		event.begin ();
+	}
+
+	/** The request is about to be sent */
+	void sending () {
+		if (this.event.isEnabled ()) {
+			this.executeEvent = new OwmEvents.ExecuteEvent ();
+			this.executeEvent.begin ();
+		}
+		this.sent = System.nanoTime ();
+	}
+
+	/** @param statusCode the status of the response, whose headers arrived */
+	void received (int statusCode) {
+		this.metrics.recordPhase (this.family, OwmMetrics.Phase.EXECUTE, System.nanoTime () - this.sent);
+		this.statusCode = statusCode;
+		if (this.executeEvent != null && this.executeEvent.shouldCommit ()) {
+			this.executeEvent.endpoint = this.subUrl;
+			this.executeEvent.statusCode = statusCode;
+			this.executeEvent.commit ();
+		}
+	}
+
+	/** @param raw the content as received
+	 * @return the content, counting the bytes read from it */
+	InputStream counting (InputStream raw) {
+		return this.meter.counting (raw);
+	}
+
+	/** The decoding starts
+	 * @param content the (inflated) content
+	 * @return the content to decode */
+	InputStream decoding (InputStream content) {
+		if (this.event.isEnabled ()) {
+			this.decodeEvent = new OwmEvents.DecodeEvent ();
+			this.decodeEvent.begin ();
+		}
+		this.decoding = System.nanoTime ();
+		return this.meter.timing (content);
+	}
+
+	/** @param content a copy of the content, read from memory
+	 * @return the content to decode */
+	InputStream timing (InputStream content) {
+		return this.meter.timing (content);
+	}
+
+	/** @param result the decoded response (null for a stream) */
+	void decoded (Object result) {
+		long decoded = System.nanoTime ();
+		long parseNanos = this.meter.getParseNanos (decoded - this.decoding);
+		this.metrics.recordPhase (this.family, OwmMetrics.Phase.READ, this.meter.getReadNanos ());
+		this.metrics.recordPhase (this.family, OwmMetrics.Phase.PARSE, parseNanos);
+		this.metrics.recordPhase (this.family, OwmMetrics.Phase.BUILD, this.meter.getBuildNanos ());
+		if (result instanceof AbstractOwmResponse && ((AbstractOwmResponse) result).hasCalcTime ()) {
+			/* the calctime is in seconds */
+			long serverNanos = (long) (((AbstractOwmResponse) result).getCalcTime () * 1e9);
+			this.metrics.recordServerTime (this.family, serverNanos, decoded - this.sent);
+		}
+		if (this.decodeEvent != null && this.decodeEvent.shouldCommit ()) {
+			this.decodeEvent.endpoint = this.subUrl;
+			this.decodeEvent.responseType = result != null ? result.getClass ().getSimpleName () : "stream";
+			this.decodeEvent.bytes = this.meter.getBytes ();
+			this.decodeEvent.items = this.meter.getBuiltCount ();
+			this.decodeEvent.readTime = this.meter.getReadNanos ();
+			this.decodeEvent.parseTime = parseNanos;
+			this.decodeEvent.buildTime = this.meter.getBuildNanos ();
+			this.decodeEvent.commit ();
+		}
+	}
+
+	/** The request is over, successfully or not */
+	void completed () {
+		this.metrics.requestCompleted (this.family, this.statusCode, this.meter.getBytes ());
+		this.event.end ();
+		if (this.event.shouldCommit ()) {
+			this.event.endpoint = this.subUrl;
+			this.event.family = this.family.name ();
+			this.event.statusCode = this.statusCode;
+			this.event.bytes = this.meter.getBytes ();
+			this.event.items = this.meter.getBuiltCount ();
+			this.event.commit ();
+		}
+	}
+}
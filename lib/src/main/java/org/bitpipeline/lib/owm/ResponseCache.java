@@ -0,0 +1,208 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/** An in-memory cache of parsed OWM responses, keyed by query.
+ * <p>
+ * Each {@link EndpointFamily} has its own time to live: current weather
+ * changes every few minutes while a day of history never changes. The cache
+ * holds at most <code>maxEntries</code> responses and evicts with the SIEVE
+ * algorithm: entries are kept in insertion order, a hit only sets a
+ * <i>visited</i> flag (so lookups never take a lock) and a hand sweeping from
+ * the oldest entry evicts the first one that wasn't visited since the hand
+ * last passed by. Like LRU it keeps the popular queries, but one-off queries
+ * (a scan of many cities) are evicted quickly instead of flushing the cache.
+ * <p>
+ * Cached responses are immutable and shared by every thread asking for them. */
+public class ResponseCache {
+	static private final class Node {
+		final String key;
+		volatile Object value;
+		volatile long expiresAt;
+		volatile boolean visited = false;
+		/* newer and older nodes in the queue; guarded by the cache lock */
+		Node newer;
+		Node older;
+
+		Node (String key, Object value, long expiresAt) {
+			this.key = key;
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int maxEntries;
+	private final LongSupplier nanoClock;
+	private final Map<EndpointFamily, Long> timeToLive = new EnumMap<EndpointFamily, Long> (EndpointFamily.class);
+	private final ConcurrentHashMap<String, Node> entries = new ConcurrentHashMap<String, Node> ();
+
+	/* the SIEVE queue: head is the newest node, tail the oldest */
+	private Node head = null;
+	private Node tail = null;
+	private Node hand = null;
+
+	private final LongAdder hits = new LongAdder ();
+	private final LongAdder misses = new LongAdder ();
+	private final LongAdder evictions = new LongAdder ();
+	private final LongAdder expirations = new LongAdder ();
+
+	/** Create a cache with the default time to live of each family: 10
+	 * minutes for current weather and searches, 1 hour for forecasts and 6
+	 * hours for history.
+	 * @param maxEntries the maximum number of cached responses */
+	public ResponseCache (int maxEntries) {
+		this (maxEntries, System::nanoTime);
+	}
+
+	ResponseCache (int maxEntries, LongSupplier nanoClock) {
+		if (maxEntries <= 0)
+			throw new IllegalArgumentException ("The cache must hold at least one entry.");
+		this.maxEntries = maxEntries;
+		this.nanoClock = nanoClock;
+		setTimeToLive (EndpointFamily.WEATHER, 10, TimeUnit.MINUTES);
+		setTimeToLive (EndpointFamily.FIND, 10, TimeUnit.MINUTES);
+		setTimeToLive (EndpointFamily.FORECAST, 1, TimeUnit.HOURS);
+		setTimeToLive (EndpointFamily.HISTORY, 6, TimeUnit.HOURS);
+	}
+
+	/** @param family the endpoint family
+	 * @param duration how long responses of the family are served from the
+	 * 	cache; zero disables caching of the family
+	 * @param unit the unit of the duration
+	 * @return this cache */
+	public synchronized ResponseCache setTimeToLive (EndpointFamily family, long duration, TimeUnit unit) {
+		if (duration < 0)
+			throw new IllegalArgumentException ("The time to live can't be negative.");
+		this.timeToLive.put (family, Long.valueOf (unit.toNanos (duration)));
+		return this;
+	}
+
+	public synchronized long getTimeToLive (EndpointFamily family, TimeUnit unit) {
+		return unit.convert (this.timeToLive.get (family).longValue (), TimeUnit.NANOSECONDS);
+	}
+
+	public int getMaxEntries () {
+		return this.maxEntries;
+	}
+
+	/** @return the number of cached responses (fresh or expired) */
+	public int size () {
+		return this.entries.size ();
+	}
+
+	/** Drop every cached response */
+	public synchronized void clear () {
+		this.entries.clear ();
+		this.head = null;
+		this.tail = null;
+		this.hand = null;
+	}
+
+	public CacheStats getStats () {
+		return new CacheStats (this.hits.sum (), this.misses.sum (), this.evictions.sum (), this.expirations.sum ());
+	}
+
+	/** @param key the query
+	 * @return the fresh response cached for the query or null */
+	Object get (String key) {
+		Node node = this.entries.get (key);
+		if (node == null) {
+			this.misses.increment ();
+			OwmEvents.cache (OwmEvents.MEMORY_CACHE, key, OwmEvents.MISS, 0);
+			return null;
+		}
+		if (this.nanoClock.getAsLong () - node.expiresAt >= 0) {
+			this.expirations.increment ();
+			this.misses.increment ();
+			OwmEvents.cache (OwmEvents.MEMORY_CACHE, key, OwmEvents.EXPIRED, 0);
+			return null;
+		}
+		node.visited = true;
+		this.hits.increment ();
+		OwmEvents.cache (OwmEvents.MEMORY_CACHE, key, OwmEvents.HIT, 0);
+		return node.value;
+	}
+
+	/** Look up a response ignoring its expiration, for when the OWM server
+	 * can't be queried. Stale lookups aren't counted in the statistics.
+	 * @param key the query
+	 * @return the response cached for the query (fresh or expired) or null */
+	Object getStale (String key) {
+		Node node = this.entries.get (key);
+		if (node == null)
+			return null;
+		OwmEvents.cache (OwmEvents.MEMORY_CACHE, key, OwmEvents.STALE, 0);
+		return node.value;
+	}
+
+	/** @param key the query
+	 * @param value the response to the query */
+	synchronized void put (String key, Object value) {
+		long ttl = this.timeToLive.get (EndpointFamily.of (key)).longValue ();
+		if (ttl == 0)
+			return;
+		long expiresAt = this.nanoClock.getAsLong () + ttl;
+		Node node = this.entries.get (key);
+		if (node != null) {
+			node.value = value;
+			node.expiresAt = expiresAt;
+			return;
+		}
+		if (this.entries.size () >= this.maxEntries)
+			evict ();
+		node = new Node (key, value, expiresAt);
+		node.older = this.head;
+		if (this.head != null)
+			this.head.newer = node;
+		this.head = node;
+		if (this.tail == null)
+			this.tail = node;
+		this.entries.put (key, node);
+	}
+
+	/** SIEVE: move the hand from the oldest towards the newest entry, clearing
+	 * the visited flags, until an entry that wasn't visited is found. */
+	private void evict () {
+		Node victim = this.hand != null ? this.hand : this.tail;
+		while (victim.visited) {
+			victim.visited = false;
+			victim = victim.newer != null ? victim.newer : this.tail;
+		}
+		this.hand = victim.newer;
+		remove (victim);
+		this.evictions.increment ();
+		OwmEvents.cache (OwmEvents.MEMORY_CACHE, victim.key, OwmEvents.EVICTION, 0);
+	}
+
+	private void remove (Node node) {
+		if (node.newer != null)
+			node.newer.older = node.older;
+		else
+			this.head = node.older;
+		if (node.older != null)
+			node.older.newer = node.newer;
+		else
+			this.tail = node.newer;
+		this.entries.remove (node.key, node);
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONException;
+
+/** Decodes a OWM response straight from the content stream of the HTTP
+ * response.
+ * @param <T> the type of the decoded response */
+interface ResponseDecoder<T> {
+	/** @param in the UTF-8 encoded response content
+	 * @return the decoded response
+	 * @throws IOException if the content can't be read
+	 * @throws JSONException if the content can't be parsed */
+	T decode (InputStream in) throws IOException, JSONException;
+}
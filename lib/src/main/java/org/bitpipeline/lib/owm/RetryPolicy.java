@@ -0,0 +1,187 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+/** When and how long to wait before retrying a failed request.
+ * <p>
+ * Only transient failures are retried: connection failures and timeouts,
+ * <code>5xx</code> replies and <code>429 Too Many Requests</code>. The
+ * n<sup>th</sup> retry waits a random time between zero and
+ * <code>min(maxDelay, baseDelay * 2<sup>n-1</sup>)</code> ("full jitter"), so
+ * that clients that failed together don't retry together; a
+ * <code>Retry-After</code> asked by the server is honoured, or the request
+ * given up if it's longer than <code>maxDelay</code>.
+ * <p>
+ * Retries are limited by a budget shared by all the requests using the
+ * policy: each request adds <code>ratio</code> of a retry to the budget (up
+ * to <code>reserve</code> retries) and each retry takes one. Once the budget
+ * is spent, failures are no longer retried, so during an outage the retries
+ * add at most <code>ratio</code> to the load of the OWM server. */
+public class RetryPolicy {
+	/** Sleeps between attempts; replaced in tests */
+	interface Sleeper {
+		void sleep (long millis) throws InterruptedException;
+	}
+
+	private volatile int maxAttempts = 3;
+	private volatile long baseDelayMillis = 100;
+	private volatile long maxDelayMillis = 5000;
+	private final Object budgetLock = new Object ();
+	/* guarded by budgetLock */
+	private double budgetRatio = 0.1;
+	private double budgetReserve = 10;
+	private double budget = 10;
+	private volatile Sleeper sleeper = Thread::sleep;
+
+	private final LongAdder retries = new LongAdder ();
+	private final LongAdder budgetExhausted = new LongAdder ();
+
+	/** @param maxAttempts the number of times a request is tried (1 disables
+	 * 	retrying; 3 by default)
+	 * @return this policy */
+	public RetryPolicy setMaxAttempts (int maxAttempts) {
+		if (maxAttempts < 1)
+			throw new IllegalArgumentException ("A request must be tried at least once.");
+		this.maxAttempts = maxAttempts;
+		return this;
+	}
+
+	public int getMaxAttempts () {
+		return this.maxAttempts;
+	}
+
+	/** @param baseDelay the maximum wait before the first retry (100ms by default)
+	 * @param maxDelay the maximum wait before any retry (5s by default)
+	 * @param unit the unit of the delays
+	 * @return this policy */
+	public RetryPolicy setBackoff (long baseDelay, long maxDelay, TimeUnit unit) {
+		if (baseDelay < 0 || maxDelay < baseDelay)
+			throw new IllegalArgumentException ("The delays must be positive and the base delay not above the maximum.");
+		this.baseDelayMillis = unit.toMillis (baseDelay);
+		this.maxDelayMillis = unit.toMillis (maxDelay);
+		return this;
+	}
+
+	public long getBaseDelay (TimeUnit unit) {
+		return unit.convert (this.baseDelayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public long getMaxDelay (TimeUnit unit) {
+		return unit.convert (this.maxDelayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/** @param ratio the retries allowed per request (0.1 by default)
+	 * @param reserve the retries that can be saved for a burst of failures
+	 * 	(10 by default), which is also the initial budget
+	 * @return this policy */
+	public RetryPolicy setBudget (double ratio, int reserve) {
+		if (!(ratio >= 0) || reserve < 0)
+			throw new IllegalArgumentException ("The budget can't be negative.");
+		synchronized (this.budgetLock) {
+			this.budgetRatio = ratio;
+			this.budgetReserve = reserve;
+			this.budget = reserve;
+		}
+		return this;
+	}
+
+	/** @return the number of retries done */
+	public long getRetryCount () {
+		return this.retries.sum ();
+	}
+
+	/** @return the number of failures not retried because the budget was spent */
+	public long getBudgetExhaustedCount () {
+		return this.budgetExhausted.sum ();
+	}
+
+	void setSleeper (Sleeper sleeper) {
+		this.sleeper = sleeper;
+	}
+
+	/** @param failure the failure of a request
+	 * @return true if the failure is transient and the request worth retrying */
+	boolean isRetryable (IOException failure) {
+		if (failure instanceof OwmHttpStatusException)
+			return ((OwmHttpStatusException) failure).isTransient ();
+		if (failure instanceof ConnectTimeoutException || failure instanceof SocketTimeoutException)
+			return true;
+		if (failure instanceof InterruptedIOException)
+			return false;
+		return failure instanceof ConnectException
+				|| failure instanceof NoRouteToHostException
+				|| failure instanceof NoHttpResponseException;
+	}
+
+	/** Account a new request in the retry budget */
+	void recordRequest () {
+		synchronized (this.budgetLock) {
+			this.budget = Math.min (this.budgetReserve, this.budget + this.budgetRatio);
+		}
+	}
+
+	/** Decide if a failed attempt is retried.
+	 * @param attempt the number of the attempt that failed (starting at 1)
+	 * @param failure the failure
+	 * @return how long to wait before the retry or -1 to give up */
+	long retryDelay (int attempt, IOException failure) {
+		if (attempt >= this.maxAttempts || !isRetryable (failure))
+			return -1;
+		long ceiling = Math.min (this.maxDelayMillis, this.baseDelayMillis << Math.min (attempt - 1, 30));
+		long delay = ceiling > 0 ? ThreadLocalRandom.current ().nextLong (ceiling + 1) : 0;
+		if (failure instanceof OwmHttpStatusException && ((OwmHttpStatusException) failure).hasRetryAfterMillis ()) {
+			long retryAfter = ((OwmHttpStatusException) failure).getRetryAfterMillis ();
+			if (retryAfter > this.maxDelayMillis)
+				return -1;
+			delay = Math.max (delay, retryAfter);
+		}
+		synchronized (this.budgetLock) {
+			if (this.budget < 1) {
+				this.budgetExhausted.increment ();
+				return -1;
+			}
+			this.budget -= 1;
+		}
+		this.retries.increment ();
+		return delay;
+	}
+
+	/** Wait before a retry
+	 * @param millis the time to wait
+	 * @throws InterruptedIOException if interrupted */
+	void sleep (long millis) throws InterruptedIOException {
+		if (millis <= 0)
+			return;
+		try {
+			this.sleeper.sleep (millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ("Interrupted while waiting to retry");
+		}
+	}
+}
@@ -26,6 +26,7 @@ import org.json.JSONObject;
 public class SampledWeatherData extends AbstractWeatherData {
 	private static final String JSON_PRECIPITATION   = "precipitation";
 	private static final String JSON_PRECIPITATION_V = "v";
+	private static final String JSON_LAST_HOUR       = "1h";
 
 	static abstract class SampledValue {
 		protected static final String JSON_VALUE = "v";
@@ -301,16 +302,16 @@ public class SampledWeatherData extends AbstractWeatherData {
 		}
 
 		public SampledIValue getMeasure (int lastHours) {
-			return this.measurements.get (Integer.valueOf (lastHours));
+			return getMeasure (Integer.valueOf (lastHours));
 		}
 		public SampledIValue getMeasure (Integer lastHours) {
-			return this.measurements.get (lastHours);
+			return this.measurements != null ? this.measurements.get (lastHours) : null;
 		}
 
 		public Set<Integer> measurements () {
 			if (this.measurements == null)
 				return Collections.emptySet ();
-			return this.measurements.keySet ();
+			return Collections.unmodifiableSet (this.measurements.keySet ());
 		}
 	}
 
@@ -368,6 +369,52 @@ public class SampledWeatherData extends AbstractWeatherData {
 		}
 	}
 
+	/** @param json a JSON object with sampled values
+	 * @param key the key of a sampled value
+	 * @return the value, <code>Float.NaN</code> if there's none */
+	static float decodeValue (JSONObject json, String key) {
+		JSONObject jsonSampledValue = json.optJSONObject (key);
+		if (jsonSampledValue == null)
+			return Float.NaN;
+		return (float) jsonSampledValue.optDouble (SampledValue.JSON_VALUE, Float.NaN);
+	}
+
+	/** @param json a JSON sampled weather data
+	 * @param key the key of a sampled value of the main
+	 * @return the value of the weather data, or else of its main, as
+	 * 	{@link #getTemp()} reads it */
+	static float decodeMainValue (JSONObject json, String key) {
+		float value = SampledWeatherData.decodeValue (json, key);
+		if (!Float.isNaN (value))
+			return value;
+		JSONObject jsonMain = json.optJSONObject (AbstractWeatherData.JSON_MAIN);
+		return jsonMain != null ? SampledWeatherData.decodeValue (jsonMain, key) : Float.NaN;
+	}
+
+	/** @param jsonPrecipitation the JSON rain or snow of a sampled weather data
+	 * @return the measure of the last hour, or else of today, as
+	 * 	{@link #getRain()} and {@link #getSnow()} read it */
+	static int decodeRecentMeasure (JSONObject jsonPrecipitation) {
+		JSONObject jsonLastHour = jsonPrecipitation.optJSONObject (SampledWeatherData.JSON_LAST_HOUR);
+		int measure = jsonLastHour != null ? jsonLastHour.optInt (SampledValue.JSON_VALUE, Integer.MIN_VALUE) : Integer.MIN_VALUE;
+		if (measure != Integer.MIN_VALUE)
+			return measure;
+		return jsonPrecipitation.optInt (Precipitation.JSON_TODAY, Integer.MIN_VALUE);
+	}
+
+	/** @param json a JSON sampled weather data
+	 * @return the sampled precipitation, <code>Integer.MIN_VALUE</code> if
+	 * 	there's none */
+	static int decodePrecipitationValue (JSONObject json) {
+		JSONObject jsonPrecipitation = json.optJSONObject (SampledWeatherData.JSON_PRECIPITATION);
+		if (jsonPrecipitation == null)
+			return Integer.MIN_VALUE;
+		JSONObject jsonPrecipitationValue = jsonPrecipitation.optJSONObject (SampledWeatherData.JSON_PRECIPITATION_V);
+		if (jsonPrecipitationValue == null)
+			return Integer.MIN_VALUE;
+		return jsonPrecipitationValue.optInt (SampledValue.JSON_VALUE, Integer.MIN_VALUE);
+	}
+
 	public boolean hasTemp () {
 		return this.temp != null && this.temp.hasValue ()
 				|| hasMain () && this.main.hasTemp ();
@@ -472,10 +519,10 @@ public class SampledWeatherData extends AbstractWeatherData {
 		if (!hasSnow ())
 			return Integer.MIN_VALUE;
 
-		SampledIValue lastHourRainReport = this.rain.getMeasure (1);
-		if (lastHourRainReport != null && lastHourRainReport.hasValue ())
-			return lastHourRainReport.getValue ();
-		return this.rain.getToday ();
+		SampledIValue lastHourSnowReport = this.snow.getMeasure (1);
+		if (lastHourSnowReport != null && lastHourSnowReport.hasValue ())
+			return lastHourSnowReport.getValue ();
+		return this.snow.getToday ();
 	}
 
 	public int getPrecipitation () {
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.json.JSONException;
+
+/** Coalesces concurrent identical queries: while a query is in flight every
+ * other caller asking for the same key waits for it and gets the same
+ * result (or the same failure) instead of doing its own round trip. */
+final class SingleFlight {
+	/** A query that can be shared */
+	interface Call<T> {
+		T call () throws IOException, JSONException;
+	}
+
+	static private final class Flight {
+		private final CountDownLatch done = new CountDownLatch (1);
+		private Object result;
+		private Throwable failure;
+	}
+
+	private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight> ();
+
+	/** Run a call, or join the identical one that's already in flight
+	 * @param key the key identifying identical calls
+	 * @param call the call to run if none is in flight
+	 * @return the result of the call
+	 * @throws IOException if the call failed with it (or the wait was interrupted)
+	 * @throws JSONException if the call failed with it */
+	@SuppressWarnings ("unchecked")
+	<T> T execute (String key, Call<T> call) throws IOException, JSONException {
+		Flight flight = new Flight ();
+		Flight inFlight = this.flights.putIfAbsent (key, flight);
+		if (inFlight != null)
+			return (T) SingleFlight.await (inFlight);
+
+		try {
+			T result = call.call ();
+			flight.result = result;
+			return result;
+		} catch (IOException | JSONException | RuntimeException | Error e) {
+			flight.failure = e;
+			throw e;
+		} finally {
+			this.flights.remove (key, flight);
+			flight.done.countDown ();
+		}
+	}
+
+	/** @return the number of calls in flight */
+	int inFlight () {
+		return this.flights.size ();
+	}
+
+	static private Object await (Flight flight) throws IOException, JSONException {
+		try {
+			flight.done.await ();
+		} catch (InterruptedException e) {
+			Thread.currentThread ().interrupt ();
+			throw new InterruptedIOException ("Interrupted while waiting for an identical query in flight");
+		}
+		Throwable failure = flight.failure;
+		if (failure == null)
+			return flight.result;
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof JSONException)
+			throw (JSONException) failure;
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		throw (Error) failure;
+	}
+}
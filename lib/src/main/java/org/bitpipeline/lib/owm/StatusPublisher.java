@@ -0,0 +1,191 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.json.JSONException;
+
+/** Publishes the weather status list of a query one station at a time, as
+ * each element of the <code>list</code> array is decoded from the response.
+ * <p>
+ * Each subscription sends its own query once the subscriber first requests
+ * stations. The thread decoding the response delivers the stations and waits
+ * for demand before decoding the next one, so a slow subscriber holds back
+ * the transfer instead of having the stations pile up in memory. Cancelling
+ * the subscription aborts the query. */
+final class StatusPublisher implements Flow.Publisher<StatusWeatherData> {
+	/** Sends the query, decoding its response with the given decoder */
+	interface Query {
+		void send (ResponseDecoder<Void> decoder, HedgingPolicy.Attempt attempt) throws IOException, JSONException;
+	}
+
+	/* Thrown through the decoder to stop it once the subscription is cancelled */
+	static private final class Cancelled extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		Cancelled () {
+			super ("The subscription was cancelled", null, false, false);
+		}
+	}
+
+	private final Supplier<Executor> executor;
+	private final DecodeMode mode;
+	private final Query query;
+
+	/** @param executor supplies the executor where the queries are sent
+	 * @param mode when to decode the nested sections of the statuses
+	 * @param query the query */
+	StatusPublisher (Supplier<Executor> executor, DecodeMode mode, Query query) {
+		this.executor = executor;
+		this.mode = mode;
+		this.query = query;
+	}
+
+	@Override
+	public void subscribe (Flow.Subscriber<? super StatusWeatherData> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException ("The subscriber can't be null.");
+		subscriber.onSubscribe (new StatusSubscription (subscriber));
+	}
+
+	private final class StatusSubscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super StatusWeatherData> subscriber;
+		private final HedgingPolicy.Attempt attempt = new HedgingPolicy.Attempt ();
+		private final ReentrantLock lock = new ReentrantLock ();
+		private final Condition demanded = this.lock.newCondition ();
+
+		/* guarded by lock */
+		private long demand = 0;
+		private boolean started = false;
+		private boolean cancelled = false;
+		private IllegalArgumentException invalidRequest = null;
+
+		StatusSubscription (Flow.Subscriber<? super StatusWeatherData> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request (long n) {
+			boolean start;
+			this.lock.lock ();
+			try {
+				if (this.cancelled)
+					return;
+				if (n <= 0) {
+					if (this.invalidRequest == null)
+						this.invalidRequest = new IllegalArgumentException ("The number of requested stations must be positive, was " + n);
+				} else {
+					this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+				}
+				start = !this.started;
+				this.started = true;
+				this.demanded.signalAll ();
+			} finally {
+				this.lock.unlock ();
+			}
+			if (start) {
+				try {
+					StatusPublisher.this.executor.get ().execute (this::run);
+				} catch (RejectedExecutionException e) {
+					if (markDone ())
+						this.subscriber.onError (e);
+				}
+			}
+		}
+
+		@Override
+		public void cancel () {
+			markDone ();
+			this.attempt.abort ();
+		}
+
+		/** @return true if the subscription wasn't done yet */
+		private boolean markDone () {
+			this.lock.lock ();
+			try {
+				boolean wasDone = this.cancelled;
+				this.cancelled = true;
+				this.demanded.signalAll ();
+				return !wasDone;
+			} finally {
+				this.lock.unlock ();
+			}
+		}
+
+		private void run () {
+			Throwable failure = null;
+			try {
+				StatusPublisher.this.query.send (in -> {
+					JsonStreamReader.readEnvelope (in, (json, element) -> StatusWeatherData.create (element, StatusPublisher.this.mode), this::emit,
+							WeatherData.deferredSections (StatusPublisher.this.mode));
+					checkRequests ();
+					return null;
+				}, this.attempt);
+			} catch (Cancelled e) {
+				return;
+			} catch (UncheckedIOException e) {
+				failure = e.getCause ();
+			} catch (Throwable t) {
+				failure = t;
+			}
+			if (!markDone ())
+				return;
+			if (failure == null)
+				this.subscriber.onComplete ();
+			else
+				this.subscriber.onError (failure);
+		}
+
+		/* Deliver a station once the subscriber has asked for it */
+		private void emit (StatusWeatherData status) {
+			this.lock.lock ();
+			try {
+				while (this.demand == 0 && !this.cancelled && this.invalidRequest == null)
+					this.demanded.await ();
+				checkRequests ();
+				if (this.demand != Long.MAX_VALUE)
+					this.demand--;
+			} catch (InterruptedException e) {
+				Thread.currentThread ().interrupt ();
+				throw new UncheckedIOException (new InterruptedIOException ("Interrupted while waiting for the subscriber"));
+			} finally {
+				this.lock.unlock ();
+			}
+			this.subscriber.onNext (status);
+		}
+
+		private void checkRequests () {
+			this.lock.lock ();
+			try {
+				if (this.cancelled)
+					throw new Cancelled ();
+				if (this.invalidRequest != null)
+					throw this.invalidRequest;
+			} finally {
+				this.lock.unlock ();
+			}
+		}
+	}
+}
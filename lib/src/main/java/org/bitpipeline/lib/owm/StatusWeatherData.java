@@ -20,7 +20,7 @@ import org.json.JSONObject;
 public class StatusWeatherData extends LocalizedWeatherData {
 	private static final String JSON_ID      = "id";
 	private static final String JSON_NAME    = "name";
-	private static final String JSON_STATION = "station";
+	static final String JSON_STATION = "station";
 
 	static public class Station {
 		private static final String JSON_ZOOM = "zoom";
@@ -31,6 +31,10 @@ public class StatusWeatherData extends LocalizedWeatherData {
 			this.zoom = json.optInt (Station.JSON_ZOOM, Integer.MIN_VALUE);
 		}
 
+		Station (int zoom) {
+			this.zoom = zoom;
+		}
+
 		public boolean hasZoom () {
 			return this.zoom != Integer.MIN_VALUE;
 		}
@@ -38,16 +42,62 @@ public class StatusWeatherData extends LocalizedWeatherData {
 			return this.zoom;
 		}
 	}
+	/** Decodes a single weather status straight from the HTTP content stream */
+	static final ResponseDecoder<StatusWeatherData> DECODER = in -> JsonStreamReader.readObject (in, StatusWeatherData::new);
+	static final ResponseDecoder<StatusWeatherData> LAZY_DECODER = in -> JsonStreamReader.readObject (in,
+			json -> new StatusWeatherData (json, DecodeMode.LAZY), WeatherData.deferredSections (DecodeMode.LAZY));
+	static final ResponseDecoder<StatusWeatherData> COMPACT_DECODER = in -> JsonStreamReader.readObject (in,
+			CompactStatusWeatherData::new);
+
 	private final long id;
 	private final String name;
-	private final Station station;
+	private volatile Station station;
 
 	public StatusWeatherData (JSONObject json) {
-		super (json);
+		this (json, DecodeMode.EAGER);
+	}
+
+	/** @param json the JSON weather status
+	 * @param mode when to decode the nested sections */
+	public StatusWeatherData (JSONObject json, DecodeMode mode) {
+		this (json, mode, true);
+	}
+
+	/** @param json the JSON weather status
+	 * @param mode when to decode the nested sections
+	 * @param sections false when a subclass keeps the main, wind, clouds,
+	 * 	weather conditions, coordinates and station itself */
+	StatusWeatherData (JSONObject json, DecodeMode mode, boolean sections) {
+		super (json, mode, sections);
 		this.id = json.optLong (StatusWeatherData.JSON_ID, Long.MIN_VALUE);
 		this.name = json.optString (StatusWeatherData.JSON_NAME);
+		if (mode != DecodeMode.LAZY && sections)
+			this.station = StatusWeatherData.decodeStation (json);
+	}
+
+	/** @param json the JSON weather status
+	 * @param mode the decode mode
+	 * @return the weather status, a compact one in {@link DecodeMode#COMPACT} */
+	static StatusWeatherData create (JSONObject json, DecodeMode mode) {
+		return mode == DecodeMode.COMPACT ? new CompactStatusWeatherData (json) : new StatusWeatherData (json, mode);
+	}
+
+	/** @param mode a decode mode
+	 * @return the decoder of single weather statuses in the mode */
+	static ResponseDecoder<StatusWeatherData> decoder (DecodeMode mode) {
+		switch (mode) {
+			case LAZY:
+				return StatusWeatherData.LAZY_DECODER;
+			case COMPACT:
+				return StatusWeatherData.COMPACT_DECODER;
+			default:
+				return StatusWeatherData.DECODER;
+		}
+	}
+
+	static Station decodeStation (JSONObject json) {
 		JSONObject stationJson = json.optJSONObject (StatusWeatherData.JSON_STATION);
-		this.station = stationJson != null ? new Station (stationJson) : null;
+		return stationJson != null ? new Station (stationJson) : null;
 	}
 
 	public boolean hasId () {
@@ -65,9 +115,15 @@ public class StatusWeatherData extends LocalizedWeatherData {
 	}
 
 	public boolean hasStation () {
-		return this.station != null;
+		return getStation () != null;
 	}
 	public Station getStation () {
-		return this.station;
+		Station decoded = this.station;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_STATION);
+			if (element != null)
+				this.station = decoded = StatusWeatherData.decodeStation (element);
+		}
+		return decoded;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Remembers the validators (<code>ETag</code> and <code>Last-Modified</code>)
+ * of the last response of each query, together with the response parsed from
+ * it, so that a query can be revalidated with a conditional GET and a
+ * <code>304 Not Modified</code> answered with the already parsed response.
+ * The least recently used queries are forgotten once the cache is full. */
+final class ValidatorCache {
+	static final String ETAG_HEADER              = "ETag";
+	static final String LAST_MODIFIED_HEADER     = "Last-Modified";
+	static final String IF_NONE_MATCH_HEADER     = "If-None-Match";
+	static final String IF_MODIFIED_SINCE_HEADER = "If-Modified-Since";
+
+	static final class Entry {
+		final String etag;
+		final String lastModified;
+		final Object response;
+
+		Entry (String etag, String lastModified, Object response) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.response = response;
+		}
+	}
+
+	private final Map<String, Entry> entries;
+
+	ValidatorCache (final int maxEntries) {
+		this.entries = new LinkedHashMap<String, Entry> (16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<String, ValidatorCache.Entry> eldest) {
+				return size () > maxEntries;
+			}
+		};
+	}
+
+	synchronized Entry get (String subUrl) {
+		return this.entries.get (subUrl);
+	}
+
+	/** Remember the validators of a response. Responses without validators
+	 * can't be revalidated and make the query be forgotten. */
+	synchronized void put (String subUrl, String etag, String lastModified, Object response) {
+		if (etag == null && lastModified == null)
+			this.entries.remove (subUrl);
+		else
+			this.entries.put (subUrl, new Entry (etag, lastModified, response));
+	}
+
+	synchronized int size () {
+		return this.entries.size ();
+	}
+}
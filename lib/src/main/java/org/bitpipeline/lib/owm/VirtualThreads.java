@@ -0,0 +1,122 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Support for running {@link OwmClient} requests on virtual threads (Java
+ * 21 and later).
+ * <p>
+ * The blocking client is safe to share between any number of threads and
+ * doesn't pin the carrier thread of a virtual thread while it waits for the
+ * network: the configuration of the client is kept in volatile fields, the
+ * caches, rate limiter and circuit breaker only hold monitors for short
+ * in-memory updates (the disk cache writes its files holding a
+ * <code>ReentrantLock</code>) and the connection pool of the transport waits
+ * on <code>ReentrantLock</code> conditions. A virtual thread per request makes
+ * large fan-outs (e.g. {@link OwmClient#currentWeatherAtCities(int[], int, long, java.util.concurrent.TimeUnit)})
+ * cheap; the concurrency is then bounded by the connection pool, which
+ * {@link #transportConfig(int)} sizes accordingly.
+ * <p>
+ * On older JVMs the executors fall back to a cached pool of platform daemon
+ * threads, so the same code runs everywhere. */
+public final class VirtualThreads {
+	/* Executors.newVirtualThreadPerTaskExecutor () or null before Java 21 */
+	static private final MethodHandle NEW_VIRTUAL_THREAD_EXECUTOR = VirtualThreads.findVirtualThreadExecutor ();
+
+	private VirtualThreads () {
+	}
+
+	/** @return true if the JVM supports virtual threads */
+	static public boolean isSupported () {
+		return VirtualThreads.NEW_VIRTUAL_THREAD_EXECUTOR != null;
+	}
+
+	/** @return an executor that runs each task on a new virtual thread or, if
+	 * 	the JVM doesn't support them, on a cached pool of platform daemon threads */
+	static public ExecutorService newExecutor () {
+		if (VirtualThreads.NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+			try {
+				return (ExecutorService) VirtualThreads.NEW_VIRTUAL_THREAD_EXECUTOR.invoke ();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new IllegalStateException ("Unable to create a virtual thread executor", t);
+			}
+		}
+		return Executors.newCachedThreadPool (new ThreadFactory () {
+			private final AtomicInteger count = new AtomicInteger ();
+
+			@Override
+			public Thread newThread (Runnable runnable) {
+				Thread thread = new Thread (runnable, "owm-client-thread-" + this.count.incrementAndGet ());
+				thread.setDaemon (true);
+				return thread;
+			}
+		});
+	}
+
+	/** @param maxConcurrentRequests the number of requests expected to be in
+	 * 	flight at once
+	 * @return a transport configuration with a connection for each of them */
+	static public PooledTransportConfig transportConfig (int maxConcurrentRequests) {
+		if (maxConcurrentRequests <= 0)
+			throw new IllegalArgumentException ("The number of concurrent requests must be positive.");
+		return new PooledTransportConfig ()
+				.setMaxConnectionsPerRoute (maxConcurrentRequests)
+				.setMaxConnectionsTotal (maxConcurrentRequests);
+	}
+
+	/** Create a client whose background and bulk requests run on virtual
+	 * threads. The client owns its executor: {@link OwmClient#shutdown()}
+	 * shuts it down along with the connections.
+	 * @param maxConcurrentRequests the number of requests expected to be in
+	 * 	flight at once
+	 * @return the client */
+	static public OwmClient newClient (int maxConcurrentRequests) {
+		OwmClient client = new OwmClient (VirtualThreads.transportConfig (maxConcurrentRequests));
+		client.setOwnedExecutor (VirtualThreads.newExecutor ());
+		return client;
+	}
+
+	static private MethodHandle findVirtualThreadExecutor () {
+		MethodHandle newExecutor;
+		try {
+			newExecutor = MethodHandles.publicLookup ().findStatic (Executors.class,
+					"newVirtualThreadPerTaskExecutor", MethodType.methodType (ExecutorService.class));
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+		/* Java 19 and 20 have the method but, unless the preview features are
+		 * enabled, it throws: create an executor once to know */
+		try {
+			((ExecutorService) newExecutor.invoke ()).shutdown ();
+		} catch (UnsupportedOperationException e) {
+			return null;
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException ("Unable to create a virtual thread executor", t);
+		}
+		return newExecutor;
+	}
+}
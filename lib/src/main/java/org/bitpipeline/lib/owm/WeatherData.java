@@ -15,15 +15,22 @@
  ***************************************************************************/
 package org.bitpipeline.lib.owm;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class WeatherData extends AbstractWeatherData {
@@ -45,6 +52,14 @@ public class WeatherData extends AbstractWeatherData {
 			this.humidity = (float) json.optDouble (Main.JSON_HUMIDITY);
 		}
 
+		Main (float temp, float tempMin, float tempMax, float pressure, float humidity) {
+			this.temp = temp;
+			this.tempMin = tempMin;
+			this.tempMax = tempMax;
+			this.pressure = pressure;
+			this.humidity = humidity;
+		}
+
 		public boolean hasTemp () {
 			return !Float.isNaN (this.temp);
 		}
@@ -96,6 +111,14 @@ public class WeatherData extends AbstractWeatherData {
 			this.varEnd = json.optInt (Wind.JSON_VAR_END, Integer.MIN_VALUE);
 		}
 
+		Wind (float speed, int deg, float gust, int varBeg, int varEnd) {
+			this.speed = speed;
+			this.deg = deg;
+			this.gust = gust;
+			this.varBeg = varBeg;
+			this.varEnd = varEnd;
+		}
+
 		public boolean hasSpeed () {
 			return !Float.isNaN (this.speed);
 		}
@@ -133,45 +156,132 @@ public class WeatherData extends AbstractWeatherData {
 	}
 
 	private static class TimedDetails {
-		private Map<Integer, Integer> measurements = null;
+		static private final int HOURS = 24;
+		static private final String LAST_HOUR = "1h";
+
+		/* the measure of the last n hours is in slot n - 1, Integer.MIN_VALUE
+		 * when there is none */
+		private int[] measurements = null;
+		private int count = 0;
 
 		TimedDetails () {
 		}
 
 		TimedDetails (JSONObject json) {
-			for (int i=1; i<=24; i++) {
-				String value = json.optString (String.format (Locale.ROOT, "%dh", i));
-				if (value.length () > 0) {
-					try {
-						putMeasure (i, Integer.valueOf (value));
-					} catch (NumberFormatException nfe) {
-						continue;
-					}
-				}
+			Iterator<?> keys = json.keys ();
+			while (keys.hasNext ()) {
+				Object key = keys.next ();
+				int lastHours = TimedDetails.lastHoursOf (key);
+				if (lastHours > 0)
+					putMeasure (lastHours, json.opt ((String) key));
 			}
 		}
 
+		/* @return n for a "nh" key with n in [1, 24], 0 for any other key */
+		static private int lastHoursOf (Object key) {
+			if (!(key instanceof String))
+				return 0;
+			String name = (String) key;
+			int length = name.length ();
+			if (length < 2 || length > 3 || name.charAt (length - 1) != 'h' || name.charAt (0) == '0')
+				return 0;
+			int lastHours = 0;
+			for (int i = 0; i < length - 1; i++) {
+				char c = name.charAt (i);
+				if (c < '0' || c > '9')
+					return 0;
+				lastHours = lastHours * 10 + (c - '0');
+			}
+			return lastHours <= TimedDetails.HOURS ? lastHours : 0;
+		}
+
 		public boolean hasMeasures ()  {
-			return this.measurements != null && this.measurements.size () > 0;
+			return this.count > 0;
+		}
+		/* only integer values (or strings of them) are measures, anything
+		 * else is Integer.MIN_VALUE */
+		static private int measureOf (Object value) {
+			if (value instanceof Integer)
+				return ((Integer) value).intValue ();
+			if (value instanceof Long) {
+				long longValue = ((Long) value).longValue ();
+				if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE)
+					return Integer.MIN_VALUE;
+				return (int) longValue;
+			}
+			if (value instanceof String) {
+				try {
+					return Integer.parseInt ((String) value);
+				} catch (NumberFormatException nfe) {
+					return Integer.MIN_VALUE;
+				}
+			}
+			return Integer.MIN_VALUE;
 		}
-		private void putMeasure (int lastHours, Integer value) {
-			if (this.measurements == null)
-				this.measurements = new HashMap<Integer, Integer> ();
-			this.measurements.put (Integer.valueOf (lastHours), value);
+
+		private void putMeasure (int lastHours, Object value) {
+			int measure = TimedDetails.measureOf (value);
+			if (measure == Integer.MIN_VALUE)
+				return;
+			if (this.measurements == null) {
+				this.measurements = new int[TimedDetails.HOURS];
+				Arrays.fill (this.measurements, Integer.MIN_VALUE);
+			}
+			if (this.measurements[lastHours - 1] == Integer.MIN_VALUE)
+				this.count++;
+			this.measurements[lastHours - 1] = measure;
 		}
 		public int getMeasure (int lastHours) {
-			return getMeasure (Integer.valueOf (lastHours));
+			if (this.measurements == null || lastHours < 1 || lastHours > TimedDetails.HOURS)
+				return Integer.MIN_VALUE;
+			return this.measurements[lastHours - 1];
 		}
 		public int getMeasure (Integer lastHours) {
-			if (this.measurements == null)
-				return Integer.MIN_VALUE;
-			Integer value = this.measurements.get (lastHours);
-			return value != null? value.intValue () : Integer.MIN_VALUE;
+			return lastHours != null ? getMeasure (lastHours.intValue ()) : Integer.MIN_VALUE;
 		}
+		/** @return the hours (in ascending order) that have measures */
 		public Set<Integer> measurements () {
-			if (this.measurements == null)
+			if (this.count == 0)
 				return Collections.emptySet ();
-			return this.measurements.keySet ();
+			return new AbstractSet<Integer> () {
+				@Override
+				public Iterator<Integer> iterator () {
+					return new Iterator<Integer> () {
+						private int next = nextMeasured (0);
+
+						private int nextMeasured (int from) {
+							int slot = from;
+							while (slot < TimedDetails.HOURS && TimedDetails.this.measurements[slot] == Integer.MIN_VALUE)
+								slot++;
+							return slot;
+						}
+
+						@Override
+						public boolean hasNext () {
+							return this.next < TimedDetails.HOURS;
+						}
+
+						@Override
+						public Integer next () {
+							if (!hasNext ())
+								throw new NoSuchElementException ();
+							int slot = this.next;
+							this.next = nextMeasured (slot + 1);
+							return Integer.valueOf (slot + 1);
+						}
+					};
+				}
+
+				@Override
+				public boolean contains (Object o) {
+					return o instanceof Integer && getMeasure ((Integer) o) != Integer.MIN_VALUE;
+				}
+
+				@Override
+				public int size () {
+					return TimedDetails.this.count;
+				}
+			};
 		}
 	}
 
@@ -191,12 +301,26 @@ public class WeatherData extends AbstractWeatherData {
 				OVC ("overcast {100%}"),
 				VV ("vertical visibility");
 
+				static private final Map<String, SkyCondition> BY_NAME = new HashMap<String, SkyCondition> ();
+				static {
+					for (SkyCondition condition : SkyCondition.values ())
+						SkyCondition.BY_NAME.put (condition.name (), condition);
+				}
+
 				private final String description;
 
 				private SkyCondition (String description) {
 					this.description = description;
 				}
 
+				/** @param name the name of a sky condition
+				 * @return the sky condition or {@link #UNKNOWN} if there is none
+				 * 	with that name */
+				static public SkyCondition of (String name) {
+					SkyCondition condition = SkyCondition.BY_NAME.get (name);
+					return condition != null ? condition : SkyCondition.UNKNOWN;
+				}
+
 				public String getDescription () {
 					return this.description;
 				}
@@ -208,37 +332,41 @@ public class WeatherData extends AbstractWeatherData {
 				CB ("cumulonimbus"),
 				ACC ("altocumulus castellanus");
 
+				static private final Map<String, Cumulus> BY_NAME = new HashMap<String, Cumulus> ();
+				static {
+					for (Cumulus cumulus : Cumulus.values ())
+						Cumulus.BY_NAME.put (cumulus.name (), cumulus);
+				}
+
 				private final String description;
 
 				private Cumulus (String description) {
 					this.description = description;
 				}
 
+				/** @param name the name of a cumulus
+				 * @return the cumulus or {@link #UNKNOWN} if there is none with
+				 * 	that name */
+				static public Cumulus of (String name) {
+					Cumulus cumulus = Cumulus.BY_NAME.get (name);
+					return cumulus != null ? cumulus : Cumulus.UNKNOWN;
+				}
+
 				public String getDescription () {
 					return this.description;
 				}
 			}
 
-			private SkyCondition skyCondition = null;
-			private Cumulus cumulus = null;
+			private final SkyCondition skyCondition;
+			private final Cumulus cumulus;
 			private final int distance;
 
 			public CloudDescription (JSONObject json) {
 				this.distance = json.optInt (CloudDescription.JSON_DISTANCE, Integer.MIN_VALUE);
-				if (json.has (CloudDescription.JSON_CONDITION)) {
-					try {
-						this.skyCondition = SkyCondition.valueOf (json.optString (CloudDescription.JSON_CONDITION));
-					} catch (IllegalArgumentException e) {
-						this.skyCondition = SkyCondition.UNKNOWN;
-					}
-				}
-				if (json.has (CloudDescription.JSON_CUMULUS)) {
-					try {
-						this.cumulus = Cumulus.valueOf (json.optString (CloudDescription.JSON_CUMULUS));
-					} catch (IllegalArgumentException e) {
-						this.cumulus = Cumulus.UNKNOWN;
-					}
-				}
+				this.skyCondition = json.has (CloudDescription.JSON_CONDITION) ?
+						SkyCondition.of (json.optString (CloudDescription.JSON_CONDITION)) : null;
+				this.cumulus = json.has (CloudDescription.JSON_CUMULUS) ?
+						Cumulus.of (json.optString (CloudDescription.JSON_CUMULUS)) : null;
 			}
 
 			public boolean hasDistance () {
@@ -272,15 +400,21 @@ public class WeatherData extends AbstractWeatherData {
 			this.conditions = Collections.emptyList ();
 		}
 
+		Clouds (int all) {
+			this.all = all;
+			this.conditions = Collections.emptyList ();
+		}
+
 		public Clouds (JSONArray jsonArray) {
 			this.all = Integer.MIN_VALUE;
-			this.conditions = new ArrayList<CloudDescription> (jsonArray.length ());
+			List<CloudDescription> conditionsList = new ArrayList<CloudDescription> (jsonArray.length ());
 			for (int i = 0; i < jsonArray.length (); i++) {
 				JSONObject jsonCloudDescription = jsonArray.optJSONObject (i);
 				if (jsonCloudDescription != null)
-					this.conditions.add (
+					conditionsList.add (
 							new CloudDescription (jsonCloudDescription));
 			}
+			this.conditions = Collections.unmodifiableList (conditionsList);
 		}
 
 		public boolean hasAll () {
@@ -374,17 +508,26 @@ public class WeatherData extends AbstractWeatherData {
 			WINDY                           (905),
 			HAIL                            (906);
 
-			private int id;
+			/* the codes by id - FIRST_ID, the known ids being in [200, 999] */
+			static private final int FIRST_ID = 200;
+			static private final ConditionCode[] BY_ID = new ConditionCode[800];
+			static {
+				for (ConditionCode condition : ConditionCode.values ()) {
+					if (condition != ConditionCode.UNKNOWN)
+						ConditionCode.BY_ID[condition.id - ConditionCode.FIRST_ID] = condition;
+				}
+			}
+
+			private final int id;
 			private ConditionCode (int code) {
 				this.id = code;
 			}
 
 			static public ConditionCode valueof (int id) {
-				for (ConditionCode condition : ConditionCode.values ()) {
-					if (condition.id == id)
-						return condition;
-				}
-				return ConditionCode.UNKNOWN;
+				int index = id - ConditionCode.FIRST_ID;
+				if (index < 0 || index >= ConditionCode.BY_ID.length || ConditionCode.BY_ID[index] == null)
+					return ConditionCode.UNKNOWN;
+				return ConditionCode.BY_ID[index];
 			}
 
 			public int getId () {
@@ -397,10 +540,15 @@ public class WeatherData extends AbstractWeatherData {
 		private static final String JSON_DESCRIPTION = "description";
 		private static final String JSON_ICON = "icon";
 
-		private ConditionCode code = null;
-		private String main = null;
-		private String description = null;
-		private String iconName = null;
+		/* the shared conditions; a response repeats a few of them over and over */
+		static private final int POOL_CAPACITY = 1024;
+		static private final ConcurrentMap<WeatherCondition, WeatherCondition> POOL =
+				new ConcurrentHashMap<WeatherCondition, WeatherCondition> ();
+
+		private final ConditionCode code;
+		private final String main;
+		private final String description;
+		private final String iconName;
 
 		public WeatherCondition (JSONObject json) {
 			this.code = ConditionCode.valueof (json.optInt (WeatherCondition.JSON_ID, Integer.MIN_VALUE));
@@ -409,6 +557,22 @@ public class WeatherData extends AbstractWeatherData {
 			this.iconName = json.optString (WeatherCondition.JSON_ICON);
 		}
 
+		/** @param json the JSON weather condition
+		 * @return the shared (immutable) instance equal to the condition, so
+		 * 	that the weather data of a response don't each keep their own copy
+		 * 	of the same condition and strings */
+		static public WeatherCondition of (JSONObject json) {
+			WeatherCondition condition = new WeatherCondition (json);
+			WeatherCondition shared = WeatherCondition.POOL.get (condition);
+			if (shared != null)
+				return shared;
+			/* odd (e.g. localized) descriptions could grow the pool without end */
+			if (WeatherCondition.POOL.size () >= WeatherCondition.POOL_CAPACITY)
+				return condition;
+			shared = WeatherCondition.POOL.putIfAbsent (condition, condition);
+			return shared != null ? shared : condition;
+		}
+
 		public ConditionCode getCode () {
 			return this.code;
 		}
@@ -433,161 +597,331 @@ public class WeatherData extends AbstractWeatherData {
 		public String getIconName () {
 			return this.iconName;
 		}
+
+		@Override
+		public boolean equals (Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof WeatherCondition))
+				return false;
+			WeatherCondition other = (WeatherCondition) o;
+			return this.code == other.code &&
+					this.main.equals (other.main) &&
+					this.description.equals (other.description) &&
+					this.iconName.equals (other.iconName);
+		}
+
+		@Override
+		public int hashCode () {
+			int hash = this.code.hashCode ();
+			hash = 31 * hash + this.main.hashCode ();
+			hash = 31 * hash + this.description.hashCode ();
+			return 31 * hash + this.iconName.hashCode ();
+		}
 	}
 
-	
-	private final Main main;
-	private final Wind wind;
-	private final Clouds clouds;
-	private final Precipitation rain;
-	private final Precipitation snow;
-	private final List<WeatherCondition> weatherConditions;
+	/* the sections (also those of the subclasses), as kept in lazy mode */
+	static final int SECTION_MAIN = 0;
+	static final int SECTION_WIND = 1;
+	static final int SECTION_CLOUDS = 2;
+	static final int SECTION_RAIN = 3;
+	static final int SECTION_SNOW = 4;
+	static final int SECTION_CONDITIONS = 5;
+	static final int SECTION_COORD = 6;
+	static final int SECTION_STATION = 7;
+	/* the JSON names of the sections, by section */
+	static private final String[] SECTION_NAMES = {
+		WeatherData.JSON_MAIN, WeatherData.JSON_WIND, WeatherData.JSON_CLOUDS, WeatherData.JSON_RAIN,
+		WeatherData.JSON_SNOW, WeatherData.JSON_WEATHER, LocalizedWeatherData.JSON_COORD, StatusWeatherData.JSON_STATION
+	};
+	static private final Set<String> LAZY_SECTIONS = Collections.unmodifiableSet (
+			new HashSet<String> (Arrays.asList (WeatherData.SECTION_NAMES)));
+
+	/* in lazy mode the UTF-8 text of the sections one after the other,
+	 * section i being [sectionEnds[i - 1], sectionEnds[i]) (empty when the
+	 * element doesn't have it); a fraction of the memory of their JSONObject
+	 * trees */
+	private final byte[] sections;
+	private final int[] sectionEnds;
+	/* in lazy mode each section is decoded on first access */
+	private volatile Main main;
+	private volatile Wind wind;
+	private volatile Clouds clouds;
+	private volatile Precipitation rain;
+	private volatile Precipitation snow;
+	private volatile List<WeatherCondition> weatherConditions;
 
 	public WeatherData (JSONObject json) {
+		this (json, DecodeMode.EAGER);
+	}
+
+	/** @param json the JSON weather data
+	 * @param mode when to decode the nested sections */
+	public WeatherData (JSONObject json, DecodeMode mode) {
+		this (json, mode, true);
+	}
+
+	/** @param json the JSON weather data
+	 * @param mode when to decode the nested sections
+	 * @param sections false when a subclass keeps the main, wind, clouds and
+	 * 	weather conditions itself, so only the rain and snow are decoded */
+	WeatherData (JSONObject json, DecodeMode mode, boolean sections) {
 		super (json);
+		if (mode == DecodeMode.LAZY) {
+			this.sectionEnds = new int[WeatherData.SECTION_NAMES.length];
+			this.sections = WeatherData.keepSections (json, this.sectionEnds);
+			return;
+		}
+		this.sections = null;
+		this.sectionEnds = null;
+		this.rain = WeatherData.decodePrecipitation (json, WeatherData.JSON_RAIN);
+		this.snow = WeatherData.decodePrecipitation (json, WeatherData.JSON_SNOW);
+		if (!sections)
+			return;
+		this.main = WeatherData.decodeMain (json);
+		this.wind = WeatherData.decodeWind (json);
+		this.clouds = WeatherData.decodeClouds (json);
+		this.weatherConditions = WeatherData.decodeWeatherConditions (json);
+	}
+
+	/** @param mode a decode mode
+	 * @return the names of the members that the elements read for weather
+	 * 	data decoded in the mode keep as text, null when they build them all */
+	static Set<String> deferredSections (DecodeMode mode) {
+		return mode == DecodeMode.LAZY ? WeatherData.LAZY_SECTIONS : null;
+	}
 
+	/* @return the text of the sections of the element, one after the other,
+	 * with the end of each in ends */
+	static private byte[] keepSections (JSONObject json, int[] ends) {
+		byte[][] sources = new byte[WeatherData.SECTION_NAMES.length][];
+		int length = 0;
+		for (int section = 0; section < sources.length; section++) {
+			sources[section] = JsonStreamReader.sourceOf (json, WeatherData.SECTION_NAMES[section]);
+			if (sources[section] != null)
+				length += sources[section].length;
+			ends[section] = length;
+		}
+		byte[] sections = new byte[length];
+		for (int section = 0; section < sources.length; section++) {
+			if (sources[section] != null)
+				System.arraycopy (sources[section], 0, sections, ends[section] - sources[section].length, sources[section].length);
+		}
+		return sections;
+	}
+
+	static Main decodeMain (JSONObject json) {
 		JSONObject jsonMain = json.optJSONObject (WeatherData.JSON_MAIN);
-		this.main = jsonMain != null ? new Main (jsonMain) : null;
+		return jsonMain != null ? new Main (jsonMain) : null;
+	}
 
+	static Wind decodeWind (JSONObject json) {
 		JSONObject jsonWind = json.optJSONObject (WeatherData.JSON_WIND);
-		this.wind = jsonWind != null ? new Wind (jsonWind) : null;
-
-		if (json.has (WeatherData.JSON_CLOUDS)) {
-			JSONArray coudsArray = json.optJSONArray (WeatherData.JSON_CLOUDS);
-			if (coudsArray != null)
-				this.clouds = new Clouds (coudsArray);
-			else {
-				JSONObject cloudsObj = json.optJSONObject (WeatherData.JSON_CLOUDS);
-				if (cloudsObj != null)
-					this.clouds = new Clouds (cloudsObj);
-				else
-					this.clouds = null;
-			}
-		} else
-			this.clouds = null;
-
-		JSONObject jsonRain = json.optJSONObject (WeatherData.JSON_RAIN);
-		this.rain = jsonRain != null ? new Precipitation (jsonRain) : null;
-
-		JSONObject jsonSnow = json.optJSONObject (WeatherData.JSON_SNOW);
-		this.snow = jsonSnow != null ? new Precipitation (jsonSnow) : null;
-
-		if (json.has (WeatherData.JSON_WEATHER)) {
-			JSONArray jsonConditions = json.optJSONArray (WeatherData.JSON_WEATHER);
-			if (jsonConditions != null) {
-				this.weatherConditions = new ArrayList<WeatherCondition> (jsonConditions.length ());
-				if (jsonConditions != null) {
-					for (int i = 0; i < jsonConditions.length (); i++) {
-						JSONObject jsonCondition = jsonConditions.optJSONObject (i);
-						if (jsonCondition != null)
-							this.weatherConditions.add (
-									new WeatherCondition (jsonCondition));
-					}
-				}
-			} else {
-				this.weatherConditions = Collections.emptyList ();
-			}
-		} else {
-			this.weatherConditions = Collections.emptyList ();
-		}
+		return jsonWind != null ? new Wind (jsonWind) : null;
+	}
+
+	static Clouds decodeClouds (JSONObject json) {
+		if (!json.has (WeatherData.JSON_CLOUDS))
+			return null;
+		JSONArray coudsArray = json.optJSONArray (WeatherData.JSON_CLOUDS);
+		if (coudsArray != null)
+			return new Clouds (coudsArray);
+		JSONObject cloudsObj = json.optJSONObject (WeatherData.JSON_CLOUDS);
+		return cloudsObj != null ? new Clouds (cloudsObj) : null;
+	}
+
+	static private Precipitation decodePrecipitation (JSONObject json, String key) {
+		JSONObject jsonPrecipitation = json.optJSONObject (key);
+		return jsonPrecipitation != null ? new Precipitation (jsonPrecipitation) : null;
+	}
+
+	/** @param jsonPrecipitation the JSON rain or snow of a weather data
+	 * @return the measure of the last hour, or else of today, as
+	 * 	{@link #getRain()} and {@link #getSnow()} read it */
+	static int decodeRecentMeasure (JSONObject jsonPrecipitation) {
+		int measure = TimedDetails.measureOf (jsonPrecipitation.opt (TimedDetails.LAST_HOUR));
+		if (measure != Integer.MIN_VALUE)
+			return measure;
+		return jsonPrecipitation.optInt (Precipitation.JSON_TODAY, Integer.MIN_VALUE);
+	}
+
+	static List<WeatherCondition> decodeWeatherConditions (JSONObject json) {
+		JSONArray jsonConditions = json.optJSONArray (WeatherData.JSON_WEATHER);
+		if (jsonConditions == null)
+			return Collections.emptyList ();
+		List<WeatherCondition> conditions = new ArrayList<WeatherCondition> (jsonConditions.length ());
+		for (int i = 0; i < jsonConditions.length (); i++) {
+			JSONObject jsonCondition = jsonConditions.optJSONObject (i);
+			if (jsonCondition != null)
+				conditions.add (
+						WeatherCondition.of (jsonCondition));
+		}
+		return Collections.unmodifiableList (conditions);
+	}
+
+	/** Only the text of the section is parsed, so each section costs a parse
+	 * of its own when it's first read, and threads racing to read it first
+	 * decode equal sections.
+	 * @param section a section
+	 * @return a JSON object with only the section to decode it from, or null
+	 * 	if the section isn't lazy or the element doesn't have it */
+	final JSONObject lazyElement (int section) {
+		if (this.sections == null)
+			return null;
+		int start = section > 0 ? this.sectionEnds[section - 1] : 0;
+		int end = this.sectionEnds[section];
+		if (start == end)
+			return null;
+		JSONObject element = new JSONObject ();
+		try {
+			element.put (WeatherData.SECTION_NAMES[section], JsonStreamReader.parseSource (this.sections, start, end - start));
+		} catch (JSONException e) {
+			throw new IllegalStateException ("The section " + WeatherData.SECTION_NAMES[section] + " can't be decoded.", e);
+		}
+		return element;
 	}
 
 	public boolean hasMain () {
-		return this.main != null;
+		return getMain () != null;
 	}
 	public Main getMain () {
-		return this.main;
+		Main decoded = this.main;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_MAIN);
+			if (element != null)
+				this.main = decoded = WeatherData.decodeMain (element);
+		}
+		return decoded;
 	}
 
 	public boolean hasWind () {
-		return this.wind != null;
+		return getWind () != null;
 	}
 	public Wind getWind () {
-		return this.wind;
+		Wind decoded = this.wind;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_WIND);
+			if (element != null)
+				this.wind = decoded = WeatherData.decodeWind (element);
+		}
+		return decoded;
 	}
 
 	public boolean hasClouds () {
-		return this.clouds != null;
+		return getClouds () != null;
 	}
 	public Clouds getClouds () {
-		return this.clouds;
+		Clouds decoded = this.clouds;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_CLOUDS);
+			if (element != null)
+				this.clouds = decoded = WeatherData.decodeClouds (element);
+		}
+		return decoded;
 	}
 
 	public boolean hasRain () {
-		return this.rain != null;
+		return getRainObj () != null;
 	}
 	public Precipitation getRainObj () {
-		return this.rain;
+		Precipitation decoded = this.rain;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_RAIN);
+			if (element != null)
+				this.rain = decoded = WeatherData.decodePrecipitation (element, WeatherData.JSON_RAIN);
+		}
+		return decoded;
 	}
 
 	public boolean hasSnow () {
-		return this.snow != null;
+		return getSnowObj () != null;
 	}
 	public Precipitation getSnowObj () {
-		return this.snow;
+		Precipitation decoded = this.snow;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_SNOW);
+			if (element != null)
+				this.snow = decoded = WeatherData.decodePrecipitation (element, WeatherData.JSON_SNOW);
+		}
+		return decoded;
 	}
 
 	public boolean hasWeatherConditions () {
-		return this.weatherConditions != null && !this.weatherConditions.isEmpty ();
+		return !getWeatherConditions ().isEmpty ();
 	}
 	public List<WeatherCondition> getWeatherConditions () {
-		return this.weatherConditions;
+		List<WeatherCondition> decoded = this.weatherConditions;
+		if (decoded == null) {
+			JSONObject element = lazyElement (WeatherData.SECTION_CONDITIONS);
+			if (element == null)
+				return Collections.emptyList ();
+			this.weatherConditions = decoded = WeatherData.decodeWeatherConditions (element);
+		}
+		return decoded;
 	}
 
 	/* */
 
 	public float getTemp () {
-		if (hasMain () && this.main.hasTemp ())
-			return this.main.getTemp ();
+		Main main = getMain ();
+		if (main != null && main.hasTemp ())
+			return main.getTemp ();
 		return Float.NaN;
 	}
 
 	public float getHumidity () {
-		if (hasMain () && this.main.hasHumidity ())
-			return this.main.getHumidity ();
+		Main main = getMain ();
+		if (main != null && main.hasHumidity ())
+			return main.getHumidity ();
 		return Float.NaN;
 	}
 
 	public float getPressure () {
-		if (hasMain () && this.main.hasPressure ())
-			return this.main.getPressure ();
+		Main main = getMain ();
+		if (main != null && main.hasPressure ())
+			return main.getPressure ();
 		return Float.NaN;
 	}
 
 	public float getWindSpeed () {
-		if (hasWind () && this.wind.hasSpeed ())
-			return this.wind.getSpeed ();
+		Wind wind = getWind ();
+		if (wind != null && wind.hasSpeed ())
+			return wind.getSpeed ();
 		return Float.NaN;
 	}
 
 	public float getWindGust () {
-		if (hasWind () && this.wind.hasGust ())
-			return this.wind.getGust ();
+		Wind wind = getWind ();
+		if (wind != null && wind.hasGust ())
+			return wind.getGust ();
 		return Float.NaN;
 	}
 
 	public int getWindDeg () {
-		if (hasWind () && this.wind.hasDeg ())
-			return this.wind.getDeg ();
+		Wind wind = getWind ();
+		if (wind != null && wind.hasDeg ())
+			return wind.getDeg ();
 		return Integer.MIN_VALUE;
 	}
 
 	public int getRain () {
-		if (!hasRain ())
+		Precipitation rain = getRainObj ();
+		if (rain == null)
 			return Integer.MIN_VALUE;
-		int measure = this.rain.getMeasure (1);
+		int measure = rain.getMeasure (1);
 		if (measure != Integer.MIN_VALUE)
 			return measure;
-		return this.rain.getToday ();
+		return rain.getToday ();
 	}
 
 	public int getSnow () {
-		if (!hasSnow ())
+		Precipitation snow = getSnowObj ();
+		if (snow == null)
 			return Integer.MIN_VALUE;
-		int measure = this.snow.getMeasure (1);
+		int measure = snow.getMeasure (1);
 		if (measure != Integer.MIN_VALUE)
 			return measure;
-		return this.snow.getToday ();
+		return snow.getToday ();
 	}
 
 	public int getPrecipitation () {
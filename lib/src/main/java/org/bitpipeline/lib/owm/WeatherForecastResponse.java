@@ -130,6 +130,10 @@ public class WeatherForecastResponse extends AbstractOwmResponse {
 	static private final String JSON_MODEL = "model";
 	private static final String JSON_SYS       = "sys";
 
+	/** Decodes the response straight from the HTTP content stream */
+	static final ResponseDecoder<WeatherForecastResponse> DECODER = WeatherForecastResponse.createDecoder (DecodeMode.EAGER);
+	static final ResponseDecoder<WeatherForecastResponse> LAZY_DECODER = WeatherForecastResponse.createDecoder (DecodeMode.LAZY);
+
 	private final String url;
 	private final City city;
 	private final String units;
@@ -140,6 +144,12 @@ public class WeatherForecastResponse extends AbstractOwmResponse {
 	/** A weather forecast response parser
 	 * @param json the json object with the weather forecast response */
 	public WeatherForecastResponse (JSONObject json) {
+		this (json, WeatherForecastResponse.parseForecasts (json));
+	}
+
+	/** @param json the JSON object with the response fields but the list
+	 * @param forecasts the already decoded list of the response */
+	WeatherForecastResponse (JSONObject json, List<ForecastWeatherData> forecasts) {
 		super (json);
 		this.url = json.optString (WeatherForecastResponse.JSON_URL);
 		JSONObject jsonCity = json.optJSONObject (WeatherForecastResponse.JSON_CITY);
@@ -153,16 +163,33 @@ public class WeatherForecastResponse extends AbstractOwmResponse {
 		JSONObject jsonSys = json.optJSONObject (WeatherForecastResponse.JSON_SYS);
 		this.sys = jsonSys != null ? new Sys (jsonSys) : null;
 
+		this.forecasts = Collections.unmodifiableList (forecasts);
+	}
+
+	/** @param mode a decode mode
+	 * @return the decoder of the response in the mode */
+	static ResponseDecoder<WeatherForecastResponse> decoder (DecodeMode mode) {
+		return mode == DecodeMode.LAZY ? WeatherForecastResponse.LAZY_DECODER : WeatherForecastResponse.DECODER;
+	}
+
+	static private ResponseDecoder<WeatherForecastResponse> createDecoder (final DecodeMode mode) {
+		return in -> {
+			JsonStreamReader.Envelope<ForecastWeatherData> envelope = JsonStreamReader.readEnvelope (in,
+					(json, element) -> new ForecastWeatherData (element, mode), WeatherData.deferredSections (mode));
+			return new WeatherForecastResponse (envelope.json, envelope.list);
+		};
+	}
+
+	static private List<ForecastWeatherData> parseForecasts (JSONObject json) {
 		JSONArray jsonForecasts = json.optJSONArray (AbstractOwmResponse.JSON_LIST);
-		if (jsonForecasts != null) {
-			this.forecasts = new ArrayList<ForecastWeatherData> (jsonForecasts.length ());
-			for (int i = 0; i<jsonForecasts.length (); i++) {
-				JSONObject jsonForecast = jsonForecasts.optJSONObject (i);
-				this.forecasts.add (new ForecastWeatherData (jsonForecast));
-			}
-		} else {
-			this.forecasts = Collections.emptyList ();
-		}
+		if (jsonForecasts == null)
+			return Collections.emptyList ();
+		List<ForecastWeatherData> forecasts = new ArrayList<ForecastWeatherData> (jsonForecasts.length ());
+		for (int i = 0; i<jsonForecasts.length (); i++) {
+			JSONObject jsonForecast = jsonForecasts.optJSONObject (i);
+			forecasts.add (new ForecastWeatherData (jsonForecast));
+		}
+		return forecasts;
 	}
 
 	public boolean hasUrl () {
@@ -30,34 +30,75 @@ public class WeatherHistoryCityResponse extends AbstractOwmResponse {
 	static private final String JSON_CALCTIME_FIND  = "find";
 	static private final String JSON_CITY_ID        = "city_id";
 
+	/** Decodes the response straight from the HTTP content stream */
+	static final ResponseDecoder<WeatherHistoryCityResponse> DECODER = WeatherHistoryCityResponse.createDecoder (DecodeMode.EAGER);
+	static final ResponseDecoder<WeatherHistoryCityResponse> LAZY_DECODER = WeatherHistoryCityResponse.createDecoder (DecodeMode.LAZY);
+	/** Decodes only the history of the response, straight into columns: no
+	 * weather data is built */
+	static final ResponseDecoder<HistoryColumns> COLUMNAR_DECODER = in -> {
+		HistoryColumns.Builder columns = new HistoryColumns.Builder ();
+		JsonStreamReader.readEnvelope (in,
+				(envelope, element) -> columns.addTick (element),
+				builder -> {});
+		return columns.build ();
+	};
+
 	private final double calctimeFind;
 	private final double calctimeFetch;
 	private final int cityId;
 	private final List<WeatherData> history;
+	/* built from the history when first asked */
+	private volatile HistoryColumns columns = null;
 
 	/** A weather history city response parser
 	 * @param json the JSON object built with the response for the city weather history */
 	public WeatherHistoryCityResponse (JSONObject json) {
+		this (json, WeatherHistoryCityResponse.parseHistory (json));
+	}
+
+	/** @param json the JSON object with the response fields but the list
+	 * @param history the already decoded list of the response */
+	WeatherHistoryCityResponse (JSONObject json, List<WeatherData> history) {
 		super (json);
 
 		String calcTimeStr = json.optString (AbstractOwmResponse.JSON_CALCTIME);
 		this.calctimeFind = AbstractOwmResponse.getValueFromCalcTimeStr (calcTimeStr, WeatherHistoryCityResponse.JSON_CALCTIME_FIND);
 		this.calctimeFetch = AbstractOwmResponse.getValueFromCalcTimeStr (calcTimeStr, WeatherHistoryCityResponse.JSON_CALCTIME_FETCH);
 		this.cityId = json.optInt (WeatherHistoryCityResponse.JSON_CITY_ID, Integer.MIN_VALUE);
-		
+		this.history = history != null ? Collections.unmodifiableList (history) : null;
+	}
+
+	/** @param mode a decode mode
+	 * @return the decoder of the response in the mode */
+	static ResponseDecoder<WeatherHistoryCityResponse> decoder (DecodeMode mode) {
+		switch (mode) {
+			case LAZY:
+				return WeatherHistoryCityResponse.LAZY_DECODER;
+			default:
+				return WeatherHistoryCityResponse.DECODER;
+		}
+	}
+
+	static private ResponseDecoder<WeatherHistoryCityResponse> createDecoder (final DecodeMode mode) {
+		return in -> {
+			JsonStreamReader.Envelope<WeatherData> envelope = JsonStreamReader.readEnvelope (in,
+					(json, element) -> new WeatherData (element, mode), WeatherData.deferredSections (mode));
+			return new WeatherHistoryCityResponse (envelope.json, envelope.list);
+		};
+	}
+
+	static private List<WeatherData> parseHistory (JSONObject json) {
 		JSONArray jsonHistory = json.optJSONArray (AbstractOwmResponse.JSON_LIST);
-		if (jsonHistory == null) {
-			this.history = Collections.emptyList ();
-		} else {
-			this.history = new ArrayList<WeatherData> (jsonHistory.length ());
-			for (int i = 0; i <jsonHistory.length (); i++) {
-				JSONObject jsonBaseWeatherData = jsonHistory.optJSONObject (i);
-				if (jsonBaseWeatherData != null) {
-					this.history.add (new WeatherData (jsonBaseWeatherData));
-				}
+		if (jsonHistory == null)
+			return Collections.emptyList ();
+		List<WeatherData> history = new ArrayList<WeatherData> (jsonHistory.length ());
+		for (int i = 0; i <jsonHistory.length (); i++) {
+			JSONObject jsonBaseWeatherData = jsonHistory.optJSONObject (i);
+			if (jsonBaseWeatherData != null) {
+				history.add (new WeatherData (jsonBaseWeatherData));
 			}
 		}
-
+		return history;
 	}
 
 	public boolean hasCalcTimeFetch () {
@@ -87,4 +128,13 @@ public class WeatherHistoryCityResponse extends AbstractOwmResponse {
 	public List<WeatherData> getHistory () {
 		return this.history;
 	}
+
+	/** @return the values of the history as columns, built on the first call
+	 * @see OwmClient#historyColumnsAtCity(int, OwmClient.HistoryType) */
+	public HistoryColumns getColumns () {
+		HistoryColumns built = this.columns;
+		if (built == null)
+			this.columns = built = this.history != null ? HistoryColumns.of (this.history) : HistoryColumns.EMPTY;
+		return built;
+	}
 }
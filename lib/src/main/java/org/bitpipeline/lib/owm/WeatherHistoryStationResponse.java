@@ -30,28 +30,40 @@ public class WeatherHistoryStationResponse extends AbstractOwmResponse {
 	static private final String JSON_STATION_ID    = "station_id";
 	static private final String JSON_TYPE          = "type";
 
+	/** Decodes the response straight from the HTTP content stream */
+	static final ResponseDecoder<WeatherHistoryStationResponse> DECODER = WeatherHistoryStationResponse.createDecoder (DecodeMode.EAGER);
+	static final ResponseDecoder<WeatherHistoryStationResponse> LAZY_DECODER = WeatherHistoryStationResponse.createDecoder (DecodeMode.LAZY);
+	/** Decodes only the history of the response, straight into columns: no
+	 * weather data is built */
+	static final ResponseDecoder<HistoryColumns> COLUMNAR_DECODER = in -> {
+		HistoryColumns.Builder columns = new HistoryColumns.Builder ();
+		JsonStreamReader.readEnvelope (in,
+				(envelope, element) -> WeatherHistoryStationResponse.addHistoryElement (
+						WeatherHistoryStationResponse.parseType (envelope), element, columns),
+				builder -> {});
+		return columns.build ();
+	};
+
 	private final float calctimeTick;
 	private final int stationId;
 	private final OwmClient.HistoryType type;
 	private final List<AbstractWeatherData> history;
+	/* built from the history when first asked */
+	private volatile HistoryColumns columns = null;
 
 	/** 
 	 * @param json a JSON object built from the response */
 	public WeatherHistoryStationResponse (JSONObject json) {
+		this (json, WeatherHistoryStationResponse.parseHistory (json));
+	}
+
+	/** @param json the JSON object with the response fields but the list
+	 * @param history the already decoded list of the response */
+	WeatherHistoryStationResponse (JSONObject json, List<AbstractWeatherData> history) {
 		super (json);
 
 		this.stationId = json.optInt (WeatherHistoryStationResponse.JSON_STATION_ID, Integer.MIN_VALUE);
-
-		OwmClient.HistoryType typeValue = null;
-		String typeStr = json.optString (WeatherHistoryStationResponse.JSON_TYPE);
-		if (typeStr != null && typeStr.length () > 0) {
-			try {
-				typeValue = OwmClient.HistoryType.valueOf (typeStr.trim ().toUpperCase ());
-			} catch (IllegalArgumentException e) {
-				typeValue = OwmClient.HistoryType.UNKNOWN;
-			}
-		}
-		this.type = typeValue;
+		this.type = WeatherHistoryStationResponse.parseType (json);
 
 		if (this.type == OwmClient.HistoryType.TICK) {
 			String calcTimeStr = json.optString (AbstractOwmResponse.JSON_CALCTIME);
@@ -60,34 +72,86 @@ public class WeatherHistoryStationResponse extends AbstractOwmResponse {
 			this.calctimeTick = Float.NaN;
 		}
 
+		this.history = history != null ? Collections.unmodifiableList (history) : null;
+	}
+
+	/** @param mode a decode mode
+	 * @return the decoder of the response in the mode */
+	static ResponseDecoder<WeatherHistoryStationResponse> decoder (DecodeMode mode) {
+		switch (mode) {
+			case LAZY:
+				return WeatherHistoryStationResponse.LAZY_DECODER;
+			default:
+				return WeatherHistoryStationResponse.DECODER;
+		}
+	}
+
+	static private ResponseDecoder<WeatherHistoryStationResponse> createDecoder (final DecodeMode mode) {
+		return in -> {
+			JsonStreamReader.Envelope<AbstractWeatherData> envelope = JsonStreamReader.readEnvelope (in,
+					(json, element) -> WeatherHistoryStationResponse.createHistoryElement (
+							WeatherHistoryStationResponse.parseType (json), element, mode),
+					WeatherData.deferredSections (mode));
+			return new WeatherHistoryStationResponse (envelope.json, envelope.list);
+		};
+	}
+
+	static private OwmClient.HistoryType parseType (JSONObject json) {
+		OwmClient.HistoryType typeValue = null;
+		String typeStr = json.optString (WeatherHistoryStationResponse.JSON_TYPE);
+		if (typeStr != null && typeStr.length () > 0) {
+			typeValue = OwmClient.HistoryType.of (typeStr);
+		}
+		return typeValue;
+	}
+
+	/** @return the history element for the given history type or null if the
+	 * 	type has no known elements */
+	static private AbstractWeatherData createHistoryElement (OwmClient.HistoryType type, JSONObject json, DecodeMode mode) {
+		if (type == null)
+			return null;
+		switch (type) {
+			case TICK:
+				return new WeatherData (json, mode);
+			case HOUR:
+			case DAY:
+				return new SampledWeatherData (json);
+			default:
+				return null;
+		}
+	}
+
+	/** @return the columns with the history element added, or null if the
+	 * 	type has no known elements */
+	static private HistoryColumns.Builder addHistoryElement (OwmClient.HistoryType type, JSONObject json, HistoryColumns.Builder columns) {
+		if (type == null)
+			return null;
+		switch (type) {
+			case TICK:
+				return columns.addTick (json);
+			case HOUR:
+			case DAY:
+				return columns.addSample (json);
+			default:
+				return null;
+		}
+	}
+
+	static private List<AbstractWeatherData> parseHistory (JSONObject json) {
 		JSONArray jsonHistory = json.optJSONArray (AbstractOwmResponse.JSON_LIST);
-		if (jsonHistory == null) {
-			this.history = Collections.emptyList ();
-		} else {
-			this.history = new ArrayList<AbstractWeatherData> (jsonHistory.length ());
-			switch (this.type) {
-				case TICK:
-					for (int i = 0; i <jsonHistory.length (); i++) {
-						JSONObject jsonBaseWeatherData = jsonHistory.optJSONObject (i);
-						if (jsonBaseWeatherData != null) {
-							this.history.add (new WeatherData (jsonBaseWeatherData));
-						}
-					}
-					break;
-				case HOUR:
-				case DAY:
-					for (int i = 0; i <jsonHistory.length (); i++) {
-						JSONObject jsonBaseWeatherData = jsonHistory.optJSONObject (i);
-						if (jsonBaseWeatherData != null) {
-							this.history.add (new SampledWeatherData (jsonBaseWeatherData));
-						}
-					}
-					break;
-				default:
-					break;
+		if (jsonHistory == null)
+			return Collections.emptyList ();
+		OwmClient.HistoryType type = WeatherHistoryStationResponse.parseType (json);
+		List<AbstractWeatherData> history = new ArrayList<AbstractWeatherData> (jsonHistory.length ());
+		for (int i = 0; i <jsonHistory.length (); i++) {
+			JSONObject jsonBaseWeatherData = jsonHistory.optJSONObject (i);
+			if (jsonBaseWeatherData != null) {
+				AbstractWeatherData weatherData = WeatherHistoryStationResponse.createHistoryElement (type, jsonBaseWeatherData, DecodeMode.EAGER);
+				if (weatherData != null)
+					history.add (weatherData);
 			}
 		}
-
+		return history;
 	}
 
 	public boolean hasCalcTimeTick () {
@@ -117,4 +181,13 @@ public class WeatherHistoryStationResponse extends AbstractOwmResponse {
 	public List<AbstractWeatherData> getHistory () {
 		return this.history;
 	}
+
+	/** @return the values of the history as columns, built on the first call
+	 * @see OwmClient#historyColumnsAtStation(int, OwmClient.HistoryType) */
+	public HistoryColumns getColumns () {
+		HistoryColumns built = this.columns;
+		if (built == null)
+			this.columns = built = this.history != null ? HistoryColumns.of (this.history) : HistoryColumns.EMPTY;
+		return built;
+	}
 }
@@ -26,24 +26,59 @@ import org.json.JSONObject;
  * 
  * @author mtavares */
 public class WeatherStatusResponse extends AbstractOwmResponse {
+	/** Decodes the response straight from the HTTP content stream */
+	static final ResponseDecoder<WeatherStatusResponse> DECODER = WeatherStatusResponse.createDecoder (DecodeMode.EAGER);
+	static final ResponseDecoder<WeatherStatusResponse> LAZY_DECODER = WeatherStatusResponse.createDecoder (DecodeMode.LAZY);
+	static final ResponseDecoder<WeatherStatusResponse> COMPACT_DECODER = WeatherStatusResponse.createDecoder (DecodeMode.COMPACT);
+
 	private final List<StatusWeatherData> status;
 
 	/** A parser for a weather status query response
 	 * @param json The JSON obejct built from the OWM response */
 	public WeatherStatusResponse (JSONObject json) {
+		this (json, WeatherStatusResponse.parseStatus (json));
+	}
+
+	/** @param json the JSON object with the response fields but the list
+	 * @param status the already decoded list of the response */
+	WeatherStatusResponse (JSONObject json, List<StatusWeatherData> status) {
 		super (json);
+		this.status = Collections.unmodifiableList (status);
+	}
+
+	/** @param mode a decode mode
+	 * @return the decoder of the response in the mode */
+	static ResponseDecoder<WeatherStatusResponse> decoder (DecodeMode mode) {
+		switch (mode) {
+			case LAZY:
+				return WeatherStatusResponse.LAZY_DECODER;
+			case COMPACT:
+				return WeatherStatusResponse.COMPACT_DECODER;
+			default:
+				return WeatherStatusResponse.DECODER;
+		}
+	}
+
+	static private ResponseDecoder<WeatherStatusResponse> createDecoder (final DecodeMode mode) {
+		return in -> {
+			JsonStreamReader.Envelope<StatusWeatherData> envelope = JsonStreamReader.readEnvelope (in,
+					(json, element) -> StatusWeatherData.create (element, mode), WeatherData.deferredSections (mode));
+			return new WeatherStatusResponse (envelope.json, envelope.list);
+		};
+	}
+
+	static private List<StatusWeatherData> parseStatus (JSONObject json) {
 		JSONArray jsonWeatherStatus = json.optJSONArray (AbstractOwmResponse.JSON_LIST);
-		if (jsonWeatherStatus == null) {
-			this.status = Collections.emptyList ();
-		} else {
-			this.status = new ArrayList<StatusWeatherData> (jsonWeatherStatus.length ());
-			for (int i = 0; i <jsonWeatherStatus.length (); i++) {
-				JSONObject jsonStatus = jsonWeatherStatus.optJSONObject (i);
-				if (jsonStatus != null) {
-					this.status.add (new StatusWeatherData (jsonStatus));
-				}
+		if (jsonWeatherStatus == null)
+			return Collections.emptyList ();
+		List<StatusWeatherData> status = new ArrayList<StatusWeatherData> (jsonWeatherStatus.length ());
+		for (int i = 0; i <jsonWeatherStatus.length (); i++) {
+			JSONObject jsonStatus = jsonWeatherStatus.optJSONObject (i);
+			if (jsonStatus != null) {
+				status.add (new StatusWeatherData (jsonStatus));
 			}
 		}
+		return status;
 	}
 
 	public boolean hasWeatherStatus () {
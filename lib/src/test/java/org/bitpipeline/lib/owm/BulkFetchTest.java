@@ -0,0 +1,97 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link BulkFetch} */
+public class BulkFetchTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool ();
+
+	@After
+	public void shutdown () {
+		this.executor.shutdownNow ();
+	}
+
+	@Test
+	public void testParallelismIsBounded () throws Exception {
+		final AtomicInteger running = new AtomicInteger ();
+		final AtomicInteger maxRunning = new AtomicInteger ();
+		int[] ids = new int[50];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = i;
+		BulkResult<String> result = BulkFetch.fetch (this.executor, ids, 4, 10, TimeUnit.SECONDS, id -> {
+			int now = running.incrementAndGet ();
+			maxRunning.accumulateAndGet (now, Math::max);
+			try {
+				Thread.sleep (2);
+			} catch (InterruptedException e) {
+				throw new IOException (e);
+			} finally {
+				running.decrementAndGet ();
+			}
+			return "city " + id;
+		});
+		assertTrue (result.isComplete ());
+		assertEquals (50, result.getResults ().size ());
+		assertEquals ("city 7", result.get (7));
+		assertTrue (maxRunning.get () <= 4);
+	}
+
+	@Test
+	public void testPartialResultsAtTheDeadline () throws Exception {
+		final CountDownLatch stuck = new CountDownLatch (1);
+		BulkResult<String> result = BulkFetch.fetch (this.executor, new int[] { 1, 2, 3, 4, 5 }, 2, 200, TimeUnit.MILLISECONDS, id -> {
+			if (id == 2) {
+				try {
+					stuck.await (5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new IOException (e);
+				}
+			}
+			if (id == 4)
+				throw new OwmHttpStatusException ("Not found", 404, -1);
+			return "city " + id;
+		});
+		stuck.countDown ();
+		assertFalse (result.isComplete ());
+		assertEquals (Collections.singleton (Integer.valueOf (2)), result.getTimedOut ());
+		assertEquals (3, result.getResults ().size ());
+		assertFalse (result.isSuccess (4));
+		assertTrue (result.getFailures ().get (Integer.valueOf (4)) instanceof OwmHttpStatusException);
+	}
+
+	@Test
+	public void testEmptyBatch () throws Exception {
+		BulkResult<String> result = BulkFetch.fetch (this.executor, new int[0], 4, 1, TimeUnit.SECONDS, id -> "never");
+		assertTrue (result.isComplete ());
+		assertTrue (result.getResults ().isEmpty ());
+	}
+}
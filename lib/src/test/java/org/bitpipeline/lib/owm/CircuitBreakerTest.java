@@ -0,0 +1,123 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bitpipeline.lib.owm.CircuitBreaker.State;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link CircuitBreaker} */
+public class CircuitBreakerTest {
+	private final AtomicLong now = new AtomicLong ();
+	private final List<String> transitions = new ArrayList<String> ();
+
+	private CircuitBreaker createBreaker () {
+		CircuitBreaker breaker = new CircuitBreaker (this.now::get)
+				.setWindow (10, 4)
+				.setOpenDuration (10, TimeUnit.SECONDS)
+				.setHalfOpenProbes (2);
+		breaker.addListener ((family, from, to) -> this.transitions.add (family + ":" + from + "->" + to));
+		return breaker;
+	}
+
+	static private void call (CircuitBreaker breaker, EndpointFamily family, long millis, boolean failed) throws IOException {
+		boolean probe = breaker.acquire (family);
+		breaker.record (family, probe, TimeUnit.MILLISECONDS.toNanos (millis), failed);
+	}
+
+	@Test
+	public void testOpensOnTheFailureRateAndFailsFast () throws IOException {
+		CircuitBreaker breaker = createBreaker ();
+		CircuitBreakerTest.call (breaker, EndpointFamily.WEATHER, 10, false);
+		CircuitBreakerTest.call (breaker, EndpointFamily.WEATHER, 10, false);
+		CircuitBreakerTest.call (breaker, EndpointFamily.WEATHER, 10, true);
+		assertEquals (State.CLOSED, breaker.getState (EndpointFamily.WEATHER));
+		CircuitBreakerTest.call (breaker, EndpointFamily.WEATHER, 10, true);
+		assertEquals (State.OPEN, breaker.getState (EndpointFamily.WEATHER));
+		assertEquals (State.CLOSED, breaker.getState (EndpointFamily.FORECAST));
+		try {
+			breaker.acquire (EndpointFamily.WEATHER);
+			fail ("The circuit is open");
+		} catch (OwmCircuitOpenException e) {
+			assertEquals (EndpointFamily.WEATHER, e.getFamily ());
+			assertEquals (10000, e.getRetryAfterMillis ());
+		}
+		assertEquals (1, this.transitions.size ());
+		assertEquals ("WEATHER:CLOSED->OPEN", this.transitions.get (0));
+	}
+
+	@Test
+	public void testOpensOnTheSlowCallRate () throws IOException {
+		CircuitBreaker breaker = createBreaker ().setSlowCallThreshold (1, TimeUnit.SECONDS, 0.75);
+		for (int i = 0; i < 3; i++)
+			CircuitBreakerTest.call (breaker, EndpointFamily.HISTORY, 5000, false);
+		CircuitBreakerTest.call (breaker, EndpointFamily.HISTORY, 5, false);
+		assertEquals (State.OPEN, breaker.getState (EndpointFamily.HISTORY));
+	}
+
+	@Test
+	public void testHalfOpenProbesCloseTheCircuit () throws IOException {
+		CircuitBreaker breaker = createBreaker ();
+		for (int i = 0; i < 4; i++)
+			CircuitBreakerTest.call (breaker, EndpointFamily.FIND, 10, true);
+		this.now.set (TimeUnit.SECONDS.toNanos (10));
+		assertTrue (breaker.acquire (EndpointFamily.FIND));
+		assertTrue (breaker.acquire (EndpointFamily.FIND));
+		try {
+			breaker.acquire (EndpointFamily.FIND);
+			fail ("Only two probes are allowed");
+		} catch (OwmCircuitOpenException e) {
+			assertEquals (0, e.getRetryAfterMillis ());
+		}
+		breaker.record (EndpointFamily.FIND, true, 1000, false);
+		breaker.record (EndpointFamily.FIND, true, 1000, false);
+		assertEquals (State.CLOSED, breaker.getState (EndpointFamily.FIND));
+		assertFalse (breaker.acquire (EndpointFamily.FIND));
+		assertEquals ("[FIND:CLOSED->OPEN, FIND:OPEN->HALF_OPEN, FIND:HALF_OPEN->CLOSED]", this.transitions.toString ());
+	}
+
+	@Test
+	public void testFailedProbeReopensTheCircuit () throws IOException {
+		CircuitBreaker breaker = createBreaker ();
+		for (int i = 0; i < 4; i++)
+			CircuitBreakerTest.call (breaker, EndpointFamily.FORECAST, 10, true);
+		this.now.set (TimeUnit.SECONDS.toNanos (10));
+		CircuitBreakerTest.call (breaker, EndpointFamily.FORECAST, 10, true);
+		assertEquals (State.OPEN, breaker.getState (EndpointFamily.FORECAST));
+		assertEquals ("[FORECAST:CLOSED->OPEN, FORECAST:OPEN->HALF_OPEN, FORECAST:HALF_OPEN->OPEN]", this.transitions.toString ());
+	}
+
+	@Test
+	public void testOnlyServerFailuresCount () {
+		assertTrue (CircuitBreaker.isFailure (new ConnectException ()));
+		assertTrue (CircuitBreaker.isFailure (new OwmHttpStatusException ("", 502, -1)));
+		assertFalse (CircuitBreaker.isFailure (new OwmHttpStatusException ("", 404, -1)));
+		assertFalse (CircuitBreaker.isFailure (new OwmRateLimitException ("", -1)));
+		assertFalse (CircuitBreaker.isFailure (null));
+	}
+}
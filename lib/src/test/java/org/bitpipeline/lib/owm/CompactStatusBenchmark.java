@@ -0,0 +1,79 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/** Measures the heap retained by each weather status in every decode mode,
+ * from the heap used before and after decoding many statuses (each with its
+ * own strings, as when they come from separate responses).
+ * <p>
+ * Run it from <code>lib</code> with the test classpath (writing the
+ * dependencies to a file first) and a heap large enough for all the
+ * statuses in {@link DecodeMode#LAZY}:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx2g -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     org.bitpipeline.lib.owm.CompactStatusBenchmark [statuses]
+ * </pre>
+ * The default is 100000 statuses. The figures are estimates: they rely on
+ * <code>System.gc ()</code> collecting everything else, so run it alone,
+ * without <code>-XX:+DisableExplicitGC</code>. With compressed references
+ * the city statuses (plain clouds, one weather condition) take about 325
+ * bytes eager and 205 bytes compact; the airport statuses (clouds as a list
+ * of layers, kept as decoded) about 280 and 275 bytes. */
+public class CompactStatusBenchmark {
+
+	public static void main (String[] args) throws JSONException {
+		int count = args.length > 0 ? Integer.parseInt (args[0]) : 100000;
+		CompactStatusBenchmark.run ("city statuses", TestData.CURRENT_WEATHER_AROUND_CITY_COORD, count);
+		CompactStatusBenchmark.run ("airport statuses", TestData.CURRENT_WEATHER_AROUND_POINT, count);
+	}
+
+	static private void run (String name, String response, int count) throws JSONException {
+		JSONArray list = new JSONObject (response).getJSONArray ("list");
+		String[] elements = new String[list.length ()];
+		for (int i = 0; i < elements.length; i++)
+			elements[i] = list.getJSONObject (i).toString ();
+		for (DecodeMode mode : DecodeMode.values ()) {
+			/* twice, the first run loading and compiling the code */
+			CompactStatusBenchmark.retainedSize (elements, mode, count);
+			System.out.printf ("%s, %s: %d bytes per status%n", name, mode,
+					Long.valueOf (CompactStatusBenchmark.retainedSize (elements, mode, count)));
+		}
+	}
+
+	static private long usedMemory () {
+		for (int i = 0; i < 4; i++)
+			System.gc ();
+		Runtime runtime = Runtime.getRuntime ();
+		return runtime.totalMemory () - runtime.freeMemory ();
+	}
+
+	/** @return the bytes retained by each status */
+	static private long retainedSize (String[] elements, DecodeMode mode, int count) throws JSONException {
+		StatusWeatherData[] statuses = new StatusWeatherData[count];
+		long before = CompactStatusBenchmark.usedMemory ();
+		for (int i = 0; i < count; i++)
+			statuses[i] = StatusWeatherData.create (new JSONObject (elements[i % elements.length]), mode);
+		long after = CompactStatusBenchmark.usedMemory ();
+		if (statuses[count - 1] == null)
+			throw new IllegalStateException ();
+		return (after - before) / count;
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link DecodeMode#COMPACT} weather statuses */
+public class CompactStatusWeatherDataTest {
+	static private JSONArray list (String response) throws JSONException {
+		return new JSONObject (response).getJSONArray ("list");
+	}
+
+	@Test
+	public void testCompactDecodingMatchesEagerDecoding () throws JSONException {
+		for (String response : new String[] {TestData.CURRENT_WEATHER_AROUND_POINT, TestData.CURRENT_WEATHER_AROUND_CITY_COORD,
+				TestData.CURRENT_WEATHER_IN_BBOX, TestData.CURRENT_WEATHER_IN_CITY_BBOX}) {
+			JSONArray list = CompactStatusWeatherDataTest.list (response);
+			for (int i = 0; i < list.length (); i++) {
+				JSONObject element = list.getJSONObject (i);
+				StatusWeatherData eager = new StatusWeatherData (element);
+				StatusWeatherData compact = StatusWeatherData.create (element, DecodeMode.COMPACT);
+				assertTrue (compact instanceof CompactStatusWeatherData);
+				WeatherDataTest.assertSameWeather (eager, compact);
+				assertEquals (eager.hasMain (), compact.hasMain ());
+				if (eager.hasMain ())
+					assertEquals (eager.getMain ().getTempMax (), compact.getMain ().getTempMax (), 0f);
+				assertEquals (eager.hasWind (), compact.hasWind ());
+				if (eager.hasWind ())
+					assertEquals (eager.getWind ().getVarBeg (), compact.getWind ().getVarBeg ());
+				if (eager.hasCoord ())
+					assertEquals (eager.getCoord ().getLongitude (), compact.getCoord ().getLongitude (), 0f);
+				if (eager.hasStation ())
+					assertEquals (eager.getStation ().getZoom (), compact.getStation ().getZoom ());
+				assertEquals (eager.getWeatherConditions (), compact.getWeatherConditions ());
+				assertEquals (eager.getUrl (), compact.getUrl ());
+				assertEquals (eager.getDistance (), compact.getDistance (), 0f);
+			}
+		}
+	}
+
+	@Test
+	public void testSectionsAreViews () throws JSONException {
+		JSONObject element = CompactStatusWeatherDataTest.list (TestData.CURRENT_WEATHER_IN_CITY_BBOX).getJSONObject (0);
+		StatusWeatherData compact = StatusWeatherData.create (element, DecodeMode.COMPACT);
+		assertEquals (285.15f, compact.getMain ().getTemp (), 0f);
+		assertEquals (288.14f, compact.getMain ().getTempMax (), 0f);
+		assertEquals (75, compact.getClouds ().getAll ());
+		assertFalse (compact.getClouds ().hasConditions ());
+		assertEquals (1, compact.getWeatherConditions ().size ());
+		assertSame (WeatherData.WeatherCondition.of (element.getJSONArray ("weather").getJSONObject (0)),
+				compact.getWeatherConditions ().get (0));
+		assertFalse (compact.hasStation ());
+		assertNull (compact.getStation ());
+		assertFalse (compact.hasRain ());
+	}
+
+	@Test
+	public void testCompactDecoder () throws IOException, JSONException {
+		ResponseDecoder<WeatherStatusResponse> decoder = WeatherStatusResponse.decoder (DecodeMode.COMPACT);
+		WeatherStatusResponse response = decoder.decode (new ByteArrayInputStream (
+				TestData.CURRENT_WEATHER_AROUND_CITY_COORD.getBytes (StandardCharsets.UTF_8)));
+		assertEquals (10, response.getWeatherStatus ().size ());
+		for (StatusWeatherData status : response.getWeatherStatus ())
+			assertTrue (status instanceof CompactStatusWeatherData);
+		assertSame (WeatherForecastResponse.DECODER, WeatherForecastResponse.decoder (DecodeMode.COMPACT));
+	}
+
+	@Test
+	public void testCompactStatusesShareConditions () throws IOException, JSONException {
+		ResponseDecoder<WeatherStatusResponse> decoder = WeatherStatusResponse.decoder (DecodeMode.COMPACT);
+		List<StatusWeatherData> first = decoder.decode (new ByteArrayInputStream (
+				TestData.CURRENT_WEATHER_AROUND_CITY_COORD.getBytes (StandardCharsets.UTF_8))).getWeatherStatus ();
+		List<StatusWeatherData> second = decoder.decode (new ByteArrayInputStream (
+				TestData.CURRENT_WEATHER_AROUND_CITY_COORD.getBytes (StandardCharsets.UTF_8))).getWeatherStatus ();
+		assertEquals (first.size (), second.size ());
+		for (int i = 0; i < first.size (); i++) {
+			StatusWeatherData status = first.get (i);
+			assertTrue (status instanceof CompactStatusWeatherData);
+			assertTrue (status.hasWeatherConditions ());
+			assertSame (status.getWeatherConditions ().get (0), second.get (i).getWeatherConditions ().get (0));
+			WeatherDataTest.assertSameWeather (status, second.get (i));
+		}
+	}
+}
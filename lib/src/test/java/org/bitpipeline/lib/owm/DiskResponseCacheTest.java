@@ -0,0 +1,134 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link DiskResponseCache} */
+public class DiskResponseCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder ();
+
+	static private byte[] bytes (String s) {
+		return s.getBytes (StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testResponsesSurviveReopening () throws IOException {
+		File directory = this.folder.newFolder ("cache");
+		DiskResponseCache cache = new DiskResponseCache (directory);
+		cache.put ("forecast/city/524901", bytes (TestData.FORECAST_WEATHER_AT_CITY_ID_LISBON));
+		cache.put ("history/city/524901?type=day", bytes ("{\"list\":[]}"));
+		cache.put ("history/city/524901?type=day", bytes ("{\"list\":[1]}"));
+		cache.close ();
+
+		DiskResponseCache reopened = new DiskResponseCache (directory);
+		try {
+			assertEquals (2, reopened.size ());
+			assertArrayEquals (bytes (TestData.FORECAST_WEATHER_AT_CITY_ID_LISBON), reopened.get ("forecast/city/524901"));
+			assertArrayEquals (bytes ("{\"list\":[1]}"), reopened.get ("history/city/524901?type=day"));
+			assertEquals (2, reopened.getStats ().getHitCount ());
+		} finally {
+			reopened.close ();
+		}
+	}
+
+	@Test
+	public void testExpiredResponsesAreNotServed () throws IOException {
+		File directory = this.folder.newFolder ("cache");
+		AtomicLong now = new AtomicLong (1000);
+		DiskResponseCache cache = new DiskResponseCache (directory, 1024, 4096, now::get);
+		cache.setTimeToLive (EndpointFamily.FORECAST, 1, TimeUnit.SECONDS);
+		cache.setTimeToLive (EndpointFamily.WEATHER, 0, TimeUnit.SECONDS);
+		cache.put ("forecast/city/1", bytes ("{}"));
+		cache.put ("weather/city/1", bytes ("{}"));
+		assertEquals (1, cache.size ());
+		now.set (2000);
+		assertNull (cache.get ("forecast/city/1"));
+		assertEquals (1, cache.getStats ().getExpirationCount ());
+		cache.close ();
+
+		DiskResponseCache reopened = new DiskResponseCache (directory, 1024, 4096, now::get);
+		assertEquals (0, reopened.size ());
+		reopened.close ();
+	}
+
+	@Test
+	public void testTornRecordIsCutOff () throws IOException {
+		File directory = this.folder.newFolder ("cache");
+		DiskResponseCache cache = new DiskResponseCache (directory);
+		cache.put ("forecast/city/1", bytes ("{\"a\":1}"));
+		cache.put ("forecast/city/2", bytes ("{\"b\":2}"));
+		long size = cache.getDiskSize ();
+		cache.close ();
+
+		File[] segments = directory.listFiles ();
+		assertEquals (1, segments.length);
+		RandomAccessFile file = new RandomAccessFile (segments[0], "rw");
+		try {
+			file.setLength (size - 3);
+		} finally {
+			file.close ();
+		}
+
+		DiskResponseCache reopened = new DiskResponseCache (directory);
+		try {
+			assertEquals (1, reopened.size ());
+			assertArrayEquals (bytes ("{\"a\":1}"), reopened.get ("forecast/city/1"));
+			assertNull (reopened.get ("forecast/city/2"));
+			/* new records go after the last good one */
+			reopened.put ("forecast/city/3", bytes ("{\"c\":3}"));
+			assertArrayEquals (bytes ("{\"c\":3}"), reopened.get ("forecast/city/3"));
+		} finally {
+			reopened.close ();
+		}
+	}
+
+	@Test
+	public void testOldestSegmentsAreDeleted () throws IOException {
+		File directory = this.folder.newFolder ("cache");
+		DiskResponseCache cache = new DiskResponseCache (directory, 200, 400);
+		try {
+			StringBuilder content = new StringBuilder ();
+			for (int i = 0; i < 100; i++)
+				content.append ((char) ('a' + (i * 7) % 26));
+			for (int i = 0; i < 20; i++)
+				cache.put ("history/city/" + i, bytes (content.toString ()));
+			assertTrue (cache.getDiskSize () <= 400);
+			assertTrue (directory.listFiles ().length <= 3);
+			assertTrue (cache.getStats ().getEvictionCount () > 0);
+			assertNull (cache.get ("history/city/0"));
+			assertArrayEquals (bytes (content.toString ()), cache.get ("history/city/19"));
+		} finally {
+			cache.close ();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link HedgingPolicy} */
+public class HedgingPolicyTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool ();
+
+	@After
+	public void shutdown () {
+		this.executor.shutdownNow ();
+	}
+
+	@Test
+	public void testSlowRequestIsHedgedAndTheLoserAborted () throws Exception {
+		HedgingPolicy policy = new HedgingPolicy ().setDelayBounds (20, 20, TimeUnit.MILLISECONDS);
+		final AtomicInteger attempts = new AtomicInteger ();
+		final OwmTransport.Request stalled = new OwmTransport.Request ("http://localhost/");
+		String result = policy.execute (EndpointFamily.WEATHER, this.executor, new HedgingPolicy.Attempt (), attempt -> {
+			if (attempts.getAndIncrement () == 0) {
+				/* stalls until aborted, as a request to a slow server */
+				attempt.bind (stalled);
+				long deadline = System.nanoTime () + TimeUnit.SECONDS.toNanos (5);
+				while (!stalled.isAborted () && System.nanoTime () < deadline) {
+					try {
+						Thread.sleep (1);
+					} catch (InterruptedException e) {
+						throw new IOException (e);
+					}
+				}
+				throw new IOException ("aborted");
+			}
+			return "hedge";
+		});
+		assertEquals ("hedge", result);
+		assertEquals (1, policy.getHedgeCount ());
+		assertEquals (1, policy.getHedgeWinCount ());
+		assertTrue (stalled.isAborted ());
+	}
+
+	@Test
+	public void testFastRequestIsNotHedged () throws Exception {
+		HedgingPolicy policy = new HedgingPolicy ().setDelayBounds (1, 1, TimeUnit.SECONDS);
+		assertEquals ("fast", policy.execute (EndpointFamily.FORECAST, this.executor, new HedgingPolicy.Attempt (), attempt -> "fast"));
+		assertEquals (0, policy.getHedgeCount ());
+	}
+
+	@Test
+	public void testHedgesAreLimitedByTheBudget () throws Exception {
+		HedgingPolicy policy = new HedgingPolicy ()
+				.setDelayBounds (1, 1, TimeUnit.MILLISECONDS)
+				.setBudget (0, 0);
+		final AtomicInteger attempts = new AtomicInteger ();
+		assertEquals ("slow", policy.execute (EndpointFamily.HISTORY, this.executor, new HedgingPolicy.Attempt (), attempt -> {
+			attempts.incrementAndGet ();
+			try {
+				Thread.sleep (30);
+			} catch (InterruptedException e) {
+				throw new IOException (e);
+			}
+			return "slow";
+		}));
+		assertEquals (1, attempts.get ());
+		assertEquals (1, policy.getBudgetExhaustedCount ());
+	}
+
+	@Test
+	public void testTheOriginalFailureIsThrownWhenBothFail () throws Exception {
+		HedgingPolicy policy = new HedgingPolicy ().setDelayBounds (5, 5, TimeUnit.MILLISECONDS);
+		final AtomicInteger attempts = new AtomicInteger ();
+		try {
+			policy.execute (EndpointFamily.FIND, this.executor, new HedgingPolicy.Attempt (), attempt -> {
+				int n = attempts.getAndIncrement ();
+				if (n == 0) {
+					try {
+						Thread.sleep (50);
+					} catch (InterruptedException e) {
+						throw new IOException (e);
+					}
+				}
+				throw new IOException ("attempt " + n);
+			});
+			fail ("Both attempts failed");
+		} catch (IOException e) {
+			assertEquals ("attempt 0", e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testDelayFollowsThePercentileOfTheLatencies () {
+		LatencyHistogram histogram = new LatencyHistogram (0);
+		for (int i = 1; i <= 100; i++)
+			histogram.record (TimeUnit.MILLISECONDS.toNanos (i));
+		long median = TimeUnit.NANOSECONDS.toMillis (histogram.getQuantile (0.5));
+		long p95 = TimeUnit.NANOSECONDS.toMillis (histogram.getQuantile (0.95));
+		assertTrue ("median " + median, median >= 50 && median <= 62);
+		assertTrue ("p95 " + p95, p95 >= 95 && p95 <= 118);
+		assertEquals (-1, new LatencyHistogram (0).getQuantile (0.5));
+	}
+}
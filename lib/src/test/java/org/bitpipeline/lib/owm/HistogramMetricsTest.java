@@ -0,0 +1,164 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONException;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link HistogramMetrics} and the measurements of {@link OwmClient} */
+public class HistogramMetricsTest {
+
+	static private byte[] gzip (String content) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		GZIPOutputStream compressor = new GZIPOutputStream (out);
+		compressor.write (content.getBytes (StandardCharsets.UTF_8));
+		compressor.close ();
+		return out.toByteArray ();
+	}
+
+	/* answers each request with the next status code, gzipped content for 200 */
+	private HttpClient createHttpClient (final byte[] content, final int... statusCodes) throws IOException {
+		return createHttpClient (0, content, statusCodes);
+	}
+
+	private HttpClient createHttpClient (final long delayMillis, final byte[] content, final int... statusCodes) throws IOException {
+		final AtomicInteger requests = new AtomicInteger ();
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (invocation -> {
+			Thread.sleep (delayMillis);
+			int statusCode = statusCodes[requests.getAndIncrement () % statusCodes.length];
+			if (statusCode < 0)
+				throw new IOException ("Connection refused");
+			HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, statusCode, "Status " + statusCode);
+			if (statusCode == 200) {
+				ByteArrayEntity entity = new ByteArrayEntity (content);
+				entity.setContentEncoding ("gzip");
+				response.setEntity (entity);
+			}
+			return response;
+		});
+		return mockHttpClient;
+	}
+
+	@Test
+	public void testNoMetricsByDefault () {
+		OwmClient owm = new OwmClient (mock (HttpClient.class));
+		assertSame (OwmMetrics.NONE, owm.getMetrics ());
+		owm.setMetrics (new HistogramMetrics ());
+		owm.setMetrics (null);
+		assertSame (OwmMetrics.NONE, owm.getMetrics ());
+	}
+
+	@Test
+	public void testPhasesAreMeasuredPerFamily () throws IOException, JSONException {
+		byte[] content = HistogramMetricsTest.gzip (TestData.CURRENT_WEATHER_AROUND_POINT);
+		OwmClient owm = new OwmClient (createHttpClient (content, 200));
+		HistogramMetrics metrics = new HistogramMetrics ();
+		owm.setMetrics (metrics);
+		for (int i = 0; i < 3; i++)
+			owm.currentWeatherAroundPoint (55f, 37f, 10);
+
+		for (OwmMetrics.Phase phase : OwmMetrics.Phase.values ()) {
+			assertEquals (phase.name (), 3, metrics.getSampleCount (EndpointFamily.FIND, phase));
+			assertTrue (metrics.getQuantile (EndpointFamily.FIND, phase, 0.5, TimeUnit.NANOSECONDS) > 0);
+			assertEquals (0, metrics.getSampleCount (EndpointFamily.WEATHER, phase));
+			assertEquals (-1, metrics.getQuantile (EndpointFamily.WEATHER, phase, 0.5, TimeUnit.NANOSECONDS));
+		}
+		assertEquals (3, metrics.getRequestCount (EndpointFamily.FIND));
+		assertEquals (3, metrics.getStatusCount (EndpointFamily.FIND, 200));
+		assertEquals (3L * content.length, metrics.getBytesReceived (EndpointFamily.FIND));
+		assertEquals (0, metrics.getInFlightCount (EndpointFamily.FIND));
+	}
+
+	@Test
+	public void testFailuresAreCounted () throws IOException, JSONException {
+		byte[] content = HistogramMetricsTest.gzip (TestData.CURRENT_WEATHER_CITY);
+		OwmClient owm = new OwmClient (createHttpClient (content, 503, -1, 200));
+		HistogramMetrics metrics = new HistogramMetrics ();
+		owm.setMetrics (metrics);
+		try {
+			owm.currentWeatherAtCity (524901);
+			fail ("A 503 reply must fail the query");
+		} catch (OwmHttpStatusException e) {
+			assertEquals (503, e.getStatusCode ());
+		}
+		try {
+			owm.currentWeatherAtCity (524901);
+			fail ("A connection failure must fail the query");
+		} catch (IOException e) {
+			assertEquals ("Connection refused", e.getMessage ());
+		}
+		owm.currentWeatherAtCity (524901);
+
+		assertEquals (3, metrics.getRequestCount (EndpointFamily.WEATHER));
+		assertEquals (1, metrics.getStatusCount (EndpointFamily.WEATHER, 503));
+		assertEquals (1, metrics.getStatusCount (EndpointFamily.WEATHER, 200));
+		assertEquals (1, metrics.getFailureCount (EndpointFamily.WEATHER));
+		assertEquals (0, metrics.getInFlightCount (EndpointFamily.WEATHER));
+		/* only the answered requests are timed, and only the decoded one is parsed */
+		assertEquals (2, metrics.getSampleCount (EndpointFamily.WEATHER, OwmMetrics.Phase.EXECUTE));
+		assertEquals (1, metrics.getSampleCount (EndpointFamily.WEATHER, OwmMetrics.Phase.BUILD));
+		assertEquals (content.length, metrics.getBytesReceived (EndpointFamily.WEATHER));
+	}
+
+	@Test
+	public void testServerTimeIsSetAgainstTheLatency () throws IOException, JSONException {
+		/* the server reports it took 18.6ms (calctime total=0.0186) and the
+		 * answer takes 60ms to arrive */
+		byte[] content = HistogramMetricsTest.gzip (TestData.HISTORY_WEATHER_AT_CITY_ID);
+		OwmClient owm = new OwmClient (createHttpClient (60, content, 200));
+		HistogramMetrics metrics = new HistogramMetrics ();
+		owm.setMetrics (metrics);
+		assertEquals (Double.NaN, metrics.getServerTimeShare (EndpointFamily.HISTORY), 0);
+		for (int i = 0; i < 2; i++)
+			owm.historyWeatherAtCity (2885679, OwmClient.HistoryType.HOUR);
+
+		assertEquals (2, metrics.getServerTimeCount (EndpointFamily.HISTORY));
+		long server = metrics.getServerTimeQuantile (EndpointFamily.HISTORY, 0.5, TimeUnit.MICROSECONDS);
+		assertTrue (server >= 18600 && server <= 18600 * 1.2);
+		assertTrue (metrics.getCorrelatedLatencyQuantile (EndpointFamily.HISTORY, 0.5, TimeUnit.MILLISECONDS) >= 60);
+		assertTrue (metrics.getOverheadQuantile (EndpointFamily.HISTORY, 0.5, TimeUnit.MILLISECONDS) >= 60 - 19);
+		double share = metrics.getServerTimeShare (EndpointFamily.HISTORY);
+		assertTrue (share > 0 && share < 18.6 / 60);
+
+		/* responses without calctime can't be correlated */
+		owm.setMetrics (metrics = new HistogramMetrics ());
+		owm.currentWeatherAtCity (524901);
+		assertEquals (0, metrics.getServerTimeCount (EndpointFamily.WEATHER));
+	}
+}
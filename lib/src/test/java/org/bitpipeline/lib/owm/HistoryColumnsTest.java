@@ -0,0 +1,139 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Unit tests for the {@link HistoryColumns} of weather histories */
+public class HistoryColumnsTest {
+	static private InputStream content (String response) {
+		return new ByteArrayInputStream (response.getBytes (StandardCharsets.UTF_8));
+	}
+
+	static private void assertColumns (List<? extends AbstractWeatherData> history, HistoryColumns columns) {
+		assertEquals (history.size (), columns.size ());
+		for (int row = 0; row < history.size (); row++) {
+			AbstractWeatherData weatherData = history.get (row);
+			assertEquals (weatherData.getDateTime (), columns.getDateTime (row));
+			assertEquals (weatherData.getTemp (), columns.getTemp (row), 0f);
+			assertEquals (weatherData.getPressure (), columns.getPressure (row), 0f);
+			assertEquals (weatherData.getHumidity (), columns.getHumidity (row), 0f);
+			assertEquals (weatherData.getWindSpeed (), columns.getWindSpeed (row), 0f);
+			assertEquals (weatherData.getWindGust (), columns.getWindGust (row), 0f);
+			assertEquals (weatherData.getRain (), columns.getRain (row));
+			assertEquals (weatherData.getSnow (), columns.getSnow (row));
+			assertEquals (weatherData.getPrecipitation (), columns.getPrecipitation (row));
+		}
+	}
+
+	@Test
+	public void testColumnarCityHistory () throws IOException, JSONException {
+		WeatherHistoryCityResponse eager = new WeatherHistoryCityResponse (new JSONObject (TestData.HISTORY_WEATHER_AT_CITY_ID));
+		HistoryColumns columnar = WeatherHistoryCityResponse.COLUMNAR_DECODER.decode (
+				HistoryColumnsTest.content (TestData.HISTORY_WEATHER_AT_CITY_ID));
+		assertTrue (eager.getHistory ().size () > 1);
+		HistoryColumnsTest.assertColumns (eager.getHistory (), columnar);
+		/* built from the history when not decoded as columns */
+		HistoryColumnsTest.assertColumns (eager.getHistory (), eager.getColumns ());
+		assertSame (eager.getColumns (), eager.getColumns ());
+	}
+
+	@Test
+	public void testColumnarStationHistory () throws IOException, JSONException {
+		for (String response : new String[] {TestData.HISTORY_WEATHER_AT_STATION_ID_BY_TICK, TestData.HISTORY_WEATHER_AT_STATION_ID_BY_HOUR}) {
+			WeatherHistoryStationResponse eager = new WeatherHistoryStationResponse (new JSONObject (response));
+			HistoryColumns columnar = WeatherHistoryStationResponse.COLUMNAR_DECODER.decode (
+					HistoryColumnsTest.content (response));
+			assertTrue (eager.getHistory ().size () > 1);
+			HistoryColumnsTest.assertColumns (eager.getHistory (), columnar);
+		}
+	}
+
+	@Test
+	public void testColumnsReadTheElementsAsTheWeatherData () throws JSONException {
+		String[] ticks = {
+				"{\"dt\":1,\"main\":{\"temp\":280.5,\"pressure\":1012},\"wind\":{\"speed\":3.5,\"gust\":7}}",
+				"{\"dt\":2,\"rain\":{\"1h\":2,\"3h\":5,\"today\":9},\"snow\":{\"today\":\"4\"}}",
+				"{\"dt\":3,\"rain\":{\"1h\":0.5,\"today\":3}}",
+				"{\"dt\":4,\"snow\":{\"1h\":\"6\"},\"main\":{\"humidity\":80}}"};
+		String[] samples = {
+				"{\"dt\":1,\"temp\":{\"v\":281,\"c\":6},\"main\":{\"temp\":{\"v\":270},\"pressure\":{\"v\":1010}}}",
+				"{\"dt\":2,\"humidity\":{\"c\":2},\"main\":{\"humidity\":{\"v\":70}},\"wind\":{\"speed\":{\"v\":4},\"gust\":{\"v\":9}}}",
+				"{\"dt\":3,\"rain\":{\"1h\":{\"v\":2},\"today\":7},\"snow\":{\"today\":1}}",
+				"{\"dt\":4,\"snow\":{\"1h\":{\"c\":1},\"today\":5}}",
+				"{\"dt\":5,\"rain\":{\"today\":3},\"precipitation\":{\"v\":{\"v\":11}}}"};
+		List<AbstractWeatherData> history = new ArrayList<AbstractWeatherData> ();
+		HistoryColumns.Builder builder = new HistoryColumns.Builder ();
+		for (String tick : ticks) {
+			history.add (new WeatherData (new JSONObject (tick)));
+			builder.addTick (new JSONObject (tick));
+		}
+		for (String sample : samples) {
+			history.add (new SampledWeatherData (new JSONObject (sample)));
+			builder.addSample (new JSONObject (sample));
+		}
+		HistoryColumns columns = builder.build ();
+		HistoryColumnsTest.assertColumns (history, columns);
+		assertEquals (6, columns.getPrecipitation (1));
+		assertEquals (6, columns.getSnow (3));
+		assertEquals (5, columns.getSnow (7));
+		assertEquals (11, columns.getPrecipitation (8));
+	}
+
+	@Test
+	public void testEmptyColumnarHistory () throws IOException, JSONException {
+		HistoryColumns columnar = WeatherHistoryStationResponse.COLUMNAR_DECODER.decode (
+				HistoryColumnsTest.content ("{\"cod\":\"200\",\"type\":\"tick\",\"list\":[]}"));
+		assertTrue (columnar.isEmpty ());
+		WeatherHistoryStationResponse response = WeatherHistoryStationResponse.DECODER.decode (
+				HistoryColumnsTest.content ("{\"cod\":\"200\",\"type\":\"tick\",\"list\":[]}"));
+		assertFalse (response.hasHistory ());
+		assertTrue (response.getColumns ().isEmpty ());
+	}
+
+	@Test
+	public void testColumnsGrowAndKeepSentinels () throws JSONException {
+		HistoryColumns.Builder builder = new HistoryColumns.Builder ();
+		for (int i = 0; i < 100; i++)
+			builder.add (new WeatherData (new JSONObject ("{\"dt\":" + i + ",\"main\":{\"temp\":" + (270 + i) + "}}")));
+		HistoryColumns columns = builder.build ();
+		assertEquals (100, columns.size ());
+		assertEquals (99L, columns.getDateTime (99));
+		assertEquals (369f, columns.getTemp (99), 0f);
+		assertTrue (Float.isNaN (columns.getPressure (0)));
+		assertTrue (Float.isNaN (columns.getWindSpeed (0)));
+		assertEquals (Integer.MIN_VALUE, columns.getRain (0));
+		assertEquals (Integer.MIN_VALUE, columns.getPrecipitation (0));
+
+		assertTrue (HistoryColumns.of (Collections.<WeatherData>emptyList ()).isEmpty ());
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link JsonStreamReader} */
+public class JsonStreamReaderTest {
+
+	private static InputStream utf8 (String json) {
+		return new ByteArrayInputStream (json.getBytes (StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testReadsTheSameValuesAsTheJsonParser () throws IOException, JSONException {
+		String json = "{\"s\":\"S\\u00e3o Paulo \\\"\\/\\n\", \"u\":\"Zürich 東京 🌧\", \"i\":-12, \"l\":12345678901,"
+				+ " \"d\":1.5e2, \"t\":true, \"f\":false, \"n\":null, \"a\":[1, {\"x\":[]}, \"y\"], \"o\":{}}";
+		JSONObject expected = new JSONObject (json);
+		JSONObject streamed = JsonStreamReader.readObject (utf8 (json));
+		assertEquals (expected.toString (), streamed.toString ());
+		assertEquals (Integer.valueOf (-12), streamed.get ("i"));
+		assertEquals (Long.valueOf (12345678901L), streamed.get ("l"));
+		assertEquals (150d, streamed.getDouble ("d"), 0d);
+	}
+
+	@Test
+	public void testEnvelopeListIsDecodedByElement () throws IOException, JSONException {
+		JsonStreamReader.Envelope<StatusWeatherData> envelope = JsonStreamReader.readEnvelope (
+				utf8 (TestData.CURRENT_WEATHER_AROUND_POINT), (json, element) -> new StatusWeatherData (element));
+		WeatherStatusResponse expected = new WeatherStatusResponse (new JSONObject (TestData.CURRENT_WEATHER_AROUND_POINT));
+		assertTrue (!envelope.json.has ("list"));
+		assertEquals (expected.getCode (), envelope.json.optInt ("cod"));
+		assertEquals (expected.getWeatherStatus ().size (), envelope.list.size ());
+		for (int i = 0; i < envelope.list.size (); i++) {
+			assertEquals (expected.getWeatherStatus ().get (i).getId (), envelope.list.get (i).getId ());
+			assertEquals (expected.getWeatherStatus ().get (i).getTemp (), envelope.list.get (i).getTemp (), 0f);
+		}
+	}
+
+	@Test
+	public void testElementsAreDeferredUntilTheEnvelopeIsKnown () throws IOException, JSONException {
+		String json = "{\"list\":[{\"dt\":1},{\"dt\":2}],\"type\":\"tick\"}";
+		WeatherHistoryStationResponse history = WeatherHistoryStationResponse.DECODER.decode (utf8 (json));
+		assertEquals (OwmClient.HistoryType.TICK, history.getType ());
+		assertEquals (2, history.getHistory ().size ());
+		assertEquals (2, history.getHistory ().get (1).getDateTime ());
+	}
+
+	@Test
+	public void testDeferredMembersKeepTheirSource () throws IOException, JSONException {
+		/* members longer than the read buffer, so their sources span refills */
+		StringBuilder padding = new StringBuilder ();
+		for (int i = 0; i < 3000; i++)
+			padding.append ("abã");
+		StringBuilder json = new StringBuilder ("{\"cod\":200,\"list\":[");
+		for (int i = 0; i < 5; i++)
+			json.append (i > 0 ? ", " : "").append ("{\"dt\":").append (i)
+				.append (",\"main\":{\"pad\":\"").append (padding).append ("\",\"temp\":").append (i).append ("}}");
+		json.append ("]}");
+		JsonStreamReader.Envelope<JSONObject> envelope = JsonStreamReader.readEnvelope (
+				utf8 (json.toString ()), (fields, element) -> element,
+				WeatherData.deferredSections (DecodeMode.LAZY));
+		assertEquals (5, envelope.list.size ());
+		for (int i = 0; i < 5; i++) {
+			JSONObject element = envelope.list.get (i);
+			assertTrue (element instanceof JsonStreamReader.SourcedObject);
+			assertEquals (i, element.getInt ("dt"));
+
+			byte[] source = JsonStreamReader.sourceOf (element, "main");
+			JSONObject main = (JSONObject) JsonStreamReader.parseSource (source, 0, source.length);
+			assertEquals (padding.toString (), main.getString ("pad"));
+			assertEquals (i, main.getInt ("temp"));
+
+			/* the deferred member is built on its first read */
+			assertTrue (element.has ("main"));
+			assertEquals (i, element.getJSONObject ("main").getInt ("temp"));
+			assertFalse (element.has ("wind"));
+		}
+		assertEquals (200, envelope.json.getInt ("cod"));
+	}
+
+	@Test (expected = JSONException.class)
+	public void testTruncatedContentFails () throws IOException, JSONException {
+		JsonStreamReader.readObject (utf8 ("{\"a\":[1,2"));
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.bitpipeline.lib.owm.OwmClient.HistoryType;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link OwmAsyncClient} */
+public class OwmAsyncClientTest {
+
+	@SuppressWarnings ("unchecked")
+	private static HttpResponse<byte[]> createResponse (int statusCode, String responseBody) {
+		HttpResponse<byte[]> response = mock (HttpResponse.class);
+		when (response.statusCode ()).thenReturn (statusCode);
+		when (response.body ()).thenReturn (responseBody.getBytes (StandardCharsets.UTF_8));
+		when (response.headers ()).thenReturn (HttpHeaders.of (Collections.<String, List<String>>emptyMap (), (name, value) -> true));
+		return response;
+	}
+
+	/* Mockito 1.9.5 only matches the raw class, so the cast to the handler of
+	 * the client's bodies can't be checked */
+	@SuppressWarnings ("unchecked")
+	private static HttpResponse.BodyHandler<byte[]> anyBodyHandler () {
+		return any (HttpResponse.BodyHandler.class);
+	}
+
+	private static HttpClient createHttpClientThatRespondsWith (final int statusCode, final String responseBody) {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		final HttpResponse<byte[]> response = createResponse (statusCode, responseBody);
+		when (mockHttpClient.sendAsync (any (HttpRequest.class), OwmAsyncClientTest.anyBodyHandler ())).then (new Answer<CompletableFuture<HttpResponse<byte[]>>> () {
+			@Override
+			public CompletableFuture<HttpResponse<byte[]>> answer (InvocationOnMock invocation) throws Throwable {
+				return CompletableFuture.completedFuture (response);
+			}
+		});
+		return mockHttpClient;
+	}
+
+	@Test
+	public void testAPPIDHeaderRequest () throws InterruptedException, ExecutionException {
+		final String appid = UUID.randomUUID ().toString ();
+		final HttpResponse<byte[]> response = createResponse (200, TestData.CURRENT_WEATHER_AROUND_CITY_COORD);
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.sendAsync (any (HttpRequest.class), OwmAsyncClientTest.anyBodyHandler ())).then (new Answer<CompletableFuture<HttpResponse<byte[]>>> () {
+			@Override
+			public CompletableFuture<HttpResponse<byte[]>> answer (InvocationOnMock invocation) throws Throwable {
+				HttpRequest request = (HttpRequest) invocation.getArguments ()[0];
+				assertEquals (appid, request.headers ().firstValue ("x-api-key").orElse (null));
+				return CompletableFuture.completedFuture (response);
+			}
+		});
+
+		OwmAsyncClient owm = new OwmAsyncClient (mockHttpClient);
+		owm.setAPPID (appid);
+		assertTrue (owm.currentWeatherAtCity (55f, 37f, 10).get ().hasWeatherStatus ());
+	}
+
+	@Test
+	public void testCurrentWeatherAtCityId () throws InterruptedException, ExecutionException {
+		OwmAsyncClient owm = new OwmAsyncClient (createHttpClientThatRespondsWith (200, TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW));
+		StatusWeatherData weatherData = owm.currentWeatherAtCity (524901).get ();
+		assertNotNull (weatherData);
+		assertEquals ("Moscow", weatherData.getName ());
+		assertEquals (524901, weatherData.getId ());
+	}
+
+	@Test
+	public void testForecastAtCityId () throws InterruptedException, ExecutionException {
+		OwmAsyncClient owm = new OwmAsyncClient (createHttpClientThatRespondsWith (200, TestData.FORECAST_WEATHER_AT_CITY_ID_LISBON));
+		WeatherForecastResponse forecastResponse = owm.forecastWeatherAtCity (524901).get ();
+		assertTrue ("Lisbon".equalsIgnoreCase (forecastResponse.getCity ().getName ()));
+		assertTrue (forecastResponse.hasForecasts ());
+	}
+
+	@Test
+	public void testTickHistoryWeatherAtStation () throws InterruptedException, ExecutionException {
+		OwmAsyncClient owm = new OwmAsyncClient (createHttpClientThatRespondsWith (200, TestData.HISTORY_WEATHER_AT_STATION_ID_BY_TICK));
+		WeatherHistoryStationResponse history = owm.historyWeatherAtStation (9040, HistoryType.TICK).get ();
+		assertEquals (9040, history.getStationId ());
+		assertTrue (history.hasHistory ());
+	}
+
+	@Test
+	public void testErrorStatusFailsTheFuture () throws InterruptedException {
+		OwmAsyncClient owm = new OwmAsyncClient (createHttpClientThatRespondsWith (500, ""));
+		try {
+			owm.currentWeatherAtStation (9040).get ();
+			fail ("A 500 response must fail the future");
+		} catch (ExecutionException e) {
+			assertTrue (e.getCause () instanceof IOException);
+		}
+	}
+}
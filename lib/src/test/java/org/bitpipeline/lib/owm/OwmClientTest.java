@@ -18,20 +18,36 @@ package org.bitpipeline.lib.owm;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicHttpResponse;
 import org.bitpipeline.lib.owm.OwmClient.HistoryType;
@@ -59,6 +75,29 @@ public class OwmClientTest {
 		return mockHttpClient;
 	}
 
+	private HttpClient createHttpClientThatRespondsWithEncoded (final byte[] responseBody, final String contentEncoding) throws IOException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				HttpGet httpGet = (HttpGet) invocation.getArguments ()[0];
+				assertTrue (httpGet.getFirstHeader ("Accept-Encoding").getValue ().contains (contentEncoding));
+				HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+				ByteArrayEntity entity = new ByteArrayEntity (responseBody);
+				entity.setContentEncoding (contentEncoding);
+				response.setEntity (entity);
+				return response;
+			}
+		});
+		return mockHttpClient;
+	}
+
+	private static byte[] compress (String content, DeflaterOutputStream compressor, ByteArrayOutputStream out) throws IOException {
+		compressor.write (content.getBytes ("UTF-8"));
+		compressor.close ();
+		return out.toByteArray ();
+	}
+
 	private static void assertWeatherData (StatusWeatherData weatherData) {
 		assertNotNull (weatherData);
 		assertNotNull (weatherData.getName ());
@@ -123,6 +162,17 @@ public class OwmClientTest {
 		OwmClientTest.assertWeatherDataList (currentWeather.getWeatherStatus (), 10);
 	}
 
+	@Test
+	public void testLazyDecodeMode () throws IOException, JSONException {
+		HttpClient mockHttpClient = createHttpClientThatRespondsWith (TestData.CURRENT_WEATHER_AROUND_POINT);
+		OwmClient owm = new OwmClient (mockHttpClient);
+		assertEquals (DecodeMode.EAGER, owm.getDecodeMode ());
+		owm.setDecodeMode (DecodeMode.LAZY);
+		WeatherStatusResponse currentWeather = owm.currentWeatherAroundPoint (55f, 37f, 10);
+		assertTrue (currentWeather.hasWeatherStatus ());
+		OwmClientTest.assertWeatherDataList (currentWeather.getWeatherStatus (), 10);
+	}
+
 	@Test
 	public void testCurrentWeatherAroundCity () throws IOException, JSONException {
 		HttpClient mockHttpClient = createHttpClientThatRespondsWith (TestData.CURRENT_WEATHER_AROUND_CITY_COORD);
@@ -308,4 +358,352 @@ public class OwmClientTest {
 		assertEquals (Integer.MIN_VALUE, weather.getSnow ());
 		assertEquals (0, weather.getPrecipitation ());
 	}
+
+	@Test
+	public void testGzipEncodedResponse () throws IOException, JSONException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		byte[] gzipped = OwmClientTest.compress (TestData.CURRENT_WEATHER_IN_CIRCLE, new GZIPOutputStream (out), out);
+		OwmClient owm = new OwmClient (createHttpClientThatRespondsWithEncoded (gzipped, "gzip"));
+		WeatherStatusResponse currentWeather = owm.currentWeatherInCircle (55.5f, 37.5f, 40f);
+		assertTrue (currentWeather.hasWeatherStatus ());
+		OwmClientTest.assertWeatherDataList (currentWeather.getWeatherStatus (), Integer.MAX_VALUE);
+	}
+
+	@Test
+	public void testDeflateEncodedResponse () throws IOException, JSONException {
+		for (boolean raw : new boolean[] {false, true}) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream ();
+			byte[] deflated = OwmClientTest.compress (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW,
+					new DeflaterOutputStream (out, new Deflater (Deflater.DEFAULT_COMPRESSION, raw)), out);
+			OwmClient owm = new OwmClient (createHttpClientThatRespondsWithEncoded (deflated, "deflate"));
+			StatusWeatherData weatherData = owm.currentWeatherAtCity (524901);
+			assertEquals ("Moscow", weatherData.getName ());
+		}
+	}
+
+	@Test
+	public void testNotModifiedReturnsThePreviousResponse () throws IOException, JSONException {
+		final int[] requests = new int[1];
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				HttpGet httpGet = (HttpGet) invocation.getArguments ()[0];
+				if (requests[0]++ == 0) {
+					assertFalse (httpGet.containsHeader ("If-None-Match"));
+					HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+					response.setHeader ("ETag", "\"v1\"");
+					response.setHeader ("Last-Modified", "Sat, 16 Feb 2013 10:00:00 GMT");
+					response.setEntity (new StringEntity (TestData.FORECAST_WEATHER_AT_CITY_ID_LISBON));
+					return response;
+				}
+				assertEquals ("\"v1\"", httpGet.getFirstHeader ("If-None-Match").getValue ());
+				assertEquals ("Sat, 16 Feb 2013 10:00:00 GMT", httpGet.getFirstHeader ("If-Modified-Since").getValue ());
+				return new BasicHttpResponse (HttpVersion.HTTP_1_1, 304, "Not Modified");
+			}
+		});
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setRevalidation (10);
+		WeatherForecastResponse first = owm.forecastWeatherAtCity (524901);
+		WeatherForecastResponse second = owm.forecastWeatherAtCity (524901);
+		assertEquals (2, requests[0]);
+		assertSame (first, second);
+	}
+
+	@Test
+	public void testHistoryColumnsAreKeptApartFromTheHistory () throws IOException, JSONException {
+		final int[] requests = new int[1];
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				HttpGet httpGet = (HttpGet) invocation.getArguments ()[0];
+				requests[0]++;
+				if (httpGet.containsHeader ("If-None-Match"))
+					return new BasicHttpResponse (HttpVersion.HTTP_1_1, 304, "Not Modified");
+				HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+				response.setHeader ("ETag", "\"v1\"");
+				response.setEntity (new StringEntity (TestData.HISTORY_WEATHER_AT_CITY_ID));
+				return response;
+			}
+		});
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setRevalidation (10);
+		WeatherHistoryCityResponse history = owm.historyWeatherAtCity (2885679, HistoryType.TICK);
+		HistoryColumns columns = owm.historyColumnsAtCity (2885679, HistoryType.TICK);
+		assertEquals (history.getHistory ().size (), columns.size ());
+		assertSame (columns, owm.historyColumnsAtCity (2885679, HistoryType.TICK));
+		assertSame (history, owm.historyWeatherAtCity (2885679, HistoryType.TICK));
+		assertEquals (4, requests[0]);
+
+		owm = new OwmClient (mockHttpClient);
+		owm.setResponseCache (new ResponseCache (10));
+		history = owm.historyWeatherAtCity (2885679, HistoryType.TICK);
+		columns = owm.historyColumnsAtCity (2885679, HistoryType.TICK);
+		assertEquals (history.getHistory ().size (), columns.size ());
+		assertSame (columns, owm.historyColumnsAtCity (2885679, HistoryType.TICK));
+		assertEquals (6, requests[0]);
+	}
+
+	@Test
+	public void testCachedResponsesDontGoToTheNetwork () throws IOException, JSONException {
+		HttpClient mockHttpClient = createHttpClientThatRespondsWith (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW);
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setResponseCache (new ResponseCache (10));
+		StatusWeatherData first = owm.currentWeatherAtCity (524901);
+		StatusWeatherData second = owm.currentWeatherAtCity (524901);
+		assertSame (first, second);
+		verify (mockHttpClient, times (1)).execute (any (HttpGet.class));
+		assertEquals (1, owm.getResponseCache ().getStats ().getHitCount ());
+		assertEquals (1, owm.getResponseCache ().getStats ().getMissCount ());
+	}
+
+	@Test
+	public void testDiskCacheServesANewClient () throws IOException, JSONException {
+		File directory = File.createTempFile ("owm", "cache");
+		directory.delete ();
+		DiskResponseCache disk = new DiskResponseCache (directory);
+		OwmClient owm = new OwmClient (createHttpClientThatRespondsWith (TestData.FORECAST_WEATHER_AT_CITY_ID_LISBON));
+		owm.setDiskCache (disk);
+		WeatherForecastResponse fetched = owm.forecastWeatherAtCity (524901);
+		disk.close ();
+
+		HttpClient offline = mock (HttpClient.class);
+		when (offline.execute (any (HttpGet.class))).thenThrow (new IOException ("offline"));
+		disk = new DiskResponseCache (directory);
+		try {
+			OwmClient restarted = new OwmClient (offline);
+			restarted.setDiskCache (disk);
+			WeatherForecastResponse cached = restarted.forecastWeatherAtCity (524901);
+			assertEquals (fetched.getForecasts ().size (), cached.getForecasts ().size ());
+			assertEquals (fetched.getCity ().getName (), cached.getCity ().getName ());
+		} finally {
+			disk.close ();
+			for (File segment : directory.listFiles ())
+				segment.delete ();
+			directory.delete ();
+		}
+	}
+
+	@Test
+	public void testRateLimiterRefusesRequestsOverTheQuota () throws IOException, JSONException {
+		HttpClient mockHttpClient = createHttpClientThatRespondsWith (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW);
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setRateLimiter (new RateLimiter (1, 1000).setMode (RateLimiter.Mode.FAIL_FAST));
+		owm.currentWeatherAtCity (524901);
+		try {
+			owm.currentWeatherAtCity (524901);
+			fail ("The quota was exceeded");
+		} catch (OwmRateLimitException e) {
+			assertTrue (e.hasRetryAfterMillis ());
+		}
+		verify (mockHttpClient, times (1)).execute (any (HttpGet.class));
+	}
+
+	@Test
+	public void testWaitForTheRateLimiterIsNotASlowCall () throws IOException, JSONException {
+		HttpClient mockHttpClient = createHttpClientThatRespondsWith (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW);
+		OwmClient owm = new OwmClient (mockHttpClient);
+		/* a token every 100ms, once the bucket is drained */
+		RateLimiter limiter = new RateLimiter (600, 100000);
+		for (int i = 0; i < 600; i++)
+			limiter.acquire (RateLimiter.Priority.INTERACTIVE);
+		owm.setRateLimiter (limiter);
+		owm.setCircuitBreaker (new CircuitBreaker ()
+				.setWindow (2, 2)
+				.setSlowCallThreshold (50, TimeUnit.MILLISECONDS, 0.5));
+		long start = System.nanoTime ();
+		owm.currentWeatherAtCity (524901);
+		owm.currentWeatherAtCity (524901);
+		assertTrue (System.nanoTime () - start >= TimeUnit.MILLISECONDS.toNanos (150));
+		assertEquals (CircuitBreaker.State.CLOSED, owm.getCircuitBreaker ().getState (EndpointFamily.WEATHER));
+	}
+
+	@Test
+	public void testTransientErrorsAreRetried () throws IOException, JSONException {
+		final int[] requests = new int[1];
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				if (requests[0]++ == 0)
+					return new BasicHttpResponse (HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+				HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+				response.setEntity (new StringEntity (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW));
+				return response;
+			}
+		});
+		RetryPolicy retries = new RetryPolicy ();
+		retries.setSleeper (millis -> { });
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setRetryPolicy (retries);
+		assertNotNull (owm.currentWeatherAtCity (524901));
+		assertEquals (2, requests[0]);
+		assertEquals (1, retries.getRetryCount ());
+	}
+
+	@Test
+	public void testPermanentErrorsAreNotRetried () throws IOException, JSONException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).thenReturn (
+				new BasicHttpResponse (HttpVersion.HTTP_1_1, 404, "Not Found"));
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setRetryPolicy (new RetryPolicy ());
+		try {
+			owm.currentWeatherAtCity (524901);
+			fail ("The city doesn't exist");
+		} catch (OwmHttpStatusException e) {
+			assertEquals (404, e.getStatusCode ());
+		}
+		verify (mockHttpClient, times (1)).execute (any (HttpGet.class));
+	}
+
+	@Test
+	public void testSlowRequestsAreHedged () throws IOException, JSONException {
+		final int[] requests = new int[1];
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				HttpGet httpGet = (HttpGet) invocation.getArguments ()[0];
+				int request;
+				synchronized (requests) {
+					request = ++requests[0];
+				}
+				if (request == 1) {
+					/* stall until aborted */
+					while (!httpGet.isAborted ())
+						Thread.sleep (5);
+					throw new IOException ("aborted");
+				}
+				HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+				response.setEntity (new StringEntity (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW));
+				return response;
+			}
+		});
+		HedgingPolicy hedging = new HedgingPolicy ().setDelayBounds (10, 10, TimeUnit.MILLISECONDS);
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setHedgingPolicy (hedging);
+		assertNotNull (owm.currentWeatherAtCity (524901));
+		assertEquals (2, requests[0]);
+		assertEquals (1, hedging.getHedgeWinCount ());
+	}
+
+	@Test
+	public void testOpenCircuitServesStaleResponses () throws IOException, JSONException {
+		final int[] requests = new int[1];
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				if (requests[0]++ > 0)
+					return new BasicHttpResponse (HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+				HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+				response.setEntity (new StringEntity (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW));
+				return response;
+			}
+		});
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setResponseCache (new ResponseCache (10).setTimeToLive (EndpointFamily.WEATHER, 1, TimeUnit.NANOSECONDS));
+		owm.setCircuitBreaker (new CircuitBreaker ().setWindow (1, 1));
+		StatusWeatherData fresh = owm.currentWeatherAtCity (524901);
+		try {
+			owm.currentWeatherAtCity (524901);
+			fail ("The server is failing");
+		} catch (OwmHttpStatusException e) {
+			assertEquals (503, e.getStatusCode ());
+		}
+		assertEquals (CircuitBreaker.State.OPEN, owm.getCircuitBreaker ().getState (EndpointFamily.WEATHER));
+		assertSame (fresh, owm.currentWeatherAtCity (524901));
+		assertEquals (2, requests[0]);
+		try {
+			owm.currentWeatherAtStation (9040);
+			fail ("The circuit is open");
+		} catch (OwmCircuitOpenException e) {
+			assertEquals (EndpointFamily.WEATHER, e.getFamily ());
+		}
+	}
+
+	@Test
+	public void testBulkQueryReportsEachCity () throws IOException, JSONException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				HttpGet httpGet = (HttpGet) invocation.getArguments ()[0];
+				if (httpGet.getURI ().getPath ().endsWith ("/404"))
+					return new BasicHttpResponse (HttpVersion.HTTP_1_1, 404, "Not Found");
+				HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+				response.setEntity (new StringEntity (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW));
+				return response;
+			}
+		});
+		OwmClient owm = new OwmClient (mockHttpClient);
+		BulkResult<StatusWeatherData> result = owm.currentWeatherAtCities (new int[] { 524901, 404, 2643743 }, 2, 10, TimeUnit.SECONDS);
+		assertTrue (result.isComplete ());
+		assertEquals (2, result.getResults ().size ());
+		assertNotNull (result.get (2643743));
+		assertFalse (result.isSuccess (404));
+		assertTrue (result.getFailures ().get (Integer.valueOf (404)) instanceof OwmHttpStatusException);
+	}
+
+	@Test
+	public void testHedgedBulkQueryOnAFixedPool () throws IOException, JSONException {
+		final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger> ();
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (new Answer<HttpResponse>() {
+			@Override
+			public HttpResponse answer (InvocationOnMock invocation) throws Throwable {
+				/* the first request of each city is slow and fails */
+				String path = ((HttpGet) invocation.getArguments ()[0]).getURI ().getPath ();
+				AtomicInteger count = requests.computeIfAbsent (path, key -> new AtomicInteger ());
+				if (count.getAndIncrement () == 0) {
+					Thread.sleep (50);
+					return new BasicHttpResponse (HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+				}
+				HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+				response.setEntity (new StringEntity (TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW));
+				return response;
+			}
+		});
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setHedgingPolicy (new HedgingPolicy ().setDelayBounds (5, 5, TimeUnit.MILLISECONDS));
+		/* the bulk query takes all the threads, so the hedges wait for one */
+		ExecutorService executor = Executors.newFixedThreadPool (2);
+		try {
+			owm.setExecutor (executor);
+			BulkResult<StatusWeatherData> result = owm.currentWeatherAtCities (new int[] { 1, 2, 3, 4 }, 2, 5, TimeUnit.SECONDS);
+			assertTrue (result.isComplete ());
+			assertEquals (4, result.getResults ().size ());
+			assertEquals (4, owm.getHedgingPolicy ().getHedgeWinCount ());
+		} finally {
+			executor.shutdownNow ();
+		}
+	}
+
+	@Test
+	public void testShutdownReleasesOnlyTheOwnedExecutor () {
+		OwmClient owm = VirtualThreads.newClient (2);
+		ExecutorService owned = (ExecutorService) owm.getExecutor ();
+		owm.shutdown ();
+		assertTrue (owned.isShutdown ());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor ();
+		try {
+			OwmClient client = new OwmClient (mock (OwmTransport.class));
+			client.setExecutor (executor);
+			client.shutdown ();
+			assertFalse (executor.isShutdown ());
+		} finally {
+			executor.shutdownNow ();
+		}
+	}
+
+	@Test (expected = IOException.class)
+	public void testErrorStatusIsAnIOException () throws IOException, JSONException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).thenReturn (
+				new BasicHttpResponse (HttpVersion.HTTP_1_1, 404, "Not Found"));
+		new OwmClient (mockHttpClient).currentWeatherAtCity (524901);
+	}
 }
@@ -0,0 +1,117 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the flight recorder {@link OwmEvents} */
+public class OwmEventsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder ();
+
+	private HttpClient createHttpClientThatRespondsWith (final String responseBody) throws IOException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (invocation -> {
+			HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+			response.setEntity (new StringEntity (responseBody));
+			return response;
+		});
+		return mockHttpClient;
+	}
+
+	static private List<RecordedEvent> events (List<RecordedEvent> events, String name) {
+		List<RecordedEvent> named = new ArrayList<RecordedEvent> ();
+		for (RecordedEvent event : events) {
+			if (event.getEventType ().getName ().equals (name))
+				named.add (event);
+		}
+		return named;
+	}
+
+	@Test
+	public void testRequestsAndCachesAreRecorded () throws IOException, JSONException {
+		OwmClient owm = new OwmClient (createHttpClientThatRespondsWith (TestData.CURRENT_WEATHER_AROUND_POINT));
+		owm.setResponseCache (new ResponseCache (10));
+		File file = new File (this.folder.getRoot (), "owm.jfr");
+		try (Recording recording = new Recording ()) {
+			recording.enable ("org.bitpipeline.owm.Request");
+			recording.enable ("org.bitpipeline.owm.HttpExecute");
+			recording.enable ("org.bitpipeline.owm.Decode");
+			recording.enable ("org.bitpipeline.owm.Cache");
+			recording.start ();
+			int count = owm.currentWeatherAroundPoint (55f, 37f, 10).getWeatherStatus ().size ();
+			owm.currentWeatherAroundPoint (55f, 37f, 10);
+			recording.stop ();
+			recording.dump (file.toPath ());
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents (file.toPath ());
+			String subUrl = OwmSubUrls.currentWeatherAroundPoint (55f, 37f, 10);
+
+			List<RecordedEvent> requests = OwmEventsTest.events (events, "org.bitpipeline.owm.Request");
+			assertEquals (1, requests.size ());
+			RecordedEvent request = requests.get (0);
+			assertEquals (subUrl, request.getString ("endpoint"));
+			assertEquals ("FIND", request.getString ("family"));
+			assertEquals (200, request.getInt ("statusCode"));
+			assertEquals (TestData.CURRENT_WEATHER_AROUND_POINT.length (), request.getLong ("bytes"));
+			assertEquals (count, request.getInt ("items"));
+
+			List<RecordedEvent> executes = OwmEventsTest.events (events, "org.bitpipeline.owm.HttpExecute");
+			assertEquals (1, executes.size ());
+			assertEquals (200, executes.get (0).getInt ("statusCode"));
+
+			List<RecordedEvent> decodes = OwmEventsTest.events (events, "org.bitpipeline.owm.Decode");
+			assertEquals (1, decodes.size ());
+			RecordedEvent decode = decodes.get (0);
+			assertEquals ("WeatherStatusResponse", decode.getString ("responseType"));
+			assertEquals (count, decode.getInt ("items"));
+			assertTrue (decode.getDuration ("buildTime").toNanos () > 0);
+			assertTrue (decode.getDuration ().compareTo (decode.getDuration ("buildTime")) >= 0);
+			assertTrue (request.getDuration ().compareTo (decode.getDuration ()) >= 0);
+
+			List<RecordedEvent> lookups = OwmEventsTest.events (events, "org.bitpipeline.owm.Cache");
+			assertEquals (2, lookups.size ());
+			assertEquals ("miss", lookups.get (0).getString ("outcome"));
+			assertEquals ("hit", lookups.get (1).getString ("outcome"));
+			assertEquals ("memory", lookups.get (1).getString ("cache"));
+		}
+	}
+}
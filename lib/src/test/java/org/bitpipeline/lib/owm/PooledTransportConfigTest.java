@@ -0,0 +1,81 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link PooledTransportConfig} */
+public class PooledTransportConfigTest {
+
+	@Test
+	public void testCreatedClientUsesTheConfiguredPool () {
+		PooledTransportConfig config = new PooledTransportConfig ()
+				.setMaxConnectionsPerRoute (7)
+				.setMaxConnectionsTotal (21)
+				.setConnectTimeoutMillis (1234)
+				.setSocketTimeoutMillis (4321);
+		HttpClient httpClient = config.createHttpClient ();
+		try {
+			assertTrue (httpClient.getConnectionManager () instanceof PoolingClientConnectionManager);
+			PoolingClientConnectionManager pool = (PoolingClientConnectionManager) httpClient.getConnectionManager ();
+			assertEquals (7, pool.getDefaultMaxPerRoute ());
+			assertEquals (21, pool.getMaxTotal ());
+			assertEquals (1234, HttpConnectionParams.getConnectionTimeout (httpClient.getParams ()));
+			assertEquals (4321, HttpConnectionParams.getSoTimeout (httpClient.getParams ()));
+		} finally {
+			httpClient.getConnectionManager ().shutdown ();
+		}
+	}
+
+	@Test
+	public void testShutdownStopsTheEvictor () throws InterruptedException {
+		PooledTransportConfig.EvictingConnectionManager manager = new PooledTransportConfig.EvictingConnectionManager ();
+		manager.startEvictor (10);
+		Thread evictor = manager.getEvictor ();
+		assertTrue (evictor.isAlive () && evictor.isDaemon ());
+		manager.shutdown ();
+		evictor.join (5000);
+		assertTrue (!evictor.isAlive ());
+	}
+
+	@Test
+	public void testTransportShutsDownOnlyTheClientItCreated () throws InterruptedException {
+		HttpClientTransport pooled = new HttpClientTransport (new PooledTransportConfig ());
+		Thread evictor = ((PooledTransportConfig.EvictingConnectionManager) pooled.getHttpClient ().getConnectionManager ()).getEvictor ();
+		pooled.shutdown ();
+		evictor.join (5000);
+		assertTrue (!evictor.isAlive ());
+
+		HttpClient httpClient = mock (HttpClient.class);
+		new HttpClientTransport (httpClient).shutdown ();
+		verify (httpClient, never ()).getConnectionManager ();
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testRejectsNonPositiveRouteLimit () {
+		new PooledTransportConfig ().setMaxConnectionsPerRoute (0);
+	}
+}
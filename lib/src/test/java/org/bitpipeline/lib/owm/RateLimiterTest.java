@@ -0,0 +1,158 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bitpipeline.lib.owm.RateLimiter.Mode;
+import org.bitpipeline.lib.owm.RateLimiter.Priority;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RateLimiter} */
+public class RateLimiterTest {
+
+	static private void drain (RateLimiter limiter, Priority priority) throws Exception {
+		Mode mode = limiter.getMode ();
+		limiter.setMode (Mode.FAIL_FAST);
+		try {
+			while (true)
+				limiter.acquire (priority);
+		} catch (OwmRateLimitException e) {
+			/* drained */
+		} finally {
+			limiter.setMode (mode);
+		}
+	}
+
+	@Test
+	public void testFailFastWhenThePerMinuteQuotaIsExhausted () throws Exception {
+		AtomicLong now = new AtomicLong ();
+		RateLimiter limiter = new RateLimiter (3, 1000, now::get).setMode (Mode.FAIL_FAST);
+		for (int i = 0; i < 3; i++)
+			limiter.acquire (Priority.INTERACTIVE);
+		try {
+			limiter.acquire (Priority.INTERACTIVE);
+			fail ("The quota was exceeded");
+		} catch (OwmRateLimitException e) {
+			assertEquals (20000, e.getRetryAfterMillis ());
+		}
+		now.set (TimeUnit.SECONDS.toNanos (20));
+		limiter.acquire (Priority.INTERACTIVE);
+	}
+
+	@Test
+	public void testThePerDayQuotaIsEnforced () throws Exception {
+		AtomicLong now = new AtomicLong ();
+		RateLimiter limiter = new RateLimiter (100, 5, now::get).setMode (Mode.FAIL_FAST);
+		for (int i = 0; i < 5; i++)
+			limiter.acquire (Priority.INTERACTIVE);
+		now.set (TimeUnit.MINUTES.toNanos (10));
+		try {
+			limiter.acquire (Priority.INTERACTIVE);
+			fail ("The daily quota was exceeded");
+		} catch (OwmRateLimitException e) {
+			assertTrue (e.getRetryAfterMillis () > TimeUnit.HOURS.toMillis (4));
+		}
+	}
+
+	@Test
+	public void testBackgroundRequestsLeaveTheReserveToInteractiveOnes () throws Exception {
+		AtomicLong now = new AtomicLong ();
+		RateLimiter limiter = new RateLimiter (10, 1000, now::get).setMode (Mode.FAIL_FAST);
+		int background = 0;
+		try {
+			while (true) {
+				limiter.acquire (Priority.BACKGROUND);
+				background++;
+			}
+		} catch (OwmRateLimitException e) {
+			/* the reserve is left */
+		}
+		assertEquals (8, background);
+		limiter.acquire (Priority.INTERACTIVE);
+		limiter.acquire (Priority.INTERACTIVE);
+		assertEquals (0, limiter.getAvailableTokens ());
+	}
+
+	@Test
+	public void testQueueRefusesWaitsLongerThanTheMaximum () throws Exception {
+		AtomicLong now = new AtomicLong ();
+		RateLimiter limiter = new RateLimiter (1, 1000, now::get)
+				.setMode (Mode.QUEUE)
+				.setQueue (10, 1, TimeUnit.SECONDS);
+		limiter.acquire (Priority.INTERACTIVE);
+		try {
+			limiter.acquire (Priority.INTERACTIVE);
+			fail ("The request would wait a minute");
+		} catch (OwmRateLimitException e) {
+			assertEquals (60000, e.getRetryAfterMillis ());
+		}
+
+		limiter.setQueue (0, 1, TimeUnit.MINUTES);
+		try {
+			limiter.acquire (Priority.INTERACTIVE);
+			fail ("There's no room in the queue");
+		} catch (OwmRateLimitException e) {
+			assertEquals ("The request queue is full", e.getMessage ());
+		}
+	}
+
+	@Test
+	public void testBlockWaitsForTheNextToken () throws Exception {
+		/* one token every 100ms */
+		RateLimiter limiter = new RateLimiter (600, 100000);
+		RateLimiterTest.drain (limiter, Priority.INTERACTIVE);
+		long start = System.nanoTime ();
+		limiter.acquire (Priority.INTERACTIVE);
+		assertTrue (System.nanoTime () - start >= TimeUnit.MILLISECONDS.toNanos (50));
+	}
+
+	@Test
+	public void testWaitingInteractiveRequestsGoBeforeBackgroundOnes () throws Exception {
+		/* one token every 100ms and no reserve */
+		final RateLimiter limiter = new RateLimiter (600, 100000).setInteractiveReserve (0);
+		RateLimiterTest.drain (limiter, Priority.INTERACTIVE);
+		final List<Priority> order = Collections.synchronizedList (new ArrayList<Priority> ());
+		List<Thread> threads = new ArrayList<Thread> ();
+		for (final Priority priority : new Priority[] { Priority.BACKGROUND, Priority.INTERACTIVE, Priority.INTERACTIVE }) {
+			Thread thread = new Thread (() -> {
+				try {
+					limiter.acquire (priority);
+					order.add (priority);
+				} catch (Exception e) {
+					order.add (null);
+				}
+			});
+			threads.add (thread);
+			thread.start ();
+			while (limiter.getQueueLength () < threads.size () && order.isEmpty ())
+				Thread.sleep (1);
+		}
+		for (Thread thread : threads)
+			thread.join (5000);
+		assertEquals (3, order.size ());
+		assertEquals (Priority.BACKGROUND, order.get (2));
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for {@link RecordingTransport} and {@link ReplayTransport} */
+public class ReplayTransportTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder ();
+
+	private HttpClient createHttpClient (final AtomicInteger requests, final long delayMillis, final String... bodies) throws IOException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (invocation -> {
+			int request = requests.getAndIncrement ();
+			Thread.sleep (delayMillis);
+			HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+			response.setHeader (ValidatorCache.ETAG_HEADER, "\"v" + request + "\"");
+			response.setEntity (new StringEntity (bodies[request % bodies.length]));
+			return response;
+		});
+		return mockHttpClient;
+	}
+
+	@Test
+	public void testReplayServesTheRecordedResponses () throws IOException, JSONException {
+		File file = new File (this.folder.getRoot (), "owm.rec");
+		AtomicInteger requests = new AtomicInteger ();
+		RecordingTransport recording = new RecordingTransport (
+				new HttpClientTransport (createHttpClient (requests, 0, TestData.CURRENT_WEATHER_IN_CIRCLE)), file);
+		OwmClient recorder = new OwmClient (recording);
+		List<StatusWeatherData> recorded = recorder.currentWeatherInCircle (55.5f, 37.5f, 40f).getWeatherStatus ();
+		assertEquals (1, recording.getRecordedCount ());
+
+		ReplayTransport replay = new ReplayTransport (file, ReplayTransport.Pacing.FULL_SPEED);
+		assertEquals (1, replay.getExchangeCount ());
+		OwmClient owm = new OwmClient (replay);
+		for (int i = 0; i < 3; i++) {
+			List<StatusWeatherData> replayed = owm.currentWeatherInCircle (55.5f, 37.5f, 40f).getWeatherStatus ();
+			assertEquals (recorded.size (), replayed.size ());
+			for (int s = 0; s < recorded.size (); s++)
+				assertEquals (recorded.get (s).getId (), replayed.get (s).getId ());
+		}
+		assertEquals (3, replay.getServedCount ());
+		assertEquals (1, requests.get ());
+
+		try {
+			owm.currentWeatherInCircle (0f, 0f, 1f);
+			fail ("A query that wasn't recorded can't be replayed");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRepeatedQueriesAreReplayedInTurn () throws IOException, JSONException {
+		File file = new File (this.folder.getRoot (), "owm.rec");
+		AtomicInteger requests = new AtomicInteger ();
+		HttpClient httpClient = createHttpClient (requests, 0,
+				TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW, TestData.CURRENT_WEATHER_AT_STATION_ID_9040);
+		/* two recording sessions append to the same file */
+		for (int i = 0; i < 2; i++) {
+			RecordingTransport recording = new RecordingTransport (new HttpClientTransport (httpClient), file);
+			recording.execute (new OwmTransport.Request (OwmClient.DEFAULT_BASE_URL + OwmSubUrls.currentWeatherAtCity (524901))).close ();
+		}
+
+		ReplayTransport replay = new ReplayTransport (file, ReplayTransport.Pacing.FULL_SPEED);
+		assertEquals (2, replay.getExchangeCount ());
+		OwmClient owm = new OwmClient (replay);
+		assertEquals ("Moscow", owm.currentWeatherAtCity (524901).getName ());
+		assertEquals (9040, owm.currentWeatherAtCity (524901).getId ());
+		assertEquals ("Moscow", owm.currentWeatherAtCity (524901).getName ());
+	}
+
+	@Test
+	public void testRecordingAppendsAfterTheLastCompleteExchange () throws IOException, JSONException {
+		File file = new File (this.folder.getRoot (), "owm.rec");
+		HttpClient httpClient = createHttpClient (new AtomicInteger (), 0,
+				TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW, TestData.CURRENT_WEATHER_AT_STATION_ID_9040, TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW);
+		OwmTransport.Request request = new OwmTransport.Request (OwmClient.DEFAULT_BASE_URL + OwmSubUrls.currentWeatherAtCity (524901));
+		RecordingTransport recording = new RecordingTransport (new HttpClientTransport (httpClient), file);
+		recording.execute (request).close ();
+		recording.execute (request).close ();
+		recording.shutdown ();
+		/* the second exchange was cut short */
+		try (FileChannel channel = FileChannel.open (file.toPath (), StandardOpenOption.WRITE)) {
+			channel.truncate (file.length () - 10);
+		}
+
+		recording = new RecordingTransport (new HttpClientTransport (httpClient), file);
+		recording.execute (request).close ();
+		recording.shutdown ();
+
+		ReplayTransport replay = new ReplayTransport (file, ReplayTransport.Pacing.FULL_SPEED);
+		assertEquals (2, replay.getExchangeCount ());
+		OwmClient owm = new OwmClient (replay);
+		assertEquals ("Moscow", owm.currentWeatherAtCity (524901).getName ());
+		assertEquals ("Moscow", owm.currentWeatherAtCity (524901).getName ());
+	}
+
+	@Test
+	public void testRecordedLatencyIsReplayed () throws IOException, JSONException {
+		File file = new File (this.folder.getRoot (), "owm.rec");
+		RecordingTransport recording = new RecordingTransport (
+				new HttpClientTransport (createHttpClient (new AtomicInteger (), 100, TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW)), file);
+		new OwmClient (recording).currentWeatherAtCity (524901);
+
+		OwmClient paced = new OwmClient (new ReplayTransport (file, ReplayTransport.Pacing.RECORDED));
+		long start = System.nanoTime ();
+		paced.currentWeatherAtCity (524901);
+		assertTrue (System.nanoTime () - start >= TimeUnit.MILLISECONDS.toNanos (100));
+
+		OwmClient fast = new OwmClient (new ReplayTransport (file, ReplayTransport.Pacing.FULL_SPEED));
+		start = System.nanoTime ();
+		fast.currentWeatherAtCity (524901);
+		assertTrue (System.nanoTime () - start < TimeUnit.MILLISECONDS.toNanos (100));
+	}
+
+	@Test
+	public void testAbortStopsAPacedReplay () throws IOException {
+		File file = new File (this.folder.getRoot (), "owm.rec");
+		RecordingTransport recording = new RecordingTransport (
+				new HttpClientTransport (createHttpClient (new AtomicInteger (), 500, TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW)), file);
+		String url = OwmClient.DEFAULT_BASE_URL + OwmSubUrls.currentWeatherAtCity (524901);
+		recording.execute (new OwmTransport.Request (url)).close ();
+
+		ReplayTransport replay = new ReplayTransport (file, ReplayTransport.Pacing.RECORDED);
+		final OwmTransport.Request request = new OwmTransport.Request (url);
+		new Thread (() -> {
+			try {
+				Thread.sleep (50);
+			} catch (InterruptedException e) {
+				return;
+			}
+			request.abort ();
+		}).start ();
+		long start = System.nanoTime ();
+		try {
+			replay.execute (request);
+			fail ("The replay should have been aborted");
+		} catch (IOException e) {
+			assertTrue (System.nanoTime () - start < TimeUnit.MILLISECONDS.toNanos (400));
+		}
+	}
+}
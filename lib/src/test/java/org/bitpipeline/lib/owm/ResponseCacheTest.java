@@ -0,0 +1,104 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link ResponseCache} */
+public class ResponseCacheTest {
+
+	@Test
+	public void testEntriesExpireWithTheTimeToLiveOfTheirFamily () {
+		AtomicLong now = new AtomicLong ();
+		ResponseCache cache = new ResponseCache (10, now::get);
+		cache.setTimeToLive (EndpointFamily.WEATHER, 1, TimeUnit.MINUTES);
+		cache.setTimeToLive (EndpointFamily.HISTORY, 1, TimeUnit.HOURS);
+		Object weather = new Object ();
+		Object history = new Object ();
+		cache.put ("weather/city/524901?type=json", weather);
+		cache.put ("history/city/524901?type=day", history);
+
+		now.set (TimeUnit.SECONDS.toNanos (59));
+		assertSame (weather, cache.get ("weather/city/524901?type=json"));
+		now.set (TimeUnit.SECONDS.toNanos (60));
+		assertNull (cache.get ("weather/city/524901?type=json"));
+		assertSame (history, cache.get ("history/city/524901?type=day"));
+
+		CacheStats stats = cache.getStats ();
+		assertEquals (2, stats.getHitCount ());
+		assertEquals (1, stats.getMissCount ());
+		assertEquals (1, stats.getExpirationCount ());
+	}
+
+	@Test
+	public void testZeroTimeToLiveDisablesCachingOfTheFamily () {
+		ResponseCache cache = new ResponseCache (10);
+		cache.setTimeToLive (EndpointFamily.FIND, 0, TimeUnit.SECONDS);
+		cache.put ("find/station?lat=1&lon=2&cnt=3", new Object ());
+		assertEquals (0, cache.size ());
+		assertNull (cache.get ("find/station?lat=1&lon=2&cnt=3"));
+	}
+
+	@Test
+	public void testEvictionKeepsVisitedEntries () {
+		ResponseCache cache = new ResponseCache (3);
+		cache.put ("weather/city/1", "1");
+		cache.put ("weather/city/2", "2");
+		cache.put ("weather/city/3", "3");
+		/* the oldest entry is popular, the second isn't */
+		assertNotNull (cache.get ("weather/city/1"));
+		cache.put ("weather/city/4", "4");
+		assertEquals (3, cache.size ());
+		assertEquals ("1", cache.get ("weather/city/1"));
+		assertNull (cache.get ("weather/city/2"));
+		assertEquals ("3", cache.get ("weather/city/3"));
+		assertEquals ("4", cache.get ("weather/city/4"));
+		assertEquals (1, cache.getStats ().getEvictionCount ());
+
+		/* one-off entries are evicted before the ones that were visited again */
+		cache.put ("weather/city/5", "5");
+		cache.put ("weather/city/6", "6");
+		assertEquals (3, cache.size ());
+		assertEquals (3, cache.getStats ().getEvictionCount ());
+	}
+
+	@Test
+	public void testClear () {
+		ResponseCache cache = new ResponseCache (2);
+		cache.put ("forecast/city/1", "1");
+		cache.put ("forecast/city/2", "2");
+		cache.clear ();
+		assertEquals (0, cache.size ());
+		cache.put ("forecast/city/3", "3");
+		cache.put ("forecast/city/4", "4");
+		cache.put ("forecast/city/5", "5");
+		assertEquals (2, cache.size ());
+	}
+
+	@Test (expected = IllegalArgumentException.class)
+	public void testUnknownEndpointIsRejected () {
+		new ResponseCache (2).put ("unknown/1", "1");
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link RetryPolicy} */
+public class RetryPolicyTest {
+
+	@Test
+	public void testOnlyTransientFailuresAreRetried () {
+		RetryPolicy policy = new RetryPolicy ();
+		assertTrue (policy.isRetryable (new ConnectException ()));
+		assertTrue (policy.isRetryable (new SocketTimeoutException ()));
+		assertTrue (policy.isRetryable (new OwmHttpStatusException ("", 503, -1)));
+		assertTrue (policy.isRetryable (new OwmHttpStatusException ("", 429, -1)));
+		assertFalse (policy.isRetryable (new OwmHttpStatusException ("", 404, -1)));
+		assertFalse (policy.isRetryable (new OwmRateLimitException ("", -1)));
+		assertFalse (policy.isRetryable (new UnknownHostException ()));
+		assertFalse (policy.isRetryable (new IOException ()));
+	}
+
+	@Test
+	public void testBackoffIsJitteredAndBounded () {
+		RetryPolicy policy = new RetryPolicy ()
+				.setMaxAttempts (10)
+				.setBackoff (100, 1000, TimeUnit.MILLISECONDS)
+				.setBudget (1, 1000);
+		IOException failure = new ConnectException ();
+		boolean jittered = false;
+		long first = -1;
+		for (int i = 0; i < 100; i++) {
+			long delay = policy.retryDelay (1, failure);
+			assertTrue (delay >= 0 && delay <= 100);
+			jittered |= first >= 0 && delay != first;
+			first = delay;
+			assertTrue (policy.retryDelay (8, failure) <= 1000);
+		}
+		assertTrue (jittered);
+		assertEquals (-1, policy.retryDelay (10, failure));
+	}
+
+	@Test
+	public void testRetryAfterIsHonoured () {
+		RetryPolicy policy = new RetryPolicy ().setBackoff (10, 5000, TimeUnit.MILLISECONDS);
+		assertTrue (policy.retryDelay (1, new OwmHttpStatusException ("", 429, 2000)) >= 2000);
+		assertEquals (-1, policy.retryDelay (1, new OwmHttpStatusException ("", 429, 60000)));
+		assertEquals (3000, OwmHttpStatusException.parseRetryAfter ("3", 0));
+		assertEquals (1000, OwmHttpStatusException.parseRetryAfter ("Thu, 01 Jan 1970 00:00:01 GMT", 0));
+		assertEquals (-1, OwmHttpStatusException.parseRetryAfter ("soon", 0));
+	}
+
+	@Test
+	public void testBudgetCapsRetriesToAShareOfTheRequests () {
+		RetryPolicy policy = new RetryPolicy ().setBudget (0.1, 2);
+		IOException failure = new ConnectException ();
+		int retried = 0;
+		for (int i = 0; i < 100; i++) {
+			policy.recordRequest ();
+			if (policy.retryDelay (1, failure) >= 0)
+				retried++;
+		}
+		/* the reserve plus one in ten requests */
+		assertTrue (retried >= 10 && retried <= 12);
+		assertEquals (retried, policy.getRetryCount ());
+		assertEquals (100 - retried, policy.getBudgetExhaustedCount ());
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link SingleFlight} */
+public class SingleFlightTest {
+
+	@Test
+	public void testConcurrentIdenticalCallsShareOneExecution () throws Exception {
+		final SingleFlight singleFlight = new SingleFlight ();
+		final AtomicInteger executions = new AtomicInteger ();
+		final CountDownLatch release = new CountDownLatch (1);
+		final Object shared = new Object ();
+		final int callers = 8;
+
+		ExecutorService executor = Executors.newFixedThreadPool (callers);
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>> ();
+			for (int i = 0; i < callers; i++) {
+				results.add (executor.submit (new Callable<Object> () {
+					@Override
+					public Object call () throws Exception {
+						return singleFlight.execute ("weather/city/524901?type=json", () -> {
+							executions.incrementAndGet ();
+							try {
+								release.await ();
+							} catch (InterruptedException e) {
+								throw new IOException (e);
+							}
+							return shared;
+						});
+					}
+				}));
+			}
+			/* wait for the first caller to be in flight and give the others time to join */
+			while (singleFlight.inFlight () == 0)
+				Thread.sleep (1);
+			Thread.sleep (100);
+			release.countDown ();
+			for (Future<Object> result : results)
+				assertSame (shared, result.get (5, TimeUnit.SECONDS));
+			assertEquals (1, executions.get ());
+			assertEquals (0, singleFlight.inFlight ());
+		} finally {
+			executor.shutdownNow ();
+		}
+	}
+
+	@Test
+	public void testFailureIsNotRemembered () throws IOException, JSONException {
+		SingleFlight singleFlight = new SingleFlight ();
+		try {
+			singleFlight.execute ("key", () -> {
+				throw new IOException ("boom");
+			});
+			fail ("The failure must be propagated");
+		} catch (IOException e) {
+			assertEquals ("boom", e.getMessage ());
+		}
+		assertEquals ("ok", singleFlight.execute ("key", () -> "ok"));
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link StatusPublisher} */
+public class StatusPublisherTest {
+	private final ExecutorService executor = Executors.newCachedThreadPool ();
+
+	@After
+	public void shutdown () {
+		this.executor.shutdownNow ();
+	}
+
+	/* Records the signals and requests stations only when told to */
+	static private final class RecordingSubscriber implements Flow.Subscriber<StatusWeatherData> {
+		final BlockingQueue<StatusWeatherData> received = new LinkedBlockingQueue<StatusWeatherData> ();
+		final CountDownLatch done = new CountDownLatch (1);
+		final List<String> signals = new CopyOnWriteArrayList<String> ();
+		volatile Flow.Subscription subscription;
+		volatile Throwable failure;
+
+		@Override
+		public void onSubscribe (Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext (StatusWeatherData item) {
+			this.signals.add ("next");
+			this.received.add (item);
+		}
+
+		@Override
+		public void onError (Throwable throwable) {
+			this.signals.add ("error");
+			this.failure = throwable;
+			this.done.countDown ();
+		}
+
+		@Override
+		public void onComplete () {
+			this.signals.add ("complete");
+			this.done.countDown ();
+		}
+	}
+
+	private OwmClient createClient () throws IOException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (invocation -> {
+			HttpResponse response = new BasicHttpResponse (HttpVersion.HTTP_1_1, 200, "Ok");
+			response.setEntity (new StringEntity (TestData.CURRENT_WEATHER_IN_CIRCLE));
+			return response;
+		});
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setExecutor (this.executor);
+		return owm;
+	}
+
+	@Test
+	public void testStationsAreDeliveredOnDemand () throws IOException, JSONException, InterruptedException {
+		OwmClient owm = createClient ();
+		List<StatusWeatherData> expected = owm.currentWeatherInCircle (55.5f, 37.5f, 40f).getWeatherStatus ();
+		assertTrue (expected.size () > 2);
+
+		RecordingSubscriber subscriber = new RecordingSubscriber ();
+		owm.publishWeatherInCircle (55.5f, 37.5f, 40f).subscribe (subscriber);
+		Thread.sleep (50);
+		assertTrue ("nothing is sent before the first request", subscriber.signals.isEmpty ());
+
+		for (StatusWeatherData status : expected) {
+			subscriber.subscription.request (1);
+			StatusWeatherData received = subscriber.received.poll (5, TimeUnit.SECONDS);
+			assertEquals (status.getId (), received.getId ());
+			assertEquals (status.getName (), received.getName ());
+			assertNull ("one station per request", subscriber.received.poll (20, TimeUnit.MILLISECONDS));
+		}
+		assertTrue (subscriber.done.await (5, TimeUnit.SECONDS));
+		assertEquals ("complete", subscriber.signals.get (subscriber.signals.size () - 1));
+		assertEquals (expected.size () + 1, subscriber.signals.size ());
+	}
+
+	@Test
+	public void testCancelStopsTheStream () throws IOException, InterruptedException {
+		OwmClient owm = createClient ();
+		RecordingSubscriber subscriber = new RecordingSubscriber ();
+		owm.publishWeatherInCircle (55.5f, 37.5f, 40f).subscribe (subscriber);
+		subscriber.subscription.request (1);
+		assertTrue (subscriber.received.poll (5, TimeUnit.SECONDS) != null);
+		subscriber.subscription.cancel ();
+		subscriber.subscription.request (Long.MAX_VALUE);
+		assertFalse (subscriber.done.await (200, TimeUnit.MILLISECONDS));
+		assertEquals (1, subscriber.signals.size ());
+	}
+
+	@Test
+	public void testInvalidRequestIsAnError () throws IOException, InterruptedException {
+		OwmClient owm = createClient ();
+		RecordingSubscriber subscriber = new RecordingSubscriber ();
+		owm.publishWeatherInCircle (55.5f, 37.5f, 40f).subscribe (subscriber);
+		subscriber.subscription.request (0);
+		assertTrue (subscriber.done.await (5, TimeUnit.SECONDS));
+		assertTrue (subscriber.failure instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void testFailuresAreSignalled () throws IOException, InterruptedException {
+		HttpClient mockHttpClient = mock (HttpClient.class);
+		when (mockHttpClient.execute (any (HttpGet.class))).then (invocation ->
+				new BasicHttpResponse (HttpVersion.HTTP_1_1, 503, "Unavailable"));
+		OwmClient owm = new OwmClient (mockHttpClient);
+		owm.setExecutor (this.executor);
+		RecordingSubscriber subscriber = new RecordingSubscriber ();
+		owm.publishWeatherInBoundingBox (56f, 37f, 55f, 38f).subscribe (subscriber);
+		subscriber.subscription.request (Long.MAX_VALUE);
+		assertTrue (subscriber.done.await (5, TimeUnit.SECONDS));
+		assertTrue (subscriber.failure instanceof OwmHttpStatusException);
+		assertEquals (503, ((OwmHttpStatusException) subscriber.failure).getStatusCode ());
+	}
+}
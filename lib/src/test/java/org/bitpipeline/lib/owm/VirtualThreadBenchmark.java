@@ -0,0 +1,117 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+
+/** Compares a fan-out of blocking requests on platform threads with the same
+ * fan-out on virtual threads, against a local stub server that answers every
+ * request after a fixed delay.
+ * <p>
+ * Run it (on Java 21 or later for virtual threads) from <code>lib</code>
+ * with the test classpath, writing the dependencies to a file first:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     org.bitpipeline.lib.owm.VirtualThreadBenchmark [requests] [delayMillis] [platformThreads]
+ * </pre>
+ * The defaults are 10000 requests, 100ms per request and 200 platform
+ * threads. With enough file descriptors (<code>ulimit -n</code> above twice
+ * the number of requests) the virtual-thread run has all the requests in
+ * flight at once and takes little more than one delay, while the platform
+ * run takes about <code>requests / platformThreads</code> delays. */
+public class VirtualThreadBenchmark {
+
+	public static void main (String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt (args[0]) : 10000;
+		int delayMillis = args.length > 1 ? Integer.parseInt (args[1]) : 100;
+		int platformThreads = args.length > 2 ? Integer.parseInt (args[2]) : 200;
+
+		HttpServer server = VirtualThreadBenchmark.startStubServer (requests, delayMillis);
+		String baseUrl = "http://localhost:" + server.getAddress ().getPort () + "/";
+		int[] cityIds = new int[requests];
+		for (int i = 0; i < requests; i++)
+			cityIds[i] = i + 1;
+		System.out.printf ("%d requests, %dms each, virtual threads %s%n",
+				Integer.valueOf (requests), Integer.valueOf (delayMillis),
+				VirtualThreads.isSupported () ? "supported" : "NOT supported (falling back to platform threads)");
+		try {
+			ExecutorService platform = Executors.newFixedThreadPool (platformThreads);
+			try {
+				OwmClient client = new OwmClient (VirtualThreads.transportConfig (platformThreads));
+				client.setExecutor (platform);
+				VirtualThreadBenchmark.run ("platform threads (" + platformThreads + ")", client, baseUrl, cityIds, platformThreads);
+			} finally {
+				platform.shutdownNow ();
+			}
+
+			OwmClient client = VirtualThreads.newClient (requests);
+			VirtualThreadBenchmark.run ("virtual threads", client, baseUrl, cityIds, requests);
+		} finally {
+			server.stop (0);
+		}
+		System.exit (0);
+	}
+
+	static private void run (String name, OwmClient client, String baseUrl, int[] cityIds, int parallelism) throws IOException {
+		client.setBaseUrl (baseUrl);
+		try {
+			/* warm up the connections and the JIT */
+			client.currentWeatherAtCities (cityIds.length > 100 ? Arrays.copyOf (cityIds, 100) : cityIds,
+					parallelism, 1, TimeUnit.MINUTES);
+			long start = System.nanoTime ();
+			BulkResult<StatusWeatherData> result = client.currentWeatherAtCities (cityIds, parallelism, 10, TimeUnit.MINUTES);
+			long millis = TimeUnit.NANOSECONDS.toMillis (System.nanoTime () - start);
+			System.out.printf ("%-28s %7dms %9.0f req/s  ok=%d failed=%d timedOut=%d%n",
+					name, Long.valueOf (millis), Double.valueOf (cityIds.length * 1000d / Math.max (1, millis)),
+					Integer.valueOf (result.getResults ().size ()), Integer.valueOf (result.getFailures ().size ()),
+					Integer.valueOf (result.getTimedOut ().size ()));
+			if (!result.getFailures ().isEmpty ())
+				System.out.println ("  first failure: " + result.getFailures ().values ().iterator ().next ());
+		} finally {
+			client.shutdown ();
+		}
+	}
+
+	static private HttpServer startStubServer (int backlog, final int delayMillis) throws IOException {
+		final byte[] body = TestData.CURRENT_WEATHER_AT_CITY_ID_MOSKOW.getBytes (StandardCharsets.UTF_8);
+		HttpServer server = HttpServer.create (new InetSocketAddress ("localhost", 0), backlog);
+		server.createContext ("/", exchange -> {
+			try {
+				Thread.sleep (delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread ().interrupt ();
+			}
+			exchange.getResponseHeaders ().set ("Content-Type", "application/json");
+			exchange.sendResponseHeaders (200, body.length);
+			try (OutputStream out = exchange.getResponseBody ()) {
+				out.write (body);
+			}
+		});
+		server.setExecutor (VirtualThreads.newExecutor ());
+		server.start ();
+		return server;
+	}
+}
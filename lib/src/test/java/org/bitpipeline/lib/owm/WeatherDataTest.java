@@ -18,14 +18,25 @@ package org.bitpipeline.lib.owm;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bitpipeline.lib.owm.WeatherData.Clouds.CloudDescription;
 import org.bitpipeline.lib.owm.WeatherData.WeatherCondition;
 import org.bitpipeline.lib.owm.LocalizedWeatherData.GeoCoord;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Test;
@@ -33,6 +44,11 @@ import org.junit.Test;
 /**
  * @author mtavares */
 public class WeatherDataTest {
+
+	private static InputStream utf8 (String json) {
+		return new ByteArrayInputStream (json.getBytes (StandardCharsets.UTF_8));
+	}
+
 	@Test
 	public void testWeatherDataParsing_Point () throws JSONException {
 		JSONObject weatherDatajson = new JSONObject (TestData.CURRENT_WEATHER_POINT);
@@ -126,5 +142,146 @@ public class WeatherDataTest {
 		assertEquals (CloudDescription.Cumulus.CB, cloudDescription.getCumulus ());
 	}
 
+	static void assertSameWeather (StatusWeatherData eager, StatusWeatherData other) {
+		assertEquals (eager.getId (), other.getId ());
+		assertEquals (eager.getName (), other.getName ());
+		assertEquals (eager.getDateTime (), other.getDateTime ());
+		assertEquals (eager.getTemp (), other.getTemp (), 0f);
+		assertEquals (eager.getHumidity (), other.getHumidity (), 0f);
+		assertEquals (eager.getPressure (), other.getPressure (), 0f);
+		assertEquals (eager.getWindSpeed (), other.getWindSpeed (), 0f);
+		assertEquals (eager.getWindGust (), other.getWindGust (), 0f);
+		assertEquals (eager.getWindDeg (), other.getWindDeg ());
+		assertEquals (eager.getRain (), other.getRain ());
+		assertEquals (eager.getSnow (), other.getSnow ());
+		assertEquals (eager.getPrecipitation (), other.getPrecipitation ());
+		assertEquals (eager.hasClouds (), other.hasClouds ());
+		if (eager.hasClouds ()) {
+			assertEquals (eager.getClouds ().getAll (), other.getClouds ().getAll ());
+			assertEquals (eager.getClouds ().getConditions ().size (), other.getClouds ().getConditions ().size ());
+		}
+		assertEquals (eager.getWeatherConditions ().size (), other.getWeatherConditions ().size ());
+		assertEquals (eager.hasCoord (), other.hasCoord ());
+		if (eager.hasCoord ())
+			assertEquals (eager.getCoord ().getLatitude (), other.getCoord ().getLatitude (), 0f);
+		assertEquals (eager.hasStation (), other.hasStation ());
+	}
+
+	@Test
+	public void testLazyDecodingMatchesEagerDecoding () throws JSONException {
+		JSONArray list = new JSONObject (TestData.CURRENT_WEATHER_AROUND_POINT).getJSONArray ("list");
+		for (int i = 0; i < list.length (); i++) {
+			JSONObject element = list.getJSONObject (i);
+			WeatherDataTest.assertSameWeather (new StatusWeatherData (element),
+					new StatusWeatherData (element, DecodeMode.LAZY));
+		}
+		JSONObject point = new JSONObject (TestData.CURRENT_WEATHER_POINT);
+		WeatherDataTest.assertSameWeather (new StatusWeatherData (point),
+				new StatusWeatherData (point, DecodeMode.LAZY));
+	}
+
+	@Test
+	public void testStreamedLazyDecodingMatchesEagerDecoding () throws IOException, JSONException {
+		List<StatusWeatherData> eager = WeatherStatusResponse.DECODER.decode (
+				WeatherDataTest.utf8 (TestData.CURRENT_WEATHER_AROUND_POINT)).getWeatherStatus ();
+		List<StatusWeatherData> lazy = WeatherStatusResponse.LAZY_DECODER.decode (
+				WeatherDataTest.utf8 (TestData.CURRENT_WEATHER_AROUND_POINT)).getWeatherStatus ();
+		assertEquals (eager.size (), lazy.size ());
+		for (int i = 0; i < eager.size (); i++)
+			WeatherDataTest.assertSameWeather (eager.get (i), lazy.get (i));
+	}
+
+	@Test
+	public void testLazySectionsAreNeverSeenMissing () throws Exception {
+		final StatusWeatherData eager = WeatherStatusResponse.DECODER.decode (
+				WeatherDataTest.utf8 (TestData.CURRENT_WEATHER_AROUND_POINT)).getWeatherStatus ().get (0);
+		ExecutorService executor = Executors.newFixedThreadPool (4);
+		try {
+			for (int round = 0; round < 200; round++) {
+				final StatusWeatherData weather = WeatherStatusResponse.LAZY_DECODER.decode (
+						WeatherDataTest.utf8 (TestData.CURRENT_WEATHER_AROUND_POINT)).getWeatherStatus ().get (0);
+				final CountDownLatch start = new CountDownLatch (1);
+				List<Future<Boolean>> reads = new ArrayList<Future<Boolean>> ();
+				for (int i = 0; i < 4; i++)
+					reads.add (executor.submit (() -> {
+						start.await ();
+						return (weather.getMain () != null) == eager.hasMain ()
+								&& (weather.getWind () != null) == eager.hasWind ()
+								&& (weather.getClouds () != null) == eager.hasClouds ()
+								&& (weather.getCoord () != null) == eager.hasCoord ()
+								&& (weather.getStation () != null) == eager.hasStation ();
+					}));
+				start.countDown ();
+				for (Future<Boolean> read : reads)
+					assertTrue (read.get ());
+			}
+		} finally {
+			executor.shutdownNow ();
+		}
+	}
+
+	@Test
+	public void testLazySectionsAreDecodedOnce () throws JSONException {
+		StatusWeatherData weather = new StatusWeatherData (new JSONObject (TestData.CURRENT_WEATHER_POINT), DecodeMode.LAZY);
+		WeatherData.Clouds clouds = weather.getClouds ();
+		assertEquals (40, clouds.getAll ());
+		assertSame (clouds, weather.getClouds ());
+		assertSame (weather.getMain (), weather.getMain ());
+		assertSame (weather.getWeatherConditions (), weather.getWeatherConditions ());
+		assertFalse (weather.hasRain ());
+		assertEquals (Integer.MIN_VALUE, weather.getRain ());
+	}
+
+	@Test
+	public void testTimedMeasures () throws JSONException {
+		JSONObject json = new JSONObject ("{\"1h\":2,\"3h\":\"5\",\"24h\":17,\"25h\":4,\"6h\":0.5,\"today\":9}");
+		WeatherData.Precipitation rain = new WeatherData.Precipitation (json);
+		assertTrue (rain.hasMeasures ());
+		assertEquals (2, rain.getMeasure (1));
+		assertEquals (5, rain.getMeasure (Integer.valueOf (3)));
+		assertEquals (17, rain.getMeasure (24));
+		assertEquals (Integer.MIN_VALUE, rain.getMeasure (6));
+		assertEquals (Integer.MIN_VALUE, rain.getMeasure (25));
+		assertEquals (Integer.MIN_VALUE, rain.getMeasure ((Integer) null));
+		assertEquals (Arrays.asList (1, 3, 24), new ArrayList<Integer> (rain.measurements ()));
+		assertTrue (rain.measurements ().contains (3));
+		assertFalse (rain.measurements ().contains (2));
+
+		WeatherData.Precipitation none = new WeatherData.Precipitation (new JSONObject ("{\"today\":1}"));
+		assertFalse (none.hasMeasures ());
+		assertTrue (none.measurements ().isEmpty ());
+	}
+
+	@Test
+	public void testCodesAreLookedUp () {
+		assertEquals (WeatherCondition.ConditionCode.THUNDERSTORM_WITH_LIGHT_RAIN, WeatherCondition.ConditionCode.valueof (200));
+		assertEquals (WeatherCondition.ConditionCode.HAIL, WeatherCondition.ConditionCode.valueof (906));
+		assertEquals (WeatherCondition.ConditionCode.UNKNOWN, WeatherCondition.ConditionCode.valueof (199));
+		assertEquals (WeatherCondition.ConditionCode.UNKNOWN, WeatherCondition.ConditionCode.valueof (999));
+		assertEquals (WeatherCondition.ConditionCode.UNKNOWN, WeatherCondition.ConditionCode.valueof (Integer.MIN_VALUE));
+		assertEquals (CloudDescription.SkyCondition.BKN, CloudDescription.SkyCondition.of ("BKN"));
+		assertEquals (CloudDescription.SkyCondition.UNKNOWN, CloudDescription.SkyCondition.of ("XYZ"));
+		assertEquals (CloudDescription.Cumulus.CB, CloudDescription.Cumulus.of ("CB"));
+		assertEquals (CloudDescription.Cumulus.UNKNOWN, CloudDescription.Cumulus.of (""));
+		assertEquals (OwmClient.HistoryType.TICK, OwmClient.HistoryType.of ("tick"));
+		assertEquals (OwmClient.HistoryType.HOUR, OwmClient.HistoryType.of (" Hour "));
+		assertEquals (OwmClient.HistoryType.UNKNOWN, OwmClient.HistoryType.of ("week"));
+	}
+
+	@Test
+	public void testWeatherConditionsAreShared () throws JSONException {
+		JSONObject json = new JSONObject ("{\"id\":800,\"main\":\"Clear\",\"description\":\"Sky is Clear\",\"icon\":\"01d\"}");
+		JSONObject weatherJson = new JSONObject ().put ("weather", new JSONArray ().put (json));
+		WeatherCondition first = new WeatherData (weatherJson).getWeatherConditions ().get (0);
+		assertSame (first, new WeatherData (new JSONObject (weatherJson.toString ())).getWeatherConditions ().get (0));
+		assertSame (first, new WeatherData (weatherJson, DecodeMode.LAZY).getWeatherConditions ().get (0));
+
+		WeatherCondition condition = WeatherCondition.of (json);
+		assertSame (condition, WeatherCondition.of (json));
+		assertEquals (new WeatherCondition (json), condition);
+		assertEquals (WeatherCondition.ConditionCode.SKY_IS_CLEAR, condition.getCode ());
+		assertEquals ("Sky is Clear", condition.getDescription ());
+	}
+
 	// TODO test with invalid data.
 }
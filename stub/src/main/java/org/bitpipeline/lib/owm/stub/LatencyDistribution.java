@@ -0,0 +1,100 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm.stub;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** How long the {@link OwmStubServer} takes to answer a request. */
+public abstract class LatencyDistribution {
+	/* the z-score of the 99th percentile of the normal distribution */
+	static private final double Z_99 = 2.3263478740408408;
+
+	/** @param random the source of randomness
+	 * @return the latency of a request, in nanoseconds */
+	public abstract long sampleNanos (Random random);
+
+	/** @return answer right away */
+	static public LatencyDistribution none () {
+		return LatencyDistribution.fixed (0, TimeUnit.NANOSECONDS);
+	}
+
+	/** @param latency the latency of every request
+	 * @param unit the unit of the latency
+	 * @return the same latency for every request */
+	static public LatencyDistribution fixed (long latency, TimeUnit unit) {
+		if (latency < 0)
+			throw new IllegalArgumentException ("The latency can't be negative.");
+		final long nanos = unit.toNanos (latency);
+		return new LatencyDistribution () {
+			@Override
+			public long sampleNanos (Random random) {
+				return nanos;
+			}
+
+			@Override
+			public String toString () {
+				return "fixed " + nanos + "ns";
+			}
+		};
+	}
+
+	/** @param min the shortest latency
+	 * @param max the longest latency
+	 * @param unit the unit of the latencies
+	 * @return latencies spread evenly between min and max */
+	static public LatencyDistribution uniform (long min, long max, TimeUnit unit) {
+		if (min < 0 || max < min)
+			throw new IllegalArgumentException ("The latencies must be positive and the minimum not above the maximum.");
+		final long minNanos = unit.toNanos (min);
+		final long spanNanos = unit.toNanos (max) - minNanos;
+		return new LatencyDistribution () {
+			@Override
+			public long sampleNanos (Random random) {
+				return minNanos + (long) (random.nextDouble () * spanNanos);
+			}
+
+			@Override
+			public String toString () {
+				return "uniform " + minNanos + "ns to " + (minNanos + spanNanos) + "ns";
+			}
+		};
+	}
+
+	/** A log-normal distribution, the usual shape of service latencies: most
+	 * requests answer close to the median and a long tail is much slower.
+	 * @param median the median latency
+	 * @param p99 the 99th percentile of the latency
+	 * @param unit the unit of the latencies
+	 * @return latencies with the given median and 99th percentile */
+	static public LatencyDistribution logNormal (long median, long p99, TimeUnit unit) {
+		if (median <= 0 || p99 < median)
+			throw new IllegalArgumentException ("The median must be positive and not above the 99th percentile.");
+		final double mu = Math.log (unit.toNanos (median));
+		final double sigma = (Math.log (unit.toNanos (p99)) - mu) / LatencyDistribution.Z_99;
+		return new LatencyDistribution () {
+			@Override
+			public long sampleNanos (Random random) {
+				return (long) Math.exp (mu + sigma * random.nextGaussian ());
+			}
+
+			@Override
+			public String toString () {
+				return "log-normal median " + (long) Math.exp (mu) + "ns, sigma " + sigma;
+			}
+		};
+	}
+}
@@ -0,0 +1,394 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/** A local stand-in for the OWM 2.1 API, to load and latency test clients
+ * (e.g. <code>OwmClient</code>) end to end on one machine.
+ * <p>
+ * It answers the queries of the client (<code>find/station</code>,
+ * <code>find/city</code>, <code>find/name</code>,
+ * <code>weather/city/{id}</code>, <code>weather/station/{id}</code>,
+ * <code>forecast/city/{id}</code>, <code>history/city/{id}</code> and
+ * <code>history/station/{id}</code>) with generated payloads in the shapes of
+ * the real ones. Each response is delayed by a latency drawn from a
+ * {@link LatencyDistribution} and a share of the requests fail with an error
+ * status. The delays are scheduled rather than slept, so a few threads serve
+ * thousands of requests per second whatever the latency.
+ * <p>
+ * The settings can be changed while the server runs:
+ * <pre>
+ * OwmStubServer stub = new OwmStubServer ()
+ *     .setLatency (LatencyDistribution.logNormal (40, 400, TimeUnit.MILLISECONDS))
+ *     .setErrorRate (0.01, 503)
+ *     .start ();
+ * owmClient.setBaseUrl (stub.getBaseUrl ());
+ * </pre> */
+public class OwmStubServer implements Closeable {
+	static private final String API_PATH = "/data/2.1/";
+	static private final int BACKLOG = 1024;
+
+	private final int port;
+	private volatile LatencyDistribution latency = LatencyDistribution.none ();
+	private volatile double errorRate = 0;
+	private volatile int errorStatusCode = 503;
+	private volatile int listSize = 20;
+	private volatile boolean compression = true;
+
+	private final LongAdder requests = new LongAdder ();
+	private final LongAdder errors = new LongAdder ();
+
+	private HttpServer server = null;
+	private ExecutorService workers = null;
+	private ScheduledExecutorService scheduler = null;
+
+	/** Create a server on a free port */
+	public OwmStubServer () {
+		this (0);
+	}
+
+	/** @param port the port to listen on (on the loopback interface) or 0 for
+	 * 	any free port */
+	public OwmStubServer (int port) {
+		if (port < 0 || port > 0xFFFF)
+			throw new IllegalArgumentException ("Invalid port " + port);
+		this.port = port;
+	}
+
+	/** @param latency how long the server takes to answer (no delay by default)
+	 * @return this server */
+	public OwmStubServer setLatency (LatencyDistribution latency) {
+		if (latency == null)
+			throw new IllegalArgumentException ("The latency can't be null.");
+		this.latency = latency;
+		return this;
+	}
+
+	public LatencyDistribution getLatency () {
+		return this.latency;
+	}
+
+	/** @param rate the share of the requests that fail, in [0, 1] (none by default)
+	 * @param statusCode the HTTP status of the failures (e.g. 503 or 429),
+	 * 	which are sent with a <code>Retry-After</code> header
+	 * @return this server */
+	public OwmStubServer setErrorRate (double rate, int statusCode) {
+		if (!(rate >= 0 && rate <= 1))
+			throw new IllegalArgumentException ("The error rate must be in [0, 1].");
+		if (statusCode < 400 || statusCode > 599)
+			throw new IllegalArgumentException ("The error status must be a 4xx or 5xx code.");
+		this.errorRate = rate;
+		this.errorStatusCode = statusCode;
+		return this;
+	}
+
+	public double getErrorRate () {
+		return this.errorRate;
+	}
+
+	/** @param size the number of elements in the lists of the find, forecast
+	 * 	and history responses (20 by default), which sets the payload sizes; a
+	 * 	<code>cnt</code> in the query overrides it
+	 * @return this server */
+	public OwmStubServer setListSize (int size) {
+		if (size < 0)
+			throw new IllegalArgumentException ("The list size can't be negative.");
+		this.listSize = size;
+		return this;
+	}
+
+	public int getListSize () {
+		return this.listSize;
+	}
+
+	/** @param compression true to gzip the responses of the requests that
+	 * 	accept it (the default)
+	 * @return this server */
+	public OwmStubServer setCompression (boolean compression) {
+		this.compression = compression;
+		return this;
+	}
+
+	/** Start listening
+	 * @return this server
+	 * @throws IOException if the port can't be bound */
+	public synchronized OwmStubServer start () throws IOException {
+		if (this.server != null)
+			throw new IllegalStateException ("The server is already started.");
+		HttpServer created = HttpServer.create (
+				new InetSocketAddress (InetAddress.getLoopbackAddress (), this.port), OwmStubServer.BACKLOG);
+		int threads = Math.max (2, Runtime.getRuntime ().availableProcessors ());
+		this.workers = Executors.newFixedThreadPool (threads, OwmStubServer.daemonThreads ("owm-stub-worker-"));
+		ScheduledThreadPoolExecutor delays = new ScheduledThreadPoolExecutor (Math.max (1, threads / 2),
+				OwmStubServer.daemonThreads ("owm-stub-delay-"));
+		delays.setRemoveOnCancelPolicy (true);
+		this.scheduler = delays;
+		created.createContext ("/", this::handle);
+		created.setExecutor (this.workers);
+		created.start ();
+		this.server = created;
+		return this;
+	}
+
+	/** @return the port the server listens on */
+	public synchronized int getPort () {
+		if (this.server == null)
+			throw new IllegalStateException ("The server isn't started.");
+		return this.server.getAddress ().getPort ();
+	}
+
+	/** @return the base URL to give the client (ending with a slash) */
+	public String getBaseUrl () {
+		return "http://localhost:" + getPort () + OwmStubServer.API_PATH;
+	}
+
+	/** @return the number of requests received */
+	public long getRequestCount () {
+		return this.requests.sum ();
+	}
+
+	/** @return the number of requests answered with an injected error */
+	public long getErrorCount () {
+		return this.errors.sum ();
+	}
+
+	/** Stop the server, dropping the responses still delayed */
+	@Override
+	public synchronized void close () {
+		if (this.server == null)
+			return;
+		this.server.stop (0);
+		this.scheduler.shutdownNow ();
+		this.workers.shutdownNow ();
+		this.server = null;
+	}
+
+	private void handle (final HttpExchange exchange) {
+		this.requests.increment ();
+		Random random = ThreadLocalRandom.current ();
+		int status = 200;
+		String body;
+		try {
+			if (this.errorRate > 0 && random.nextDouble () < this.errorRate) {
+				this.errors.increment ();
+				status = this.errorStatusCode;
+				body = Payloads.error (status, status == 429 ? "Too many requests" : "Service unavailable");
+			} else {
+				body = route (exchange, random);
+				if (body == null) {
+					status = 404;
+					body = Payloads.error (status, "Not found");
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			status = 400;
+			body = Payloads.error (status, "Invalid query");
+		}
+
+		final int responseStatus = status;
+		final byte[] content;
+		final boolean gzip;
+		try {
+			gzip = this.compression && OwmStubServer.acceptsGzip (exchange);
+			content = gzip ? OwmStubServer.gzip (body) : body.getBytes (StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			exchange.close ();
+			return;
+		}
+		long delay = this.latency.sampleNanos (random);
+		if (delay <= 0) {
+			OwmStubServer.respond (exchange, responseStatus, content, gzip);
+		} else {
+			this.scheduler.schedule (() -> OwmStubServer.respond (exchange, responseStatus, content, gzip),
+					delay, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/** @return the payload of the query or null if it isn't an OWM query */
+	private String route (HttpExchange exchange, Random random) {
+		String path = exchange.getRequestURI ().getRawPath ();
+		path = path.startsWith (OwmStubServer.API_PATH) ? path.substring (OwmStubServer.API_PATH.length ()) : path.substring (1);
+		Map<String, String> query = OwmStubServer.parseQuery (exchange.getRequestURI ().getRawQuery ());
+		String[] segments = path.split ("/");
+		if (segments.length < 2)
+			return null;
+		String resource = segments[0] + "/" + segments[1];
+		Integer id = segments.length == 3 ? Integer.valueOf (segments[2]) : null;
+		int count = query.containsKey ("cnt") ? Integer.parseInt (query.get ("cnt")) : this.listSize;
+
+		if (id == null) {
+			if ("find/station".equals (resource) || "find/city".equals (resource)) {
+				double[] center = OwmStubServer.center (query);
+				return "find/station".equals (resource)
+						? Payloads.findStations (center[0], center[1], count, random)
+						: Payloads.findCities (center[0], center[1], count, random);
+			}
+			String name = query.get ("q");
+			if (name == null)
+				return null;
+			int comma = name.indexOf (',');
+			if (comma >= 0)
+				name = name.substring (0, comma);
+			if ("find/name".equals (resource))
+				return Payloads.findByName (name, Math.max (1, Math.min (count, 5)), random);
+			if ("forecast/city".equals (resource))
+				return Payloads.forecast (100000 + Math.floorMod (name.hashCode (), 7000000), name, count, random);
+			return null;
+		}
+
+		switch (resource) {
+			case "weather/city":
+				return Payloads.cityWeather (id.intValue (), random);
+			case "weather/station":
+				return Payloads.stationWeather (id.intValue (), random);
+			case "forecast/city":
+				return Payloads.forecast (id.intValue (), null, count, random);
+			case "history/city":
+				return Payloads.cityHistory (id.intValue (), count, random);
+			case "history/station":
+				String type = query.containsKey ("type") ? query.get ("type").toLowerCase (Locale.ROOT) : "tick";
+				if (!"tick".equals (type) && !"hour".equals (type) && !"day".equals (type))
+					throw new IllegalArgumentException ("Unknown history type " + type);
+				return Payloads.stationHistory (id.intValue (), type, count, random);
+			default:
+				return null;
+		}
+	}
+
+	/** @return the center (latitude, longitude) of a find query */
+	static private double[] center (Map<String, String> query) {
+		String bbox = query.get ("bbox");
+		if (bbox != null) {
+			String[] corners = bbox.split (",");
+			if (corners.length != 4)
+				throw new IllegalArgumentException ("Invalid bounding box " + bbox);
+			return new double[] {
+				(Double.parseDouble (corners[0]) + Double.parseDouble (corners[2])) / 2,
+				(Double.parseDouble (corners[1]) + Double.parseDouble (corners[3])) / 2 };
+		}
+		if (query.containsKey ("lat") && query.containsKey ("lon"))
+			return new double[] { Double.parseDouble (query.get ("lat")), Double.parseDouble (query.get ("lon")) };
+		throw new IllegalArgumentException ("A find query needs a point or a bounding box");
+	}
+
+	static private Map<String, String> parseQuery (String rawQuery) {
+		Map<String, String> query = new HashMap<String, String> ();
+		if (rawQuery == null)
+			return query;
+		try {
+			for (String parameter : rawQuery.split ("&")) {
+				int equals = parameter.indexOf ('=');
+				if (equals > 0)
+					query.put (parameter.substring (0, equals), URLDecoder.decode (parameter.substring (equals + 1), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException (e);
+		}
+		return query;
+	}
+
+	static private boolean acceptsGzip (HttpExchange exchange) {
+		String accepted = exchange.getRequestHeaders ().getFirst ("Accept-Encoding");
+		return accepted != null && accepted.toLowerCase (Locale.ROOT).contains ("gzip");
+	}
+
+	static private byte[] gzip (String body) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream (body.length () / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream (out)) {
+			gzip.write (body.getBytes (StandardCharsets.UTF_8));
+		}
+		return out.toByteArray ();
+	}
+
+	static private void respond (HttpExchange exchange, int status, byte[] content, boolean gzip) {
+		try {
+			exchange.getResponseHeaders ().set ("Content-Type", "application/json; charset=utf-8");
+			if (gzip)
+				exchange.getResponseHeaders ().set ("Content-Encoding", "gzip");
+			if (status == 429 || status == 503)
+				exchange.getResponseHeaders ().set ("Retry-After", "1");
+			exchange.sendResponseHeaders (status, content.length);
+			try (OutputStream out = exchange.getResponseBody ()) {
+				out.write (content);
+			}
+		} catch (IOException e) {
+			/* the client went away */
+			exchange.close ();
+		}
+	}
+
+	static private ThreadFactory daemonThreads (final String prefix) {
+		return new ThreadFactory () {
+			private final AtomicInteger count = new AtomicInteger ();
+
+			@Override
+			public Thread newThread (Runnable runnable) {
+				Thread thread = new Thread (runnable, prefix + this.count.incrementAndGet ());
+				thread.setDaemon (true);
+				return thread;
+			}
+		};
+	}
+
+	/** Run a stub server until the process is killed.
+	 * <pre>
+	 * java -cp owm-stub.jar org.bitpipeline.lib.owm.stub.OwmStubServer [port] [medianMillis p99Millis] [errorRate] [listSize]
+	 * </pre>
+	 * @param args the port (8080 by default), the median and 99th percentile
+	 * 	of a log-normal latency in milliseconds (none by default), the share of
+	 * 	requests failing with 503 (0 by default) and the size of the lists (20
+	 * 	by default)
+	 * @throws IOException if the server can't be started
+	 * @throws InterruptedException if interrupted while running */
+	public static void main (String[] args) throws IOException, InterruptedException {
+		OwmStubServer stub = new OwmStubServer (args.length > 0 ? Integer.parseInt (args[0]) : 8080);
+		if (args.length > 2)
+			stub.setLatency (LatencyDistribution.logNormal (Long.parseLong (args[1]), Long.parseLong (args[2]), TimeUnit.MILLISECONDS));
+		if (args.length > 3)
+			stub.setErrorRate (Double.parseDouble (args[3]), 503);
+		if (args.length > 4)
+			stub.setListSize (Integer.parseInt (args[4]));
+		stub.start ();
+		System.out.println ("OWM stub listening at " + stub.getBaseUrl () + " with " + stub.getLatency () + " latency");
+		Thread.currentThread ().join ();
+	}
+}
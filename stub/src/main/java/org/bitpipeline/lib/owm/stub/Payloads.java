@@ -0,0 +1,425 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm.stub;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+/** Generates OWM 2.1 response payloads in the shapes the model classes of
+ * the client parse.
+ * <p>
+ * The identity of a city or station (name, country, coordinates) depends only
+ * on its ID, so the same ID always names the same place; the weather is drawn
+ * anew from the given <code>Random</code> on every call. */
+final class Payloads {
+	/* id, main, description, icon */
+	static private final String[][] CONDITIONS = {
+		{ "800", "Clear", "sky is clear", "01d" },
+		{ "801", "Clouds", "few clouds", "02d" },
+		{ "802", "Clouds", "scattered clouds", "03d" },
+		{ "803", "Clouds", "broken clouds", "04d" },
+		{ "804", "Clouds", "overcast clouds", "04n" },
+		{ "500", "Rain", "light rain", "10d" },
+		{ "501", "Rain", "moderate rain", "10d" },
+		{ "310", "Drizzle", "light intensity drizzle rain", "09d" },
+		{ "600", "Snow", "light snow", "13n" },
+		{ "602", "Snow", "heavy snow", "13n" },
+		{ "622", "Snow", "heavy shower snow", "13n" },
+		{ "701", "Mist", "mist", "50n" },
+		{ "721", "Haze", "haze", "50d" },
+		{ "211", "Thunderstorm", "thunderstorm", "11d" }
+	};
+	static private final String[] CLOUD_CONDITIONS = { "FEW", "SCT", "BKN", "OVC" };
+	static private final String[] SYLLABLES = {
+		"ka", "lo", "mi", "ra", "ven", "to", "sa", "bri", "do", "nor", "el", "an",
+		"gra", "tu", "vi", "les", "mon", "ber", "os", "ki", "lin", "pa", "de", "ro"
+	};
+	static private final String[] COUNTRIES = { "PT", "GB", "RU", "DE", "FR", "ES", "IT", "US", "BR", "JP" };
+	static private final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern ("yyyy-MM-dd HH:mm:ss", Locale.ROOT)
+			.withZone (ZoneOffset.UTC);
+
+	private Payloads () {
+	}
+
+	/** @return the response of <code>find/station</code> */
+	static String findStations (double lat, double lon, int count, Random random) {
+		StringBuilder json = Payloads.envelope (count);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append (',');
+			int id = 1000 + random.nextInt (50000);
+			Payloads.station (json, id, lat, lon, random, true);
+		}
+		return json.append ("]}").toString ();
+	}
+
+	/** @return the response of <code>find/city</code> */
+	static String findCities (double lat, double lon, int count, Random random) {
+		StringBuilder json = Payloads.envelope (count);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append (',');
+			int id = 100000 + random.nextInt (7000000);
+			Payloads.city (json, id, null, lat, lon, random, true);
+		}
+		return json.append ("]}").toString ();
+	}
+
+	/** @return the response of <code>find/name</code> */
+	static String findByName (String name, int count, Random random) {
+		StringBuilder json = Payloads.envelope (count);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append (',');
+			int id = 100000 + Math.floorMod (name.hashCode () * 31 + i, 7000000);
+			Payloads.city (json, id, name, Double.NaN, Double.NaN, random, false);
+		}
+		return json.append ("]}").toString ();
+	}
+
+	/** @return the response of <code>weather/city/{id}</code> */
+	static String cityWeather (int cityId, Random random) {
+		StringBuilder json = new StringBuilder (640);
+		Payloads.city (json, cityId, null, Double.NaN, Double.NaN, random, false);
+		json.setLength (json.length () - 1);
+		return json.append (",\"cod\":200}").toString ();
+	}
+
+	/** @return the response of <code>weather/station/{id}</code> */
+	static String stationWeather (int stationId, Random random) {
+		StringBuilder json = new StringBuilder (320);
+		Random place = new Random (stationId);
+		long now = System.currentTimeMillis () / 1000;
+		double temp = Payloads.temperature (place, random);
+		json.append ("{\"main\":{\"temp\":").append (Payloads.round (temp))
+				.append (",\"humidity\":").append (40 + random.nextInt (60))
+				.append (",\"pressure\":").append (990 + random.nextInt (40)).append ('}');
+		Payloads.wind (json, random, true);
+		json.append (",\"rain\":{\"1h\":").append (random.nextInt (3))
+				.append (",\"24h\":").append (random.nextInt (10))
+				.append (",\"today\":").append (random.nextInt (5)).append ('}');
+		Payloads.coord (json, place, Double.NaN, Double.NaN);
+		json.append (",\"station\":{\"zoom\":").append (1 + place.nextInt (9)).append ('}')
+				.append (",\"id\":").append (stationId)
+				.append (",\"dt\":").append (now - random.nextInt (3600))
+				.append (",\"name\":\"").append (Payloads.name (place).toUpperCase (Locale.ROOT)).append ("-10\"")
+				.append (",\"date\":\"").append (Payloads.dateText (now)).append ("\"}");
+		return json.toString ();
+	}
+
+	/** @return the response of <code>forecast/city/{id}</code> */
+	static String forecast (int cityId, String cityName, int count, Random random) {
+		Random place = new Random (cityId);
+		String name = cityName != null ? cityName : Payloads.name (place);
+		long now = System.currentTimeMillis () / 1000;
+		long calc = now - now % 10800;
+		StringBuilder json = new StringBuilder (256 + count * 360);
+		json.append ("{\"cod\":\"200\",\"message\":\"\",\"calctime\":").append (Payloads.round (random.nextDouble () / 10))
+				.append (",\"url\":\"http:\\/\\/openweathermap.org\\/city\\/").append (cityId).append ('"')
+				.append (",\"city\":{\"id\":").append (cityId);
+		Payloads.coord (json, place, Double.NaN, Double.NaN);
+		json.append (",\"country\":\"").append (Payloads.country (place)).append ('"')
+				.append (",\"name\":");
+		Payloads.string (json, name)
+				.append (",\"dt_calc\":").append (calc)
+				.append (",\"stations_count\":").append (1 + place.nextInt (9)).append ('}')
+				.append (",\"cnt\":").append (count)
+				.append (",\"units\":\"internal\",\"model\":\"GFS-OWM\",\"list\":[");
+		double temp = Payloads.temperature (place, random);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append (',');
+			long dt = calc + i * 10800L;
+			temp += random.nextGaussian ();
+			json.append ("{\"dt\":").append (dt).append (",\"calc_dt\":").append (calc);
+			Payloads.main (json, temp, random);
+			json.setLength (json.length () - 1);
+			json.append (",\"temp_kf\":").append (Payloads.round (random.nextGaussian ())).append ('}');
+			Payloads.wind (json, random, true);
+			Payloads.conditions (json, random);
+			json.append (",\"clouds\":{\"all\":").append (random.nextInt (101))
+					.append (",\"low\":").append (random.nextInt (101))
+					.append (",\"middle\":").append (random.nextInt (101))
+					.append (",\"high\":").append (random.nextInt (101)).append ('}')
+					.append (",\"dt_txt\":\"").append (Payloads.dateText (dt)).append ("\"}");
+		}
+		return json.append ("]}").toString ();
+	}
+
+	/** @return the response of <code>history/city/{id}</code> */
+	static String cityHistory (int cityId, int count, Random random) {
+		Random place = new Random (cityId);
+		long now = System.currentTimeMillis () / 1000;
+		long start = now - now % 3600 - count * 3600L;
+		StringBuilder json = new StringBuilder (256 + count * 280);
+		json.append ("{\"message\":\"\",\"cod\":\"200\",\"city_id\":").append (cityId)
+				.append (",\"calctime\":\" find = ").append (Payloads.round (random.nextDouble () / 50))
+				.append (" fetch = ").append (Payloads.round (random.nextDouble () / 50))
+				.append (" total=").append (Payloads.round (random.nextDouble () / 25)).append ('"')
+				.append (",\"cnt\":").append (count).append (",\"list\":[");
+		double temp = Payloads.temperature (place, random);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append (',');
+			temp += random.nextGaussian () / 2;
+			json.append ("{\"dt\":").append (start + i * 3600L);
+			Payloads.conditions (json, random);
+			Payloads.main (json, temp, random);
+			Payloads.wind (json, random, false);
+			json.append (",\"clouds\":{\"all\":").append (random.nextInt (101)).append ("}}");
+		}
+		return json.append ("]}").toString ();
+	}
+
+	/** @param type tick, hour or day
+	 * @return the response of <code>history/station/{id}</code> */
+	static String stationHistory (int stationId, String type, int count, Random random) {
+		Random place = new Random (stationId);
+		boolean tick = "tick".equals (type);
+		long step = tick ? 900 : "day".equals (type) ? 86400 : 3600;
+		long now = System.currentTimeMillis () / 1000;
+		long start = now - now % step - count * step;
+		StringBuilder json = new StringBuilder (256 + count * (tick ? 200 : 600));
+		json.append ("{\"message\":\"\",\"cod\":\"200\",\"type\":\"").append (type).append ('"')
+				.append (",\"station_id\":").append (stationId);
+		if (tick)
+			json.append (",\"calctime\":\" tick = ").append (Payloads.round (random.nextDouble () / 20))
+					.append (" total=").append (Payloads.round (random.nextDouble () * 2)).append ('"');
+		else
+			json.append (",\"calctime\":").append (Payloads.round (random.nextDouble () / 50));
+		json.append (",\"cnt\":").append (count).append (",\"list\":[");
+		double temp = Payloads.temperature (place, random);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append (',');
+			temp += random.nextGaussian () / 2;
+			int humidity = 40 + random.nextInt (60);
+			int pressure = 990 + random.nextInt (40);
+			long dt = start + i * step + (tick ? random.nextInt ((int) step) : 0);
+			if (tick)
+				Payloads.tick (json, temp, humidity, pressure, dt, random);
+			else
+				Payloads.sample (json, temp, humidity, pressure, dt, random);
+		}
+		return json.append ("]}").toString ();
+	}
+
+	/** @return an error response */
+	static String error (int statusCode, String message) {
+		StringBuilder json = new StringBuilder ("{\"cod\":\"").append (statusCode).append ("\",\"message\":");
+		return Payloads.string (json, message).append ('}').toString ();
+	}
+
+	static private StringBuilder envelope (int count) {
+		StringBuilder json = new StringBuilder (128 + count * 420);
+		return json.append ("{\"message\":\"\",\"cod\":\"200\",\"calctime\":\"\",\"cnt\":").append (count).append (",\"list\":[");
+	}
+
+	static private void station (StringBuilder json, int id, double lat, double lon, Random random, boolean distance) {
+		Random place = new Random (id);
+		long now = System.currentTimeMillis () / 1000;
+		json.append ("{\"id\":").append (id)
+				.append (",\"dt\":").append (now - random.nextInt (3600))
+				.append (",\"name\":\"").append (Payloads.name (place).toUpperCase (Locale.ROOT)).append ('"')
+				.append (",\"type\":").append (1 + place.nextInt (5));
+		Payloads.coord (json, place, lat, lon);
+		if (distance)
+			json.append (",\"distance\":").append (Payloads.round (random.nextDouble () * 80));
+		json.append (",\"main\":{\"temp\":").append (Payloads.round (Payloads.temperature (place, random)))
+				.append (",\"pressure\":").append (990 + random.nextInt (40))
+				.append (",\"humidity\":").append (40 + random.nextInt (60)).append ('}');
+		Payloads.wind (json, random, false);
+		json.append (",\"rang\":").append (10 * random.nextInt (6));
+		int layers = random.nextInt (3);
+		if (layers > 0) {
+			json.append (",\"clouds\":[");
+			for (int i = 0; i < layers; i++) {
+				if (i > 0)
+					json.append (',');
+				json.append ("{\"distance\":").append (100 + random.nextInt (3000))
+						.append (",\"condition\":\"").append (Payloads.CLOUD_CONDITIONS[random.nextInt (Payloads.CLOUD_CONDITIONS.length)]).append ('"');
+				if (random.nextInt (4) == 0)
+					json.append (",\"cumulus\":\"CB\"");
+				json.append ('}');
+			}
+			json.append (']');
+		}
+		json.append ('}');
+	}
+
+	static private void city (StringBuilder json, int id, String cityName, double lat, double lon, Random random, boolean distance) {
+		Random place = new Random (id);
+		String name = cityName != null ? cityName : Payloads.name (place);
+		long now = System.currentTimeMillis () / 1000;
+		long dt = now - random.nextInt (3600);
+		json.append ("{\"id\":").append (id);
+		Payloads.coord (json, place, lat, lon);
+		json.append (",\"name\":");
+		Payloads.string (json, name);
+		if (distance)
+			json.append (",\"distance\":").append (Payloads.round (random.nextDouble () * 40));
+		Payloads.main (json, Payloads.temperature (place, random), random);
+		json.append (",\"dt\":").append (dt)
+				.append (",\"date\":\"").append (Payloads.dateText (dt)).append ('"');
+		Payloads.wind (json, random, false);
+		json.append (",\"clouds\":{\"all\":").append (random.nextInt (101)).append ('}');
+		Payloads.conditions (json, random);
+		json.append (",\"sys\":{\"country\":\"").append (Payloads.country (place)).append ('"')
+				.append (",\"population\":").append (1000 * (1 + place.nextInt (5000))).append ('}')
+				.append (",\"url\":\"http:\\/\\/openweathermap.org\\/city\\/").append (id).append ("\"}");
+	}
+
+	static private void coord (StringBuilder json, Random place, double lat, double lon) {
+		double placeLat = Double.isNaN (lat) ? place.nextDouble () * 130 - 60 : lat + place.nextGaussian () / 4;
+		double placeLon = Double.isNaN (lon) ? place.nextDouble () * 360 - 180 : lon + place.nextGaussian () / 4;
+		json.append (",\"coord\":{\"lat\":").append (Payloads.round (placeLat, 10000))
+				.append (",\"lon\":").append (Payloads.round (placeLon, 10000)).append ('}');
+	}
+
+	static private void main (StringBuilder json, double temp, Random random) {
+		json.append (",\"main\":{\"temp\":").append (Payloads.round (temp))
+				.append (",\"pressure\":").append (Payloads.round (990 + random.nextDouble () * 40))
+				.append (",\"humidity\":").append (40 + random.nextInt (60))
+				.append (",\"temp_min\":").append (Payloads.round (temp - random.nextDouble () * 2))
+				.append (",\"temp_max\":").append (Payloads.round (temp + random.nextDouble () * 2)).append ('}');
+	}
+
+	static private void wind (StringBuilder json, Random random, boolean gust) {
+		double speed = random.nextDouble () * 12;
+		json.append (",\"wind\":{\"speed\":").append (Payloads.round (speed));
+		if (gust)
+			json.append (",\"gust\":").append (Payloads.round (speed * (1 + random.nextDouble ())));
+		json.append (",\"deg\":").append (random.nextInt (360)).append ('}');
+	}
+
+	static private void conditions (StringBuilder json, Random random) {
+		int count = 1 + random.nextInt (3);
+		json.append (",\"weather\":[");
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				json.append (',');
+			String[] condition = Payloads.CONDITIONS[random.nextInt (Payloads.CONDITIONS.length)];
+			json.append ("{\"id\":").append (condition[0])
+					.append (",\"main\":\"").append (condition[1]).append ('"')
+					.append (",\"description\":\"").append (condition[2]).append ('"')
+					.append (",\"icon\":\"").append (condition[3]).append ("\"}");
+		}
+		json.append (']');
+	}
+
+	static private void tick (StringBuilder json, double temp, int humidity, int pressure, long dt, Random random) {
+		json.append ("{\"temp\":").append (Payloads.round (temp))
+				.append (",\"main\":{\"temp\":").append (Payloads.round (temp))
+				.append (",\"humidity\":").append (humidity)
+				.append (",\"pressure\":").append (pressure).append ('}');
+		Payloads.wind (json, random, true);
+		json.append (",\"humidity\":").append (humidity)
+				.append (",\"pressure\":").append (pressure)
+				.append (",\"rain\":{\"1h\":").append (random.nextInt (3))
+				.append (",\"24h\":").append (random.nextInt (10))
+				.append (",\"today\":").append (random.nextInt (5)).append ('}')
+				.append (",\"dt\":").append (dt).append ('}');
+	}
+
+	static private void sample (StringBuilder json, double temp, int humidity, int pressure, long dt, Random random) {
+		double speed = random.nextDouble () * 12;
+		json.append ("{\"temp\":");
+		Payloads.sampled (json, temp, random);
+		json.append (",\"pressure\":");
+		Payloads.sampled (json, pressure, random);
+		json.append (",\"humidity\":");
+		Payloads.sampled (json, humidity, random);
+		json.append (",\"wind\":{\"speed\":");
+		Payloads.sampled (json, speed, random);
+		json.append (",\"gust\":");
+		Payloads.sampled (json, speed * (1 + random.nextDouble ()), random);
+		json.append (",\"deg\":{\"v\":").append (random.nextInt (360)).append ("}}")
+				.append (",\"rain\":{\"1h\":");
+		Payloads.sampled (json, random.nextInt (3), random);
+		json.append (",\"24h\":");
+		Payloads.sampled (json, random.nextInt (10), random);
+		json.append (",\"today\":");
+		Payloads.sampled (json, random.nextInt (5), random);
+		json.append ("},\"precipitation\":{\"v\":");
+		Payloads.sampled (json, random.nextInt (3), random);
+		json.append ("},\"main\":{\"humidity\":");
+		Payloads.sampled (json, humidity, random);
+		json.append (",\"temp\":");
+		Payloads.sampled (json, temp, random);
+		json.append (",\"temp_max\":").append (Payloads.round (temp + random.nextDouble ()))
+				.append (",\"pressure\":");
+		Payloads.sampled (json, pressure, random);
+		json.append ("},\"dt\":").append (dt).append ('}');
+	}
+
+	/* a value sampled several times: value, count, min and max */
+	static private void sampled (StringBuilder json, double value, Random random) {
+		json.append ("{\"v\":").append (Payloads.round (value))
+				.append (",\"c\":").append (1 + random.nextInt (4))
+				.append (",\"mi\":").append (Payloads.round (value - random.nextDouble ()))
+				.append (",\"ma\":").append (Payloads.round (value + random.nextDouble ())).append ('}');
+	}
+
+	/** Appends a JSON string: the text can come from the query (a city
+	 * name), so its quotes, backslashes and control characters are escaped
+	 * @return the JSON */
+	static private StringBuilder string (StringBuilder json, String text) {
+		json.append ('"');
+		for (int i = 0; i < text.length (); i++) {
+			char c = text.charAt (i);
+			if (c == '"' || c == '\\')
+				json.append ('\\').append (c);
+			else if (c < 0x20)
+				json.append (String.format (Locale.ROOT, "\\u%04x", (int) c));
+			else
+				json.append (c);
+		}
+		return json.append ('"');
+	}
+
+	static private double temperature (Random place, Random random) {
+		/* colder away from the equator, in Kelvin */
+		return 303 - Math.abs (place.nextGaussian ()) * 20 + random.nextGaussian () * 3;
+	}
+
+	static private String name (Random place) {
+		StringBuilder name = new StringBuilder ();
+		int syllables = 2 + place.nextInt (3);
+		for (int i = 0; i < syllables; i++)
+			name.append (Payloads.SYLLABLES[place.nextInt (Payloads.SYLLABLES.length)]);
+		name.setCharAt (0, Character.toUpperCase (name.charAt (0)));
+		return name.toString ();
+	}
+
+	static private String country (Random place) {
+		return Payloads.COUNTRIES[place.nextInt (Payloads.COUNTRIES.length)];
+	}
+
+	static private String dateText (long seconds) {
+		return Payloads.DATE_FORMAT.format (Instant.ofEpochSecond (seconds));
+	}
+
+	static private double round (double value) {
+		return Payloads.round (value, 100);
+	}
+
+	static private double round (double value, int scale) {
+		return Math.round (value * scale) / (double) scale;
+	}
+}
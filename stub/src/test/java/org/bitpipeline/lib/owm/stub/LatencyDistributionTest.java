@@ -0,0 +1,56 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link LatencyDistribution} */
+public class LatencyDistributionTest {
+
+	@Test
+	public void testLogNormalHasTheGivenPercentiles () {
+		LatencyDistribution latency = LatencyDistribution.logNormal (40, 400, TimeUnit.MILLISECONDS);
+		Random random = new Random (42);
+		long[] samples = new long[100000];
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = latency.sampleNanos (random);
+		Arrays.sort (samples);
+		double median = samples[samples.length / 2] / 1e6;
+		double p99 = samples[samples.length * 99 / 100] / 1e6;
+		assertEquals (40, median, 2);
+		assertEquals (400, p99, 40);
+	}
+
+	@Test
+	public void testUniformStaysInItsBounds () {
+		LatencyDistribution latency = LatencyDistribution.uniform (10, 20, TimeUnit.MILLISECONDS);
+		Random random = new Random (42);
+		for (int i = 0; i < 10000; i++) {
+			long nanos = latency.sampleNanos (random);
+			assertTrue (nanos >= TimeUnit.MILLISECONDS.toNanos (10));
+			assertTrue (nanos <= TimeUnit.MILLISECONDS.toNanos (20));
+		}
+		assertEquals (0, LatencyDistribution.none ().sampleNanos (random));
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright 2013 J. Miguel P. Tavares
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***************************************************************************/
+package org.bitpipeline.lib.owm.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.bitpipeline.lib.owm.HistoryColumns;
+import org.bitpipeline.lib.owm.OwmClient;
+import org.bitpipeline.lib.owm.StatusWeatherData;
+import org.bitpipeline.lib.owm.WeatherForecastResponse;
+import org.bitpipeline.lib.owm.WeatherHistoryCityResponse;
+import org.bitpipeline.lib.owm.WeatherHistoryStationResponse;
+import org.bitpipeline.lib.owm.WeatherStatusResponse;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link OwmStubServer} */
+public class OwmStubServerTest {
+	private OwmStubServer stub;
+
+	@Before
+	public void start () throws IOException {
+		this.stub = new OwmStubServer ().setListSize (7).start ();
+	}
+
+	@After
+	public void stop () {
+		this.stub.close ();
+	}
+
+	private OwmClient client () {
+		OwmClient owm = new OwmClient ();
+		owm.setBaseUrl (this.stub.getBaseUrl ());
+		return owm;
+	}
+
+	static private final class Response {
+		int status;
+		String contentEncoding;
+		String retryAfter;
+		String body;
+
+		JSONObject json () throws JSONException {
+			return new JSONObject (this.body);
+		}
+	}
+
+	private Response get (String subUrl, boolean gzip) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL (this.stub.getBaseUrl () + subUrl).openConnection ();
+		if (gzip)
+			connection.setRequestProperty ("Accept-Encoding", "gzip, deflate");
+		Response response = new Response ();
+		response.status = connection.getResponseCode ();
+		response.contentEncoding = connection.getHeaderField ("Content-Encoding");
+		response.retryAfter = connection.getHeaderField ("Retry-After");
+		InputStream in = response.status < 400 ? connection.getInputStream () : connection.getErrorStream ();
+		if ("gzip".equals (response.contentEncoding))
+			in = new GZIPInputStream (in);
+		ByteArrayOutputStream out = new ByteArrayOutputStream ();
+		byte[] buffer = new byte[4096];
+		for (int n = in.read (buffer); n >= 0; n = in.read (buffer))
+			out.write (buffer, 0, n);
+		in.close ();
+		response.body = new String (out.toByteArray (), StandardCharsets.UTF_8);
+		return response;
+	}
+
+	private JSONObject getJson (String subUrl) throws IOException, JSONException {
+		Response response = get (subUrl, false);
+		assertEquals (response.body, 200, response.status);
+		return response.json ();
+	}
+
+	@Test
+	public void testFindQueries () throws IOException, JSONException {
+		JSONObject stations = getJson ("find/station?lat=55.500000&lon=37.500000&radius=40.000000&cluster=yes");
+		assertEquals ("200", stations.getString ("cod"));
+		JSONArray list = stations.getJSONArray ("list");
+		assertEquals (7, list.length ());
+		JSONObject station = list.getJSONObject (0);
+		assertTrue (station.getJSONObject ("main").has ("temp"));
+		assertTrue (Math.abs (station.getJSONObject ("coord").getDouble ("lat") - 55.5) < 5);
+		assertTrue (station.has ("wind"));
+
+		JSONObject cities = getJson ("find/city?lat=55.000000&lon=37.000000&cnt=3&cluster=yes");
+		assertEquals (3, cities.getJSONArray ("list").length ());
+		JSONObject city = cities.getJSONArray ("list").getJSONObject (0);
+		assertTrue (city.getJSONArray ("weather").getJSONObject (0).has ("description"));
+		assertTrue (city.getJSONObject ("clouds").has ("all"));
+
+		JSONObject box = getJson ("find/station?bbox=56.000000,37.000000,55.000000,38.000000&cluster=yes");
+		assertEquals (7, box.getJSONArray ("list").length ());
+
+		JSONObject named = getJson ("find/name?q=London,GB");
+		assertEquals ("London", named.getJSONArray ("list").getJSONObject (0).getString ("name"));
+	}
+
+	@Test
+	public void testSingleQueries () throws IOException, JSONException {
+		JSONObject city = getJson ("weather/city/524901?type=json");
+		assertEquals (524901, city.getInt ("id"));
+		assertNotNull (city.getJSONObject ("sys").getString ("country"));
+		/* the same ID is always the same place */
+		assertEquals (city.getString ("name"), getJson ("weather/city/524901?type=json").getString ("name"));
+
+		JSONObject station = getJson ("weather/station/9040?type=json");
+		assertEquals (9040, station.getInt ("id"));
+		assertTrue (station.getJSONObject ("rain").has ("today"));
+
+		JSONObject forecast = getJson ("forecast/city/2267057?type=json&units=metric");
+		assertEquals (2267057, forecast.getJSONObject ("city").getInt ("id"));
+		JSONArray list = forecast.getJSONArray ("list");
+		assertEquals (7, list.length ());
+		assertTrue (list.getJSONObject (1).getLong ("dt") > list.getJSONObject (0).getLong ("dt"));
+		assertTrue (list.getJSONObject (0).has ("dt_txt"));
+	}
+
+	@Test
+	public void testHistoryQueries () throws IOException, JSONException {
+		JSONObject city = getJson ("history/city/2885679?type=HOUR");
+		assertEquals (2885679, city.getInt ("city_id"));
+		assertEquals (7, city.getJSONArray ("list").length ());
+
+		JSONObject tick = getJson ("history/station/9040?type=TICK");
+		assertEquals ("tick", tick.getString ("type"));
+		assertTrue (tick.getString ("calctime").contains ("tick ="));
+		assertTrue (tick.getJSONArray ("list").getJSONObject (0).has ("temp"));
+
+		JSONObject hour = getJson ("history/station/9040?type=HOUR");
+		assertEquals ("hour", hour.getString ("type"));
+		JSONObject sample = hour.getJSONArray ("list").getJSONObject (0);
+		assertTrue (sample.getJSONObject ("temp").has ("mi"));
+		assertTrue (sample.getJSONObject ("wind").getJSONObject ("speed").has ("ma"));
+
+		assertEquals (400, get ("history/station/9040?type=WEEK", false).status);
+	}
+
+	@Test
+	public void testResponsesAreCompressedWhenAccepted () throws IOException, JSONException {
+		Response response = get ("weather/city/524901?type=json", true);
+		assertEquals (200, response.status);
+		assertEquals ("gzip", response.contentEncoding);
+		assertEquals (524901, response.json ().getInt ("id"));
+
+		this.stub.setCompression (false);
+		assertEquals (null, get ("weather/city/524901?type=json", true).contentEncoding);
+	}
+
+	@Test
+	public void testInjectedErrorsAndUnknownQueries () throws IOException {
+		assertEquals (404, get ("weather/planet/3", false).status);
+
+		this.stub.setErrorRate (1, 503);
+		Response response = get ("weather/city/524901?type=json", false);
+		assertEquals (503, response.status);
+		assertEquals ("1", response.retryAfter);
+		assertEquals (1, this.stub.getErrorCount ());
+		assertEquals (2, this.stub.getRequestCount ());
+	}
+
+	@Test
+	public void testLatency () throws IOException {
+		this.stub.setLatency (LatencyDistribution.fixed (100, TimeUnit.MILLISECONDS));
+		long start = System.nanoTime ();
+		assertEquals (200, get ("weather/city/524901?type=json", false).status);
+		assertTrue (System.nanoTime () - start >= TimeUnit.MILLISECONDS.toNanos (100));
+	}
+
+	@Test
+	public void testClientDecodesTheFindQueries () throws IOException, JSONException {
+		OwmClient owm = client ();
+		try {
+			WeatherStatusResponse stations = owm.currentWeatherAroundPoint (55.5f, 37.5f, 3);
+			assertEquals (3, stations.getWeatherStatus ().size ());
+			assertTrue (stations.getWeatherStatus ().get (0).hasMain ());
+			assertTrue (stations.getWeatherStatus ().get (0).hasWind ());
+
+			WeatherStatusResponse cities = owm.currentWeatherAtCity (55f, 37f, 3);
+			assertEquals (3, cities.getWeatherStatus ().size ());
+			assertTrue (cities.getWeatherStatus ().get (0).hasWeatherConditions ());
+
+			assertEquals (7, owm.currentWeatherInBoundingBox (56f, 37f, 55f, 38f).getWeatherStatus ().size ());
+			assertEquals (7, owm.currentWeatherInCircle (55.5f, 37.5f, 40f).getWeatherStatus ().size ());
+
+			WeatherStatusResponse named = owm.currentWeatherAtCity ("London", "gb");
+			assertEquals ("London", named.getWeatherStatus ().get (0).getName ());
+		} finally {
+			owm.shutdown ();
+		}
+	}
+
+	@Test
+	public void testClientDecodesTheSingleQueries () throws IOException, JSONException {
+		OwmClient owm = client ();
+		try {
+			StatusWeatherData city = owm.currentWeatherAtCity (524901);
+			assertEquals (524901, city.getId ());
+			assertTrue (city.hasName ());
+
+			StatusWeatherData station = owm.currentWeatherAtStation (9040);
+			assertEquals (9040, station.getId ());
+			assertTrue (station.hasRain ());
+
+			WeatherForecastResponse forecast = owm.forecastWeatherAtCity (2267057);
+			assertEquals (2267057, forecast.getCity ().getId ());
+			assertEquals (7, forecast.getForecasts ().size ());
+			assertTrue (forecast.getForecasts ().get (1).getDateTime () > forecast.getForecasts ().get (0).getDateTime ());
+
+			WeatherForecastResponse named = owm.forecastWeatherAtCity ("Lisbon");
+			assertEquals ("Lisbon", named.getCity ().getName ());
+			assertEquals (7, named.getForecasts ().size ());
+		} finally {
+			owm.shutdown ();
+		}
+	}
+
+	@Test
+	public void testClientDecodesTheHistoryQueries () throws IOException, JSONException {
+		OwmClient owm = client ();
+		try {
+			WeatherHistoryCityResponse city = owm.historyWeatherAtCity (2885679, OwmClient.HistoryType.HOUR);
+			assertEquals (2885679, city.getCityId ());
+			assertEquals (7, city.getHistory ().size ());
+			assertEquals (7, owm.historyColumnsAtCity (2885679, OwmClient.HistoryType.HOUR).size ());
+
+			for (OwmClient.HistoryType type : OwmClient.HistoryType.values ()) {
+				if (type == OwmClient.HistoryType.UNKNOWN)
+					continue;
+				WeatherHistoryStationResponse station = owm.historyWeatherAtStation (9040, type);
+				assertEquals (type, station.getType ());
+				assertEquals (9040, station.getStationId ());
+				assertEquals (7, station.getHistory ().size ());
+				assertTrue (!Float.isNaN (station.getHistory ().get (0).getTemp ()));
+
+				HistoryColumns columns = owm.historyColumnsAtStation (9040, type);
+				assertEquals (7, columns.size ());
+				assertTrue (columns.getDateTime (0) > 0);
+				assertTrue (!Float.isNaN (columns.getTemp (0)));
+			}
+		} finally {
+			owm.shutdown ();
+		}
+	}
+
+	@Test
+	public void testNamesFromTheQueryAreEscaped () throws IOException, JSONException {
+		String name = "Say \"Cheese\" \\ Town";
+		/* the client sends the name as given, so it goes URL encoded */
+		String encoded = URLEncoder.encode (name, "UTF-8");
+		assertEquals (name, getJson ("find/name?q=" + encoded).getJSONArray ("list").getJSONObject (0).getString ("name"));
+
+		OwmClient owm = client ();
+		try {
+			assertEquals (name, owm.currentWeatherAtCity (encoded).getWeatherStatus ().get (0).getName ());
+			assertEquals (name, owm.forecastWeatherAtCity (encoded).getCity ().getName ());
+		} finally {
+			owm.shutdown ();
+		}
+	}
+}